@@ -10,6 +10,7 @@ import routing.MessageRouter;
  * A constant bit-rate connection between two DTN nodes.
  */
 public class CBRConnection extends Connection {
+	private static final long serialVersionUID = 1L;
 	private int speed;
 	private double transferDoneTime;
 
@@ -79,6 +80,20 @@ public class CBRConnection extends Connection {
 		return transferDoneTime;
 	}
 
+	/**
+	 * Returns the time when the remaining byte count of the ongoing transfer
+	 * drops to zero (i.e., the time after which the transfer is considered
+	 * ready), or Double.MAX_VALUE if nothing is being transferred.
+	 * @return The time of the next change in the transfer's state
+	 */
+	@Override
+	public double getNextEventTime() {
+		if (msgOnFly == null) {
+			return Double.MAX_VALUE;
+		}
+		return this.transferDoneTime - 1.0 / this.speed;
+	}
+
 	/**
 	 * Returns true if the current message transfer is done.
 	 * @return True if the transfer is done, false if not
@@ -4,12 +4,15 @@
  */
 package core;
 
+import java.io.Serializable;
+
 import routing.MessageRouter;
 
 /**
  * A connection between two DTN nodes.
  */
-public abstract class Connection {
+public abstract class Connection implements Serializable {
+	private static final long serialVersionUID = 1L;
 	protected DTNHost toNode;
 	protected NetworkInterface toInterface;
 	protected DTNHost fromNode;
@@ -93,6 +96,21 @@ public abstract class Connection {
 	 */
 	public void update() {};
 
+	/**
+	 * Returns the earliest simulation time when the state of the ongoing
+	 * transfer can change (e.g., the transfer becomes ready). This
+	 * implementation returns the current time if a message is being
+	 * transferred (i.e., the connection should be checked on every update)
+	 * and Double.MAX_VALUE otherwise.
+	 * @return The time of the next change in the transfer's state
+	 */
+	public double getNextEventTime() {
+		if (isTransferring()) {
+			return SimClock.getTime();
+		}
+		return Double.MAX_VALUE;
+	}
+
 	/**
      * Aborts the transfer of the currently transferred message.
      */
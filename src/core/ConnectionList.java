@@ -0,0 +1,493 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * List of the connections of a network interface with an index from the
+ * interfaces at the other end of the connections to the connections. The
+ * list keeps the connections in the order they were added (like an
+ * ArrayList) and the index is an open addressing hash table, so checking if
+ * the interface is connected to another interface, finding the connection
+ * and removing it take constant time regardless of the number of
+ * connections. A removed connection leaves an empty slot in the array, so
+ * the order of the rest doesn't change and nothing is shifted; the slots
+ * are compacted away when the array is full or when a connection is
+ * accessed by its position. The index is updated by all the list
+ * operations, so the list can be modified like any other list.
+ */
+public class ConnectionList extends AbstractList<Connection>
+		implements RandomAccess, Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the list */
+	private static final int INITIAL_SIZE = 4;
+
+	/** the interface whose connections these are */
+	private NetworkInterface owner;
+	/** the connections in the order they were added (null for removed) */
+	private Connection[] elements;
+	/** number of connections in the list */
+	private int size;
+	/** number of used slots of the element array (including removed) */
+	private int end;
+	/** hash table of the other interfaces (null for empty slots) */
+	private transient NetworkInterface[] keys;
+	/** the connections of the other interfaces in the hash table */
+	private transient Connection[] values;
+	/** positions of the connections in the element array */
+	private transient int[] positions;
+	/** number of connections that are not in the index because there
+	 * already is another connection to the same interface */
+	private int duplicates;
+	/** number of additions and removals. Unlike the modCount of the list
+	 * this is serialized, so it doesn't restart from zero on restore. */
+	private int changes;
+	/** number of times the element array has been compacted */
+	private transient int compactions;
+
+	/**
+	 * Creates a new empty connection list
+	 * @param owner The interface whose connections are stored in the list
+	 */
+	public ConnectionList(NetworkInterface owner) {
+		this.owner = owner;
+		this.elements = new Connection[INITIAL_SIZE];
+		this.size = 0;
+		this.end = 0;
+		this.keys = new NetworkInterface[2 * INITIAL_SIZE];
+		this.values = new Connection[2 * INITIAL_SIZE];
+		this.positions = new int[2 * INITIAL_SIZE];
+	}
+
+	/**
+	 * Returns the connection to another interface
+	 * @param other The other interface
+	 * @return The (first added) connection to the interface or null if there
+	 * is no connection to it
+	 */
+	public Connection getConnectionTo(NetworkInterface other) {
+		ensureIndex();
+		NetworkInterface[] k = this.keys;
+		int mask = k.length - 1;
+		for (int i = slot(other, mask); k[i] != null; i = (i + 1) & mask) {
+			if (k[i] == other) {
+				return this.values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the modification counter of the list. The counter is
+	 * incremented every time a connection is added or removed.
+	 * @return The modification counter
+	 */
+	public int getModCount() {
+		return this.changes;
+	}
+
+	@Override
+	public Connection get(int index) {
+		checkIndex(index, this.size);
+		compact();
+		return this.elements[index];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public Iterator<Connection> iterator() {
+		return new Itr();
+	}
+
+	@Override
+	public Connection set(int index, Connection con) {
+		Connection old = remove(index);
+		add(index, con);
+		return old;
+	}
+
+	@Override
+	public void add(int index, Connection con) {
+		checkIndex(index, this.size + 1);
+		if (this.end == this.elements.length) {
+			compact();
+		}
+		if (this.size == this.elements.length) {
+			this.elements = Arrays.copyOf(this.elements, 2 * this.size);
+		}
+
+		if (index == this.size && this.end < this.elements.length) {
+			/* appending doesn't move the other connections */
+			this.elements[this.end] = con;
+			this.end++;
+			this.size++;
+			this.modCount++;
+			this.changes++;
+			addToIndex(con, this.end - 1);
+			return;
+		}
+
+		compact();
+		System.arraycopy(this.elements, index, this.elements, index + 1,
+				this.size - index);
+		this.elements[index] = con;
+		this.size++;
+		this.end++;
+		this.modCount++;
+		this.changes++;
+		ensureIndex();
+		rebuildIndex(2 * this.size > this.keys.length ?
+				2 * this.keys.length : this.keys.length);
+	}
+
+	@Override
+	public Connection remove(int index) {
+		checkIndex(index, this.size);
+		compact();
+		Connection con = this.elements[index];
+		removeAt(index);
+		return con;
+	}
+
+	@Override
+	public int indexOf(Object o) {
+		if (!(o instanceof Connection)) {
+			return -1;
+		}
+		compact();
+		int slot = slotOf((Connection)o);
+		if (slot >= 0) {
+			return this.positions[slot];
+		}
+		if (this.duplicates == 0) {
+			return -1;
+		}
+		for (int i = 0; i < this.size; i++) {
+			if (this.elements[i] == o) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Connection)) {
+			return false;
+		}
+		Connection con = (Connection)o;
+		return slotOf(con) >= 0 || findDuplicate(con) >= 0;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof Connection)) {
+			return false;
+		}
+		Connection con = (Connection)o;
+		int slot = slotOf(con);
+		int position = slot >= 0 ? this.positions[slot] : findDuplicate(con);
+		if (position < 0) {
+			return false;
+		}
+		removeAt(position);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(this.elements, 0, this.end, null);
+		this.keys = null; /* rebuilt when needed */
+		this.values = null;
+		this.positions = null;
+		this.size = 0;
+		this.end = 0;
+		this.duplicates = 0;
+		this.modCount++;
+		this.changes++;
+	}
+
+	/**
+	 * Removes the connection at a position of the element array. The slot
+	 * is left empty, so no other connection moves.
+	 * @param position Position of the connection in the element array
+	 */
+	private void removeAt(int position) {
+		Connection con = this.elements[position];
+		this.elements[position] = null;
+		this.size--;
+		while (this.end > 0 && this.elements[this.end - 1] == null) {
+			this.end--;
+		}
+		this.modCount++;
+		this.changes++;
+		removeFromIndex(con);
+	}
+
+	/**
+	 * Moves the connections to the start of the element array so that there
+	 * are no empty slots between them. Does nothing if there are no empty
+	 * slots.
+	 */
+	private void compact() {
+		if (this.end == this.size) {
+			return;
+		}
+		int n = 0;
+		for (int j = 0; j < this.end; j++) {
+			Connection con = this.elements[j];
+			if (con != null) {
+				this.elements[n] = con;
+				if (this.keys != null) {
+					int slot = slotOf(con);
+					if (slot >= 0) {
+						this.positions[slot] = n;
+					}
+				}
+				n++;
+			}
+		}
+		Arrays.fill(this.elements, n, this.end, null);
+		this.end = n;
+		this.compactions++;
+	}
+
+	/**
+	 * Returns the index slot of a connection
+	 * @return The slot or -1 if the connection is not in the index
+	 */
+	private int slotOf(Connection con) {
+		ensureIndex();
+		NetworkInterface other = con.getOtherInterface(owner);
+		NetworkInterface[] k = this.keys;
+		int mask = k.length - 1;
+		for (int i = slot(other, mask); k[i] != null; i = (i + 1) & mask) {
+			if (k[i] == other) {
+				return this.values[i] == con ? i : -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the position of a connection that is not in the index because
+	 * it is a duplicate of another connection to the same interface
+	 * @return The position in the element array or -1 if not found
+	 */
+	private int findDuplicate(Connection con) {
+		if (this.duplicates == 0) {
+			return -1;
+		}
+		for (int i = 0; i < this.end; i++) {
+			if (this.elements[i] == con) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a connection to the index (unless there already is a connection
+	 * to the same interface)
+	 * @param con The connection
+	 * @param position Position of the connection in the element array
+	 */
+	private void addToIndex(Connection con, int position) {
+		ensureIndex();
+		if (2 * this.size > this.keys.length) {
+			rebuildIndex(2 * this.keys.length);
+			return; /* the new index contains the connection */
+		}
+
+		NetworkInterface other = con.getOtherInterface(owner);
+		NetworkInterface[] k = this.keys;
+		int mask = k.length - 1;
+		int i = slot(other, mask);
+		for (; k[i] != null; i = (i + 1) & mask) {
+			if (k[i] == other) {
+				this.duplicates++;
+				return;
+			}
+		}
+		k[i] = other;
+		this.values[i] = con;
+		this.positions[i] = position;
+	}
+
+	/**
+	 * Removes a connection from the index. If the connection was a
+	 * duplicate (or there are duplicates of it), the index is rebuilt.
+	 */
+	private void removeFromIndex(Connection con) {
+		ensureIndex();
+		if (this.duplicates > 0) {
+			rebuildIndex(this.keys.length);
+			return;
+		}
+
+		NetworkInterface other = con.getOtherInterface(owner);
+		NetworkInterface[] k = this.keys;
+		Connection[] v = this.values;
+		int[] p = this.positions;
+		int mask = k.length - 1;
+		int i = slot(other, mask);
+		while (k[i] != other) {
+			if (k[i] == null) {
+				return; /* not in the index */
+			}
+			i = (i + 1) & mask;
+		}
+
+		/* backward shift deletion: move the following entries of the
+		 * probe sequence to fill the gap */
+		int gap = i;
+		for (i = (i + 1) & mask; k[i] != null; i = (i + 1) & mask) {
+			int home = slot(k[i], mask);
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				k[gap] = k[i];
+				v[gap] = v[i];
+				p[gap] = p[i];
+				gap = i;
+			}
+		}
+		k[gap] = null;
+		v[gap] = null;
+	}
+
+	/**
+	 * Creates a new index of the given size for the connections in the list
+	 * @param length Number of slots (a power of two larger than the size of
+	 * the list)
+	 */
+	private void rebuildIndex(int length) {
+		this.keys = new NetworkInterface[length];
+		this.values = new Connection[length];
+		this.positions = new int[length];
+		this.duplicates = 0;
+		int mask = length - 1;
+		for (int j = 0; j < this.end; j++) {
+			Connection con = this.elements[j];
+			if (con == null) {
+				continue;
+			}
+			NetworkInterface other = con.getOtherInterface(owner);
+			int i = slot(other, mask);
+			while (this.keys[i] != null && this.keys[i] != other) {
+				i = (i + 1) & mask;
+			}
+			if (this.keys[i] == other) {
+				this.duplicates++;
+			} else {
+				this.keys[i] = other;
+				this.values[i] = con;
+				this.positions[i] = j;
+			}
+		}
+	}
+
+	/**
+	 * Returns the home slot of an interface in the hash table
+	 */
+	private static int slot(NetworkInterface ni, int mask) {
+		int h = System.identityHashCode(ni);
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void checkIndex(int index, int limit) {
+		if (index < 0 || index >= limit) {
+			throw new IndexOutOfBoundsException("Index: " + index +
+					", Size: " + this.size);
+		}
+	}
+
+	/**
+	 * Makes sure that the index exists. The index is not serialized (the
+	 * identity hash codes of the interfaces change) but rebuilt when it is
+	 * needed the first time after deserialization.
+	 */
+	private void ensureIndex() {
+		if (this.keys == null) {
+			int length = 2 * INITIAL_SIZE;
+			while (length < 2 * this.size) {
+				length *= 2;
+			}
+			rebuildIndex(length);
+		}
+	}
+
+	/**
+	 * Iterator that skips the empty slots of the element array, so that
+	 * iterating doesn't compact the array and removing with the iterator
+	 * takes constant time
+	 */
+	private class Itr implements Iterator<Connection> {
+		/** list index of the next connection */
+		private int next = 0;
+		/** array position where to look for the next connection */
+		private int cursor = 0;
+		/** array position of the last returned connection (or -1) */
+		private int lastReturned = -1;
+		private int expectedModCount = modCount;
+		private int expectedCompactions = compactions;
+
+		public boolean hasNext() {
+			return this.next < size;
+		}
+
+		public Connection next() {
+			checkForComodification();
+			if (this.next >= size) {
+				throw new NoSuchElementException();
+			}
+			while (elements[this.cursor] == null) {
+				this.cursor++;
+			}
+			this.lastReturned = this.cursor;
+			this.cursor++;
+			this.next++;
+			return elements[this.lastReturned];
+		}
+
+		public void remove() {
+			if (this.lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeAt(this.lastReturned);
+			this.lastReturned = -1;
+			this.next--;
+			this.expectedModCount = modCount;
+		}
+
+		/**
+		 * Checks that the list was not modified by others and moves the
+		 * positions if the array was compacted (e.g., by {@link #get(int)})
+		 */
+		private void checkForComodification() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (compactions != this.expectedCompactions) {
+				/* after compacting, list index == array position */
+				this.cursor = this.next;
+				if (this.lastReturned >= 0) {
+					this.lastReturned = this.next - 1;
+				}
+				this.expectedCompactions = compactions;
+			}
+		}
+	}
+}
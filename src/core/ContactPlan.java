@@ -0,0 +1,621 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import report.Report;
+import routing.ActiveRouter;
+import routing.MessageRouter;
+import routing.util.EnergyModel;
+
+/**
+ * Contact plan cache. A contact plan is the stream of link up and down
+ * events that the connectivity simulation produced during the host updates
+ * of a run. Runs that differ only in routing settings (routers, buffer
+ * sizes, message TTLs, reports...) produce the same contact plan, so the
+ * plan of the first such run is recorded to the cache directory and the
+ * later runs replay it instead of moving the hosts and checking their
+ * connectivity.
+ * <P>
+ * The plans are identified by a hash of all the settings except the
+ * routing and reporting ones (see {@link #computeKey(SortedMap)}).
+ * If the cache contains the plan of the current settings, the run replays
+ * it; otherwise the run records the plan and saves it to the cache when
+ * the simulation has been run to the end. When a plan is replayed, the
+ * hosts don't move (they stay at their initial locations) and the
+ * interfaces are not updated. The recorded link events are applied at the
+ * same simulation times and at the same points of the host update order as
+ * they happened in the recording run, so routing works exactly like in a
+ * run that simulates the connectivity.
+ * </P>
+ * <P>
+ * Connections created by external connection events are not recorded
+ * (the events are replayed by their own event queues). Contact plans can't
+ * be used with kinetic contacts ({@link World#KINETIC_CONTACTS_S}) or with
+ * energy models, which make connectivity depend on routing, and the radio
+ * ranges may only be changed by the interfaces' own activeness handling
+ * (i.e., between zero and the configured range); a setting error is thrown
+ * for the other cases. Interfaces whose connection speeds change during the
+ * connections (e.g., {@link interfaces.DistanceCapacityInterface}) keep
+ * the speeds they had when the connections were created. Reports that need
+ * the host locations or movement are not useful in replaying runs, and
+ * simulations that use contact plans can't be checkpointed (a setting error
+ * is thrown if checkpoint times are defined).
+ * </P>
+ * <P>
+ * A replayed plan is streamed from its file: only the next link event is
+ * kept in memory and the following ones are read as the simulation reaches
+ * them.
+ * </P>
+ */
+public class ContactPlan {
+	/** Contact plan settings name space ({@value}) */
+	public static final String CONTACT_PLAN_NS = "ContactPlan";
+	/** Contact plan cache directory -setting id ({@value}). If defined,
+	 * contact plans are recorded to and replayed from this directory. */
+	public static final String CACHE_S = "cache";
+	/** Suffix of contact plan files ({@value}) */
+	public static final String FILE_SUFFIX = ".plan";
+
+	/** identifier of the contact plan file format */
+	private static final String FORMAT_ID = "ONE-contact-plan-1";
+	/** record type tags of the plan file */
+	private static final int TAG_DOWN = 0;
+	private static final int TAG_UP = 1;
+	private static final int TAG_END = 2;
+
+	/** setting names (in group name spaces) that only affect routing */
+	private static final String[] ROUTING_GROUP_SETTINGS = {
+		SimScenario.ROUTER_S, MessageRouter.B_SIZE_S, MessageRouter.MSG_TTL_S,
+		MessageRouter.SEND_QUEUE_MODE_S, ActiveRouter.DELETE_DELIVERED_S,
+		SimScenario.APPCOUNT_S};
+	/** packages of the classes whose settings only affect routing */
+	private static final String[] ROUTING_PACKAGES = {"routing", "report"};
+	/** name spaces of settings that don't affect connectivity */
+	private static final String[] OUTPUT_NAMESPACES = {Report.REPORT_NS,
+		SimCheckpoint.CHECKPOINT_NS, CONTACT_PLAN_NS, "Settings"};
+
+	private List<DTNHost> hosts;
+	private File file;
+	private String key;
+
+	/** is the plan recorded (or replayed) */
+	private boolean recording;
+	/** output of the plan being recorded (null if replaying or closed) */
+	private DataOutputStream out;
+	/** the temporary file where the plan is recorded */
+	private File recordFile;
+	/** address of the host being updated (-1 if none) */
+	private int updatingHost;
+
+	/** input of the replayed plan (null if recording or all read) */
+	private DataInputStream in;
+	/** the next link event to replay (valid if hasNext is true) */
+	private boolean hasNext;
+	private double nextTime;
+	private int nextActor;
+	private int nextFromAddr;
+	private int nextFromInterface;
+	private int nextToAddr;
+	private int nextToInterface;
+	private boolean nextUp;
+	/** number of link events replayed so far */
+	private int nrofReplayed;
+
+	/**
+	 * Creates a contact plan for the hosts using the cache directory defined
+	 * in the settings. Replays the cached plan of the current settings if
+	 * there is one and starts recording a new plan if not.
+	 * @param hosts The hosts of the simulation
+	 * @throws SettingsError if the cache directory can't be used or
+	 * checkpoints are requested
+	 * @throws SimError if a cached plan can't be read
+	 */
+	public ContactPlan(List<DTNHost> hosts) {
+		if (new Settings(SimCheckpoint.CHECKPOINT_NS).contains(
+				SimCheckpoint.TIMES_S)) {
+			throw new SettingsError("Contact plans (" + CONTACT_PLAN_NS +
+					"." + CACHE_S + ") can't be used with checkpoints (" +
+					SimCheckpoint.CHECKPOINT_NS + "." + SimCheckpoint.TIMES_S +
+					")");
+		}
+
+		Settings s = new Settings(CONTACT_PLAN_NS);
+		File dir = new File(s.valueFillString(s.getSetting(CACHE_S)));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new SettingsError("Can't create contact plan cache " +
+					"directory " + dir);
+		}
+
+		this.hosts = hosts;
+		checkHosts();
+		this.key = computeKey(Settings.getAllSettings());
+		this.file = new File(dir, this.key + FILE_SUFFIX);
+		this.updatingHost = -1;
+
+		if (this.file.exists()) {
+			openReplay();
+		}
+		else {
+			startRecording(dir);
+		}
+	}
+
+	/**
+	 * Checks that the connectivity of the hosts can't depend on routing:
+	 * the hosts' routers must not use energy models and the hosts' radio
+	 * ranges are guarded so that only the interfaces' activeness handling
+	 * can change them
+	 * @throws SettingsError if a host's router uses an energy model
+	 */
+	private void checkHosts() {
+		for (DTNHost h : this.hosts) {
+			MessageRouter r = h.getRouter();
+			if (r instanceof ActiveRouter &&
+					((ActiveRouter)r).hasEnergyModel()) {
+				throw new SettingsError("Contact plans can't be used with " +
+						"energy models (" + EnergyModel.INIT_ENERGY_S +
+						" is defined for host " + h + ")");
+			}
+
+			ModuleCommunicationBus comBus = h.getComBus();
+			if (comBus.containsProperty(NetworkInterface.RANGE_ID)) {
+				comBus.subscribe(NetworkInterface.RANGE_ID, new RangeGuard(h,
+						comBus.getDouble(NetworkInterface.RANGE_ID, 0)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of a set of settings. The key is a hash of the
+	 * settings that can affect connectivity, i.e., all settings except the
+	 * ones in the name spaces of routers, reports and applications, the
+	 * report, checkpoint, contact plan and settings output settings, the
+	 * scenario name, and the router, buffer size, message TTL, send queue
+	 * mode, delete delivered and application settings of the host groups.
+	 * @param settings Names and values of the settings
+	 * @return The key as a hexadecimal string
+	 */
+	public static String computeKey(SortedMap<String, String> settings) {
+		Set<String> routingNamespaces = new HashSet<String>();
+		for (Map.Entry<String, String> e : settings.entrySet()) {
+			String namespace = getNamespace(e.getKey());
+			if (isGroupSetting(e.getKey()) &&
+					getSetting(e.getKey()).startsWith(SimScenario.GAPPNAME_S)) {
+				/* application settings are in the name space of its name */
+				routingNamespaces.add(e.getValue());
+			}
+			else if (isClassNamespace(namespace, ROUTING_PACKAGES)) {
+				routingNamespaces.add(namespace);
+			}
+		}
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		}
+		for (Map.Entry<String, String> e : settings.entrySet()) {
+			if (!isRoutingSetting(e.getKey(), routingNamespaces)) {
+				String line = e.getKey() + "=" + e.getValue() + "\n";
+				digest.update(line.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		byte[] hash = digest.digest();
+		for (int i = 0; i < 16; i++) {
+			sb.append(String.format("%02x", hash[i]));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns true if a setting only affects routing or output of the
+	 * simulation (and not the connectivity)
+	 * @param name Full name of the setting
+	 * @param routingNamespaces Name spaces of the routers, reports and
+	 * applications
+	 * @return True if the setting doesn't affect connectivity
+	 */
+	private static boolean isRoutingSetting(String name,
+			Set<String> routingNamespaces) {
+		String namespace = getNamespace(name);
+		String setting = getSetting(name);
+
+		if (routingNamespaces.contains(namespace) ||
+				Arrays.asList(OUTPUT_NAMESPACES).contains(namespace) ||
+				name.equals(SimScenario.SCENARIO_NS + "." +
+						SimScenario.NAME_S)) {
+			return true;
+		}
+		if (!isGroupSetting(name)) {
+			return false;
+		}
+		if (setting.startsWith(SimScenario.GAPPNAME_S)) {
+			return true;
+		}
+		return Arrays.asList(ROUTING_GROUP_SETTINGS).contains(setting);
+	}
+
+	/**
+	 * Returns true if the setting is in the name space of a host group
+	 * (e.g., "Group" or "Group3")
+	 */
+	private static boolean isGroupSetting(String name) {
+		String namespace = getNamespace(name);
+		if (!namespace.startsWith(SimScenario.GROUP_NS)) {
+			return false;
+		}
+		for (int i = SimScenario.GROUP_NS.length(); i < namespace.length();
+				i++) {
+			if (!Character.isDigit(namespace.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the name space is the simple name of a class in one
+	 * of the packages (e.g., the settings of a router)
+	 */
+	private static boolean isClassNamespace(String namespace,
+			String[] packages) {
+		for (String p : packages) {
+			try {
+				Class.forName(p + "." + namespace, false,
+						ContactPlan.class.getClassLoader());
+				return true;
+			} catch (ClassNotFoundException e) {
+				/* try the next package */
+			} catch (LinkageError e) {
+				/* e.g., a name that differs only in case from a class */
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the name space part of a full setting name
+	 */
+	private static String getNamespace(String name) {
+		int dot = name.indexOf('.');
+		return dot < 0 ? "" : name.substring(0, dot);
+	}
+
+	/**
+	 * Returns the setting part (without the name space) of a full setting
+	 * name
+	 */
+	private static String getSetting(String name) {
+		return name.substring(name.indexOf('.') + 1);
+	}
+
+	/**
+	 * Returns true if this plan is replayed (and false if it is recorded)
+	 * @return true if this plan is replayed
+	 */
+	public boolean isReplaying() {
+		return !this.recording;
+	}
+
+	/**
+	 * Returns the file of this contact plan
+	 * @return the file of this contact plan
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Tells the plan that a host is about to be updated. When recording,
+	 * the link events recorded during the update are marked to happen in
+	 * the update of this host. When replaying, applies all link events that
+	 * happened before the current simulation time and the ones that
+	 * happened at the current time before the update of this host.
+	 * @param host The host
+	 */
+	public void beforeUpdate(DTNHost host) {
+		if (isReplaying()) {
+			replay(SimClock.getTime(), host.getAddress());
+		}
+		else {
+			this.updatingHost = host.getAddress();
+		}
+	}
+
+	/**
+	 * Tells the plan that all hosts have been updated. When replaying,
+	 * applies the rest of the link events up to the current time.
+	 */
+	public void afterUpdates() {
+		if (isReplaying()) {
+			replay(SimClock.getTime(), -1);
+		}
+		else {
+			this.updatingHost = -1;
+		}
+	}
+
+	/**
+	 * Records a link event. Events that don't happen during host updates
+	 * are not recorded. Called by the network interfaces when they connect
+	 * to or disconnect from other interfaces.
+	 * @param from The interface that created or tore down the connection
+	 * @param to The other interface
+	 * @param up True if the connection was created, false if it was torn
+	 * down
+	 */
+	public void linkChanged(NetworkInterface from, NetworkInterface to,
+			boolean up) {
+		if (this.out == null || this.updatingHost < 0) {
+			return;
+		}
+
+		DTNHost fromHost = from.getHost();
+		DTNHost toHost = to.getHost();
+		try {
+			out.writeByte(up ? TAG_UP : TAG_DOWN);
+			out.writeDouble(SimClock.getTime());
+			out.writeInt(this.updatingHost);
+			out.writeInt(fromHost.getAddress());
+			out.writeByte(fromHost.getInterfaces().indexOf(from));
+			out.writeInt(toHost.getAddress());
+			out.writeByte(toHost.getInterfaces().indexOf(to));
+		} catch (IOException e) {
+			throw new SimError("Can't write contact plan " + this.recordFile +
+					": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the time of the next link event to replay
+	 * @return The time or Double.MAX_VALUE if the plan is recorded or all
+	 * events have been replayed
+	 */
+	public double getNextEventTime() {
+		if (!isReplaying() || !this.hasNext) {
+			return Double.MAX_VALUE;
+		}
+		return this.nextTime;
+	}
+
+	/**
+	 * Ends the use of the plan. A recorded plan is saved to the cache if
+	 * the simulation was run to the end and discarded otherwise.
+	 * @param completed True if the simulation was run to the end
+	 */
+	public void close(boolean completed) {
+		if (this.in != null) {
+			closeReplay();
+		}
+		if (this.out == null) {
+			return;
+		}
+
+		try {
+			if (completed) {
+				out.writeByte(TAG_END);
+			}
+			out.close();
+			if (completed) {
+				/* other runs may record the same plan concurrently */
+				Files.move(this.recordFile.toPath(), this.file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			else {
+				this.recordFile.delete();
+			}
+		} catch (IOException e) {
+			throw new SimError("Can't save contact plan " + this.file +
+					": " + e.getMessage(), e);
+		} finally {
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Replays the link events that happened before the given time and the
+	 * ones that happened at the time before the update of the given host
+	 * @param time The time
+	 * @param address Address of the host or -1 for all the events at the
+	 * time
+	 */
+	private void replay(double time, int address) {
+		while (this.hasNext) {
+			if (this.nextTime > time || (this.nextTime == time &&
+					address >= 0 && this.nextActor != address)) {
+				return;
+			}
+
+			NetworkInterface from = getInterface(this.nextFromAddr,
+					this.nextFromInterface);
+			NetworkInterface to = getInterface(this.nextToAddr,
+					this.nextToInterface);
+			boolean up = this.nextUp;
+			this.nrofReplayed++;
+			readNext();
+
+			if (up) {
+				from.createConnection(to);
+			}
+			else {
+				from.destroyConnection(to);
+			}
+		}
+	}
+
+	private NetworkInterface getInterface(int address, int index) {
+		return this.hosts.get(address).getInterfaces().get(index);
+	}
+
+	/**
+	 * Starts recording a new plan to a temporary file in the directory
+	 */
+	private void startRecording(File dir) {
+		try {
+			this.recordFile = File.createTempFile(this.key, ".tmp", dir);
+			this.out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(new FileOutputStream(
+							this.recordFile))));
+			out.writeUTF(FORMAT_ID);
+			out.writeUTF(this.key);
+			out.writeInt(this.hosts.size());
+			this.recording = true;
+		} catch (IOException e) {
+			throw new SettingsError("Can't record contact plan to " + dir +
+					": " + e.getMessage());
+		}
+
+		for (DTNHost h : this.hosts) {
+			for (NetworkInterface ni : h.getInterfaces()) {
+				ni.setContactPlan(this);
+			}
+		}
+	}
+
+	/**
+	 * Opens the plan file for replaying and reads the first link event
+	 */
+	private void openReplay() {
+		this.nrofReplayed = 0;
+		try {
+			this.in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(new FileInputStream(this.file))));
+			if (!FORMAT_ID.equals(in.readUTF()) ||
+					!this.key.equals(in.readUTF())) {
+				closeReplay();
+				throw new SimError("File " + this.file + " is not a " +
+						"contact plan of this scenario");
+			}
+			if (in.readInt() != this.hosts.size()) {
+				closeReplay();
+				throw new SimError("Contact plan " + this.file +
+						" has a different number of hosts");
+			}
+		} catch (IOException e) {
+			closeReplay();
+			throw new SimError("Can't read contact plan " + this.file +
+					": " + e.getMessage(), e);
+		}
+		readNext();
+	}
+
+	/**
+	 * Reads the next link event from the plan file. Closes the file when
+	 * the end of the plan is reached.
+	 */
+	private void readNext() {
+		try {
+			int tag = this.in.readByte();
+			if (tag == TAG_END) {
+				closeReplay();
+				return;
+			}
+			this.nextUp = (tag == TAG_UP);
+			this.nextTime = in.readDouble();
+			this.nextActor = in.readInt();
+			this.nextFromAddr = in.readInt();
+			this.nextFromInterface = in.readByte();
+			this.nextToAddr = in.readInt();
+			this.nextToInterface = in.readByte();
+			this.hasNext = true;
+		} catch (IOException e) {
+			closeReplay();
+			throw new SimError("Can't read contact plan " + this.file +
+					": " + e.getMessage(), e);
+		}
+		checkInterface(this.nextFromAddr, this.nextFromInterface);
+		checkInterface(this.nextToAddr, this.nextToInterface);
+	}
+
+	/**
+	 * Closes the replayed plan file (no more link events are replayed)
+	 */
+	private void closeReplay() {
+		this.hasNext = false;
+		if (this.in == null) {
+			return;
+		}
+		try {
+			this.in.close();
+		} catch (IOException e) {
+			/* nothing left to read */
+		} finally {
+			this.in = null;
+		}
+	}
+
+	private void checkInterface(int address, int index) {
+		if (address < 0 || address >= this.hosts.size() || index < 0 ||
+				index >= this.hosts.get(address).getInterfaces().size()) {
+			throw new SimError("Contact plan " + this.file + " refers to " +
+					"a nonexistent interface " + index + " of host " +
+					address);
+		}
+	}
+
+	public String toString() {
+		return "ContactPlan " + this.file + (isReplaying() ? " (replay, " +
+				this.nrofReplayed + " events replayed)" : " (recording)");
+	}
+
+	/**
+	 * Listener of a host's radio range that allows only the changes the
+	 * interfaces make when they become inactive or active again
+	 */
+	private static class RangeGuard implements ModuleCommunicationListener {
+		private DTNHost host;
+		/** the configured ranges of the host (and its radio range) */
+		private Set<Double> ranges;
+
+		public RangeGuard(DTNHost host, double range) {
+			this.host = host;
+			this.ranges = new HashSet<Double>();
+			this.ranges.add(0.0);
+			this.ranges.add(range);
+			for (NetworkInterface ni : host.getInterfaces()) {
+				this.ranges.add(ni.getTransmitRange());
+			}
+		}
+
+		/**
+		 * Checks a new radio range of the host
+		 * @throws SettingsError if the range is neither zero nor one of the
+		 * configured ranges
+		 */
+		public void moduleValueChanged(String key, Object newValue) {
+			if (!this.ranges.contains((Double)newValue)) {
+				throw new SettingsError("Contact plans can't be used when " +
+						"the radio range changes (range of host " + host +
+						" was set to " + newValue + ")");
+			}
+		}
+	}
+}
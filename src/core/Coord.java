@@ -4,11 +4,14 @@
  */
 package core;
 
+import java.io.Serializable;
+
 /**
  * Class to hold 2D coordinates and perform simple arithmetics and
  * transformations
  */
-public class Coord implements Cloneable, Comparable<Coord> {
+public class Coord implements Cloneable, Comparable<Coord>, Serializable {
+	private static final long serialVersionUID = 1L;
 	private double x;
 	private double y;
 
@@ -63,6 +66,19 @@ public class Coord implements Cloneable, Comparable<Coord> {
 		return Math.sqrt(dx*dx + dy*dy);
 	}
 
+	/**
+	 * Returns the squared distance to another coordinate. Cheaper than
+	 * {@link #distance(Coord)} when distances only need to be compared.
+	 * @param other The other coordinate
+	 * @return The squared distance between this and another coordinate
+	 */
+	public double distanceSquared(Coord other) {
+		double dx = this.x - other.x;
+		double dy = this.y - other.y;
+
+		return dx*dx + dy*dy;
+	}
+
 	/**
 	 * Returns the x coordinate
 	 * @return x coordinate
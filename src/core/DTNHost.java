@@ -4,25 +4,33 @@
  */
 package core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import movement.MovementModel;
 import movement.Path;
 import routing.MessageRouter;
 import routing.util.RoutingInfo;
+import util.Tuple;
 
 import static core.Constants.DEBUG;
 
 /**
  * A DTN capable host.
  */
-public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
+public class DTNHost implements Comparable<DTNHost>, Serializable {
+	private static final long serialVersionUID = 1L;
+	/** next address to give (in each simulation context) */
+	private static final SimContext.Key<SimContext.Counter> nextAddress =
+		SimContext.newCounterKey(DTNHost.class, "nextAddress");
 	private int address;
 
 	private Coord location; 	// where is the host
+	/** table where the host's location is stored by the host's address */
+	private PositionTable positions;
 	private Coord destination;	// where is it going
 
 	private MessageRouter router;
@@ -35,6 +43,16 @@ public class DTNHost implements Comparable<DTNHost> {
 	private List<MovementListener> movListeners;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** are movement listener notifications postponed */
+	private boolean deferMovementEvents;
+	/** postponed destination and speed notifications (or null if none) */
+	private List<Tuple<Coord, Double>> pendingDestinations;
+	/** track of the latest movement step (null if tracking is off) */
+	private MoveTrack moveTrack;
+	/** read-only snapshot of the connections (null if not created yet) */
+	private List<Connection> connectionView;
+	/** connection modification counter when the snapshot was created */
+	private int connectionViewModCount;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -58,6 +76,8 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.comBus = comBus;
 		this.location = new Coord(0,0);
 		this.address = getNextAddress();
+		this.positions = PositionTable.getInstance();
+		this.positions.add(this.address, this.location);
 		this.name = groupId+address;
 		this.net = new ArrayList<NetworkInterface>();
 
@@ -79,14 +99,21 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.movement.setHost(this);
 		setRouter(mRouterProto.replicate());
 
-		this.location = movement.getInitialLocation();
+		Coord initial = movement.getInitialLocation();
+		if (initial != null) {
+			this.location = initial.clone();
+			this.positions.set(this.address, this.location);
+		}
+		else {
+			this.location = null;
+		}
 
 		this.nextTimeToMove = movement.nextPathAvailable();
 		this.path = null;
 
 		if (movLs != null) { // inform movement listeners about the location
 			for (MovementListener l : movLs) {
-				l.initialLocation(this, this.location);
+				l.initialLocation(this, getLocation());
 			}
 		}
 	}
@@ -97,14 +124,15 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @return The next address.
 	 */
 	private synchronized static int getNextAddress() {
-		return nextAddress++;
+		return nextAddress.get().getAndIncrement();
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		nextAddress.reset();
+		PositionTable.reset();
 	}
 
 	/**
@@ -173,25 +201,69 @@ public class DTNHost implements Comparable<DTNHost> {
 	}
 
 	/**
-	 * Returns a copy of the list of connections this host has with other hosts
-	 * @return a copy of the list of connections this host has with other hosts
+	 * Returns a read-only list of the connections this host has with other
+	 * hosts. The list is a snapshot that is not changed afterwards; a new
+	 * list is created only when the connections of the host have changed
+	 * since the previous call (see {@link #getConnectionsModCount()}), so
+	 * repeated calls don't create any objects.
+	 * @return a list of the connections this host has with other hosts
 	 */
 	public List<Connection> getConnections() {
-		List<Connection> lc = new ArrayList<Connection>();
-
-		for (NetworkInterface i : net) {
-			lc.addAll(i.getConnections());
+		int modCount = getConnectionsModCount();
+		if (this.connectionView == null ||
+				modCount != this.connectionViewModCount) {
+			List<Connection> lc = new ArrayList<Connection>();
+			for (NetworkInterface i : net) {
+				lc.addAll(i.getConnections());
+			}
+			this.connectionView = Collections.unmodifiableList(lc);
+			this.connectionViewModCount = modCount;
 		}
 
-		return lc;
+		return this.connectionView;
 	}
 
 	/**
-	 * Returns the current location of this host.
-	 * @return The location
+	 * Returns the modification counter of this host's connections. The
+	 * counter changes every time a connection of any of the host's
+	 * interfaces is added or removed, so routers can cache data derived
+	 * from the connections and recompute it only when the counter changes.
+	 * @return The modification counter
+	 */
+	public int getConnectionsModCount() {
+		int modCount = 0;
+		for (int i = 0, n = net.size(); i < n; i++) {
+			modCount += net.get(i).getConnectionsModCount();
+		}
+		return modCount;
+	}
+
+	/**
+	 * Returns the current location of this host. The host's location is
+	 * also stored in its position table, so the returned object is a copy
+	 * and the host can only be moved with {@link #setLocation(Coord)} or
+	 * {@link #move(double)}.
+	 * @return A copy of the location
 	 */
 	public Coord getLocation() {
-		return this.location;
+		return this.location != null ? this.location.clone() : null;
+	}
+
+	/**
+	 * Returns the position table where this host's location is stored
+	 * (by the host's address)
+	 * @return The position table
+	 */
+	public PositionTable getPositionTable() {
+		return this.positions;
+	}
+
+	/**
+	 * Returns the movement model of this host
+	 * @return the movement model of this host
+	 */
+	public MovementModel getMovement() {
+		return this.movement;
 	}
 
 	/**
@@ -210,6 +282,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 */
 	public void setLocation(Coord location) {
 		this.location = location.clone();
+		this.positions.set(this.address, this.location);
 	}
 
 	/**
@@ -346,6 +419,56 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.update();
 	}
 
+	/**
+	 * Updates the locations of this host's network interfaces in their
+	 * connectivity optimizers.
+	 */
+	public void updateInterfaceLocations() {
+		for (NetworkInterface i : net) {
+			i.updateLocation();
+		}
+	}
+
+	/**
+	 * Updates the connectivity optimizer locations of this host's network
+	 * interfaces and scans their neighbourhoods for the next
+	 * {@link #update(boolean)} call. The interfaces are handled one by one
+	 * in the same order as in the update, so the scans see the optimizers
+	 * in the same state as the update would. Does nothing if the radio of
+	 * the host is not active.
+	 * @see NetworkInterface#scanNeighbours()
+	 */
+	public void scanNeighbours() {
+		if (!isRadioActive()) {
+			return;
+		}
+		for (NetworkInterface i : net) {
+			i.updateLocation();
+			i.scanNeighbours();
+		}
+	}
+
+	/**
+	 * Returns the earliest simulation time when this host needs to be moved
+	 * or updated if nothing else in the world changes. Returns the current
+	 * time if the host is moving (or should start moving now).
+	 * @return The time of the next update this host needs
+	 */
+	public double getNextUpdateTime() {
+		double now = SimClock.getTime();
+		double next = this.nextTimeToMove;
+
+		if (this.destination != null || this.path != null || next <= now) {
+			return now;
+		}
+
+		for (NetworkInterface i : net) {
+			next = Math.min(next, i.getNextUpdateTime());
+		}
+
+		return Math.min(next, this.router.getNextUpdateTime());
+	}
+
 	/**
 	 * Tears down all connections for this host.
 	 */
@@ -367,6 +490,26 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 	}
 
+	/**
+	 * Sets the tracking of movement steps on or off. When tracking is on,
+	 * every {@link #move(double)} call records the host's track during the
+	 * step.
+	 * @param tracking True if the movement should be tracked
+	 * @see #getMoveTrack()
+	 */
+	public void setMoveTracking(boolean tracking) {
+		this.moveTrack = (tracking ? new MoveTrack() : null);
+	}
+
+	/**
+	 * Returns the track of the host's latest movement step
+	 * @return The track or null if tracking is off
+	 * @see #setMoveTracking(boolean)
+	 */
+	public MoveTrack getMoveTrack() {
+		return this.moveTrack;
+	}
+
 	/**
 	 * Moves the node towards the next waypoint or waits if it is
 	 * not time to move yet
@@ -376,8 +519,14 @@ public class DTNHost implements Comparable<DTNHost> {
 		double possibleMovement;
 		double distance;
 		double dx, dy;
+		double startTime = SimClock.getTime();
 
-		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (this.moveTrack != null) {
+			this.moveTrack.clear();
+			this.moveTrack.add(startTime, this.location);
+		}
+
+		if (!isMovementActive() || startTime < this.nextTimeToMove) {
 			return;
 		}
 		if (this.destination == null) {
@@ -387,14 +536,21 @@ public class DTNHost implements Comparable<DTNHost> {
 		}
 
 		possibleMovement = timeIncrement * speed;
+		double totalMovement = possibleMovement;
 		distance = this.location.distance(this.destination);
 
 		while (possibleMovement >= distance) {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.moveTrack != null) {
+				this.moveTrack.add(startTime + (totalMovement > 0 ?
+						timeIncrement * (1 - possibleMovement/totalMovement) :
+							0), this.location);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
 				this.destination = null; // No more waypoints left, therefore the destination must be null
+				this.positions.set(this.address, this.location);
 				return; // no more waypoints left
 			}
 			distance = this.location.distance(this.destination);
@@ -406,6 +562,43 @@ public class DTNHost implements Comparable<DTNHost> {
 		dy = (possibleMovement/distance) * (this.destination.getY() -
 				this.location.getY());
 		this.location.translate(dx, dy);
+		this.positions.set(this.address, this.location);
+		if (this.moveTrack != null) {
+			this.moveTrack.add(startTime + timeIncrement, this.location);
+		}
+	}
+
+
+	/**
+	 * Moves the node like {@link #move(double)} but postpones informing the
+	 * movement listeners until {@link #flushMovementEvents()} is called.
+	 * Used when hosts are moved concurrently.
+	 * @param timeIncrement How long time the node moves
+	 */
+	public void moveDeferred(double timeIncrement) {
+		this.deferMovementEvents = true;
+		try {
+			move(timeIncrement);
+		} finally {
+			this.deferMovementEvents = false;
+		}
+	}
+
+	/**
+	 * Informs the movement listeners about the destinations that were
+	 * postponed during {@link #moveDeferred(double)}.
+	 */
+	public void flushMovementEvents() {
+		if (this.pendingDestinations == null) {
+			return;
+		}
+
+		for (Tuple<Coord, Double> t : this.pendingDestinations) {
+			for (MovementListener l : this.movListeners) {
+				l.newDestination(this, t.getKey(), t.getValue());
+			}
+		}
+		this.pendingDestinations = null;
 	}
 
 	/**
@@ -428,7 +621,14 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.destination = path.getNextWaypoint();
 		this.speed = path.getSpeed();
 
-		if (this.movListeners != null) {
+		if (this.movListeners != null && this.deferMovementEvents) {
+			if (this.pendingDestinations == null) {
+				this.pendingDestinations = new ArrayList<Tuple<Coord, Double>>();
+			}
+			this.pendingDestinations.add(new Tuple<Coord, Double>(
+					this.destination, this.speed));
+		}
+		else if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
 				l.newDestination(this, this.destination, this.speed);
 			}
@@ -9,7 +9,9 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
+import ui.DTNSimBatchRunner;
 import ui.DTNSimTextUI;
+import ui.DTNSimUI;
 
 /**
  * Simulator's main class
@@ -35,8 +37,10 @@ public class DTNSim {
 	 * delimited with a {@value #RANGE_DELIMETER}. Different settings from run
 	 * arrays are used for different runs (see
 	 * {@link Settings#setRunIndex(int)}). Following arguments are the settings
-	 * files for the simulation run (if any). For GUI mode, the number before
-	 * settings files (if given) is the run index to use for that run.
+	 * files for the simulation run (if any). If any of the
+	 * {@link DTNSimBatchRunner} settings are defined, the runs of the batch
+	 * are executed concurrently by the batch runner. For GUI mode, the number
+	 * before settings files (if given) is the run index to use for that run.
 	 * @param args Command line arguments
 	 */
 	public static void main(String[] args) {
@@ -78,18 +82,47 @@ public class DTNSim {
 
 		if (batchMode) {
 			long startTime = System.currentTimeMillis();
-			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
-				print("Run " + (i+1) + "/" + nrofRuns[1]);
-				Settings.setRunIndex(i);
-				resetForNextRun();
-				new DTNSimTextUI().start();
+			if (DTNSimBatchRunner.isConfigured()) {
+				new DTNSimBatchRunner(nrofRuns[0], nrofRuns[1]).run();
+			}
+			else {
+				for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
+					print("Run " + (i+1) + "/" + nrofRuns[1]);
+					Settings.setRunIndex(i);
+					resetForNextRun();
+					startUI(new DTNSimTextUI());
+				}
 			}
 			double duration = (System.currentTimeMillis() - startTime)/1000.0;
 			print("---\nAll done in " + String.format("%.2f", duration) + "s");
 		}
 		else {
 			Settings.setRunIndex(guiIndex);
-			new DTNSimGUI().start();
+			startUI(new DTNSimGUI());
+		}
+	}
+
+	/**
+	 * Starts a user interface and exits if the simulation can't be started
+	 * because of an error in the settings or in initializing the simulation
+	 * @param ui The user interface to start
+	 */
+	private static void startUI(DTNSimUI ui) {
+		try {
+			ui.start();
+		}
+		catch (SettingsError se) {
+			System.err.println(se.getMessage());
+			System.exit(-1);
+		}
+		catch (SimError er) {
+			if (ui.isInitialized()) {
+				throw er; // failed while running the simulation
+			}
+			System.err.println(er.getMessage());
+			Throwable cause = er.getCause() != null ? er.getCause() : er;
+			System.err.println("Caught at " + cause.getStackTrace()[0]);
+			System.exit(-1);
 		}
 	}
 
@@ -140,7 +173,7 @@ public class DTNSim {
 	 * @param className Full name (i.e., containing the packet path)
 	 * of the class to register. For example: <code>core.SimClock</code>
 	 */
-	public static void registerForReset(String className) {
+	public static synchronized void registerForReset(String className) {
 		Class<?> c = null;
 		try {
 			c = Class.forName(className);
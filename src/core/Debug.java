@@ -5,23 +5,28 @@
 package core;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 
 /**
  * Debugging info printer with time stamping. This class is not to be actively
- * used but convenient for temporary debugging.
+ * used but convenient for temporary debugging. The debug level, output
+ * stream and timing are kept separately for every simulation context.
  */
 public class Debug {
-	private static PrintStream out = System.out;
-	private static int debugLevel = 0;
-	private static long timingStart = -1;
-	private static String timingCause;
+	/** debug state of each simulation context */
+	private static final SimContext.Key<DebugState> state =
+		new SimContext.Key<DebugState>(Debug.class, "state") {
+			protected DebugState create() {
+				return new DebugState();
+			}
+		};
 
 	/**
 	 * Sets the current debug level (smaller level -> more messages)
 	 * @param level The level to set
 	 */
 	public void setDebugLevel(int level) {
-		debugLevel = level;
+		state.get().debugLevel = level;
 	}
 
 	/**
@@ -29,7 +34,7 @@ public class Debug {
 	 * @param outStrm The stream
 	 */
 	public void setPrintStream(PrintStream outStrm) {
-		out = outStrm;
+		state.get().out = outStrm;
 	}
 
 	/**
@@ -77,14 +82,16 @@ public class Debug {
 	public static void p(String txt, int level, boolean timestamp) {
 		String time = "";
 		int simTime = SimClock.getIntTime();
-		if (level < debugLevel) {
+		DebugState ds = state.get();
+		if (level < ds.debugLevel) {
 			return;
 		}
 
 		if (timestamp) {
 			time = "[@"+simTime+"]";
 		}
-		out.println("D" + time + ": " + txt);
+		(ds.out != null ? ds.out : System.out).println("D" + time + ": " +
+				txt);
 	}
 
 	/**
@@ -92,11 +99,12 @@ public class Debug {
 	 * @see #doneTiming()
 	 */
 	public static void startTiming(String cause) {
-		if (timingStart != -1) {
+		DebugState ds = state.get();
+		if (ds.timingStart != -1) {
 			doneTiming();
 		}
-		timingCause = cause;
-		timingStart = System.currentTimeMillis();
+		ds.timingCause = cause;
+		ds.timingStart = System.currentTimeMillis();
 	}
 
 	/**
@@ -105,11 +113,24 @@ public class Debug {
 	 * @see #startTiming(String)
 	 */
 	public static void doneTiming() {
+		DebugState ds = state.get();
 		long end = System.currentTimeMillis();
-		long diff = end-timingStart;
-		if (end-timingStart > 0)
-			pt(timingCause + " took "+ diff/1000.0 + "s" );
+		long diff = end-ds.timingStart;
+		if (end-ds.timingStart > 0)
+			pt(ds.timingCause + " took "+ diff/1000.0 + "s" );
 
-		timingStart = -1;
+		ds.timingStart = -1;
+	}
+
+	/**
+	 * Debug settings and timing of one simulation context
+	 */
+	private static class DebugState implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/** output stream (null for standard output); not checkpointed */
+		private transient PrintStream out = System.out;
+		private int debugLevel = 0;
+		private long timingStart = -1;
+		private String timingCause;
 	}
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorder of the connection, message and application events of hosts that
+ * are updated concurrently. While installed, the recorder replaces the
+ * listeners of the scenario's listener lists and records the events to the
+ * log of the host whose update the current thread is running (see
+ * {@link #begin(DTNHost)}). Afterwards the events are passed to the actual
+ * listeners host by host in the update order, i.e., in the same order as
+ * if the hosts had been updated one at a time.
+ */
+class DeferredEvents implements ConnectionListener, MessageListener,
+		ApplicationListener {
+	private static final int CONNECTED = 0;
+	private static final int DISCONNECTED = 1;
+	private static final int NEW_MESSAGE = 2;
+	private static final int TRANSFER_STARTED = 3;
+	private static final int DELETED = 4;
+	private static final int TRANSFER_ABORTED = 5;
+	private static final int TRANSFERRED = 6;
+	private static final int APP_EVENT = 7;
+
+	private final List<ConnectionListener> connectionListeners;
+	private final List<MessageListener> messageListeners;
+	private final List<ApplicationListener> appListeners;
+	/** the actual listeners of the lists while the recorder is installed */
+	private ConnectionListener[] savedConnectionListeners;
+	private MessageListener[] savedMessageListeners;
+	private ApplicationListener[] savedAppListeners;
+	/** recorded events by host addresses */
+	private final List<List<Event>> logs;
+	/** log of the host whose update the current thread is running */
+	private final ThreadLocal<List<Event>> current;
+
+	/**
+	 * Constructor.
+	 * @param nrofHosts Number of hosts in the world
+	 * @param connectionListeners The connection listener list to take over
+	 * @param messageListeners The message listener list to take over
+	 * @param appListeners The application listener list to take over
+	 */
+	public DeferredEvents(int nrofHosts,
+			List<ConnectionListener> connectionListeners,
+			List<MessageListener> messageListeners,
+			List<ApplicationListener> appListeners) {
+		this.connectionListeners = connectionListeners;
+		this.messageListeners = messageListeners;
+		this.appListeners = appListeners;
+		this.logs = new ArrayList<List<Event>>(nrofHosts);
+		for (int i = 0; i < nrofHosts; i++) {
+			this.logs.add(new ArrayList<Event>());
+		}
+		this.current = new ThreadLocal<List<Event>>();
+	}
+
+	/**
+	 * Replaces the listeners of the lists with this recorder
+	 */
+	public void install() {
+		this.savedConnectionListeners = this.connectionListeners.toArray(
+				new ConnectionListener[0]);
+		this.savedMessageListeners = this.messageListeners.toArray(
+				new MessageListener[0]);
+		this.savedAppListeners = this.appListeners.toArray(
+				new ApplicationListener[0]);
+		this.connectionListeners.clear();
+		this.connectionListeners.add(this);
+		this.messageListeners.clear();
+		this.messageListeners.add(this);
+		this.appListeners.clear();
+		this.appListeners.add(this);
+	}
+
+	/**
+	 * Puts the actual listeners back to the lists
+	 */
+	public void uninstall() {
+		restore(this.connectionListeners, this.savedConnectionListeners);
+		restore(this.messageListeners, this.savedMessageListeners);
+		restore(this.appListeners, this.savedAppListeners);
+	}
+
+	private static <T> void restore(List<T> list, T[] listeners) {
+		list.clear();
+		for (T l : listeners) {
+			list.add(l);
+		}
+	}
+
+	/**
+	 * Starts recording the events of a host in the current thread
+	 * @param host The host whose update the thread runs next
+	 */
+	public void begin(DTNHost host) {
+		this.current.set(this.logs.get(host.getAddress()));
+	}
+
+	/**
+	 * Stops recording events in the current thread
+	 */
+	public void end() {
+		this.current.remove();
+	}
+
+	/**
+	 * Passes the recorded events to the actual listeners (that must have
+	 * been put back with {@link #uninstall()}) and clears the logs
+	 * @param order The hosts in the order they would have been updated one
+	 * at a time
+	 */
+	public void replay(List<DTNHost> order) {
+		for (int i = 0, n = order.size(); i < n; i++) {
+			List<Event> log = this.logs.get(order.get(i).getAddress());
+			for (int j = 0, k = log.size(); j < k; j++) {
+				dispatch(log.get(j));
+			}
+			log.clear();
+		}
+	}
+
+	/**
+	 * Passes an event to the listeners of its type
+	 */
+	private void dispatch(Event e) {
+		switch (e.type) {
+		case CONNECTED:
+			for (ConnectionListener cl : this.connectionListeners) {
+				cl.hostsConnected(e.host1, e.host2);
+			}
+			break;
+		case DISCONNECTED:
+			for (ConnectionListener cl : this.connectionListeners) {
+				cl.hostsDisconnected(e.host1, e.host2);
+			}
+			break;
+		case NEW_MESSAGE:
+			for (MessageListener ml : this.messageListeners) {
+				ml.newMessage(e.message);
+			}
+			break;
+		case TRANSFER_STARTED:
+			for (MessageListener ml : this.messageListeners) {
+				ml.messageTransferStarted(e.message, e.host1, e.host2);
+			}
+			break;
+		case DELETED:
+			for (MessageListener ml : this.messageListeners) {
+				ml.messageDeleted(e.message, e.host1, e.flag);
+			}
+			break;
+		case TRANSFER_ABORTED:
+			for (MessageListener ml : this.messageListeners) {
+				ml.messageTransferAborted(e.message, e.host1, e.host2);
+			}
+			break;
+		case TRANSFERRED:
+			for (MessageListener ml : this.messageListeners) {
+				ml.messageTransferred(e.message, e.host1, e.host2, e.flag);
+			}
+			break;
+		case APP_EVENT:
+			for (ApplicationListener al : this.appListeners) {
+				al.gotEvent(e.event, e.params, e.app, e.host1);
+			}
+			break;
+		default:
+			assert false : e.type; // invalid type code
+		}
+	}
+
+	/**
+	 * Adds an event to the log of the current thread's host
+	 */
+	private Event record(int type, Message m, DTNHost host1, DTNHost host2) {
+		List<Event> log = this.current.get();
+		if (log == null) {
+			throw new SimError("Event outside of a concurrent host update");
+		}
+		Event e = new Event(type, m, host1, host2);
+		log.add(e);
+		return e;
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		record(CONNECTED, null, host1, host2);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		record(DISCONNECTED, null, host1, host2);
+	}
+
+	public void newMessage(Message m) {
+		record(NEW_MESSAGE, m, null, null);
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_STARTED, m, from, to);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		record(DELETED, m, where, null).flag = dropped;
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		record(TRANSFER_ABORTED, m, from, to);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		record(TRANSFERRED, m, from, to).flag = firstDelivery;
+	}
+
+	public void gotEvent(String event, Object params, Application app,
+			DTNHost host) {
+		Event e = record(APP_EVENT, null, host, null);
+		e.event = event;
+		e.params = params;
+		e.app = app;
+	}
+
+	/**
+	 * A recorded event
+	 */
+	private static class Event {
+		private final int type;
+		private final Message message;
+		private final DTNHost host1;
+		private final DTNHost host2;
+		/** dropped or first delivery flag */
+		private boolean flag;
+		private String event;
+		private Object params;
+		private Application app;
+
+		public Event(int type, Message message, DTNHost host1,
+				DTNHost host2) {
+			this.type = type;
+			this.message = message;
+			this.host1 = host1;
+			this.host2 = host2;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEvent;
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityGrid.PairVisitor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kinetic connectivity detection. Instead of checking at every update
+ * whether the interfaces are within range of each other, the link up and
+ * down times of every nearby interface pair are solved from the hosts'
+ * straight line movement during the update interval (see
+ * {@link MoveTrack}): the times when the distance of the hosts crosses the
+ * smaller radio range of the pair. The resulting link events are returned
+ * in time order through the {@link EventQueue} interface, so the world
+ * processes them (and updates the hosts) at the exact times of the
+ * crossings. Contact times are thus exact regardless of the update
+ * interval.
+ * <P>
+ * The link events of an interval are predicted after the hosts have moved
+ * for the interval. Pairs are looked up from the connectivity grids using
+ * the locations at the end of the interval, so two hosts must not move
+ * together more than the grid's cell size minus its maximum radio range
+ * during one interval; {@link #predict(double, double)} checks this. Since
+ * the hosts have already moved, the hosts' locations (e.g., as seen by
+ * routers and reports) are the end-of-interval locations while the
+ * interval's link and message events are processed; only the times of the
+ * link events are exact. Interfaces with predicted links don't create or
+ * tear down connections in their updates (see
+ * {@link NetworkInterface#setLinksPredicted(boolean)}).
+ * Scanning intervals are not used; the hosts' radios must be active at the
+ * start of the interval for a link to come up.
+ * </P>
+ */
+public class KineticConnectivity implements EventQueue, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private List<DTNHost> hosts;
+	/** predicted link events of the current interval (in time order) */
+	private List<LinkEvent> events;
+	/** index of the next event in the list */
+	private int nextEvent;
+	/** start and end times of the interval being predicted */
+	private double start;
+	private double end;
+
+	/**
+	 * Creates a new kinetic connectivity detector for the hosts. Turns on
+	 * movement tracking for all the hosts and link prediction for all
+	 * their interfaces that are in a connectivity grid (interfaces using
+	 * other optimizers keep checking their links in their updates).
+	 * @param hosts The hosts
+	 */
+	public KineticConnectivity(List<DTNHost> hosts) {
+		this.hosts = hosts;
+		this.events = new ArrayList<LinkEvent>();
+		this.nextEvent = 0;
+
+		for (DTNHost h : hosts) {
+			h.setMoveTracking(true);
+			for (NetworkInterface ni : h.getInterfaces()) {
+				ni.setLinksPredicted(isPredicted(ni));
+			}
+		}
+	}
+
+	/**
+	 * Predicts the link events of an interval. Must be called after the
+	 * hosts have moved for the interval.
+	 * @param start Start time of the interval
+	 * @param end End time of the interval
+	 * @throws SimError if the hosts moved so far during the interval that
+	 * some pairs could be missed (see {@link #checkMoveLengths()})
+	 */
+	public void predict(double start, double end) {
+		this.start = start;
+		this.end = end;
+		this.events.clear();
+		this.nextEvent = 0;
+		checkMoveLengths();
+
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			hosts.get(i).updateInterfaceLocations();
+		}
+
+		/* pairs that are connected now... */
+		for (int i = 0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			for (NetworkInterface ni : host.getInterfaces()) {
+				for (Connection con : ni.getConnections()) {
+					NetworkInterface other = con.getOtherInterface(ni);
+					if (con.isInitiator(host) && isPredicted(ni) &&
+							isPredicted(other)) {
+						predictPair(ni, other, true);
+					}
+				}
+			}
+		}
+
+		/* ...and the nearby pairs that are not */
+		ConnectivityGrid.visitAllPairs(new PairVisitor() {
+			public void visit(NetworkInterface a, NetworkInterface b) {
+				if (!a.isConnected(b)) {
+					predictPair(a, b, false);
+				}
+			}
+		});
+
+		Collections.sort(this.events); // stable; ties in prediction order
+	}
+
+	/**
+	 * Checks that every interface pair that may have been within range
+	 * during the interval is found from the connectivity grids with the
+	 * end-of-interval locations, i.e., that the two longest moves of the
+	 * hosts of every grid are together at most the grid's cell size minus
+	 * its maximum radio range
+	 * @throws SimError if the hosts of some grid moved too far
+	 */
+	private void checkMoveLengths() {
+		for (ConnectivityGrid grid : ConnectivityGrid.getAllGrids()) {
+			DTNHost longestHost = null;
+			double longest = 0;
+			double second = 0;
+			for (NetworkInterface ni : grid.getAllInterfaces()) {
+				DTNHost host = ni.getHost();
+				double length = host.getMoveTrack().getLength();
+				if (host == longestHost) {
+					continue;
+				}
+				if (length > longest) {
+					longestHost = host;
+					second = longest;
+					longest = length;
+				}
+				else if (length > second) {
+					second = length;
+				}
+			}
+
+			double margin = grid.getCellSize() - grid.getMaxRange();
+			if (longest + second > margin) {
+				throw new SimError("Hosts moved " + longest + " and " +
+						second + " m during the interval " + this.start +
+						"-" + this.end + " but kinetic connectivity allows " +
+						"only " + margin + " m in total with " + grid +
+						". Use a shorter update interval or a larger " +
+						"cell size multiplier.");
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the links of the interface can be predicted (i.e., it
+	 * is in a connectivity grid)
+	 */
+	private boolean isPredicted(NetworkInterface ni) {
+		return ni.getOptimizerCell() >= 0;
+	}
+
+	/**
+	 * Predicts the link events of one interface pair for the current
+	 * interval. The tracks of both hosts are split into parts where both
+	 * hosts move along a straight line and the times when the distance
+	 * crosses the range are solved from a quadratic equation for each part.
+	 * @param a The first interface
+	 * @param b The second interface
+	 * @param connected Are the interfaces connected at the start
+	 */
+	private void predictPair(NetworkInterface a, NetworkInterface b,
+			boolean connected) {
+		DTNHost ha = a.getHost();
+		DTNHost hb = b.getHost();
+		MoveTrack ta = ha.getMoveTrack();
+		MoveTrack tb = hb.getMoveTrack();
+		double range = Math.min(a.getTransmitRange(), b.getTransmitRange());
+		double rangeSq = range * range;
+
+		if (!ha.isRadioActive() || !hb.isRadioActive()) {
+			return; /* host updates tear down connections of inactive radios */
+		}
+		if (!connected) {
+			/* quick check: can't get within range during the interval */
+			double maxDistance = range + ta.getLength() + tb.getLength();
+			if (a.distanceSquared(b) > maxDistance * maxDistance) {
+				return;
+			}
+		}
+
+		boolean inRange = connected;
+		int ia = 1;
+		int ib = 1;
+		double t0 = this.start;
+		double dx0 = tb.getX(t0) - ta.getX(t0);
+		double dy0 = tb.getY(t0) - ta.getY(t0);
+
+		if ((dx0*dx0 + dy0*dy0 <= rangeSq) != inRange) {
+			inRange = !inRange; /* e.g., the first interval or range change */
+			addEvent(a, b, inRange, t0);
+		}
+
+		while (t0 < this.end) {
+			/* end of the part: the next point of either track */
+			while (ia < ta.size() && ta.getTime(ia) <= t0) {
+				ia++;
+			}
+			while (ib < tb.size() && tb.getTime(ib) <= t0) {
+				ib++;
+			}
+			double t1 = this.end;
+			if (ia < ta.size() && ta.getTime(ia) < t1) {
+				t1 = ta.getTime(ia);
+			}
+			if (ib < tb.size() && tb.getTime(ib) < t1) {
+				t1 = tb.getTime(ib);
+			}
+
+			double dx1 = tb.getX(t1) - ta.getX(t1);
+			double dy1 = tb.getY(t1) - ta.getY(t1);
+			double duration = t1 - t0;
+
+			if (duration > 0) {
+				/* |d0 + v*s|^2 = range^2, s in (0, duration] */
+				double vx = (dx1 - dx0) / duration;
+				double vy = (dy1 - dy0) / duration;
+				double qa = vx*vx + vy*vy;
+				double qb = 2 * (dx0*vx + dy0*vy);
+				double qc = dx0*dx0 + dy0*dy0 - rangeSq;
+				double disc = qb*qb - 4*qa*qc;
+
+				if (qa > 0 && disc > 0) {
+					double sqrtDisc = Math.sqrt(disc);
+					double enter = (-qb - sqrtDisc) / (2*qa);
+					double exit = (-qb + sqrtDisc) / (2*qa);
+					if (!inRange && enter > 0 && enter <= duration) {
+						inRange = true;
+						addEvent(a, b, true, t0 + enter);
+					}
+					if (inRange && exit > 0 && exit <= duration) {
+						inRange = false;
+						addEvent(a, b, false, t0 + exit);
+					}
+				}
+			}
+
+			t0 = t1;
+			dx0 = dx1;
+			dy0 = dy1;
+		}
+	}
+
+	/**
+	 * Adds a new link event
+	 */
+	private void addEvent(NetworkInterface a, NetworkInterface b,
+			boolean up, double time) {
+		this.events.add(new LinkEvent(a, b, up, time));
+	}
+
+	/**
+	 * Returns the next predicted link event
+	 * @return The next event or an event with time Double.MAX_VALUE if
+	 * there are no more events in the current interval
+	 */
+	public ExternalEvent nextEvent() {
+		if (this.nextEvent >= this.events.size()) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+		return this.events.get(this.nextEvent++);
+	}
+
+	/**
+	 * Returns the time of the next predicted link event
+	 * @return The time or Double.MAX_VALUE if there are no more events in
+	 * the current interval
+	 */
+	public double nextEventsTime() {
+		if (this.nextEvent >= this.events.size()) {
+			return Double.MAX_VALUE;
+		}
+		return this.events.get(this.nextEvent).getTime();
+	}
+
+	public String toString() {
+		return "KineticConnectivity with " +
+			(this.events.size() - this.nextEvent) + " pending link events";
+	}
+
+	/**
+	 * Predicted link up or down event of an interface pair
+	 */
+	private static class LinkEvent extends ExternalEvent {
+		private static final long serialVersionUID = 1L;
+		private NetworkInterface from;
+		private NetworkInterface to;
+		private boolean up;
+
+		public LinkEvent(NetworkInterface from, NetworkInterface to,
+				boolean up, double time) {
+			super(time);
+			this.from = from;
+			this.to = to;
+			this.up = up;
+		}
+
+		@Override
+		public void processEvent(World world) {
+			if (this.up) {
+				this.from.createConnection(this.to);
+			}
+			else {
+				this.from.destroyConnection(this.to);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "LINK " + (up ? "up" : "down") + " @" + this.time + " " +
+				this.from + "<->" + this.to;
+		}
+	}
+}
@@ -4,6 +4,7 @@
  */
 package core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -13,7 +14,8 @@ import java.util.Set;
 /**
  * A message that is created at a node or passed between nodes.
  */
-public class Message implements Comparable<Message> {
+public class Message implements Comparable<Message>, Serializable {
+	private static final long serialVersionUID = 1L;
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
 	private DTNHost from;
@@ -24,10 +26,28 @@ public class Message implements Comparable<Message> {
 	private int size;
 	/** List of nodes this message has passed */
 	private List<DTNHost> path;
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	/** Next unique identifier to be given (in each simulation context) */
+	private static final SimContext.Key<SimContext.Counter> nextUniqueId =
+		SimContext.newCounterKey(Message.class, "nextUniqueId");
+	/** Next message index to be given (in each simulation context) */
+	private static final SimContext.Key<SimContext.Counter> nextIndex =
+		SimContext.newCounterKey(Message.class, "nextIndex");
+	/** Kept indexes by message IDs (in each simulation context) */
+	private static final SimContext.Key<HashMap<String, Integer>> kept =
+		new SimContext.Key<HashMap<String, Integer>>(Message.class, "kept") {
+		protected HashMap<String, Integer> create() {
+			return new HashMap<String, Integer>();
+		}
+	};
+	/** Messages created by the current thread during a concurrent update
+	 * round (null if the thread isn't recording; see
+	 * {@link #recordCreated(List)}) */
+	private static final ThreadLocal<List<Message>> created =
+		new ThreadLocal<List<Message>>();
 	/** Unique ID of this message */
 	private int uniqueId;
+	/** Index of the message (shared by the replicates) */
+	private int index;
 	/** The time this message was received */
 	private double timeReceived;
 	/** The time when this message was created */
@@ -63,12 +83,31 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
+		this(from, to, id, indexFor(id), size);
+	}
+
+	/**
+	 * Creates a new Message with a known index
+	 */
+	private Message(DTNHost from, DTNHost to, String id, int index,
+			int size) {
 		this.from = from;
 		this.to = to;
 		this.id = id;
+		this.index = index;
 		this.size = size;
 		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		List<Message> createdList = created.get();
+		if (createdList == null) {
+			this.uniqueId = nextUniqueId.get().getAndIncrement();
+		}
+		else {
+			SimContext.Counter counter = nextUniqueId.get();
+			synchronized (counter) {
+				this.uniqueId = counter.getAndIncrement();
+			}
+			createdList.add(this);
+		}
 
 		this.timeCreated = SimClock.getTime();
 		this.timeReceived = this.timeCreated;
@@ -78,7 +117,6 @@ public class Message implements Comparable<Message> {
 		this.properties = null;
 		this.appID = null;
 
-		Message.nextUniqueId++;
 		addNodeOnPath(from);
 	}
 
@@ -115,6 +153,101 @@ public class Message implements Comparable<Message> {
 		return this.uniqueId;
 	}
 
+	/**
+	 * Returns the index of the message. Each new message gets the next free
+	 * index (starting from zero) when it is created and the index is the
+	 * same for all replicates of the message, so it can be used as a
+	 * compact identifier instead of the ID. Messages that are created
+	 * separately have different indexes even if their IDs are the same,
+	 * unless the index of the ID has been kept with {@link #keepIndex()}.
+	 * @return The index
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Makes the messages that are created later with the same ID as this
+	 * message get the same index as this message. Should be called when
+	 * the index is stored for the rest of the run in a state that refers
+	 * to the message ID (e.g., the messages delivered to a host). Only the
+	 * IDs whose index is kept are remembered, so the memory this takes is
+	 * bounded by the size of such states instead of the number of messages.
+	 */
+	public void keepIndex() {
+		HashMap<String, Integer> keptIndexes = kept.get();
+		synchronized (keptIndexes) {
+			keptIndexes.put(this.id, this.index);
+		}
+	}
+
+	/**
+	 * Returns the number of message IDs whose index has been kept (see
+	 * {@link #keepIndex()}) in the current simulation context
+	 * @return The number of kept indexes
+	 */
+	public static int getNrofKeptIndexes() {
+		return kept.get().size();
+	}
+
+	/**
+	 * Returns the kept index of a message ID or the next free index if the
+	 * index of the ID hasn't been kept
+	 */
+	private static int indexFor(String id) {
+		HashMap<String, Integer> keptIndexes = kept.get();
+		Integer index;
+		synchronized (keptIndexes) {
+			index = keptIndexes.get(id);
+		}
+		return index != null ? index : nextIndex.get().getAndIncrement();
+	}
+
+	/**
+	 * Starts or stops recording the messages that the current thread
+	 * creates. While recording, the messages get provisional unique IDs
+	 * (the IDs are then taken concurrently by many threads) and are added
+	 * to the given list, so the IDs can be fixed with
+	 * {@link #renumber(List)} afterwards.
+	 * @param list The list where to add the created messages or null to
+	 * stop recording
+	 */
+	static void recordCreated(List<Message> list) {
+		if (list != null) {
+			created.set(list);
+		}
+		else {
+			created.remove();
+		}
+	}
+
+	/**
+	 * Gives the recorded messages (see {@link #recordCreated(List)}) the
+	 * unique IDs they would have got if they had been created one list at
+	 * a time: the provisional IDs are replaced with consecutive IDs
+	 * starting from the smallest of them, in the order of the lists and the
+	 * order of the messages in each list. The relative order of two
+	 * messages changes only if the threads that created them were
+	 * recording at the same time.
+	 * @param lists The lists of recorded messages in the creation order
+	 */
+	static void renumber(List<List<Message>> lists) {
+		int next = Integer.MAX_VALUE;
+		for (int i = 0, n = lists.size(); i < n; i++) {
+			List<Message> list = lists.get(i);
+			for (int j = 0, k = list.size(); j < k; j++) {
+				next = Math.min(next, list.get(j).uniqueId);
+			}
+		}
+
+		for (int i = 0, n = lists.size(); i < n; i++) {
+			List<Message> list = lists.get(i);
+			for (int j = 0, k = list.size(); j < k; j++) {
+				list.get(j).uniqueId = next++;
+			}
+		}
+	}
+
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
@@ -326,7 +459,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
+		Message m = new Message(from, to, id, index, size);
 		m.copyFrom(this);
 		return m;
 	}
@@ -343,7 +476,9 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		nextUniqueId.reset();
+		nextIndex.reset();
+		kept.reset();
 	}
 
 	/**
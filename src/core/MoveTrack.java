@@ -0,0 +1,138 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Track of a host's latest movement step: the locations of the host at the
+ * start of the step, at every waypoint reached during the step and at the
+ * end of the step, with the simulation times when the host was there. The
+ * host moves along a straight line between two consecutive points and stays
+ * at the last point after the last time.
+ */
+public class MoveTrack implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the point arrays */
+	private static final int INITIAL_SIZE = 4;
+
+	private double[] times;
+	private double[] xs;
+	private double[] ys;
+	private int size;
+	/** total length of the track */
+	private double length;
+
+	/**
+	 * Creates a new empty track
+	 */
+	public MoveTrack() {
+		this.times = new double[INITIAL_SIZE];
+		this.xs = new double[INITIAL_SIZE];
+		this.ys = new double[INITIAL_SIZE];
+		this.size = 0;
+		this.length = 0;
+	}
+
+	/**
+	 * Removes all points from the track
+	 */
+	public void clear() {
+		this.size = 0;
+		this.length = 0;
+	}
+
+	/**
+	 * Adds a point to the end of the track
+	 * @param time Simulation time when the host was at the point (must not
+	 * be before the time of the previous point)
+	 * @param c Location of the host at that time
+	 */
+	public void add(double time, Coord c) {
+		if (this.size == this.times.length) {
+			this.times = Arrays.copyOf(this.times, 2 * this.size);
+			this.xs = Arrays.copyOf(this.xs, 2 * this.size);
+			this.ys = Arrays.copyOf(this.ys, 2 * this.size);
+		}
+		if (this.size > 0) {
+			double dx = c.getX() - this.xs[this.size - 1];
+			double dy = c.getY() - this.ys[this.size - 1];
+			this.length += Math.sqrt(dx*dx + dy*dy);
+		}
+		this.times[this.size] = time;
+		this.xs[this.size] = c.getX();
+		this.ys[this.size] = c.getY();
+		this.size++;
+	}
+
+	/**
+	 * Returns the number of points in the track
+	 * @return the number of points in the track
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the total length of the track
+	 * @return the total length of the track
+	 */
+	public double getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Returns the time of a point
+	 * @param index Index of the point
+	 * @return The simulation time when the host was at the point
+	 */
+	public double getTime(int index) {
+		return this.times[index];
+	}
+
+	/**
+	 * Returns the x coordinate of the host at the given time
+	 * @param time The simulation time
+	 * @return The x coordinate
+	 */
+	public double getX(double time) {
+		return interpolate(this.xs, time);
+	}
+
+	/**
+	 * Returns the y coordinate of the host at the given time
+	 * @param time The simulation time
+	 * @return The y coordinate
+	 */
+	public double getY(double time) {
+		return interpolate(this.ys, time);
+	}
+
+	/**
+	 * Interpolates a coordinate of the track linearly between the points
+	 * @param values The coordinate values of the points
+	 * @param time The simulation time
+	 * @return The interpolated coordinate value
+	 */
+	private double interpolate(double[] values, double time) {
+		assert this.size > 0 : "Empty track";
+		if (time <= this.times[0]) {
+			return values[0];
+		}
+		for (int i = 1; i < this.size; i++) {
+			if (time < this.times[i]) {
+				double t0 = this.times[i-1];
+				double ratio = (time - t0) / (this.times[i] - t0);
+				return values[i-1] + ratio * (values[i] - values[i-1]);
+			}
+		}
+		return values[this.size - 1];
+	}
+
+	public String toString() {
+		return "MoveTrack of " + this.size + " points, length " + this.length;
+	}
+}
@@ -6,10 +6,17 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityQuadTree;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import routing.util.EnergyModel;
 
@@ -18,13 +25,24 @@ import util.ActivenessHandler;
 /**
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
-abstract public class NetworkInterface implements ModuleCommunicationListener {
+abstract public class NetworkInterface implements ModuleCommunicationListener, Serializable {
+	private static final long serialVersionUID = 1L;
 	/** transmit range -setting id ({@value})*/
 	public static final String TRANSMIT_RANGE_S = "transmitRange";
 	/** transmit speed -setting id ({@value})*/
 	public static final String TRANSMIT_SPEED_S = "transmitSpeed";
 	/** scanning interval -setting id ({@value})*/
 	public static final String SCAN_INTERVAL_S = "scanInterval";
+	/** connectivity optimizer -setting id ({@value}). Selects the
+	 * structure that finds the possible neighbours of the interfaces of
+	 * this type: {@link #GRID_OPTIMIZER} (default) or
+	 * {@link #QUADTREE_OPTIMIZER} */
+	public static final String OPTIMIZER_S = "optimizer";
+	/** {@link #OPTIMIZER_S} value for {@link ConnectivityGrid} ({@value}) */
+	public static final String GRID_OPTIMIZER = "grid";
+	/** {@link #OPTIMIZER_S} value for {@link ConnectivityQuadTree}
+	 * ({@value}) */
+	public static final String QUADTREE_OPTIMIZER = "quadTree";
 
 	/**
 	 * Sub-namespace for the network related settings in the Group namespace
@@ -49,20 +67,58 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
-	private static Random rng;
+	/** batch for the range checks of the near interfaces (in each thread) */
+	private static final ThreadLocal<RangeBatch> rangeBatch =
+		new ThreadLocal<RangeBatch>() {
+			protected RangeBatch initialValue() {
+				return new RangeBatch();
+			}
+		};
+
+	/** rng for the activeness jitter and scan offsets (in each context) */
+	private static final SimContext.Key<Random> rng =
+		new SimContext.Key<Random>(NetworkInterface.class, "rng") {
+			protected Random create() {
+				return new Random(0);
+			}
+		};
 	protected DTNHost host = null;
+	/** table of the hosts' locations and the index of this interface's
+	 * host in it */
+	private PositionTable positions;
+	private int positionIndex;
 
 	protected String interfacetype;
-	protected List<Connection> connections; // connected hosts
+	protected ConnectionList connections; // connected hosts
 	private List<ConnectionListener> cListeners = null; // list of listeners
 	private int address; // network interface address
 	protected double transmitRange;
 	protected double oldTransmitRange;
 	protected int transmitSpeed;
 	protected ConnectivityOptimizer optimizer = null;
+	/** should the quadtree optimizer be used instead of the grid */
+	private boolean useQuadTree;
 	/** scanning interval, or 0.0 if n/a */
 	private double scanInterval;
 	private double lastScanTime;
+	/** interfaces found within range by {@link #scanNeighbours()} or null
+	 * if the neighbours should be looked up from the optimizer */
+	private List<NetworkInterface> scannedInterfaces;
+	/** index of this interface in its connectivity optimizer (-1 if none) */
+	private int optimizerIndex = -1;
+	/** optimizer specific location of this interface (e.g., grid cell) */
+	private int optimizerCell = -1;
+	/** interfaces found within range by the ongoing pair scan */
+	private transient List<NetworkInterface> pairsInRange;
+	/** connections found out of range by the latest pair scan or null if
+	 * the connections should be checked by their distance */
+	private List<Connection> lostConnections;
+	/** are the connections of this interface created and torn down by
+	 * predicted link events instead of the interface's update */
+	private boolean linksPredicted;
+	/** contact plan that records the link events (null if none; contact
+	 * plans can't be used with checkpoints) */
+	private transient ContactPlan contactPlan;
 
 	/** activeness handler for the node group */
 	private ActivenessHandler ah;
@@ -80,7 +136,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		rng = new Random(0);
+		rng.reset();
 	}
 
 	/**
@@ -88,12 +144,21 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface(Settings s) {
 		this.interfacetype = s.getNameSpace();
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList(this);
 
 		this.transmitRange = s.getDouble(TRANSMIT_RANGE_S);
 		this.transmitSpeed = s.getInt(TRANSMIT_SPEED_S);
 		ensurePositiveValue(transmitRange, TRANSMIT_RANGE_S);
 		ensurePositiveValue(transmitSpeed, TRANSMIT_SPEED_S);
+
+		String optimizerType = s.getSetting(OPTIMIZER_S, GRID_OPTIMIZER);
+		if (optimizerType.equals(QUADTREE_OPTIMIZER)) {
+			this.useQuadTree = true;
+		} else if (!optimizerType.equals(GRID_OPTIMIZER)) {
+			throw new SettingsError("Unknown connectivity optimizer '" +
+					optimizerType + "' for setting " +
+					s.getFullPropertyName(OPTIMIZER_S));
+		}
 	}
 
 	/**
@@ -101,31 +166,33 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public NetworkInterface() {
 		this.interfacetype = "Default";
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList(this);
 	}
 
 	/**
 	 * copy constructor
 	 */
 	public NetworkInterface(NetworkInterface ni) {
-		this.connections = new ArrayList<Connection>();
+		this.connections = new ConnectionList(this);
 		this.host = ni.host;
 		this.cListeners = ni.cListeners;
 		this.interfacetype = ni.interfacetype;
 		this.transmitRange = ni.transmitRange;
 		this.transmitSpeed = ni.transmitSpeed;
+		this.useQuadTree = ni.useQuadTree;
 		this.scanInterval = ni.scanInterval;
 		this.ah = ni.ah;
 
 		if (ni.activenessJitterMax > 0) {
-			this.activenessJitterValue = rng.nextInt(ni.activenessJitterMax);
+			this.activenessJitterValue =
+				rng.get().nextInt(ni.activenessJitterMax);
 		} else {
 			this.activenessJitterValue = 0;
 		}
 
 		this.scanInterval = ni.scanInterval;
 		/* draw lastScanTime of [0 -- scanInterval] */
-		this.lastScanTime = rng.nextDouble() * this.scanInterval;
+		this.lastScanTime = rng.get().nextDouble() * this.scanInterval;
 	}
 
 	/**
@@ -140,6 +207,8 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	public void setHost(DTNHost host) {
 		this.host = host;
+		this.positions = host.getPositionTable();
+		this.positionIndex = host.getAddress();
 		ModuleCommunicationBus comBus = host.getComBus();
 
 		if (!comBus.containsProperty(SCAN_INTERVAL_ID) &&
@@ -154,7 +223,11 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			comBus.subscribe(SPEED_ID, this);
 		}
 
-		if (transmitRange > 0) {
+		if (transmitRange > 0 && useQuadTree) {
+			optimizer = ConnectivityQuadTree.getInstance(
+					this.interfacetype.hashCode());
+			optimizer.addInterface(this);
+		} else if (transmitRange > 0) {
 			optimizer = ConnectivityGrid.ConnectivityGridFactory(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
@@ -224,6 +297,16 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.connections;
 	}
 
+	/**
+	 * Returns the modification counter of the connections of this
+	 * interface
+	 * @return The counter
+	 * @see ConnectionList#getModCount()
+	 */
+	public int getConnectionsModCount() {
+		return this.connections.getModCount();
+	}
+
 	/**
 	 * Returns true if the interface is on at the moment (false if not)
 	 * @return true if the interface is on at the moment (false if not)
@@ -256,6 +339,31 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return active;
 	}
 
+	/**
+	 * Returns true if the activeness of this interface doesn't depend on
+	 * time, i.e., the interface has no activeness handler or the handler
+	 * has no active times or periods. The interface can still become
+	 * inactive if its host runs out of energy.
+	 * @return True if the interface is always active
+	 */
+	public boolean isAlwaysActive() {
+		return ah == null || ah.isAlwaysActive();
+	}
+
+	/**
+	 * Returns true if updating this interface and the connections it
+	 * creates only change the state of the interface's host, the hosts
+	 * of the other interfaces it is connected to or finds in range, and
+	 * the connections between them. The hosts of such interfaces can be
+	 * updated concurrently when their neighbourhoods don't overlap (see
+	 * {@link World#PARALLEL_UPDATE_S}). Subclasses that fulfill this
+	 * should override this method. Default is false.
+	 * @return True if the interface supports parallel updates
+	 */
+	public boolean supportsParallelUpdate() {
+		return false;
+	}
+
 	/**
 	 * Checks if this interface is currently in the scanning mode
 	 * @return True if the interface is scanning; false if not
@@ -298,6 +406,35 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return false;
 	}
 
+	/**
+	 * Returns the earliest simulation time when this interface needs to be
+	 * updated even if none of the hosts move, i.e., when the next scan round
+	 * starts or the state of a transfer changes. Returns the current time if
+	 * the interface's activeness depends on time and thus it should be
+	 * updated on every interval.
+	 * @return The time of the next update this interface needs
+	 */
+	public double getNextUpdateTime() {
+		double next = Double.MAX_VALUE;
+
+		if (!isAlwaysActive()) {
+			return SimClock.getTime();
+		}
+
+		if (scanInterval > 0.0) {
+			next = lastScanTime + scanInterval;
+		}
+
+		for (int i=0, n = this.connections.size(); i < n; i++) {
+			double conTime = this.connections.get(i).getNextEventTime();
+			if (conTime < next) {
+				next = conTime;
+			}
+		}
+
+		return next;
+	}
+
 	/**
 	 * Connects the interface to another interface.
 	 *
@@ -317,7 +454,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 */
 	protected void connect(Connection con, NetworkInterface anotherInterface) {
 		this.connections.add(con);
-		notifyConnectionListeners(CON_UP, anotherInterface.getHost());
+		notifyConnectionListeners(CON_UP, anotherInterface);
 
 		// set up bidirectional connection
 		anotherInterface.getConnections().add(con);
@@ -335,7 +472,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	protected void disconnect(Connection con,
 			NetworkInterface anotherInterface) {
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherInterface.getHost());
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
@@ -360,8 +497,285 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 			smallerRange = myRange;
 		}
 
-		return this.host.getLocation().distance(
-				anotherInterface.getHost().getLocation()) <= smallerRange;
+		return distanceSquared(anotherInterface) <=
+			smallerRange * smallerRange;
+	}
+
+	/**
+	 * Updates the location of this interface in the connectivity optimizer
+	 * (if any)
+	 */
+	public void updateLocation() {
+		if (optimizer != null) {
+			optimizer.updateLocation(this);
+		}
+	}
+
+	/**
+	 * Finds the interfaces that are within range of this interface and stores
+	 * them for the next {@link #update()} call. This method only reads the
+	 * locations and the connectivity optimizer's state so it can be called
+	 * concurrently for all the interfaces of the world as long as nobody
+	 * moves or updates the optimizer at the same time.
+	 */
+	public void scanNeighbours() {
+		this.lostConnections = null;
+		if (optimizer == null) {
+			this.scannedInterfaces = null;
+			return;
+		}
+
+		final List<NetworkInterface> inRange =
+			new ArrayList<NetworkInterface>();
+		optimizer.visitNearInterfaces(this, new InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				if (ni != NetworkInterface.this && isWithinRange(ni)) {
+					inRange.add(ni);
+				}
+			}
+		});
+		this.scannedInterfaces = inRange;
+	}
+
+	/**
+	 * Returns the interfaces found within range by the latest
+	 * {@link #scanNeighbours()} call that the next {@link #update()} call
+	 * will try to connect to
+	 * @return The interfaces or null if there is no pending scan result
+	 */
+	List<NetworkInterface> getScannedInterfaces() {
+		return this.scannedInterfaces;
+	}
+
+	/**
+	 * Starts a new pair scan for this interface. In a pair scan the
+	 * connectivity optimizer checks the distance of every nearby pair of
+	 * interfaces only once and tells both interfaces of a pair that is in
+	 * range about each other with {@link #addInRangeInterface}. The results
+	 * are used by the next {@link #update()} call after
+	 * {@link #finishPairScan()} has been called.
+	 */
+	public void startPairScan() {
+		if (this.pairsInRange == null) {
+			this.pairsInRange = new ArrayList<NetworkInterface>();
+		}
+		this.pairsInRange.clear();
+		this.scannedInterfaces = null;
+		this.lostConnections = null;
+	}
+
+	/**
+	 * Records an interface that was found within range in the ongoing
+	 * pair scan
+	 * @param ni The interface within range
+	 * @see #startPairScan()
+	 */
+	public void addInRangeInterface(NetworkInterface ni) {
+		this.pairsInRange.add(ni);
+	}
+
+	/**
+	 * Finishes the ongoing pair scan. Connections to interfaces that were
+	 * not found within range are marked to be torn down ("link down") and
+	 * the interfaces within range that are not connected yet are stored for
+	 * connecting ("link up") in the next {@link #update()} call.
+	 * @see #startPairScan()
+	 */
+	public void finishPairScan() {
+		List<NetworkInterface> inRange = this.pairsInRange;
+		List<NetworkInterface> newInRange =
+			new ArrayList<NetworkInterface>(inRange.size());
+		int connectedInRange = 0;
+		for (int i = 0, n = inRange.size(); i < n; i++) {
+			if (isConnected(inRange.get(i))) {
+				connectedInRange++;
+			} else {
+				newInRange.add(inRange.get(i));
+			}
+		}
+
+		/* every interface is found only once per scan, so if all the
+		 * connections are to interfaces within range, none was lost */
+		List<Connection> lost = Collections.emptyList();
+		if (connectedInRange < this.connections.size()) {
+			Set<NetworkInterface> found = Collections.newSetFromMap(
+					new IdentityHashMap<NetworkInterface, Boolean>());
+			found.addAll(inRange);
+			for (int i = 0, n = this.connections.size(); i < n; i++) {
+				Connection con = this.connections.get(i);
+				if (!found.contains(con.getOtherInterface(this))) {
+					if (lost.isEmpty()) {
+						lost = new ArrayList<Connection>(2);
+					}
+					lost.add(con);
+				}
+			}
+		}
+
+		this.lostConnections = lost;
+		this.scannedInterfaces = newInRange;
+	}
+
+	/**
+	 * Tears down the connections whose other end is no longer within range
+	 * of this interface. If a pair scan was done before this update (see
+	 * {@link #startPairScan()}), only the connections that the scan found
+	 * out of range are torn down. Otherwise the distance of every
+	 * connection is checked. Does nothing if the links of this interface
+	 * are predicted.
+	 */
+	protected void disconnectOutOfRange() {
+		if (this.linksPredicted) {
+			return; /* link events take care of the connections */
+		}
+
+		List<Connection> lost = this.lostConnections;
+		if (lost != null) {
+			this.lostConnections = null;
+			for (int i = 0, n = lost.size(); i < n; i++) {
+				Connection con = lost.get(i);
+				/* not torn down by the other end yet? */
+				if (this.connections.contains(con)) {
+					disconnect(con, con.getOtherInterface(this));
+					this.connections.remove(con);
+				}
+			}
+			return;
+		}
+
+		for (int i=0; i<this.connections.size(); ) {
+			Connection con = this.connections.get(i);
+			NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+			// all connections should be up at this stage
+			assert con.isUp() : "Connection " + con + " was down!";
+
+			if (!isWithinRange(anotherInterface)) {
+				disconnect(con,anotherInterface);
+				connections.remove(i);
+			}
+			else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the interfaces that are close enough to be possibly connected
+	 * to this interface. If the neighbours were scanned beforehand using
+	 * {@link #scanNeighbours()}, the result of that scan is returned (once),
+	 * otherwise the interfaces are asked from the connectivity optimizer.
+	 * @return The interfaces that may be connected to this interface
+	 */
+	protected Collection<NetworkInterface> getNearInterfaces() {
+		List<NetworkInterface> scanned = this.scannedInterfaces;
+		if (scanned != null) {
+			this.scannedInterfaces = null;
+			return scanned;
+		}
+		return optimizer.getNearInterfaces(this);
+	}
+
+	/**
+	 * Calls {@link #connect(NetworkInterface)} for all the interfaces that
+	 * are close enough to be possibly connected to this interface (see
+	 * {@link #getNearInterfaces()}). Unlike iterating over the interfaces
+	 * returned by {@link #getNearInterfaces()}, this doesn't create any
+	 * objects if the connectivity optimizer supports visiting. The near
+	 * interfaces are range checked in one batch (see {@link RangeBatch}) and
+	 * only the ones within range are offered to
+	 * {@link #connect(NetworkInterface)}. Does nothing if the links of this
+	 * interface are predicted.
+	 */
+	protected void connectNearInterfaces() {
+		if (this.linksPredicted) {
+			return; /* link events take care of the connections */
+		}
+
+		List<NetworkInterface> scanned = this.scannedInterfaces;
+		if (scanned != null) {
+			this.scannedInterfaces = null;
+			for (int i = 0, n = scanned.size(); i < n; i++) {
+				connect(scanned.get(i));
+			}
+			return;
+		}
+
+		RangeBatch batch = rangeBatch.get();
+		if (batch.size() > 0) {
+			batch = new RangeBatch(); /* the thread's batch is in use */
+		}
+		try {
+			optimizer.visitNearInterfaces(this, batch);
+			if (batch.check(this) == 0) {
+				return;
+			}
+			for (int i = 0, n = batch.size(); i < n; i++) {
+				if (batch.isInRange(i)) {
+					connect(batch.get(i));
+				}
+			}
+		} finally {
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Sets whether the connections of this interface are created and torn
+	 * down by predicted link events (see {@link KineticConnectivity}). If
+	 * they are, {@link #disconnectOutOfRange()} and
+	 * {@link #connectNearInterfaces()} do nothing.
+	 * @param predicted True if the links are predicted
+	 */
+	public void setLinksPredicted(boolean predicted) {
+		this.linksPredicted = predicted;
+	}
+
+	/**
+	 * Sets the contact plan where the connections created and torn down by
+	 * this interface are recorded
+	 * @param plan The contact plan (null to stop recording)
+	 */
+	public void setContactPlan(ContactPlan plan) {
+		this.contactPlan = plan;
+	}
+
+	/**
+	 * Returns the index of this interface in its connectivity optimizer.
+	 * Only for the use of the optimizer.
+	 * @return The index or -1 if the optimizer hasn't set any index
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+
+	/**
+	 * Sets the index of this interface in its connectivity optimizer.
+	 * Only for the use of the optimizer (an interface can be in one
+	 * optimizer at a time).
+	 * @param index The index
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+
+	/**
+	 * Returns the location of this interface in the connectivity optimizer's
+	 * structures (e.g., the index of the grid cell). Only for the use of the
+	 * optimizer.
+	 * @return The location or -1 if the optimizer hasn't set any location
+	 */
+	public int getOptimizerCell() {
+		return this.optimizerCell;
+	}
+
+	/**
+	 * Sets the location of this interface in the connectivity optimizer's
+	 * structures. Only for the use of the optimizer.
+	 * @param cell The location
+	 */
+	public void setOptimizerCell(int cell) {
+		this.optimizerCell = cell;
 	}
 
 	/**
@@ -370,13 +784,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * @return True if the two hosts are connected
 	 */
 	protected boolean isConnected(NetworkInterface netinterface) {
-		for (int i = 0; i < this.connections.size(); i++) {
-			if (this.connections.get(i).getOtherInterface(this) ==
-				netinterface) {
-				return true;
-			}
-		}
-		return false;
+		return this.connections.getConnectionTo(netinterface) != null;
 	}
 
 	/**
@@ -399,14 +807,19 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	abstract public void update();
 
 	/**
-	 * Notifies all the connection listeners about a change in connections.
+	 * Notifies all the connection listeners (and the contact plan) about a
+	 * change in connections.
 	 * @param type Type of the change (e.g. {@link #CON_DOWN} )
-	 * @param otherHost The other host on the other end of the connection.
+	 * @param other The interface on the other end of the connection.
 	 */
-	private void notifyConnectionListeners(int type, DTNHost otherHost) {
+	private void notifyConnectionListeners(int type, NetworkInterface other) {
+		if (this.contactPlan != null) {
+			this.contactPlan.linkChanged(this, other, type == CON_UP);
+		}
 		if (this.cListeners == null) {
 			return;
 		}
+		DTNHost otherHost = other.getHost();
 		for (ConnectionListener cl : this.cListeners) {
 			switch (type) {
 			case CON_UP:
@@ -456,27 +869,32 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * from this host
 	 */
 	public void destroyConnection(NetworkInterface anotherInterface) {
+		Connection con = this.connections.getConnectionTo(anotherInterface);
+		if (con != null) {
+			removeConnection(con, anotherInterface);
+			return;
+		}
+
+		/* no connection to the interface; check the host's other ones */
 		DTNHost anotherHost = anotherInterface.getHost();
 		for (int i=0; i < this.connections.size(); i++) {
 			if (this.connections.get(i).getOtherNode(this.host) == anotherHost){
-				removeConnectionByIndex(i, anotherInterface);
+				removeConnection(this.connections.get(i), anotherInterface);
 			}
 		}
 		// the connection didn't exist, do nothing
 	}
 
 	/**
-	 * Removes a connection by its position (index) in the connections array
-	 * of the interface
-	 * @param index The array index of the connection to be removed
+	 * Removes a connection of the interface
+	 * @param con The connection to be removed
 	 * @param anotherInterface The interface of the other host
 	 */
-	private void removeConnectionByIndex(int index,
+	private void removeConnection(Connection con,
 			NetworkInterface anotherInterface) {
-		Connection con = this.connections.get(index);
 		DTNHost anotherNode = anotherInterface.getHost();
 		con.setUpState(false);
-		notifyConnectionListeners(CON_DOWN, anotherNode);
+		notifyConnectionListeners(CON_DOWN, anotherInterface);
 
 		// tear down bidirectional connection
 		if (!anotherInterface.getConnections().remove(con)) {
@@ -487,7 +905,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.host.connectionDown(con);
 		anotherNode.connectionDown(con);
 
-		connections.remove(index);
+		connections.remove(con);
 	}
 
 	/**
@@ -505,6 +923,35 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return host.getLocation();
 	}
 
+	/**
+	 * Returns the x coordinate of the location of this interface (read from
+	 * the hosts' {@link PositionTable})
+	 * @return The x coordinate
+	 */
+	public double getX() {
+		return this.positions.getX(this.positionIndex);
+	}
+
+	/**
+	 * Returns the y coordinate of the location of this interface (read from
+	 * the hosts' {@link PositionTable})
+	 * @return The y coordinate
+	 */
+	public double getY() {
+		return this.positions.getY(this.positionIndex);
+	}
+
+	/**
+	 * Returns the square of the distance between this interface and another
+	 * interface (read from the hosts' {@link PositionTable})
+	 * @param other The other interface
+	 * @return The squared distance
+	 */
+	public double distanceSquared(NetworkInterface other) {
+		return this.positions.distanceSquared(this.positionIndex,
+				other.positionIndex);
+	}
+
 	/**
 	 * Returns a string representation of the object.
 	 * @return a string representation of the object.
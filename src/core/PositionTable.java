@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Locations of all the hosts of a simulation context in two coordinate
+ * arrays indexed by the host addresses. The hosts write their location to
+ * the table every time they move (or are moved with
+ * {@link DTNHost#setLocation(Coord)}), so range checks and reports can
+ * read the locations of many hosts from two flat arrays instead of
+ * following the host and coordinate objects.
+ * <P>
+ * A host's place in the table is created when the host is created, so the
+ * arrays never grow while the hosts are moved and hosts can be moved
+ * concurrently. The hosts don't expose their location objects (see
+ * {@link DTNHost#getLocation()}), so the table can't get out of sync with
+ * them.
+ * </P>
+ */
+public class PositionTable implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial size of the coordinate arrays */
+	private static final int INITIAL_SIZE = 64;
+
+	private double[] xs;
+	private double[] ys;
+	/** number of hosts in the table (largest address + 1) */
+	private int size;
+
+	/** the table of each simulation context */
+	private static final SimContext.Key<PositionTable> table =
+		new SimContext.Key<PositionTable>(PositionTable.class, "table") {
+			protected PositionTable create() {
+				return new PositionTable();
+			}
+		};
+
+	/**
+	 * Creates a new empty table
+	 */
+	private PositionTable() {
+		this.xs = new double[INITIAL_SIZE];
+		this.ys = new double[INITIAL_SIZE];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the position table of the current simulation context
+	 * @return the position table of the current simulation context
+	 */
+	public static PositionTable getInstance() {
+		return table.get();
+	}
+
+	/**
+	 * Resets the table of the current simulation context. Called when the
+	 * host addresses are reset.
+	 */
+	static void reset() {
+		table.reset();
+	}
+
+	/**
+	 * Adds a new host to the table
+	 * @param address Address of the host
+	 * @param c Initial location of the host
+	 */
+	void add(int address, Coord c) {
+		if (address >= this.xs.length) {
+			int newLength = Math.max(2 * this.xs.length, address + 1);
+			this.xs = Arrays.copyOf(this.xs, newLength);
+			this.ys = Arrays.copyOf(this.ys, newLength);
+		}
+		if (address >= this.size) {
+			this.size = address + 1;
+		}
+		set(address, c);
+	}
+
+	/**
+	 * Sets the location of a host that is in the table
+	 * @param address Address of the host
+	 * @param c The new location
+	 */
+	void set(int address, Coord c) {
+		this.xs[address] = c.getX();
+		this.ys[address] = c.getY();
+	}
+
+	/**
+	 * Returns the number of hosts in the table (i.e., the largest address
+	 * in the table + 1)
+	 * @return the number of hosts in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the x coordinate of a host
+	 * @param address Address of the host
+	 * @return The x coordinate
+	 */
+	public double getX(int address) {
+		return this.xs[address];
+	}
+
+	/**
+	 * Returns the y coordinate of a host
+	 * @param address Address of the host
+	 * @return The y coordinate
+	 */
+	public double getY(int address) {
+		return this.ys[address];
+	}
+
+	/**
+	 * Returns the square of the distance between two hosts
+	 * @param a Address of the first host
+	 * @param b Address of the second host
+	 * @return The squared distance
+	 */
+	public double distanceSquared(int a, int b) {
+		double dx = this.xs[a] - this.xs[b];
+		double dy = this.ys[a] - this.ys[b];
+		return dx*dx + dy*dy;
+	}
+
+	/**
+	 * Copies the locations of the hosts to arrays
+	 * @param x The array where the x coordinates are copied to (indexed by
+	 * the host addresses; must have room for {@link #size()} values)
+	 * @param y The array for the y coordinates
+	 */
+	public void copyTo(double[] x, double[] y) {
+		System.arraycopy(this.xs, 0, x, 0, this.size);
+		System.arraycopy(this.ys, 0, y, 0, this.size);
+	}
+
+	public String toString() {
+		return "PositionTable of " + this.size + " hosts";
+	}
+}
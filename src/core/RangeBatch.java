@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+
+import java.util.Arrays;
+
+/**
+ * Batch of candidate interfaces for range checks. The candidates are
+ * collected (e.g., by visiting the near interfaces of a connectivity
+ * optimizer) into packed coordinate and range arrays, and all of them are
+ * checked against one interface with a single call of the
+ * {@link #inRange(double, double, double, double[], double[], double[],
+ * int, double[], long[])} kernel. The result is a bit mask of the
+ * candidates that are within range.
+ */
+public class RangeBatch implements InterfaceVisitor {
+	/** initial capacity of the batch */
+	private static final int INITIAL_SIZE = 64;
+
+	private NetworkInterface[] interfaces;
+	private double[] xs;
+	private double[] ys;
+	private double[] ranges;
+	/** work array of the range check kernel */
+	private double[] margins;
+	/** in range -bits of the candidates (64 per word) */
+	private long[] mask;
+	private int size;
+
+	/**
+	 * Creates a new empty batch
+	 */
+	public RangeBatch() {
+		this.interfaces = new NetworkInterface[INITIAL_SIZE];
+		this.xs = new double[INITIAL_SIZE];
+		this.ys = new double[INITIAL_SIZE];
+		this.ranges = new double[INITIAL_SIZE];
+		this.margins = new double[INITIAL_SIZE];
+		this.mask = new long[INITIAL_SIZE / 64];
+		this.size = 0;
+	}
+
+	/**
+	 * Checks which of the candidates are within range of a point. A
+	 * candidate is within range if its distance from the point is at most
+	 * the smaller of the point's and the candidate's range. Works with
+	 * squared distances (no square roots). The first pass computes the
+	 * margins in a simple loop over the packed arrays (that the JIT compiler
+	 * can vectorize) and the second pass packs the signs of the margins to
+	 * the mask without branches.
+	 * @param x X coordinate of the point
+	 * @param y Y coordinate of the point
+	 * @param range Range of the point
+	 * @param xs X coordinates of the candidates
+	 * @param ys Y coordinates of the candidates
+	 * @param ranges Ranges of the candidates
+	 * @param count Number of candidates
+	 * @param margins Work array with room for <CODE>count</CODE> values. On
+	 * return, contains the range squared minus the distance squared of each
+	 * candidate (i.e., non-negative for the candidates within range).
+	 * @param mask Array where the bits of the candidates within range are
+	 * set (bit <CODE>i % 64</CODE> of word <CODE>i / 64</CODE> for
+	 * candidate <CODE>i</CODE>). Must have room for <CODE>count</CODE> bits.
+	 * @return Number of candidates within range
+	 */
+	public static int inRange(double x, double y, double range, double[] xs,
+			double[] ys, double[] ranges, int count, double[] margins,
+			long[] mask) {
+		for (int i = 0; i < count; i++) {
+			double dx = xs[i] - x;
+			double dy = ys[i] - y;
+			double r = Math.min(range, ranges[i]);
+			margins[i] = r*r - (dx*dx + dy*dy);
+		}
+
+		int inRange = 0;
+		int words = (count + 63) >>> 6;
+		for (int w = 0; w < words; w++) {
+			int start = w << 6;
+			int end = Math.min(start + 64, count);
+			long bits = 0;
+			for (int i = start; i < end; i++) {
+				/* sign bit is set iff the candidate is out of range */
+				long outside = Double.doubleToRawLongBits(margins[i]) >>> 63;
+				bits |= (outside ^ 1L) << i;
+			}
+			mask[w] = bits;
+			inRange += Long.bitCount(bits);
+		}
+		return inRange;
+	}
+
+	/**
+	 * Removes all candidates from the batch
+	 */
+	public void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.interfaces[i] = null; /* don't keep the interfaces alive */
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an interface to the batch as a candidate
+	 * @param ni The interface
+	 */
+	public void visit(NetworkInterface ni) {
+		if (this.size == this.interfaces.length) {
+			int newSize = 2 * this.size;
+			this.interfaces = Arrays.copyOf(this.interfaces, newSize);
+			this.xs = Arrays.copyOf(this.xs, newSize);
+			this.ys = Arrays.copyOf(this.ys, newSize);
+			this.ranges = Arrays.copyOf(this.ranges, newSize);
+			this.margins = new double[newSize];
+			this.mask = new long[newSize / 64];
+		}
+		this.interfaces[this.size] = ni;
+		this.xs[this.size] = ni.getX();
+		this.ys[this.size] = ni.getY();
+		this.ranges[this.size] = ni.getTransmitRange();
+		this.size++;
+	}
+
+	/**
+	 * Checks which candidates are within range of an interface
+	 * @param ni The interface
+	 * @return Number of candidates within range
+	 * @see #isInRange(int)
+	 */
+	public int check(NetworkInterface ni) {
+		return inRange(ni.getX(), ni.getY(), ni.getTransmitRange(),
+				this.xs, this.ys, this.ranges, this.size, this.margins,
+				this.mask);
+	}
+
+	/**
+	 * Returns the number of candidates in the batch
+	 * @return the number of candidates in the batch
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a candidate
+	 * @param index Index of the candidate (in the order they were added)
+	 * @return The candidate interface
+	 */
+	public NetworkInterface get(int index) {
+		return this.interfaces[index];
+	}
+
+	/**
+	 * Returns true if a candidate was within range in the latest
+	 * {@link #check(NetworkInterface)}
+	 * @param index Index of the candidate
+	 * @return True if the candidate was within range
+	 */
+	public boolean isInRange(int index) {
+		return (this.mask[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public String toString() {
+		return "RangeBatch of " + this.size + " candidates";
+	}
+}
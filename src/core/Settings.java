@@ -12,7 +12,9 @@ import java.util.HashSet;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.Stack;
+import java.util.TreeMap;
 
 import util.Range;
 
@@ -53,8 +55,6 @@ public class Settings {
 	private static PrintStream out = null;
 	private static Set<String> writtenSettings = new HashSet<String>();
 
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -92,11 +92,13 @@ public class Settings {
 	 * zero (e.g. -1). When disabled, run-arrays are returned as normal values,
 	 * including the brackets.
 	 * @param index The run index to use for subsequent settings calls, or
-	 * -1 to disable run indexing
+	 * -1 to disable run indexing (in the current {@link SimContext})
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		SimContext.current().setRunIndex(index);
+		synchronized (Settings.class) {
+			writtenSettings.clear();
+		}
 	}
 
 	/**
@@ -329,10 +331,11 @@ public class Settings {
 	 * Writes the given setting string to the settings output (if any)
 	 * @param setting The string to write
 	 */
-	private static void outputSetting(String setting) {
+	private static synchronized void outputSetting(String setting) {
 		if (out != null && !writtenSettings.contains(setting)) {
 			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+				out.println("# Settings for run " +
+						(SimContext.current().getRunIndex() + 1));
 			}
 			out.println(setting);
 			writtenSettings.add(setting);
@@ -377,6 +380,26 @@ public class Settings {
 		}
 	}
 
+	/**
+	 * Returns the names and values of all the settings of the current run.
+	 * Run-specific values are resolved like in {@link #getSetting(String)}
+	 * but the settings are not written to the settings output.
+	 * @return The settings (full names and values) sorted by name
+	 */
+	public static SortedMap<String, String> getAllSettings() {
+		if (props == null) {
+			init(null);
+		}
+		SortedMap<String, String> all = new TreeMap<String, String>();
+		for (String name : props.stringPropertyNames()) {
+			String value = parseRunSetting(props.getProperty(name).trim());
+			if (value.length() > 0) {
+				all.put(name, value);
+			}
+		}
+		return all;
+	}
+
 	/**
 	 * Returns a String-valued setting. Setting is first looked from the
 	 * namespace that is set (if any) and then from the secondary namespace
@@ -445,6 +468,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimContext.current().getRunIndex();
 
 		if (!value.startsWith(RUN_ARRAY_START) ||
 			!value.endsWith(RUN_ARRAY_END) ||
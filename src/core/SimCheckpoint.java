@@ -0,0 +1,299 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import input.EventQueue;
+import input.ExternalEventsQueue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import movement.ExternalMovement;
+
+/**
+ * Checkpoints of the complete simulation state. A checkpoint contains all
+ * the state of the current {@link SimContext}: the scenario with its world,
+ * hosts, movement models, routers (with their buffers), interfaces,
+ * connections and event queues, the random number generators, the id
+ * counters and the simulation clock. The state is written with Java
+ * serialization into a gzip compressed file.
+ * <P>
+ * Listeners of the scenario (e.g., reports) are not part of the checkpoint;
+ * a restored simulation gets the reports defined in the settings of the
+ * restoring run. All other settings are ignored when a simulation is
+ * restored; the restored objects keep the configuration they had when the
+ * checkpoint was written. Checkpointing is not supported by modules that
+ * read external files during the simulation (e.g., external event and
+ * movement traces) or talk to external programs; checkpoint times can't be
+ * defined for such scenarios.
+ * </P>
+
+ */
+public class SimCheckpoint {
+	/** Checkpoint settings name space ({@value}) */
+	public static final String CHECKPOINT_NS = "Checkpoint";
+	/** Checkpoint times -setting id ({@value}). Comma separated list of
+	 * simulation times when checkpoints are written. A checkpoint is
+	 * written after the first update round that reaches the time. */
+	public static final String TIMES_S = "times";
+	/** Checkpoint file name prefix -setting id ({@value}). The name of
+	 * every checkpoint file is this prefix followed by an underscore, the
+	 * checkpoint time and {@link #FILE_SUFFIX}. Required if checkpoint
+	 * times are defined. */
+	public static final String OUTPUT_S = "output";
+	/** Restored checkpoint -setting id ({@value}). If defined, the
+	 * simulation is restored from this checkpoint file instead of creating
+	 * a new scenario from the settings. */
+	public static final String RESTORE_S = "restore";
+	/** Checkpoint thread stack size -setting id ({@value}). Stack size
+	 * (in bytes) of the thread that writes and reads checkpoints. Java
+	 * serialization recurses through the object graph (e.g., map nodes
+	 * and their neighbours), so large scenarios need a large stack.
+	 * Default is {@link #DEF_STACK_SIZE}. */
+	public static final String STACK_SIZE_S = "stackSize";
+	/** Default checkpoint thread stack size ({@value}) */
+	public static final long DEF_STACK_SIZE = 1L << 30;
+	/** Suffix of checkpoint files ({@value}) */
+	public static final String FILE_SUFFIX = ".ckpt";
+
+	/** identifier of the checkpoint file format */
+	private static final String FORMAT_ID = "ONE-checkpoint-1";
+
+	/** simulation times when checkpoints should be written */
+	private double[] times;
+	/** index of the next checkpoint time */
+	private int nextTime;
+	private String outputPrefix;
+
+	/**
+	 * Constructor. Reads the checkpoint times from the settings. Times that
+	 * are not after the current simulation time are skipped.
+	 * @throws SettingsError if checkpoint times are defined for a scenario
+	 * that can't be checkpointed
+	 */
+	public SimCheckpoint() {
+		Settings s = new Settings(CHECKPOINT_NS);
+		if (s.contains(TIMES_S)) {
+			checkScenario(SimScenario.getInstance());
+			this.times = s.getCsvDoubles(TIMES_S);
+			this.outputPrefix = s.valueFillString(s.getSetting(OUTPUT_S));
+			Arrays.sort(this.times);
+		}
+		else {
+			this.times = new double[0];
+		}
+
+		this.nextTime = 0;
+		while (this.nextTime < this.times.length &&
+				this.times[this.nextTime] <= SimClock.getTime()) {
+			this.nextTime++;
+		}
+	}
+
+	/**
+	 * Checks that the state of a scenario can be written to a checkpoint:
+	 * the event queues must be serializable and the hosts must not use
+	 * external movement traces
+	 * @param scen The scenario to check
+	 * @throws SettingsError if the scenario can't be checkpointed
+	 */
+	private static void checkScenario(SimScenario scen) {
+		for (EventQueue eq : scen.getExternalEvents()) {
+			if (eq instanceof ExternalEventsQueue ||
+					!(eq instanceof Serializable)) {
+				throw new SettingsError("Checkpoints (" + CHECKPOINT_NS +
+						"." + TIMES_S + ") can't be used with the event " +
+						"queue " + eq);
+			}
+		}
+		for (DTNHost h : scen.getHosts()) {
+			if (h.getMovement() instanceof ExternalMovement) {
+				throw new SettingsError("Checkpoints (" + CHECKPOINT_NS +
+						"." + TIMES_S + ") can't be used with external " +
+						"movement (host " + h + ")");
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the simulation should be restored from a checkpoint
+	 * @return true if the checkpoint to restore is defined in the settings
+	 */
+	public static boolean isRestoreRequested() {
+		return new Settings(CHECKPOINT_NS).contains(RESTORE_S);
+	}
+
+	/**
+	 * Restores the simulation state from the checkpoint defined in the
+	 * settings and binds the restored state to the current thread
+	 */
+	public static void restore() {
+		Settings s = new Settings(CHECKPOINT_NS);
+		SimContext context = read(s.valueFillString(s.getSetting(RESTORE_S)),
+				SimContext.current().getRunIndex());
+		context.bind();
+	}
+
+	/**
+	 * Writes a checkpoint if the next checkpoint time has been reached
+	 */
+	public void checkpointIfDue() {
+		double now = SimClock.getTime();
+		if (this.nextTime >= this.times.length ||
+				this.times[this.nextTime] > now) {
+			return;
+		}
+
+		double time = this.times[this.nextTime];
+		while (this.nextTime < this.times.length &&
+				this.times[this.nextTime] <= now) {
+			this.nextTime++; // skip all the times reached by this update
+		}
+
+		String timeStr = (time == Math.floor(time) ?
+				"" + (long)time : "" + time);
+		write(this.outputPrefix + "_" + timeStr + FILE_SUFFIX);
+	}
+
+	/**
+	 * Writes the state of the current simulation context to a file
+	 * @param fileName Name of the checkpoint file
+	 * @throws SimError if the state couldn't be written
+	 */
+	public static void write(final String fileName) {
+		final SimContext context = SimContext.current();
+		SimScenario scen = SimScenario.getInstance();
+		List<Object[]> listeners = scen.detachListeners();
+
+		try {
+			runWithLargeStack(context, new Runnable() {
+				public void run() {
+					writeContext(context, fileName);
+				}
+			});
+		} finally {
+			scen.attachListeners(listeners);
+		}
+	}
+
+	/**
+	 * Writes the state of a context to a file
+	 */
+	private static void writeContext(SimContext context, String fileName) {
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(
+							new FileOutputStream(fileName))));
+			out.writeUTF(FORMAT_ID);
+			out.writeObject(context.getClock());
+			out.writeObject(context.exportStates());
+			out.close();
+		} catch (NotSerializableException e) {
+			throw new SimError("Can't checkpoint the simulation: " +
+					e.getMessage() + " doesn't support checkpointing", e);
+		} catch (IOException e) {
+			throw new SimError("Couldn't write checkpoint '" + fileName +
+					"': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads simulation state from a checkpoint file
+	 * @param fileName Name of the checkpoint file
+	 * @param runIndex Run index to use with the restored state
+	 * @return A new simulation context with the restored state
+	 * @throws SimError if the state couldn't be read
+	 */
+	public static SimContext read(final String fileName, int runIndex) {
+		final SimContext context = new SimContext(runIndex);
+		runWithLargeStack(context, new Runnable() {
+			public void run() {
+				readContext(context, fileName);
+			}
+		});
+		return context;
+	}
+
+	/**
+	 * Reads the state of a context from a file
+	 */
+	@SuppressWarnings("unchecked")
+	private static void readContext(SimContext context, String fileName) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(
+					new BufferedInputStream(new GZIPInputStream(
+							new FileInputStream(fileName))));
+			if (!FORMAT_ID.equals(in.readUTF())) {
+				in.close();
+				throw new SimError("'" + fileName + "' is not a checkpoint " +
+						"file of this simulator version");
+			}
+			context.setClock((SimClock)in.readObject());
+			context.importStates((Map<String, Object>)in.readObject());
+			in.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't read checkpoint '" + fileName +
+					"': " + e.getMessage(), e);
+		} catch (ClassNotFoundException e) {
+			throw new SimError("Couldn't read checkpoint '" + fileName +
+					"': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Runs a task in a new thread with a large stack and the given context
+	 * bound, and waits until the task is done. Errors of the task are
+	 * thrown in the calling thread.
+	 * @see #STACK_SIZE_S
+	 */
+	private static void runWithLargeStack(final SimContext context,
+			final Runnable task) {
+		Settings s = new Settings(CHECKPOINT_NS);
+		long stackSize = DEF_STACK_SIZE;
+		if (s.contains(STACK_SIZE_S)) {
+			stackSize = s.getLong(STACK_SIZE_S);
+		}
+
+		final Throwable[] error = new Throwable[1];
+		Thread t = new Thread(null, new Runnable() {
+			public void run() {
+				context.bind();
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					error[0] = e;
+				} catch (Error e) {
+					error[0] = e;
+				}
+			}
+		}, "checkpoint", stackSize);
+
+		t.start();
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			throw new SimError("Interrupted while checkpointing: " + e);
+		}
+
+		if (error[0] instanceof RuntimeException) {
+			throw (RuntimeException)error[0];
+		}
+		else if (error[0] != null) {
+			throw (Error)error[0];
+		}
+	}
+}
@@ -4,18 +4,24 @@
  */
 package core;
 
+import java.io.Serializable;
+
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. Every {@link SimContext}
+ * has a clock of its own; the static methods use the clock of the current
+ * context.
  */
-public class SimClock {
-	private static double clockTime = 0.0;
-	private static SimClock clock = null;
+public class SimClock implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private double clockTime = 0.0;
 
-	private SimClock() {}
+	/**
+	 * Constructor. Clocks are created by the simulation contexts.
+	 */
+	SimClock() {}
 
 	static {
 		DTNSim.registerForReset(SimClock.class.getCanonicalName());
-		reset();
 	}
 
 	/**
@@ -23,10 +29,7 @@ public class SimClock {
 	 * @return The instance of this clock
 	 */
 	public static SimClock getInstance() {
-		if (clock == null) {
-			clock = new SimClock();
-		}
-		return clock;
+		return SimContext.current().getClock();
 	}
 
 	/**
@@ -34,7 +37,7 @@ public class SimClock {
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return getInstance().clockTime;
 	}
 
 	/**
@@ -42,7 +45,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
 	}
 
 	/**
@@ -52,7 +55,7 @@ public class SimClock {
 	 * @return The sim time
 	 */
 	public static String getFormattedTime(int decimals) {
-		return String.format("%." + decimals + "f", clockTime);
+		return String.format("%." + decimals + "f", getTime());
 	}
 
 	/**
@@ -80,9 +83,9 @@ public class SimClock {
 	}
 
 	/**
-	 * Resets the static fields of the class
+	 * Resets the clock of the current context
 	 */
 	public static void reset() {
-		clockTime = 0;
+		getInstance().clockTime = 0;
 	}
 }
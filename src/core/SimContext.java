@@ -0,0 +1,332 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-run simulation context. A context owns the state that would otherwise
+ * be shared by all simulation runs of the JVM: the simulation clock, the run
+ * index used for run array settings, and the run-specific state of the
+ * classes that used to keep it in static fields (address and message id
+ * counters, connectivity grids, random number generators, etc.).
+ * <P>
+ * A context is bound to the thread that executes the run with
+ * {@link #bind()}. All threads that haven't bound a context use a common
+ * default context, so single runs (and runs made one after another with the
+ * reset mechanism of {@link DTNSim}) don't need to care about contexts at
+ * all. Several runs can execute concurrently in one JVM if each of them
+ * is started in a thread of its own with a new context bound. Helper
+ * threads that work for a run (e.g., fork-join tasks) must bind the run's
+ * context too. Data that doesn't change during a run (like the settings or
+ * parsed map files) is still shared by all contexts.
+ * </P>
+ * <P>
+ * Classes keep their run-specific state in an object that is accessed
+ * through a {@link Key}; the key creates a new state object the first time
+ * it is accessed in a context.
+ * </P>
+ */
+public class SimContext {
+	/** context bound to the current thread (null if default is used) */
+	private static final ThreadLocal<SimContext> boundContext =
+		new ThreadLocal<SimContext>();
+	/** context of the threads that have not bound any context */
+	private static final SimContext defaultContext = new SimContext(0);
+	/** all keys created so far (in the order of their indexes) */
+	private static List<Key<?>> keys = new ArrayList<Key<?>>();
+
+	private SimClock clock;
+	private int runIndex;
+	/** state objects indexed by key indexes (copied on write) */
+	private volatile Object[] states;
+	/** imported state objects that have not been accessed yet, by key
+	 * names (null if nothing was imported) */
+	private Map<String, Object> importedStates;
+
+	/**
+	 * Creates a new context with a new clock and no other state.
+	 * @param runIndex Run index of the run using this context
+	 * @see Settings#setRunIndex(int)
+	 */
+	public SimContext(int runIndex) {
+		this.clock = new SimClock();
+		this.runIndex = runIndex;
+		this.states = new Object[0];
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 * @return The bound context or the default context if no context has
+	 * been bound to the thread
+	 */
+	public static SimContext current() {
+		SimContext context = boundContext.get();
+		return context != null ? context : defaultContext;
+	}
+
+	/**
+	 * Binds this context to the current thread
+	 * @return The context that was bound to the thread before (null if
+	 * the thread was using the default context); this can be given to
+	 * {@link #restore(SimContext)} after the work in this context is done.
+	 */
+	public SimContext bind() {
+		SimContext previous = boundContext.get();
+		boundContext.set(this);
+		return previous;
+	}
+
+	/**
+	 * Restores a context returned by {@link #bind()} to the current thread
+	 * @param previous The context to restore (null for the default context)
+	 */
+	public static void restore(SimContext previous) {
+		if (previous == null) {
+			boundContext.remove();
+		}
+		else {
+			boundContext.set(previous);
+		}
+	}
+
+	/**
+	 * Returns the simulation clock of this context
+	 * @return The clock
+	 */
+	public SimClock getClock() {
+		return this.clock;
+	}
+
+	/**
+	 * Returns the run index of this context
+	 * @return The run index
+	 */
+	public int getRunIndex() {
+		return this.runIndex;
+	}
+
+	/**
+	 * Sets the run index of this context
+	 * @param runIndex The run index
+	 */
+	public void setRunIndex(int runIndex) {
+		this.runIndex = runIndex;
+	}
+
+	/**
+	 * Returns the state object of a key in this context, creating it
+	 * if necessary. The new state object is created without holding the
+	 * context's lock (creating it can take long, e.g., for a whole
+	 * scenario) and published only if no other thread did it first.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T getState(Key<T> key) {
+		Object[] s = this.states;
+		if (key.index < s.length && s[key.index] != null) {
+			return (T)s[key.index];
+		}
+
+		synchronized (this) {
+			s = this.states;
+			if (key.index < s.length && s[key.index] != null) {
+				return (T)s[key.index]; // created by another thread
+			}
+			if (this.importedStates != null &&
+					this.importedStates.containsKey(key.name)) {
+				T imported = (T)this.importedStates.remove(key.name);
+				setState(key, imported);
+				return imported;
+			}
+		}
+
+		T created = key.create();
+		synchronized (this) {
+			s = this.states;
+			if (key.index < s.length && s[key.index] != null) {
+				return (T)s[key.index]; // another thread was faster
+			}
+			setState(key, created);
+			return created;
+		}
+	}
+
+	/**
+	 * Returns the state object of a key in this context without creating
+	 * it
+	 * @return The state object or null if it doesn't exist
+	 */
+	@SuppressWarnings("unchecked")
+	private synchronized <T> T peekState(Key<T> key) {
+		if (key.index < this.states.length &&
+				this.states[key.index] != null) {
+			return (T)this.states[key.index];
+		}
+		if (this.importedStates != null) {
+			return (T)this.importedStates.get(key.name);
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the state object of a key in this context
+	 */
+	private synchronized void setState(Key<?> key, Object state) {
+		Object[] s = new Object[Math.max(this.states.length, key.index + 1)];
+		System.arraycopy(this.states, 0, s, 0, this.states.length);
+		s[key.index] = state;
+		this.states = s;
+	}
+
+	/**
+	 * Returns all the state objects of this context by the names of their
+	 * keys. States imported with {@link #importStates(Map)} but not
+	 * accessed yet are included as well.
+	 * @return The state objects by key names
+	 */
+	synchronized Map<String, Object> exportStates() {
+		Map<String, Object> exported = new HashMap<String, Object>();
+		if (this.importedStates != null) {
+			exported.putAll(this.importedStates);
+		}
+
+		Object[] s = this.states;
+		for (int i = 0; i < s.length; i++) {
+			if (s[i] != null) {
+				exported.put(getKey(i).name, s[i]);
+			}
+		}
+		return exported;
+	}
+
+	/**
+	 * Replaces all the state of this context with the given state objects.
+	 * Each of the objects is taken into use when its key is accessed the
+	 * first time.
+	 * @param imported The state objects by key names
+	 * @see #exportStates()
+	 */
+	synchronized void importStates(Map<String, Object> imported) {
+		this.states = new Object[0];
+		this.importedStates = new HashMap<String, Object>(imported);
+	}
+
+	/**
+	 * Sets the clock of this context
+	 * @param clock The clock
+	 */
+	void setClock(SimClock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Registers a new key and returns its index
+	 */
+	private static synchronized int register(Key<?> key) {
+		for (Key<?> k : keys) {
+			if (k.name.equals(key.name)) {
+				throw new SimError("Duplicate simulation context key " +
+						key.name);
+			}
+		}
+		keys.add(key);
+		return keys.size() - 1;
+	}
+
+	/**
+	 * Returns the key with the given index
+	 */
+	private static synchronized Key<?> getKey(int index) {
+		return keys.get(index);
+	}
+
+	/**
+	 * Key to a run-specific state object. Classes with run-specific state
+	 * create one static key (implementing {@link #create()}) for the state
+	 * and access the state through it.
+	 * @param <T> Type of the state object
+	 */
+	public static abstract class Key<T> {
+		private final String name;
+		private final int index;
+
+		/**
+		 * Constructor.
+		 * @param owner The class whose state the key refers to
+		 * @param name Name of the state (unique within the owner)
+		 */
+		protected Key(Class<?> owner, String name) {
+			this.name = owner.getName() + "." + name;
+			this.index = register(this);
+		}
+
+		/**
+		 * Creates a new initial state object. Called when the state is
+		 * first accessed in a context (and after resetting the state).
+		 * @return The new state object
+		 */
+		protected abstract T create();
+
+		/**
+		 * Returns the state object of the current context
+		 * @return The state object
+		 */
+		public T get() {
+			return current().getState(this);
+		}
+
+		/**
+		 * Returns the state object of the current context if it has been
+		 * created (or imported from a checkpoint). Doesn't create a state.
+		 * @return The state object or null if there is none yet
+		 */
+		public T getIfCreated() {
+			return current().peekState(this);
+		}
+
+		/**
+		 * Resets the state of the current context to initial state. The
+		 * new state object is created on next access.
+		 */
+		public void reset() {
+			current().setState(this, null);
+		}
+	}
+
+	/**
+	 * Creates a new key to a run-specific {@link Counter}
+	 * @param owner The class whose counter the key refers to
+	 * @param name Name of the counter (unique within the owner)
+	 * @return The new key
+	 */
+	public static Key<Counter> newCounterKey(Class<?> owner, String name) {
+		return new Key<Counter>(owner, name) {
+			protected Counter create() {
+				return new Counter();
+			}
+		};
+	}
+
+	/**
+	 * Simple counter that can be used as a state object for running
+	 * numbers (e.g., addresses or identifiers).
+	 */
+	public static class Counter implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private int next = 0;
+
+		/**
+		 * Returns the next value of the counter and increments it
+		 * @return The next value
+		 */
+		public int getAndIncrement() {
+			return this.next++;
+		}
+	}
+}
@@ -9,6 +9,7 @@ import input.EventQueueHandler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import movement.MapBasedMovement;
@@ -21,9 +22,15 @@ import routing.MessageRouter;
  * simulation run.
  */
 public class SimScenario implements Serializable {
+	private static final long serialVersionUID = 1L;
 
-	/** a way to get a hold of this... */
-	private static SimScenario myinstance=null;
+	/** a way to get a hold of this... (one instance per context) */
+	private static final SimContext.Key<SimScenario> myinstance =
+		new SimContext.Key<SimScenario>(SimScenario.class, "myinstance") {
+			protected SimScenario create() {
+				return new SimScenario();
+			}
+		};
 
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
@@ -123,8 +130,17 @@ public class SimScenario implements Serializable {
 		reset();
 	}
 
+	/**
+	 * Closes the external event files of the current scenario (if one was
+	 * created) and resets the scenario so that the next
+	 * {@link #getInstance()} call creates a new one
+	 */
 	public static void reset() {
-		myinstance = null;
+		SimScenario old = myinstance.getIfCreated();
+		if (old != null && old.eqHandler != null) {
+			old.eqHandler.close();
+		}
+		myinstance.reset();
 	}
 
 	/**
@@ -164,16 +180,55 @@ public class SimScenario implements Serializable {
 		this.world = new World(hosts, worldSizeX, worldSizeY, updateInterval,
 				updateListeners, simulateConnections,
 				eqHandler.getEventQueues());
+		this.world.setEventListeners(connectionListeners, messageListeners,
+				appListeners);
+	}
+
+	/**
+	 * Removes all the listeners (e.g., reports) of the scenario. The
+	 * listener lists are shared by the hosts, interfaces, applications and
+	 * the world, so the listeners are removed from all of them.
+	 * @return The removed listeners (for {@link #attachListeners(List)})
+	 */
+	List<Object[]> detachListeners() {
+		List<Object[]> removed = new ArrayList<Object[]>();
+		for (List<?> list : getListenerLists()) {
+			removed.add(list.toArray());
+			list.clear();
+		}
+		return removed;
+	}
+
+	/**
+	 * Puts back listeners removed with {@link #detachListeners()}
+	 * @param removed The removed listeners
+	 */
+	@SuppressWarnings("unchecked")
+	void attachListeners(List<Object[]> removed) {
+		List<List<?>> lists = getListenerLists();
+		for (int i = 0; i < lists.size(); i++) {
+			((List<Object>)lists.get(i)).addAll(Arrays.asList(removed.get(i)));
+		}
+	}
+
+	/**
+	 * Returns all the listener lists of the scenario
+	 */
+	private List<List<?>> getListenerLists() {
+		List<List<?>> lists = new ArrayList<List<?>>();
+		lists.add(this.connectionListeners);
+		lists.add(this.messageListeners);
+		lists.add(this.movementListeners);
+		lists.add(this.updateListeners);
+		lists.add(this.appListeners);
+		return lists;
 	}
 
 	/**
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
-		}
-		return myinstance;
+		return myinstance.get();
 	}
 
 
@@ -5,19 +5,30 @@
 package core;
 
 import input.EventQueue;
+import input.EventQueueMerger;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityGrid;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import routing.ActiveRouter;
+import routing.MessageRouter;
 
 /**
  * World contains all the nodes and is responsible for updating their
  * location and connections.
  */
-public class World {
+public class World implements Serializable {
+	private static final long serialVersionUID = 1L;
 	/** name space of optimization settings ({@value})*/
 	public static final String OPTIMIZATION_SETTINGS_NS = "Optimization";
 
@@ -48,13 +59,95 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Parallel update -setting id ({@value}). Boolean (true/false) variable.
+	 * If set to true, the hosts are updated concurrently (in the fork-join
+	 * pool of the updating thread or in the common pool) with the same
+	 * results as when they are updated one at a time in the (possibly
+	 * randomized) update order. First the interfaces' connectivity
+	 * optimizer locations are updated and their neighbourhoods scanned in
+	 * the update order, so every interface sees the optimizer like in a
+	 * sequential update. Then the hosts are divided into waves: a host's
+	 * neighbourhood is the host and the hosts it is connected to, sending
+	 * to or found in range, and two hosts whose neighbourhoods overlap
+	 * (and that could thus e.g. compete for the same transfer) are put in
+	 * different waves in the update order. The waves are run one after
+	 * another and the hosts of a wave concurrently. A host is updated alone
+	 * if it or one of its neighbours has a router that doesn't support
+	 * parallel updates (see {@link MessageRouter#supportsParallelUpdate()})
+	 * or has applications, or if it finalizes a transfer of a message that
+	 * requests a response. The connection, message and application events
+	 * of the hosts are passed to the listeners at the end of the update
+	 * round in the sequential order (so the listeners see the state of the
+	 * world at the end of the round) and the new messages get the same
+	 * unique IDs as in a sequential update. The hosts are updated one at a
+	 * time if some interface doesn't support parallel updates (see
+	 * {@link NetworkInterface#supportsParallelUpdate()}) or isn't always
+	 * active, some router uses an energy model, or kinetic contacts or a
+	 * contact plan are used. Default = false.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+
+	/**
+	 * Pair scan -setting id ({@value}). Boolean (true/false) variable. If
+	 * set to true, the connectivity grids check the distance of every pair
+	 * of nearby interfaces only once per host update round (instead of
+	 * once from both interfaces) and give the interfaces lists of
+	 * connections to tear down and interfaces to connect to. Custom
+	 * {@link NetworkInterface#isWithinRange(NetworkInterface)}
+	 * implementations are not used in the scan. With
+	 * {@link #PARALLEL_UPDATE_S} the pair scan replaces the neighbourhood
+	 * scan that is done in the update order. Default = false.
+	 */
+	public static final String PAIR_SCAN_S = "pairScan";
+
+	/**
+	 * Kinetic contacts -setting id ({@value}). Boolean (true/false)
+	 * variable. If set to true, the hosts are moved at the start of every
+	 * update interval and the exact link up and down times of the interval
+	 * are solved from the hosts' movement (see {@link KineticConnectivity}).
+	 * The links are then created and torn down at those times instead of
+	 * the update interval boundaries. Overrides {@link #PAIR_SCAN_S} and
+	 * {@link #PARALLEL_UPDATE_S}. Default = false.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+
+	/**
+	 * Parallel movement -setting id ({@value}). Boolean (true/false)
+	 * variable. If set to true, hosts whose movement model supports it (see
+	 * {@link movement.MovementModel#supportsParallelMovement()}) are moved
+	 * concurrently, also during the movement model warmup. Every host then
+	 * uses its own random number stream (derived from the movement model rng
+	 * seed and the host's address) instead of the common movement model
+	 * rng, so the paths are reproducible regardless of the number of
+	 * threads but differ from the ones of sequential runs. Default = false.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+
+	/**
+	 * Skip idle update intervals -setting id ({@value}). Boolean (true/false)
+	 * variable. If set to true, the world checks before every update what is
+	 * the earliest time when something can happen (next external event, a
+	 * host starts moving, a transfer becomes ready, a scan round starts, or
+	 * a router needs a TTL check) and, if nothing can happen before that,
+	 * skips the update intervals before it. Hosts and routers are then not
+	 * updated for the skipped intervals, but the clock is advanced one
+	 * interval at a time and the update listeners (e.g., sampling reports)
+	 * are informed after every interval as usual. Intervals are never
+	 * skipped if any of the hosts is moving, or uses time-based activeness,
+	 * energy modeling or applications. Routing decisions are assumed to
+	 * change only when connections, buffers or transfers change.
+	 * Default = false.
+	 */
+	public static final String SKIP_IDLE_S = "skipIdleIntervals";
+
 	private int sizeX;
 	private int sizeY;
-	private List<EventQueue> eventQueues;
 	private double updateInterval;
 	private SimClock simClock;
 	private double nextQueueEventTime;
-	private EventQueue nextEventQueue;
+	/** merger of the scheduled updates (index 0) and all event queues */
+	private EventQueueMerger eventQueueMerger;
 	/** list of nodes; nodes are indexed by their network address */
 	private List<DTNHost> hosts;
 	private boolean simulateConnections;
@@ -67,7 +160,44 @@ public class World {
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
 	private boolean simulateConOnce;
-	
+	/** should the hosts be updated concurrently */
+	private boolean parallelUpdate;
+	/** which of the hosts (by address) must be updated alone in parallel
+	 * update mode (null if the hosts are updated one at a time) */
+	private boolean[] serialHosts;
+	/** connection, message and application listener lists of the scenario
+	 * (null if not known; the hosts are then updated one at a time) */
+	private List<ConnectionListener> connectionListeners;
+	private List<MessageListener> messageListeners;
+	private List<ApplicationListener> appListeners;
+	/** recorder of the events of concurrently updated hosts */
+	private transient DeferredEvents deferredEvents;
+	/** messages created in the updates of the hosts (by address) */
+	private transient List<List<Message>> createdMessages;
+	/** update waves of the hosts (by address) in the latest round */
+	private transient int[] waveOf;
+	/** work array for assigning the waves */
+	private transient int[] lastWave;
+	/** should the interface pairs be scanned once per update round */
+	private boolean pairScan;
+	/** predictor of link events (null if kinetic contacts are not used) */
+	private KineticConnectivity kineticConnectivity;
+	/** contact plan that is recorded or replayed (null if none; contact
+	 * plans can't be used with checkpoints) */
+	private transient ContactPlan contactPlan;
+	/** should idle update intervals be skipped */
+	private boolean skipIdleIntervals;
+	/** end time of the simulation (used when idle intervals are skipped) */
+	private double endTime;
+	/** have the hosts been updated at least once (i.e., are connections up
+	 * to date with the locations) */
+	private boolean hostsUpdated;
+	/** hosts that can be moved concurrently (null if movement is sequential) */
+	private List<DTNHost> parallelMovers;
+	/** which of the hosts (by address) are moved concurrently in parallel
+	 * movement mode */
+	private boolean[] concurrentMovers;
+
 	private boolean realtimeSimulation;
 	private long simStartRealtime;
 
@@ -83,16 +213,24 @@ public class World {
 		this.updateInterval = updateInterval;
 		this.updateListeners = updateListeners;
 		this.simulateConnections = simulateConnections;
-		this.eventQueues = eventQueues;
 
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
 		this.isCancelled = false;
 
+		initSettings();
+
+		List<EventQueue> allQueues = new ArrayList<EventQueue>();
+		allQueues.add(this.scheduledUpdates); /* wins ties (see merger) */
+		allQueues.addAll(eventQueues);
+		if (this.kineticConnectivity != null) {
+			allQueues.add(this.kineticConnectivity);
+		}
+		this.eventQueueMerger = new EventQueueMerger(allQueues);
+
 		this.simStartRealtime = -1;
 		
 		setNextEventQueue();
-		initSettings();
 	}
 
 	/**
@@ -106,6 +244,48 @@ public class World {
 		this.simulateConOnce = s.getBoolean(SIMULATE_CON_ONCE_S, false);
 		
 		this.realtimeSimulation = s.getBoolean(REALTIME_SIM_S ,false);
+		this.parallelUpdate = s.getBoolean(PARALLEL_UPDATE_S, false);
+		this.pairScan = s.getBoolean(PAIR_SCAN_S, false);
+		if (s.getBoolean(KINETIC_CONTACTS_S, false) && simulateConnections) {
+			this.kineticConnectivity = new KineticConnectivity(this.hosts);
+		}
+		this.skipIdleIntervals = s.getBoolean(SKIP_IDLE_S, false);
+
+		Settings plan = new Settings(ContactPlan.CONTACT_PLAN_NS);
+		if (plan.contains(ContactPlan.CACHE_S)) {
+			if (this.kineticConnectivity != null) {
+				throw new SettingsError("Contact plans can't be used with " +
+						"kinetic contacts");
+			}
+			this.contactPlan = new ContactPlan(this.hosts);
+			if (this.contactPlan.isReplaying()) {
+				/* the links come from the plan */
+				this.simulateConnections = false;
+			}
+		}
+
+		if (this.skipIdleIntervals) {
+			Settings scen = new Settings(SimScenario.SCENARIO_NS);
+			this.endTime = scen.getDouble(SimScenario.END_TIME_S);
+		}
+
+		if (s.getBoolean(PARALLEL_MOVEMENT_S, false)) {
+			this.parallelMovers = new ArrayList<DTNHost>();
+			this.concurrentMovers = new boolean[this.hosts.size()];
+			for (int i=0, n = this.hosts.size(); i<n; i++) {
+				DTNHost h = this.hosts.get(i);
+				if (h.getMovement().supportsParallelMovement()) {
+					this.parallelMovers.add(h);
+					this.concurrentMovers[i] = true;
+				}
+			}
+		}
+		else {
+			this.parallelMovers = null;
+			this.concurrentMovers = null;
+		}
+
+		this.serialHosts = this.parallelUpdate ? findSerialHosts() : null;
 
 		if(randomizeUpdates) {
 			// creates the update order array that can be shuffled
@@ -116,6 +296,53 @@ public class World {
 		}
 	}
 
+	/**
+	 * Checks which hosts must be updated alone when the hosts are updated
+	 * concurrently (see {@link #PARALLEL_UPDATE_S})
+	 * @return A flag for every host (by address) or null if the hosts
+	 * must be updated one at a time
+	 */
+	private boolean[] findSerialHosts() {
+		if (this.kineticConnectivity != null || this.contactPlan != null) {
+			return null;
+		}
+
+		boolean[] serial = new boolean[this.hosts.size()];
+		for (int i=0, n = this.hosts.size(); i<n; i++) {
+			DTNHost h = this.hosts.get(i);
+			MessageRouter r = h.getRouter();
+			if (r instanceof ActiveRouter &&
+					((ActiveRouter)r).hasEnergyModel()) {
+				return null; /* energy can change the activeness */
+			}
+			for (NetworkInterface ni : h.getInterfaces()) {
+				if (!ni.supportsParallelUpdate() || !ni.isAlwaysActive()) {
+					return null;
+				}
+			}
+			serial[i] = !r.supportsParallelUpdate() ||
+				!r.getApplications(null).isEmpty();
+		}
+		return serial;
+	}
+
+	/**
+	 * Sets the listener lists of the scenario. The events of concurrently
+	 * updated hosts are passed to the listeners of the lists at the end of
+	 * each update round; without the lists the hosts are updated one at a
+	 * time.
+	 * @param connectionListeners The connection listeners
+	 * @param messageListeners The message listeners
+	 * @param appListeners The application listeners
+	 */
+	void setEventListeners(List<ConnectionListener> connectionListeners,
+			List<MessageListener> messageListeners,
+			List<ApplicationListener> appListeners) {
+		this.connectionListeners = connectionListeners;
+		this.messageListeners = messageListeners;
+		this.appListeners = appListeners;
+	}
+
 	/**
 	 * Moves hosts in the world for the time given time initialize host
 	 * positions properly. SimClock must be set to <CODE>-time</CODE> before
@@ -126,6 +353,10 @@ public class World {
 		if (time <= 0) {
 			return;
 		}
+		if (isMovementDisabled()) {
+			simClock.setTime(0);
+			return;
+		}
 
 		while(SimClock.getTime() < -updateInterval) {
 			moveHosts(updateInterval);
@@ -143,19 +374,8 @@ public class World {
 	 * event queue that has the next event.
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.eventQueueMerger.refreshAll();
+		this.nextQueueEventTime = this.eventQueueMerger.nextEventsTime();
 	}
 
 	/**
@@ -164,40 +384,46 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
-		double runUntil = SimClock.getTime() + this.updateInterval;
-		
 		if (realtimeSimulation) {
-			if (this.simStartRealtime < 0) {
-				/* first update round */
-				this.simStartRealtime = System.currentTimeMillis();
-			}
-
-			long sleepTime = (long) (SimClock.getTime() * 1000 
-					- (System.currentTimeMillis() - this.simStartRealtime));
-			if (sleepTime > 0) {
-				try {
-					Thread.sleep(sleepTime);
-				} catch (InterruptedException e) {
-					throw new SimError("Sleep interrupted:" + e);
-				}
-			}
+			waitForRealtime();
 		}
-		
+
 		setNextEventQueue();
 
+		double runUntil = SimClock.getTime() + this.updateInterval;
+		double timeIncrement = this.updateInterval;
+		if (this.skipIdleIntervals) {
+			runUntil = skipIdleIntervals(runUntil);
+		}
+
+		if (this.kineticConnectivity != null) {
+			/* hosts move first so that the link events of the interval can
+			 * be predicted from their tracks */
+			double start = SimClock.getTime();
+			moveHosts(timeIncrement);
+			this.kineticConnectivity.predict(start, runUntil);
+			setNextEventQueue();
+		}
+
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
+			ExternalEvent ee = this.eventQueueMerger.nextEvent();
 			ee.processEvent(this);
 			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			/* only the processed queue (already refreshed by the merger)
+			 * and the scheduled updates can have a new next event */
+			this.eventQueueMerger.refresh(0);
+			this.nextQueueEventTime = this.eventQueueMerger.nextEventsTime();
 		}
 
-		moveHosts(this.updateInterval);
+		if (this.kineticConnectivity == null) {
+			moveHosts(timeIncrement);
+		}
 		simClock.setTime(runUntil);
 
 		updateHosts();
+		this.hostsUpdated = true;
 
 		/* inform all update listeners */
 		for (UpdateListener ul : this.updateListeners) {
@@ -206,49 +432,450 @@ public class World {
 		
 	}
 
+	/**
+	 * Waits until the real time since the start of the simulation catches
+	 * up the current simulation time
+	 */
+	private void waitForRealtime() {
+		if (this.simStartRealtime < 0) {
+			/* first update round */
+			this.simStartRealtime = System.currentTimeMillis();
+		}
+
+		long sleepTime = (long) (SimClock.getTime() * 1000 
+				- (System.currentTimeMillis() - this.simStartRealtime));
+		if (sleepTime > 0) {
+			try {
+				Thread.sleep(sleepTime);
+			} catch (InterruptedException e) {
+				throw new SimError("Sleep interrupted:" + e);
+			}
+		}
+	}
+
+	/**
+	 * Skips the update intervals during which nothing can happen (see
+	 * {@link #getIdleUntil(double)}). The hosts are not updated for the
+	 * skipped intervals, but the clock is advanced and the update listeners
+	 * are informed at the end of every skipped interval just like after a
+	 * normal update, so sampling reports get all their samples. In
+	 * real-time mode every skipped interval waits for the real time too and
+	 * the event queues are checked again after the wait.
+	 * @param runUntil The end time of the next update interval
+	 * @return The end time of the next update interval that is not skipped
+	 */
+	private double skipIdleIntervals(double runUntil) {
+		double idleUntil = getIdleUntil(runUntil);
+		while (runUntil + this.updateInterval <= idleUntil &&
+				!this.isCancelled) {
+			simClock.setTime(runUntil);
+			if (this.updateOrder != null) {
+				/* keep the update order the same as without skipping */
+				Random rng = new Random(SimClock.getIntTime());
+				Collections.shuffle(this.updateOrder, rng);
+			}
+			for (UpdateListener ul : this.updateListeners) {
+				ul.updated(this.hosts);
+			}
+
+			runUntil = SimClock.getTime() + this.updateInterval;
+			if (realtimeSimulation) {
+				waitForRealtime();
+				setNextEventQueue();
+				idleUntil = getIdleUntil(runUntil);
+			}
+		}
+
+		return runUntil;
+	}
+
+	/**
+	 * Returns the earliest time when some host, event queue or the
+	 * simulation end needs attention (next external event, a host starts
+	 * moving, a transfer becomes ready, a scan round starts, or a router
+	 * needs a TTL check). The update intervals that end before that time
+	 * can be skipped.
+	 * @param runUntil The end time of the next update interval
+	 * @return The time until which the world is idle or
+	 * <CODE>runUntil</CODE> if no intervals can be skipped
+	 */
+	private double getIdleUntil(double runUntil) {
+		double next = Math.min(this.nextQueueEventTime, this.endTime);
+		if (this.contactPlan != null) {
+			next = Math.min(next, this.contactPlan.getNextEventTime());
+		}
+
+		if (!this.hostsUpdated) {
+			return runUntil; /* connectivity is not up to date yet */
+		}
+
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			next = Math.min(next, hosts.get(i).getNextUpdateTime());
+			if (next < runUntil + this.updateInterval) {
+				return runUntil; /* nothing to skip */
+			}
+		}
+
+		return next;
+	}
+
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. With parallel updates (see
+	 * {@link #PARALLEL_UPDATE_S}) the hosts are updated concurrently but
+	 * with the same results as in that order.
 	 */
 	private void updateHosts() {
-		if (this.updateOrder == null) { // randomizing is off
-			for (int i=0, n = hosts.size();i < n; i++) {
-				if (this.isCancelled) {
-					break;
-				}
-				hosts.get(i).update(simulateConnections);
-			}
-		}
-		else { // update order randomizing is on
+		List<DTNHost> order = this.hosts;
+
+		if (this.updateOrder != null) { // update order randomizing is on
 			assert this.updateOrder.size() == this.hosts.size() :
 				"Nrof hosts has changed unexpectedly";
 			Random rng = new Random(SimClock.getIntTime());
 			Collections.shuffle(this.updateOrder, rng);
-			for (int i=0, n = hosts.size();i < n; i++) {
+			order = this.updateOrder;
+		}
+
+		/* with kinetic contacts the links are created and torn down by the
+		 * predicted link events instead */
+		boolean scan = simulateConnections && this.kineticConnectivity == null;
+		if (this.pairScan && scan) {
+			scanPairs(order);
+		}
+
+		if (this.serialHosts != null && this.connectionListeners != null) {
+			updateConcurrently(order, scan && !this.pairScan);
+		}
+		else {
+			for (int i=0, n = order.size();i < n; i++) {
 				if (this.isCancelled) {
 					break;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
+				DTNHost host = order.get(i);
+				if (this.contactPlan != null) {
+					this.contactPlan.beforeUpdate(host);
+				}
+				host.update(simulateConnections);
 			}
 		}
+		if (this.contactPlan != null) {
+			this.contactPlan.afterUpdates();
+		}
 
 		if (simulateConOnce && simulateConnections) {
 			simulateConnections = false;
 		}
 	}
 
+	/**
+	 * Updates the hosts concurrently in waves (see
+	 * {@link #PARALLEL_UPDATE_S}) with the same results as updating them one
+	 * at a time in the given order
+	 * @param order The order in which the hosts are updated
+	 * @param scan Should the interfaces' neighbourhoods be scanned (in the
+	 * update order) first
+	 */
+	private void updateConcurrently(List<DTNHost> order, boolean scan) {
+		if (scan) {
+			for (int i=0, n = order.size(); i < n; i++) {
+				order.get(i).scanNeighbours();
+			}
+		}
+		List<DTNHost> waves = assignWaves(order);
+
+		if (this.deferredEvents == null) {
+			this.deferredEvents = new DeferredEvents(this.hosts.size(),
+					this.connectionListeners, this.messageListeners,
+					this.appListeners);
+			this.createdMessages = new ArrayList<List<Message>>();
+			for (int i=0, n = this.hosts.size(); i < n; i++) {
+				this.createdMessages.add(new ArrayList<Message>());
+			}
+		}
+
+		this.deferredEvents.install();
+		try {
+			for (int from = 0, n = waves.size(); from < n; ) {
+				if (this.isCancelled) {
+					break;
+				}
+				int to = from + 1;
+				int wave = this.waveOf[waves.get(from).getAddress()];
+				while (to < n && this.waveOf[waves.get(to).getAddress()] ==
+						wave) {
+					to++;
+				}
+
+				if (to - from == 1) {
+					updateHost(waves.get(from));
+				}
+				else {
+					invoke(new UpdateTask(this, waves, from, to));
+				}
+				from = to;
+			}
+		} finally {
+			this.deferredEvents.uninstall();
+			List<List<Message>> created = new ArrayList<List<Message>>();
+			for (int i=0, n = order.size(); i < n; i++) {
+				created.add(this.createdMessages.get(
+						order.get(i).getAddress()));
+			}
+			Message.renumber(created);
+			for (List<Message> list : created) {
+				list.clear();
+			}
+		}
+
+		this.deferredEvents.replay(order);
+	}
+
+	/**
+	 * Updates a host of a concurrent update round and records its events
+	 * and new messages
+	 * @param host The host to update
+	 */
+	private void updateHost(DTNHost host) {
+		this.deferredEvents.begin(host);
+		Message.recordCreated(this.createdMessages.get(host.getAddress()));
+		try {
+			host.update(simulateConnections);
+		} finally {
+			Message.recordCreated(null);
+			this.deferredEvents.end();
+		}
+	}
+
+	/**
+	 * Assigns the hosts to update waves. A host's wave is after the waves
+	 * of all the hosts before it in the update order whose neighbourhoods
+	 * overlap with the host's neighbourhood. A host that must be updated
+	 * alone gets a wave of its own after the waves of all the hosts before
+	 * it, and the hosts after it get later waves.
+	 * @param order The order in which the hosts are updated
+	 * @return The hosts ordered by their waves (and the update order within
+	 * a wave); the waves are in {@link #waveOf}
+	 */
+	private List<DTNHost> assignWaves(List<DTNHost> order) {
+		int n = this.hosts.size();
+		int[][] neighbours = findNeighbours();
+		if (this.waveOf == null || this.waveOf.length != n) {
+			this.waveOf = new int[n];
+			this.lastWave = new int[n];
+		}
+		int[] last = this.lastWave; /* latest wave of a neighbourhood */
+		Arrays.fill(last, 0);
+
+		int barrier = 0; /* wave of the latest host updated alone */
+		int maxWave = 0;
+		for (int i=0; i < n; i++) {
+			DTNHost host = order.get(i);
+			int address = host.getAddress();
+			int[] near = neighbours[address];
+			int wave = Math.max(barrier, last[address]) + 1;
+			boolean alone = this.serialHosts[address] ||
+				requestsResponse(host);
+			for (int j=0; j < near.length; j++) {
+				wave = Math.max(wave, last[near[j]] + 1);
+				alone |= this.serialHosts[near[j]];
+			}
+			if (alone) {
+				wave = maxWave + 1;
+				barrier = wave;
+			}
+
+			this.waveOf[address] = wave;
+			last[address] = wave;
+			for (int j=0; j < near.length; j++) {
+				last[near[j]] = wave;
+			}
+			maxWave = Math.max(maxWave, wave);
+		}
+
+		/* stable counting sort by the waves */
+		int[] start = new int[maxWave + 2];
+		for (int i=0; i < n; i++) {
+			start[this.waveOf[order.get(i).getAddress()] + 1]++;
+		}
+		for (int w=1; w < start.length; w++) {
+			start[w] += start[w - 1];
+		}
+		DTNHost[] sorted = new DTNHost[n];
+		for (int i=0; i < n; i++) {
+			DTNHost host = order.get(i);
+			sorted[start[this.waveOf[host.getAddress()]]++] = host;
+		}
+		return Arrays.asList(sorted);
+	}
+
+	/**
+	 * Returns the neighbours of every host: the hosts it is connected to,
+	 * has sending connections to or found in range in the latest scan, and
+	 * the hosts that have the host as such a neighbour
+	 * @return The addresses of the neighbours (possibly with duplicates)
+	 * by host addresses
+	 */
+	private int[][] findNeighbours() {
+		int n = this.hosts.size();
+		int[] edges = new int[16];
+		int nrofEdges = 0;
+		int[] degree = new int[n];
+		List<DTNHost> near = new ArrayList<DTNHost>();
+		for (int i=0; i < n; i++) {
+			DTNHost host = this.hosts.get(i);
+			near.clear();
+			for (NetworkInterface ni : host.getInterfaces()) {
+				for (Connection con : ni.getConnections()) {
+					near.add(con.getOtherNode(host));
+				}
+				List<NetworkInterface> scanned = ni.getScannedInterfaces();
+				if (scanned != null) {
+					for (NetworkInterface other : scanned) {
+						near.add(other.getHost());
+					}
+				}
+			}
+			for (Connection con : host.getRouter().getSendingConnections()) {
+				near.add(con.getOtherNode(host));
+			}
+
+			for (DTNHost other : near) {
+				if (other == host) {
+					continue;
+				}
+				if (nrofEdges + 2 > edges.length) {
+					edges = Arrays.copyOf(edges, edges.length * 2);
+				}
+				edges[nrofEdges++] = i;
+				edges[nrofEdges++] = other.getAddress();
+				degree[i]++;
+				degree[other.getAddress()]++;
+			}
+		}
+
+		int[][] neighbours = new int[n][];
+		for (int i=0; i < n; i++) {
+			neighbours[i] = new int[degree[i]];
+			degree[i] = 0;
+		}
+		for (int e=0; e < nrofEdges; e += 2) {
+			int a = edges[e];
+			int b = edges[e + 1];
+			neighbours[a][degree[a]++] = b;
+			neighbours[b][degree[b]++] = a;
+		}
+		return neighbours;
+	}
+
+	/**
+	 * Returns true if a host has a sending connection whose message
+	 * requests a response (the response is created when the host
+	 * finalizes the transfer)
+	 */
+	private static boolean requestsResponse(DTNHost host) {
+		for (Connection con : host.getRouter().getSendingConnections()) {
+			Message m = con.getMessage();
+			if (m != null && m.getResponseSize() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the connectivity optimizer locations of all hosts' interfaces
+	 * in the given order and then scans all the nearby interface pairs.
+	 * Nothing is connected or disconnected here; that is left for the host
+	 * updates.
+	 * @param order The order in which the hosts are updated
+	 */
+	private void scanPairs(List<DTNHost> order) {
+		for (int i=0, n = order.size(); i < n; i++) {
+			order.get(i).updateInterfaceLocations();
+		}
+
+		ConnectivityGrid.scanAllPairs();
+	}
+
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (isMovementDisabled()) {
+			return; /* hosts stay at their initial locations */
+		}
+		if (this.parallelMovers != null) {
+			moveHostsConcurrently(timeIncrement);
+			return;
+		}
+
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);
 		}
 	}
 
+	/**
+	 * Moves the hosts whose movement models support it concurrently and then
+	 * goes through all hosts in the order of their addresses: movement
+	 * listeners are informed about the new destinations of the concurrently
+	 * moved hosts and the rest of the hosts are moved one by one. The
+	 * listeners thus see the same call sequence as when all hosts are moved
+	 * one by one. A sequentially moved host that looks at the locations of
+	 * other hosts sees all the concurrently moved hosts at their new
+	 * locations, though.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsConcurrently(double timeIncrement) {
+		List<DTNHost> movers = this.parallelMovers;
+		invoke(new MoveTask(movers, 0, movers.size(), timeIncrement));
+
+		for (int i=0, n = hosts.size(); i<n; i++) {
+			if (this.concurrentMovers[i]) {
+				hosts.get(i).flushMovementEvents();
+			}
+			else {
+				hosts.get(i).move(timeIncrement);
+			}
+		}
+	}
+
+	/**
+	 * Runs a host task in the fork-join pool of the current thread or, if
+	 * the current thread is not a fork-join worker, in the common pool
+	 * @param task The task to run
+	 */
+	private static void invoke(HostTask task) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+	}
+
+	/**
+	 * Returns true if the hosts are not moved because the connections are
+	 * replayed from a contact plan
+	 */
+	private boolean isMovementDisabled() {
+		return this.contactPlan != null && this.contactPlan.isReplaying();
+	}
+
+	/**
+	 * Ends the simulation. Saves the recorded contact plan (if any) if the
+	 * simulation was run to the end.
+	 * @param completed True if the simulation was run to the end, false if
+	 * it was cancelled or stopped by an error
+	 */
+	public void done(boolean completed) {
+		if (this.contactPlan != null) {
+			this.contactPlan.close(completed && !this.isCancelled);
+		}
+	}
+
 	/**
 	 * Asynchronously cancels the currently running simulation
 	 */
@@ -306,4 +933,140 @@ public class World {
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
 	}
+
+	/**
+	 * Schedules update requests to all nodes to happen at each of the
+	 * specified simulation times. Equal times are merged to a single update.
+	 * @param simTimes The times of the updates
+	 */
+	public void scheduleUpdates(double[] simTimes) {
+		scheduledUpdates.addUpdates(simTimes);
+	}
+
+	/**
+	 * Fork-join task that processes a range of hosts from a list. Ranges
+	 * larger than {@link #THRESHOLD} are split into two subtasks.
+	 */
+	private static abstract class HostTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** max number of hosts processed by a single task */
+		private static final int THRESHOLD = 64;
+		private final List<DTNHost> hosts;
+		private final int from;
+		private final int to;
+		/** simulation context of the task's creator (bound to the worker
+		 * thread for the time of processing) */
+		private final SimContext context;
+
+		/**
+		 * Constructor.
+		 * @param hosts The list of hosts
+		 * @param from Index of the first host to process
+		 * @param to Index after the last host to process
+		 */
+		protected HostTask(List<DTNHost> hosts, int from, int to) {
+			this.hosts = hosts;
+			this.from = from;
+			this.to = to;
+			this.context = SimContext.current();
+		}
+
+		@Override
+		protected void compute() {
+			SimContext previous = context.bind(); // also for the subtasks
+			try {
+				if (to - from <= getThreshold()) {
+					for (int i = from; i < to; i++) {
+						process(hosts.get(i));
+					}
+					return;
+				}
+
+				int middle = (from + to) >>> 1;
+				invokeAll(createSubtask(hosts, from, middle),
+						createSubtask(hosts, middle, to));
+			} finally {
+				SimContext.restore(previous);
+			}
+		}
+
+		/**
+		 * Returns the max number of hosts processed by a single task.
+		 * Default is {@link #THRESHOLD}.
+		 */
+		protected int getThreshold() {
+			return THRESHOLD;
+		}
+
+		/**
+		 * Creates a new task of the same type for a subrange of hosts
+		 */
+		protected abstract HostTask createSubtask(List<DTNHost> hosts,
+				int from, int to);
+
+		/**
+		 * Processes a single host
+		 * @param host The host to process
+		 */
+		protected abstract void process(DTNHost host);
+	}
+
+	/**
+	 * Task that updates the hosts of a concurrent update round
+	 */
+	private static class UpdateTask extends HostTask {
+		private static final long serialVersionUID = 1L;
+		private final World world;
+
+		public UpdateTask(World world, List<DTNHost> hosts, int from,
+				int to) {
+			super(hosts, from, to);
+			this.world = world;
+		}
+
+		/**
+		 * Returns a smaller threshold than the default: updating a host
+		 * can take much longer than scanning or moving it
+		 */
+		@Override
+		protected int getThreshold() {
+			return 8;
+		}
+
+		@Override
+		protected HostTask createSubtask(List<DTNHost> hosts, int from,
+				int to) {
+			return new UpdateTask(world, hosts, from, to);
+		}
+
+		@Override
+		protected void process(DTNHost host) {
+			world.updateHost(host);
+		}
+	}
+
+	/**
+	 * Task that moves the hosts and buffers their movement events
+	 */
+	private static class MoveTask extends HostTask {
+		private static final long serialVersionUID = 1L;
+		private final double timeIncrement;
+
+		public MoveTask(List<DTNHost> hosts, int from, int to,
+				double timeIncrement) {
+			super(hosts, from, to);
+			this.timeIncrement = timeIncrement;
+		}
+
+		@Override
+		protected HostTask createSubtask(List<DTNHost> hosts, int from,
+				int to) {
+			return new MoveTask(hosts, from, to, timeIncrement);
+		}
+
+		@Override
+		protected void process(DTNHost host) {
+			host.moveDeferred(timeIncrement);
+		}
+	}
 }
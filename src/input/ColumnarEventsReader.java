@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import core.SimError;
+
+/**
+ * <P>
+ * Reads external events from a columnar binary file (created with
+ * {@link ColumnarEventsWriter}). The file is memory mapped and every field
+ * of the events is stored in its own column of fixed size values, so
+ * reading an event only reads a few values from the mapped columns; there
+ * is no parsing or deserialization. Events are created only when they are
+ * read to the preload window of the {@link ExternalEventsQueue}.
+ * </P>
+ * <P>
+ * File format (all values big-endian): header with the
+ * {@link #MAGIC} bytes, format version (int), number of events
+ * (<CODE>n</CODE>, long), number of ids (<CODE>m</CODE>, int) and the
+ * length of the id data in bytes (long). The header is followed by the
+ * columns: event times (<CODE>n</CODE> doubles), event types (<CODE>n</CODE>
+ * bytes), from and to host addresses, message sizes, response sizes and
+ * indexes to the id table (<CODE>n</CODE> ints each, -1 for no id), the
+ * offsets of the ids in the id data (<CODE>m + 1</CODE> longs) and the id
+ * data (UTF-8). The ids are the message ids of message events and the
+ * interface ids of connection events.
+ * </P>
+ */
+public class ColumnarEventsReader implements ExternalEventsReader {
+	/** Extension of columnar external events files */
+	public static final String COLUMNAR_EXT = ".colee";
+	/** The bytes in the start of every columnar events file */
+	public static final byte[] MAGIC =
+		"ONEcolee".getBytes(StandardCharsets.US_ASCII);
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Size of the file header (bytes) */
+	static final int HEADER_SIZE = MAGIC.length + 4 + 8 + 4 + 8;
+
+	/** event type codes of the type column */
+	static final byte CREATE = 0;
+	static final byte SEND = 1;
+	static final byte DELIVERED = 2;
+	static final byte ABORT = 3;
+	static final byte DROP = 4;
+	static final byte REMOVE = 5;
+	static final byte CONN_UP = 6;
+	static final byte CONN_DOWN = 7;
+
+	/** log2 of the number of values in one mapped segment of a column */
+	private static final int SEGMENT_SHIFT = 26;
+
+	private RandomAccessFile file;
+	private long nrofEvents;
+	private long nextEvent;
+
+	private Column times;
+	private Column types;
+	private Column froms;
+	private Column tos;
+	private Column sizes;
+	private Column responseSizes;
+	private Column ids;
+	private Column idOffsets;
+	private Column idData;
+	/** buffer for decoding ids */
+	private byte[] idBuffer;
+
+	/**
+	 * Constructor.
+	 * @param eventsFile The file where the events are read
+	 */
+	public ColumnarEventsReader(File eventsFile) {
+		try {
+			this.file = new RandomAccessFile(eventsFile, "r");
+			FileChannel channel = this.file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				/* read the whole header */
+			}
+			header.flip();
+			if (!hasMagic(header)) {
+				throw new SimError("Invalid columnar external events file " +
+						eventsFile.getAbsolutePath());
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new SimError("Unsupported columnar external events " +
+						"file version " + version);
+			}
+			this.nrofEvents = header.getLong();
+			int nrofIds = header.getInt();
+			long idBytes = header.getLong();
+
+			long pos = HEADER_SIZE;
+			long n = this.nrofEvents;
+			this.times = new Column(channel, pos, n, 8);
+			pos += n * 8;
+			this.types = new Column(channel, pos, n, 1);
+			pos += n;
+			this.froms = new Column(channel, pos, n, 4);
+			pos += n * 4;
+			this.tos = new Column(channel, pos, n, 4);
+			pos += n * 4;
+			this.sizes = new Column(channel, pos, n, 4);
+			pos += n * 4;
+			this.responseSizes = new Column(channel, pos, n, 4);
+			pos += n * 4;
+			this.ids = new Column(channel, pos, n, 4);
+			pos += n * 4;
+			this.idOffsets = new Column(channel, pos, nrofIds + 1L, 8);
+			pos += (nrofIds + 1L) * 8;
+			this.idData = new Column(channel, pos, idBytes, 1);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+
+		this.nextEvent = 0;
+		this.idBuffer = new byte[64];
+	}
+
+	/**
+	 * Reads the next events from the mapped columns
+	 * @param nrof Maximum number of events to read
+	 * @return Events in an ArrayList (empty list if didn't read any)
+	 */
+	public List<ExternalEvent> readEvents(int nrof) {
+		int count = (int)Math.min(nrof, this.nrofEvents - this.nextEvent);
+		ArrayList<ExternalEvent> events =
+			new ArrayList<ExternalEvent>(Math.max(count, 0));
+
+		for (int i = 0; i < count; i++) {
+			events.add(createEvent(this.nextEvent++));
+		}
+		return events;
+	}
+
+	/**
+	 * Creates an event from the values in the columns
+	 * @param i Index of the event
+	 * @return The event
+	 */
+	private ExternalEvent createEvent(long i) {
+		double time = times.getDouble(i);
+		int from = froms.getInt(i);
+		int to = tos.getInt(i);
+		String id = getId(ids.getInt(i));
+		byte type = types.getByte(i);
+
+		switch (type) {
+		case CREATE:
+			return new MessageCreateEvent(from, to, id, sizes.getInt(i),
+					responseSizes.getInt(i), time);
+		case SEND:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.SENDING);
+		case DELIVERED:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.TRANSFERRED);
+		case ABORT:
+			return new MessageRelayEvent(from, to, id, time,
+					MessageRelayEvent.ABORTED);
+		case DROP:
+			return new MessageDeleteEvent(from, id, time, true);
+		case REMOVE:
+			return new MessageDeleteEvent(from, id, time, false);
+		case CONN_UP:
+			return new ConnectionEvent(from, to, id, true, time);
+		case CONN_DOWN:
+			return new ConnectionEvent(from, to, id, false, time);
+		default:
+			throw new SimError("Unknown event type " + type + " in event " +
+					i + " of columnar external events file");
+		}
+	}
+
+	/**
+	 * Returns an id from the id table
+	 * @param index Index of the id or -1 for no id
+	 * @return The id or null if the index was -1
+	 */
+	private String getId(int index) {
+		if (index < 0) {
+			return null;
+		}
+		long start = idOffsets.getLong(index);
+		int length = (int)(idOffsets.getLong(index + 1L) - start);
+		if (length > this.idBuffer.length) {
+			this.idBuffer = Arrays.copyOf(this.idBuffer,
+					Math.max(length, 2 * this.idBuffer.length));
+		}
+		for (int i = 0; i < length; i++) {
+			this.idBuffer[i] = idData.getByte(start + i);
+		}
+		return new String(this.idBuffer, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks if the given file is a columnar external events file
+	 * @param file The file to check
+	 * @return True if the file's extension is {@link #COLUMNAR_EXT} and it
+	 * starts with the {@link #MAGIC} bytes
+	 */
+	public static boolean isColumnarEeFile(File file) {
+		if (!file.getName().endsWith(COLUMNAR_EXT)) {
+			return false;
+		}
+
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				byte[] start = new byte[MAGIC.length];
+				f.readFully(start);
+				return hasMagic(ByteBuffer.wrap(start));
+			} finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			return false; // read failed -> not a valid file
+		}
+	}
+
+	/**
+	 * Reads the magic bytes from the buffer and returns true if they match
+	 */
+	private static boolean hasMagic(ByteBuffer buffer) {
+		if (buffer.remaining() < MAGIC.length) {
+			return false;
+		}
+		byte[] start = new byte[MAGIC.length];
+		buffer.get(start);
+		return Arrays.equals(MAGIC, start);
+	}
+
+	/**
+	 * Closes the file and drops the mapped columns, so that the mappings
+	 * can be released. No more events are read after this.
+	 */
+	public void close() {
+		this.nrofEvents = this.nextEvent;
+		this.times = this.types = this.froms = this.tos = null;
+		this.sizes = this.responseSizes = this.ids = null;
+		this.idOffsets = this.idData = null;
+		try {
+			this.file.close();
+		} catch (IOException ioe) {
+			throw new SimError(ioe);
+		}
+	}
+
+	/**
+	 * Memory mapped column of fixed size values. The column is mapped in
+	 * segments because one mapping can't be larger than 2 GB.
+	 */
+	private static class Column {
+		private MappedByteBuffer[] segments;
+		/** size of one value (bytes) */
+		private int width;
+		/** mask of a value's index in its segment */
+		private long mask;
+
+		/**
+		 * Maps a column of the file
+		 * @param channel Channel of the file
+		 * @param position Position of the column in the file
+		 * @param count Number of values in the column
+		 * @param width Size of one value (bytes)
+		 */
+		public Column(FileChannel channel, long position, long count,
+				int width) throws IOException {
+			if (position + count * width > channel.size()) {
+				throw new SimError("Columnar external events file is " +
+						"truncated");
+			}
+			long perSegment = 1L << SEGMENT_SHIFT;
+			int nrofSegments = (int)((count + perSegment - 1) >>>
+				SEGMENT_SHIFT);
+			this.segments = new MappedByteBuffer[nrofSegments];
+			this.width = width;
+			this.mask = perSegment - 1;
+			for (int i = 0; i < nrofSegments; i++) {
+				long first = (long)i << SEGMENT_SHIFT;
+				long values = Math.min(perSegment, count - first);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						position + first * width, values * width);
+			}
+		}
+
+		private int offset(long index) {
+			return (int)(index & this.mask) * this.width;
+		}
+
+		public double getDouble(long index) {
+			return segments[(int)(index >>> SEGMENT_SHIFT)].getDouble(
+					offset(index));
+		}
+
+		public long getLong(long index) {
+			return segments[(int)(index >>> SEGMENT_SHIFT)].getLong(
+					offset(index));
+		}
+
+		public int getInt(long index) {
+			return segments[(int)(index >>> SEGMENT_SHIFT)].getInt(
+					offset(index));
+		}
+
+		public byte getByte(long index) {
+			return segments[(int)(index >>> SEGMENT_SHIFT)].get(
+					offset(index));
+		}
+	}
+}
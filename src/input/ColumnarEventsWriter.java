@@ -0,0 +1,264 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.SimError;
+
+/**
+ * Writes external events to a columnar binary file that can be read with
+ * {@link ColumnarEventsReader}. Every column is first written to its own
+ * temporary file (the number of events is not known before all of them
+ * have been written) and the columns are joined to the events file when
+ * the writer is closed. Only message create, relay and delete events and
+ * connection events can be written.
+ * <P>
+ * Can also be run as a converter from the standard text format and the
+ * {@link BinaryEventsReader#BINARY_EXT} format:<BR>
+ * <CODE>java input.ColumnarEventsWriter &lt;input file&gt;
+ * &lt;output file&gt;</CODE>
+ * </P>
+ */
+public class ColumnarEventsWriter {
+	/** number of events read at a time when converting */
+	private static final int CHUNK_SIZE = 10000;
+
+	/** indexes of the columns (in the order they are in the file) */
+	private static final int TIME = 0;
+	private static final int TYPE = 1;
+	private static final int FROM = 2;
+	private static final int TO = 3;
+	private static final int SIZE = 4;
+	private static final int RESPONSE_SIZE = 5;
+	private static final int ID = 6;
+	private static final int ID_OFFSET = 7;
+	private static final int ID_DATA = 8;
+	private static final int NROF_COLUMNS = 9;
+
+	private File file;
+	private File[] columnFiles;
+	private DataOutputStream[] columns;
+	/** indexes of the ids in the id table */
+	private Map<String, Integer> idIndexes;
+	private long nrofEvents;
+	private long idDataLength;
+
+	/**
+	 * Creates a new writer
+	 * @param file The file where the events are written
+	 * @throws IOException if the temporary column files can't be created
+	 */
+	public ColumnarEventsWriter(File file) throws IOException {
+		this.file = file;
+		this.columnFiles = new File[NROF_COLUMNS];
+		this.columns = new DataOutputStream[NROF_COLUMNS];
+		File dir = file.getAbsoluteFile().getParentFile();
+		for (int i = 0; i < NROF_COLUMNS; i++) {
+			columnFiles[i] = File.createTempFile(file.getName() + ".col" + i,
+					".tmp", dir);
+			columns[i] = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(columnFiles[i])));
+		}
+		this.idIndexes = new HashMap<String, Integer>();
+		this.nrofEvents = 0;
+		this.idDataLength = 0;
+		columns[ID_OFFSET].writeLong(0);
+	}
+
+	/**
+	 * Writes an event
+	 * @param ee The event
+	 * @throws IOException if writing fails
+	 * @throws SimError if the type of the event is not supported
+	 */
+	public void write(ExternalEvent ee) throws IOException {
+		byte type;
+		int from;
+		int to;
+		String id;
+		int size = 0;
+		int responseSize = 0;
+
+		if (ee instanceof ConnectionEvent) {
+			ConnectionEvent ce = (ConnectionEvent)ee;
+			type = ce.isUp ? ColumnarEventsReader.CONN_UP :
+				ColumnarEventsReader.CONN_DOWN;
+			from = ce.fromAddr;
+			to = ce.toAddr;
+			id = ce.interfaceId;
+		}
+		else if (ee instanceof MessageEvent) {
+			MessageEvent me = (MessageEvent)ee;
+			from = me.fromAddr;
+			to = me.toAddr;
+			id = me.id;
+			if (ee instanceof MessageCreateEvent) {
+				type = ColumnarEventsReader.CREATE;
+				size = ((MessageCreateEvent)ee).getSize();
+				responseSize = ((MessageCreateEvent)ee).getResponseSize();
+			}
+			else if (ee instanceof MessageRelayEvent) {
+				type = getRelayType(((MessageRelayEvent)ee).getStage());
+			}
+			else if (ee instanceof MessageDeleteEvent) {
+				type = ((MessageDeleteEvent)ee).isDrop() ?
+					ColumnarEventsReader.DROP : ColumnarEventsReader.REMOVE;
+			}
+			else {
+				throw new SimError("Can't write " + ee.getClass().getName() +
+						" to a columnar events file");
+			}
+		}
+		else {
+			throw new SimError("Can't write " + ee.getClass().getName() +
+					" to a columnar events file");
+		}
+
+		columns[TIME].writeDouble(ee.getTime());
+		columns[TYPE].writeByte(type);
+		columns[FROM].writeInt(from);
+		columns[TO].writeInt(to);
+		columns[SIZE].writeInt(size);
+		columns[RESPONSE_SIZE].writeInt(responseSize);
+		columns[ID].writeInt(getIdIndex(id));
+		this.nrofEvents++;
+	}
+
+	private static byte getRelayType(int stage) {
+		switch (stage) {
+		case MessageRelayEvent.SENDING:
+			return ColumnarEventsReader.SEND;
+		case MessageRelayEvent.TRANSFERRED:
+			return ColumnarEventsReader.DELIVERED;
+		case MessageRelayEvent.ABORTED:
+			return ColumnarEventsReader.ABORT;
+		default:
+			throw new SimError("Invalid message relay stage " + stage);
+		}
+	}
+
+	/**
+	 * Returns the index of an id in the id table. New ids are added to the
+	 * table.
+	 * @param id The id (or null)
+	 * @return The index or -1 for null
+	 */
+	private int getIdIndex(String id) throws IOException {
+		if (id == null) {
+			return -1;
+		}
+		Integer index = this.idIndexes.get(id);
+		if (index == null) {
+			index = this.idIndexes.size();
+			this.idIndexes.put(id, index);
+			byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+			columns[ID_DATA].write(bytes);
+			this.idDataLength += bytes.length;
+			columns[ID_OFFSET].writeLong(this.idDataLength);
+		}
+		return index;
+	}
+
+	/**
+	 * Joins the columns to the events file and removes the temporary files
+	 * @throws IOException if writing fails
+	 */
+	public void close() throws IOException {
+		for (DataOutputStream out : this.columns) {
+			out.close();
+		}
+
+		FileOutputStream fos = new FileOutputStream(this.file);
+		try {
+			DataOutputStream header = new DataOutputStream(fos);
+			header.write(ColumnarEventsReader.MAGIC);
+			header.writeInt(ColumnarEventsReader.VERSION);
+			header.writeLong(this.nrofEvents);
+			header.writeInt(this.idIndexes.size());
+			header.writeLong(this.idDataLength);
+			header.flush();
+
+			FileChannel out = fos.getChannel();
+			for (File f : this.columnFiles) {
+				FileInputStream in = new FileInputStream(f);
+				try {
+					FileChannel channel = in.getChannel();
+					long pos = 0;
+					long size = channel.size();
+					while (pos < size) {
+						pos += channel.transferTo(pos, size - pos, out);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			fos.close();
+			for (File f : this.columnFiles) {
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes all the events of a reader to a columnar events file
+	 * @param reader The reader of the events
+	 * @param fileName Path to the file where the events are stored
+	 * @return Number of events written
+	 * @throws IOException if writing fails
+	 */
+	public static long store(ExternalEventsReader reader, String fileName)
+			throws IOException {
+		ColumnarEventsWriter writer = new ColumnarEventsWriter(
+				new File(fileName));
+		List<ExternalEvent> events = reader.readEvents(CHUNK_SIZE);
+		while (events.size() > 0) {
+			for (ExternalEvent ee : events) {
+				writer.write(ee);
+			}
+			events = reader.readEvents(CHUNK_SIZE);
+		}
+		reader.close();
+		writer.close();
+		return writer.nrofEvents;
+	}
+
+	/**
+	 * Converts an external events file (in standard or binary format) to a
+	 * columnar events file.
+	 * @param args The input and output file paths
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java input.ColumnarEventsWriter " +
+					"<input file> <output file" +
+					ColumnarEventsReader.COLUMNAR_EXT + ">");
+			System.exit(1);
+		}
+
+		File input = new File(args[0]);
+		ExternalEventsReader reader;
+		if (BinaryEventsReader.isBinaryEeFile(input)) {
+			reader = new BinaryEventsReader(input);
+		}
+		else {
+			reader = new StandardEventsReader(input);
+		}
+
+		long count = store(reader, args[1]);
+		System.out.println("Wrote " + count + " events to " + args[1]);
+	}
+}
@@ -4,6 +4,7 @@
  */
 package input;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,7 +33,8 @@ import core.Settings;
  * is loaded when the name of the class is defined with
  * <code>CLASS_SETTING</code>.
  */
-public class EventQueueHandler  {
+public class EventQueueHandler implements Serializable {
+	private static final long serialVersionUID = 1L;
 	/** Event queue settings main namespace ({@value})*/
 	public static final String SETTINGS_NAMESPACE = "Events";
 	/** number of event queues -setting id ({@value})*/
@@ -48,6 +50,9 @@ public class EventQueueHandler  {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** number of preload chunks to read ahead in background -setting id
+	 * ({@value}). See {@link ExternalEventsQueue#PREFETCH_SETTING}. */
+	public static final String PREFETCH_SETTING = "nrofPrefetch";
 
 	private List<EventQueue> queues;
 
@@ -69,9 +74,11 @@ public class EventQueueHandler  {
 				if (s.contains(PRELOAD_SETTING)) {
 					preload = s.getInt(PRELOAD_SETTING);
 				}
+				int prefetch = s.getInt(PREFETCH_SETTING,
+						ExternalEventsQueue.DEFAULT_NROF_PREFETCH);
 				path = s.getSetting(PATH_SETTING);
 
-				queues.add(new ExternalEventsQueue(path, preload));
+				queues.add(new ExternalEventsQueue(path, preload, prefetch));
 			}
 			else if (s.contains(CLASS_SETTING)) { // event generator class
 				String className = CLASS_PACKAGE + "." +
@@ -91,4 +98,17 @@ public class EventQueueHandler  {
 		return this.queues;
 	}
 
+	/**
+	 * Closes the external events files of the queues and stops reading
+	 * them ahead
+	 * @see ExternalEventsQueue#close()
+	 */
+	public void close() {
+		for (EventQueue eq : this.queues) {
+			if (eq instanceof ExternalEventsQueue) {
+				((ExternalEventsQueue)eq).close();
+			}
+		}
+	}
+
 }
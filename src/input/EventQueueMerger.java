@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Event queue that merges a set of event queues into a single queue using a
+ * tournament tree keyed by the queues' next event times. The queue with the
+ * earliest next event can be found in constant time and updating the key
+ * of a single queue takes O(log Q) time. If more than one queue has an event
+ * at the same time, the queue with the smallest index in the merged list
+ * wins.
+ * <P>
+ * Next event times of the queues are cached and the cache is refreshed only
+ * for the queue whose event is returned by {@link #nextEvent()}. If the
+ * next event time of some other queue changes (e.g., because an update was
+ * scheduled), the queue must be refreshed with {@link #refresh(int)} or
+ * {@link #refreshAll()}.
+ * </P>
+ */
+public class EventQueueMerger implements EventQueue, Serializable {
+	private static final long serialVersionUID = 1L;
+	/** the merged queues */
+	private EventQueue[] queues;
+	/** cached next event times of the queues */
+	private double[] times;
+	/** tournament tree; internal nodes (indexes 1...nrofLeaves-1) contain the
+	 * index of the winning queue of the subtree and leaf nodes (indexes
+	 * nrofLeaves...2*nrofLeaves-1) the index of the queue in the leaf */
+	private int[] tree;
+	/** number of leaves in the tree (a power of two) */
+	private int nrofLeaves;
+
+	/**
+	 * Constructor. Creates a merger for the given queues.
+	 * @param queues The queues to merge
+	 */
+	public EventQueueMerger(List<? extends EventQueue> queues) {
+		int n = queues.size();
+		this.queues = queues.toArray(new EventQueue[n]);
+		this.times = new double[n];
+
+		this.nrofLeaves = 1;
+		while (this.nrofLeaves < n) {
+			this.nrofLeaves *= 2;
+		}
+		this.tree = new int[2 * this.nrofLeaves];
+		for (int i = 0; i < this.nrofLeaves; i++) {
+			this.tree[this.nrofLeaves + i] = (i < n ? i : -1);
+		}
+
+		refreshAll();
+	}
+
+	/**
+	 * Returns the next event of the queue that has the earliest event or
+	 * ExternalEvent with time of Double.MAX_VALUE if there are no events
+	 * left in any of the queues.
+	 * @return The next event
+	 */
+	public ExternalEvent nextEvent() {
+		int next = getNextQueueIndex();
+		if (next < 0) {
+			return new ExternalEvent(Double.MAX_VALUE);
+		}
+
+		ExternalEvent ee = this.queues[next].nextEvent();
+		refresh(next);
+		return ee;
+	}
+
+	/**
+	 * Returns the earliest next event time of all the queues or
+	 * Double.MAX_VALUE if there are no events left.
+	 * @return The next event's time
+	 */
+	public double nextEventsTime() {
+		int next = getNextQueueIndex();
+		return next < 0 ? Double.MAX_VALUE : this.times[next];
+	}
+
+	/**
+	 * Returns the queue that has the earliest next event
+	 * @return The queue or null if there are no queues
+	 */
+	public EventQueue getNextQueue() {
+		int next = getNextQueueIndex();
+		return next < 0 ? null : this.queues[next];
+	}
+
+	/**
+	 * Re-reads the next event time of the queue at the given index and
+	 * replays the matches from the queue's leaf up to the root.
+	 * @param index Index of the queue in the merged list
+	 */
+	public void refresh(int index) {
+		this.times[index] = this.queues[index].nextEventsTime();
+
+		for (int node = (this.nrofLeaves + index) / 2; node > 0; node /= 2) {
+			this.tree[node] = winner(this.tree[2 * node],
+					this.tree[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Re-reads the next event times of all the queues and rebuilds the tree.
+	 */
+	public void refreshAll() {
+		for (int i = 0; i < this.queues.length; i++) {
+			this.times[i] = this.queues[i].nextEventsTime();
+		}
+		for (int node = this.nrofLeaves - 1; node > 0; node--) {
+			this.tree[node] = winner(this.tree[2 * node],
+					this.tree[2 * node + 1]);
+		}
+	}
+
+	/**
+	 * Returns the index of the queue with the earliest event or -1 if there
+	 * are no queues
+	 */
+	private int getNextQueueIndex() {
+		return this.nrofLeaves > 1 ? this.tree[1] :
+			(this.queues.length > 0 ? 0 : -1);
+	}
+
+	/**
+	 * Returns the winner of a match between two queues: the one with an
+	 * earlier next event or, if the times are equal, the smaller index.
+	 * Index -1 denotes an empty leaf that always loses.
+	 */
+	private int winner(int a, int b) {
+		if (a < 0) {
+			return b;
+		}
+		if (b < 0) {
+			return a;
+		}
+		if (this.times[b] < this.times[a]) {
+			return b;
+		}
+		return a; /* ties go to the smaller index (a is always left of b) */
+	}
+
+	public String toString() {
+		return "EventQueueMerger of " + this.queues.length + " queues; next @ " +
+			nextEventsTime();
+	}
+}
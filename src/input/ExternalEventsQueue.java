@@ -12,7 +12,10 @@ import core.Settings;
 
 /**
  * Queue of external events. This class also takes care of buffering
- * the events and preloading only a proper amount of them.
+ * the events and preloading only a proper amount of them. The next chunks
+ * of events can be read ahead on a background thread (see
+ * {@link Prefetcher}) by enabling prefetching with the
+ * {@link #PREFETCH_SETTING}.
  */
 public class ExternalEventsQueue implements EventQueue {
 	/** ExternalEvents namespace ({@value})*/
@@ -21,14 +24,23 @@ public class ExternalEventsQueue implements EventQueue {
 	public static final String PRELOAD_SETTING = "nrofPreload";
 	/** path of external events file -setting id ({@value})*/
 	public static final String PATH_SETTING = "filePath";
+	/** number of preload chunks to read ahead on a background thread
+	 * -setting id ({@value}). 0 = read the events on the simulation thread
+	 * when they are needed. */
+	public static final String PREFETCH_SETTING = "nrofPrefetch";
 
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
+	/** default number of prefetched preload chunks */
+	public static final int DEFAULT_NROF_PREFETCH = 0;
 
 	private File eventsFile;
 	private ExternalEventsReader reader;
 	private int nextEventIndex;
 	private int nrofPreload;
+	private int nrofPrefetch;
+	/** reader of the next chunks (null if prefetching is disabled) */
+	private Prefetcher<List<ExternalEvent>> prefetcher;
 	private List<ExternalEvent> queue;
 	private boolean allEventsRead = false;
 
@@ -36,19 +48,36 @@ public class ExternalEventsQueue implements EventQueue {
 	 * Creates a new Queue from a file
 	 * @param filePath Path to the file where the events are read from. If
 	 * file ends with extension defined in {@link BinaryEventsReader#BINARY_EXT}
-	 * the file is assumed to be a binary file.
+	 * the file is assumed to be a binary file and if it ends with
+	 * {@link ColumnarEventsReader#COLUMNAR_EXT}, a columnar binary file.
 	 * @param nrofPreload How many events to preload
 	 * @see BinaryEventsReader#BINARY_EXT
 	 * @see BinaryEventsReader#storeToBinaryFile(String, List)
+	 * @see ColumnarEventsWriter
 	 */
 	public ExternalEventsQueue(String filePath, int nrofPreload) {
+		this(filePath, nrofPreload, DEFAULT_NROF_PREFETCH);
+	}
+
+	/**
+	 * Creates a new Queue from a file
+	 * @param filePath Path to the file where the events are read from
+	 * @param nrofPreload How many events to preload
+	 * @param nrofPrefetch How many preload chunks to read ahead on a
+	 * background thread (0 = read on the calling thread)
+	 * @see #ExternalEventsQueue(String, int)
+	 */
+	public ExternalEventsQueue(String filePath, int nrofPreload,
+			int nrofPrefetch) {
 		setNrofPreload(nrofPreload);
+		this.nrofPrefetch = nrofPrefetch;
 		init(filePath);
 	}
 
 	/**
-	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING}
-	 * and {@link #PATH_SETTING}. The path setting supports value filling.
+	 * Create a new Queue based on the given settings: {@link #PRELOAD_SETTING},
+	 * {@link #PREFETCH_SETTING} and {@link #PATH_SETTING}. The path setting
+	 * supports value filling.
 	 * @param s The settings
 	 */
 	public ExternalEventsQueue(Settings s) {
@@ -58,12 +87,15 @@ public class ExternalEventsQueue implements EventQueue {
 		else {
 			setNrofPreload(DEFAULT_NROF_PRELOAD);
 		}
+		this.nrofPrefetch = s.getInt(PREFETCH_SETTING, DEFAULT_NROF_PREFETCH);
         String eeFilePath = s.valueFillString(s.getSetting(PATH_SETTING));
         init(eeFilePath);
     }
 
 	/**
-	 * Sets maximum number of events that are read when the next preload occurs
+	 * Sets maximum number of events that are read when the next preload occurs.
+	 * If the events are prefetched, the size of the chunks that have already
+	 * been read ahead doesn't change.
 	 * @param nrof Maximum number of events to read. If less than 1, default
 	 * value ( {@value DEFAULT_NROF_PRELOAD} ) is used.
 	 */
@@ -77,13 +109,22 @@ public class ExternalEventsQueue implements EventQueue {
 	private void init(String eeFilePath) {
 		this.eventsFile = new File(eeFilePath);
 
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
+		if (ColumnarEventsReader.isColumnarEeFile(eventsFile)) {
+			this.reader = new ColumnarEventsReader(eventsFile);
+		}
+		else if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
 			this.reader = new BinaryEventsReader(eventsFile);
 		}
 		else {
 			this.reader = new StandardEventsReader(eventsFile);
 		}
 
+		if (this.nrofPrefetch > 0) {
+			this.prefetcher = new Prefetcher<List<ExternalEvent>>(
+					eventsFile.getName(), new ChunkSource(reader, nrofPreload),
+					nrofPrefetch);
+		}
+
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
@@ -139,6 +180,22 @@ public class ExternalEventsQueue implements EventQueue {
 	}
 
 
+	/**
+	 * Closes the events file and stops reading it ahead. The queue returns
+	 * no more events after this.
+	 */
+	public void close() {
+		if (this.prefetcher != null) {
+			this.prefetcher.close(); /* closes the reader */
+		}
+		else {
+			this.reader.close();
+		}
+		this.allEventsRead = true;
+		this.queue = new ArrayList<ExternalEvent>(0);
+		this.nextEventIndex = 0;
+	}
+
 	/**
 	 * Read some events from the external events reader
 	 * @param nrof Maximum number of events to read
@@ -150,6 +207,15 @@ public class ExternalEventsQueue implements EventQueue {
 			return new ArrayList<ExternalEvent>(0);
 		}
 
+		if (prefetcher != null) {
+			List<ExternalEvent> events = prefetcher.next();
+			if (events == null) { /* the prefetcher closed the reader */
+				allEventsRead = true;
+				return new ArrayList<ExternalEvent>(0);
+			}
+			return events;
+		}
+
 		List<ExternalEvent> events = reader.readEvents(nrof);
 
 		if (nrof > 0 && events.size() == 0) {
@@ -160,4 +226,27 @@ public class ExternalEventsQueue implements EventQueue {
 		return events;
 	}
 
+	/**
+	 * Source of the prefetched chunks of events
+	 */
+	private static class ChunkSource
+			implements Prefetcher.Source<List<ExternalEvent>> {
+		private ExternalEventsReader reader;
+		private int chunkSize;
+
+		private ChunkSource(ExternalEventsReader reader, int chunkSize) {
+			this.reader = reader;
+			this.chunkSize = chunkSize;
+		}
+
+		public List<ExternalEvent> read() {
+			List<ExternalEvent> events = reader.readEvents(chunkSize);
+			return events.size() > 0 ? events : null;
+		}
+
+		public void close() {
+			reader.close();
+		}
+	}
+
 }
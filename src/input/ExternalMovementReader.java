@@ -6,9 +6,9 @@ package input;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 import util.Tuple;
 
@@ -35,13 +35,18 @@ import core.SettingsError;
  * All lines must be sorted by time. Sampling interval (time difference between
  * two time instances) must be same for the whole file.
  * </P>
+ * <P>
+ * The file is read with a {@link TokenReader}, so it can also be gzip or zip
+ * compressed.
+ * </P>
  */
 public class ExternalMovementReader {
 	/* Prefix for comment lines (lines starting with this are ignored) */
 	public static final String COMMENT_PREFIX = "#";
-	private Scanner scanner;
+	/** reader of the file; its current line is the first line of the next
+	 * time instance */
+	private TokenReader reader;
 	private double lastTimeStamp = -1;
-	private String lastLine;
 	private double minTime;
 	private double maxTime;
 	private double minX;
@@ -60,33 +65,60 @@ public class ExternalMovementReader {
 		this.normalize = true;
 		File inFile = new File(inFilePath);
 		try {
-			scanner = new Scanner(inFile);
+			reader = new TokenReader(inFile);
 		} catch (FileNotFoundException e) {
 			throw new SettingsError("Couldn't find external movement input " +
 					"file " + inFile);
+		} catch (IOException e) {
+			throw new SettingsError("Couldn't read external movement input " +
+					"file " + inFile, e);
 		}
 
-		String offsets = scanner.nextLine();
-		Scanner lineScan = null;
+		if (!nextLine()) {
+			throw new SettingsError("No offset line in external movement " +
+					"input file " + inFile);
+		}
 
 		try {
-			lineScan = new Scanner(offsets);
-			minTime = lineScan.nextDouble();
-			maxTime = lineScan.nextDouble();
-			minX = lineScan.nextDouble();
-			maxX = lineScan.nextDouble();
-			minY = lineScan.nextDouble();
-			maxY = lineScan.nextDouble();
+			minTime = reader.nextDouble();
+			maxTime = reader.nextDouble();
+			minX = reader.nextDouble();
+			maxX = reader.nextDouble();
+			minY = reader.nextDouble();
+			maxY = reader.nextDouble();
 		} catch (Exception e) {
-			throw new SettingsError("Invalid offset line '" + offsets + "'");
+			throw new SettingsError("Invalid offset line '" + reader.line() +
+					"'");
 		}
-		finally {
-			if (lineScan != null) {
-				lineScan.close();
-			}
+
+		nextLine();
+	}
+
+	/**
+	 * Moves the reader to the next line
+	 * @return True if there was a next line
+	 * @throws SettingsError if reading fails
+	 */
+	private boolean nextLine() {
+		try {
+			return reader.nextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Reading external movement input failed",
+					e);
 		}
+	}
 
-		lastLine = scanner.nextLine();
+	/**
+	 * Returns true if there is at least one more line after the current line
+	 * @throws SettingsError if reading fails
+	 */
+	private boolean hasNextLine() {
+		try {
+			return reader.hasNextLine();
+		} catch (IOException e) {
+			throw new SettingsError("Reading external movement input failed",
+					e);
+		}
 	}
 
 	/**
@@ -108,15 +140,23 @@ public class ExternalMovementReader {
 		ArrayList<Tuple<String, Coord>> moves =
 			new ArrayList<Tuple<String, Coord>>();
 
-		if (!scanner.hasNextLine()) {
+		if (!hasNextLine()) {
 			return moves;
 		}
 
-		Scanner lineScan = new Scanner(lastLine);
-		double time = lineScan.nextDouble();
-		String id = lineScan.next();
-		double x = lineScan.nextDouble();
-		double y = lineScan.nextDouble();
+		double time;
+		String id;
+		double x;
+		double y;
+		try {
+			reader.rewindLine();
+			time = reader.nextDouble();
+			id = reader.nextToken();
+			x = reader.nextDouble();
+			y = reader.nextDouble();
+		} catch (Exception e) {
+			throw new SettingsError("Invalid line '" + reader.line() + "'");
+		}
 
 		if (normalize) {
 			time -= minTime;
@@ -126,28 +166,24 @@ public class ExternalMovementReader {
 
 		lastTimeStamp = time;
 
-		while (scanner.hasNextLine() && lastTimeStamp == time) {
-			lastLine = scanner.nextLine();
+		while (hasNextLine() && lastTimeStamp == time) {
+			nextLine();
 
-			if (lastLine.trim().length() == 0 ||
-					lastLine.startsWith(COMMENT_PREFIX)) {
+			if (reader.isBlankLine() ||
+					reader.lineStartsWith(COMMENT_PREFIX)) {
 				continue; /* skip empty and comment lines */
 			}
 
 			// add previous line's tuple
 			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
 
-			lineScan = new Scanner(lastLine);
-
 			try {
-				time = lineScan.nextDouble();
-				id = lineScan.next();
-				x = lineScan.nextDouble();
-				y = lineScan.nextDouble();
+				time = reader.nextDouble();
+				id = reader.nextToken();
+				x = reader.nextDouble();
+				y = reader.nextDouble();
 			} catch (Exception e) {
-				throw new SettingsError("Invalid line '" + lastLine + "'");
-			} finally {
-				lineScan.close();
+				throw new SettingsError("Invalid line '" + reader.line() + "'");
 			}
 
 			if (normalize) {
@@ -157,13 +193,22 @@ public class ExternalMovementReader {
 			}
 		}
 
-		if (!scanner.hasNextLine()) {	// add the last tuple of the file
+		if (!hasNextLine()) {	// add the last tuple of the file
 			moves.add(new Tuple<String, Coord>(id, new Coord(x,y)));
 		}
 
 		return moves;
 	}
 
+	/**
+	 * Closes the input file. No movements can be read after this.
+	 */
+	public void close() {
+		try {
+			reader.close();
+		} catch (IOException e) {}
+	}
+
 	/**
 	 * Returns the time stamp where the last moves read with
 	 * {@link #readNextMovements()} belong to.
@@ -11,11 +11,13 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Scanner;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -47,7 +49,13 @@ import core.SettingsError;
  *
  * <p>Trace and activity files ending in .zip are assumed to be
  * compressed and will be automatically uncompressed during reading. The whole
- * trace is loaded into memory at once.</p>
+ * trace is loaded into memory at once. The loading can be started on a
+ * background thread in advance with {@link #prefetch(String, String)}.</p>
+ *
+ * <p>For traces that don't fit in memory, the trace and activity files can
+ * be converted to a {@link PathTraceIndex} which is then given as the trace
+ * file (no activity file is needed). The paths of each node are read from
+ * the index when the node needs them.</p>
  *
  * @author teemuk
  *
@@ -56,6 +64,10 @@ public class ExternalPathMovementReader {
 	 // Singletons are evil, but I'm lazy
 	private static Map<String, ExternalPathMovementReader> singletons =
 		new HashMap<String, ExternalPathMovementReader>();
+	/** readers that are being loaded in background */
+	private static Map<String, Prefetcher<ExternalPathMovementReader>>
+		loading = new HashMap<String,
+			Prefetcher<ExternalPathMovementReader>>();
 
 	/**
 	 * Represents a point on the path.
@@ -89,9 +101,13 @@ public class ExternalPathMovementReader {
 	private double maxY;
 	private int	maxID;
 
+	// Index of the paths (if the trace file was an index)
+	private PathTraceIndex index = null;
+
 	/**
 	 * Creates a new reader by parsing the given files and building the internal
-	 * caches.
+	 * caches. If the trace file is a {@link PathTraceIndex}, only the index is
+	 * opened and the activity file is not used.
 	 *
 	 * @param traceFilePath		path to the trace file
 	 * @param activityFilePath	path to the activity file
@@ -100,6 +116,14 @@ public class ExternalPathMovementReader {
 			String activityFilePath) throws IOException {
 		// Open the trace file for reading
 		File inFile = new File(traceFilePath);
+		if (PathTraceIndex.isIndexFile(inFile)) {
+			openIndex(inFile);
+			return;
+		}
+		if (activityFilePath == null) {
+			throw new SettingsError("No activity file for external movement " +
+					"trace " + inFile);
+		}
 		long traceSize = inFile.length();
 		long totalRead = 0;
 		long readSize = 0;
@@ -272,6 +296,9 @@ public class ExternalPathMovementReader {
 	 * @return		full path for the node.
 	 */
 	public List<List<ExternalPathMovementReader.Entry>> getPaths(int ID) {
+		if (this.index != null) {
+			return new IndexedPaths(ID);
+		}
 		return this.paths.get(ID);
 	}
 
@@ -282,9 +309,86 @@ public class ExternalPathMovementReader {
 	 * @return		active times for the node.
 	 */
 	public List<ActiveTime> getActive(int ID) {
+		if (this.index != null) {
+			double[] values = this.index.readActive(ID);
+			List<ActiveTime> times = new ArrayList<ActiveTime>();
+			for (int i = 0; i < values.length; i += 2) {
+				ActiveTime a = new ActiveTime();
+				a.start = values[i];
+				a.end = values[i + 1];
+				if (this.normalize) {
+					a.start -= this.minTime;
+					a.end -= this.minTime;
+				}
+				times.add(a);
+			}
+			return times;
+		}
 		return this.activeTimes.get(ID);
 	}
 
+	/**
+	 * Opens a path trace index and reads the offsets from it
+	 */
+	private void openIndex(File indexFile) throws IOException {
+		this.index = new PathTraceIndex(indexFile);
+		double[] offsets = this.index.getOffsets();
+		this.maxID = this.index.getMaxID();
+		this.minTime = offsets[0];
+		this.maxTime = offsets[1];
+		this.minX = offsets[2];
+		this.maxX = offsets[3];
+		this.minY = offsets[4];
+		this.maxY = offsets[5];
+	}
+
+	/**
+	 * Paths of a node that are read from the index when they are needed. The
+	 * last read path is cached, so the memory use doesn't depend on the
+	 * number of paths.
+	 */
+	private class IndexedPaths extends AbstractList<List<Entry>>
+			implements RandomAccess {
+		private int id;
+		private int size;
+		private int cachedIndex;
+		private List<Entry> cached;
+
+		private IndexedPaths(int id) {
+			this.id = id;
+			this.size = index.getNrofPaths(id);
+			this.cachedIndex = -1;
+		}
+
+		@Override
+		public List<Entry> get(int i) {
+			if (i != this.cachedIndex) {
+				double[] values = index.readPath(this.id, i);
+				List<Entry> path = new ArrayList<Entry>(values.length / 3);
+				for (int j = 0; j < values.length; j += 3) {
+					Entry e = new Entry();
+					e.time = values[j];
+					e.x = values[j + 1];
+					e.y = values[j + 2];
+					if (normalize) {
+						e.time -= minTime;
+						e.x -= minX;
+						e.y -= minY;
+					}
+					path.add(e);
+				}
+				this.cached = path;
+				this.cachedIndex = i;
+			}
+			return this.cached;
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+	}
+
 	/**
 	 * Sets normalizing of read values on/off. If on, values returned by
 	 * readNextMovements() are decremented by minimum values of the
@@ -355,8 +459,15 @@ public class ExternalPathMovementReader {
 	 * @return instance of the reader that has loaded all the paths from the
 	 * 			given trace file.
 	 */
-	public static ExternalPathMovementReader getInstance(String traceFilePath,
-			String activeFilePath) {
+	public static synchronized ExternalPathMovementReader getInstance(
+			String traceFilePath, String activeFilePath) {
+		Prefetcher<ExternalPathMovementReader> p =
+			ExternalPathMovementReader.loading.remove(traceFilePath);
+		if (p != null) { /* wait for the background loading */
+			ExternalPathMovementReader.singletons.put(traceFilePath, p.next());
+			p.close();
+		}
+
 		if (!ExternalPathMovementReader.singletons.containsKey(traceFilePath)) {
 			try {
 				ExternalPathMovementReader.singletons.put(traceFilePath,
@@ -368,4 +479,56 @@ public class ExternalPathMovementReader {
 		}
 		return ExternalPathMovementReader.singletons.get(traceFilePath);
 	}
+
+	/**
+	 * Starts loading the given files on a background thread (unless they
+	 * already have been loaded), so that the loading overlaps with the rest
+	 * of the simulation setup. {@link #getInstance(String, String)} waits
+	 * for the loading to finish.
+	 *
+	 * @param traceFilePath path where the trace file is read from
+	 * @param activeFilePath path where the activity file is read from
+	 */
+	public static synchronized void prefetch(String traceFilePath,
+			String activeFilePath) {
+		if (ExternalPathMovementReader.singletons.containsKey(traceFilePath) ||
+				ExternalPathMovementReader.loading.containsKey(traceFilePath)) {
+			return;
+		}
+		ExternalPathMovementReader.loading.put(traceFilePath,
+				new Prefetcher<ExternalPathMovementReader>(traceFilePath,
+						new LoadSource(traceFilePath, activeFilePath), 2));
+	}
+
+	/**
+	 * Source that loads a reader on the prefetch thread
+	 */
+	private static class LoadSource
+			implements Prefetcher.Source<ExternalPathMovementReader> {
+		private String traceFilePath;
+		private String activeFilePath;
+		private boolean loaded;
+
+		private LoadSource(String traceFilePath, String activeFilePath) {
+			this.traceFilePath = traceFilePath;
+			this.activeFilePath = activeFilePath;
+			this.loaded = false;
+		}
+
+		public ExternalPathMovementReader read() {
+			if (loaded) {
+				return null;
+			}
+			loaded = true;
+			try {
+				return new ExternalPathMovementReader(traceFilePath,
+						activeFilePath);
+			} catch (IOException e) {
+				throw new SettingsError("Couldn't read external movement " +
+						"input file " + traceFilePath, e);
+			}
+		}
+
+		public void close() {}
+	}
 }
@@ -16,6 +16,7 @@ import core.World;
  */
 
 public class MessageDeleteEvent extends MessageEvent {
+	private static final long serialVersionUID = 1L;
 	/** is the delete caused by a drop (not "normal" removing) */
 	private boolean drop;
 
@@ -51,6 +52,14 @@ public class MessageDeleteEvent extends MessageEvent {
 		}
 	}
 
+	/**
+	 * Returns true if the delete is caused by a drop
+	 * @return true for a drop, false for a "normal" removal
+	 */
+	public boolean isDrop() {
+		return this.drop;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + " [" + fromAddr + "] DELETE";
@@ -12,6 +12,7 @@ import core.World;
  * hosts (start and possible abort or delivery).
  */
 public class MessageRelayEvent extends MessageEvent {
+	private static final long serialVersionUID = 1L;
 	private int stage;
 
 	/** Message relay stage constant for start of sending */
@@ -61,6 +62,14 @@ public class MessageRelayEvent extends MessageEvent {
 		}
 	}
 
+	/**
+	 * Returns the stage of the event
+	 * @return The stage (SENDING, TRANSFERRED, or ABORTED)
+	 */
+	public int getStage() {
+		return this.stage;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString() + " [" + fromAddr + "->" + toAddr + "] " +
@@ -23,6 +23,7 @@ import core.SettingsError;
  * @see MessageEventGenerator
  */
 public class OneToEachMessageGenerator extends MessageEventGenerator {
+	private static final long serialVersionUID = 1L;
 	private List<Integer> toIds;
 
 	public OneToEachMessageGenerator(Settings s) {
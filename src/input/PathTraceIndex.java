@@ -0,0 +1,477 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import core.SettingsError;
+import core.SimError;
+
+/**
+ * <P>
+ * Per-node indexed binary store of a path format external movement trace
+ * (see {@link ExternalPathMovementReader}). The index is created from the
+ * trace and activity files in a preprocessing step:<BR>
+ * <CODE>java input.PathTraceIndex &lt;trace file&gt; &lt;activity file&gt;
+ * &lt;index file&gt;</CODE><BR>
+ * and can then be used as the trace file of the
+ * {@link movement.ExternalPathMovement} model (the activity file is not
+ * needed). Only the node table is kept in memory: the paths of a node are
+ * read from the file when they are needed, so memory use doesn't depend on
+ * the length of the trace.
+ * </P>
+ * <P>
+ * File format (all values big-endian): header with the {@link #MAGIC}
+ * bytes, format version (int), position of the node table (long), maxID
+ * (int) and minTime, maxTime, minX, maxX, minY and maxY (doubles, as in the
+ * header of the trace file). The data of every node follows the header:
+ * activity times (start and end doubles), paths (number of points as an
+ * int followed by time, x and y doubles of every point) and the positions
+ * of the paths (longs). The node table contains for every node ID the
+ * position of its activity times (long), their number (int), the position
+ * of the path positions (long) and the number of paths (int). All values
+ * are stored as they were in the original files (not normalized).
+ * </P>
+ */
+public class PathTraceIndex {
+	/** The bytes in the start of every path trace index file */
+	public static final byte[] MAGIC =
+		"ONEpathi".getBytes(StandardCharsets.US_ASCII);
+	/** Version of the file format */
+	public static final int VERSION = 1;
+	/** Size of the file header (bytes) */
+	private static final int HEADER_SIZE = MAGIC.length + 4 + 8 + 4 + 6 * 8;
+	/** Position of the node table position in the header */
+	private static final int TABLE_POS_OFFSET = MAGIC.length + 4;
+	/** Size of one node table entry (bytes) */
+	private static final int NODE_ENTRY_SIZE = 8 + 4 + 8 + 4;
+	/** Size of one path point (bytes) */
+	private static final int POINT_SIZE = 3 * 8;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int maxID;
+	/** trace file header values (minTime, maxTime, minX, maxX, minY, maxY) */
+	private double[] offsets;
+
+	/** node table */
+	private long[] activePos;
+	private int[] nrofActive;
+	private long[] pathTablePos;
+	private int[] nrofPaths;
+
+	/**
+	 * Opens an index file and reads its node table
+	 * @param indexFile The file
+	 * @throws IOException if reading fails
+	 * @throws SettingsError if the file is not a valid index file
+	 */
+	public PathTraceIndex(File indexFile) throws IOException {
+		this.file = new RandomAccessFile(indexFile, "r");
+		this.channel = file.getChannel();
+
+		ByteBuffer header = read(0, HEADER_SIZE);
+		if (!hasMagic(header)) {
+			throw new SettingsError("Invalid path trace index file " +
+					indexFile.getAbsolutePath());
+		}
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new SettingsError("Unsupported path trace index version " +
+					version + " in " + indexFile.getAbsolutePath());
+		}
+		long tablePos = header.getLong();
+		this.maxID = header.getInt();
+		this.offsets = new double[6];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = header.getDouble();
+		}
+
+		int nrofNodes = maxID + 1;
+		this.activePos = new long[nrofNodes];
+		this.nrofActive = new int[nrofNodes];
+		this.pathTablePos = new long[nrofNodes];
+		this.nrofPaths = new int[nrofNodes];
+		ByteBuffer table = read(tablePos, (long)nrofNodes * NODE_ENTRY_SIZE);
+		for (int i = 0; i < nrofNodes; i++) {
+			activePos[i] = table.getLong();
+			nrofActive[i] = table.getInt();
+			pathTablePos[i] = table.getLong();
+			nrofPaths[i] = table.getInt();
+		}
+	}
+
+	/**
+	 * Returns the largest node ID of the trace
+	 * @return The largest node ID
+	 */
+	public int getMaxID() {
+		return this.maxID;
+	}
+
+	/**
+	 * Returns the values of the trace file's header line
+	 * @return minTime, maxTime, minX, maxX, minY and maxY
+	 */
+	public double[] getOffsets() {
+		return this.offsets.clone();
+	}
+
+	/**
+	 * Returns the number of paths of a node
+	 * @param id ID of the node
+	 * @return The number of paths
+	 */
+	public int getNrofPaths(int id) {
+		return this.nrofPaths[id];
+	}
+
+	/**
+	 * Reads a path of a node
+	 * @param id ID of the node
+	 * @param index Index of the path
+	 * @return The time, x and y values of the points of the path
+	 * (interleaved)
+	 */
+	public double[] readPath(int id, int index) {
+		if (index < 0 || index >= this.nrofPaths[id]) {
+			throw new IndexOutOfBoundsException("Path " + index + " of node " +
+					id + " (" + this.nrofPaths[id] + " paths)");
+		}
+		try {
+			long pos = read(pathTablePos[id] + 8L * index, 8).getLong();
+			int nrofPoints = read(pos, 4).getInt();
+			ByteBuffer data = read(pos + 4, (long)nrofPoints * POINT_SIZE);
+			double[] values = new double[3 * nrofPoints];
+			data.asDoubleBuffer().get(values);
+			return values;
+		} catch (IOException e) {
+			throw new SimError("Reading path trace index failed", e);
+		}
+	}
+
+	/**
+	 * Reads the activity times of a node
+	 * @param id ID of the node
+	 * @return The start and end times of the activity periods (interleaved)
+	 */
+	public double[] readActive(int id) {
+		try {
+			ByteBuffer data = read(activePos[id], 16L * nrofActive[id]);
+			double[] values = new double[2 * nrofActive[id]];
+			data.asDoubleBuffer().get(values);
+			return values;
+		} catch (IOException e) {
+			throw new SimError("Reading path trace index failed", e);
+		}
+	}
+
+	/**
+	 * Closes the index file
+	 */
+	public void close() {
+		try {
+			this.file.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Reads bytes from the file. Uses positional reads, so the index can be
+	 * read from several threads.
+	 */
+	private ByteBuffer read(long pos, long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new SimError("Too large block in path trace index");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int)length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, pos + buffer.position()) < 0) {
+				throw new SimError("Path trace index file is truncated");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Checks if the given file is a path trace index file
+	 * @param file The file to check
+	 * @return True if the file starts with the {@link #MAGIC} bytes
+	 */
+	public static boolean isIndexFile(File file) {
+		try {
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			try {
+				byte[] start = new byte[MAGIC.length];
+				f.readFully(start);
+				return hasMagic(ByteBuffer.wrap(start));
+			} finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			return false; // read failed -> not an index file
+		}
+	}
+
+	private static boolean hasMagic(ByteBuffer buffer) {
+		byte[] start = new byte[MAGIC.length];
+		buffer.get(start);
+		return Arrays.equals(MAGIC, start);
+	}
+
+	/**
+	 * Creates an index from path trace and activity files. The paths are
+	 * first written to a temporary file in the order they are in the trace
+	 * and then copied to the index node by node, so only the positions of
+	 * the paths and the activity times are kept in memory.
+	 * @param traceFile The trace file (can be compressed)
+	 * @param activityFile The activity file (can be compressed)
+	 * @param indexFile The index file to create
+	 * @throws IOException if reading or writing fails
+	 * @throws SettingsError if the trace or activity file is invalid
+	 */
+	public static void create(File traceFile, File activityFile,
+			File indexFile) throws IOException {
+		TokenReader trace = new TokenReader(traceFile);
+		if (!trace.nextLine()) {
+			throw new SettingsError("No offset line found.");
+		}
+		int maxID;
+		double[] offsets = new double[6];
+		try {
+			maxID = trace.nextInt();
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = trace.nextDouble();
+			}
+		} catch (RuntimeException e) {
+			throw new SettingsError("Invalid offset line '" + trace.line() +
+					"'");
+		}
+
+		/* positions of the paths of each node in the temporary file */
+		LongList[] paths = new LongList[maxID + 1];
+		File tmp = File.createTempFile(indexFile.getName(), ".tmp",
+				indexFile.getAbsoluteFile().getParentFile());
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			long pos = 0;
+			double[] points = new double[3 * 64];
+			while (trace.nextLine()) {
+				if (trace.isBlankLine()) {
+					continue; // Skip empty lines
+				}
+				int id = nodeId(trace, maxID);
+				int n = 0;
+				while (trace.hasNextToken()) {
+					if (n + 3 > points.length) {
+						points = Arrays.copyOf(points, 2 * points.length);
+					}
+					parsePoint(trace, points, n);
+					n += 3;
+				}
+
+				if (paths[id] == null) {
+					paths[id] = new LongList();
+				}
+				paths[id].add(pos);
+				out.writeInt(n / 3);
+				for (int i = 0; i < n; i++) {
+					out.writeDouble(points[i]);
+				}
+				pos += 4 + 8L * n;
+			}
+			trace.close();
+			out.close();
+
+			DoubleList[] active = readActivity(activityFile, maxID);
+			writeIndex(indexFile, tmp, maxID, offsets, paths, active);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static int nodeId(TokenReader reader, int maxID) {
+		int id;
+		try {
+			id = reader.nextInt();
+		} catch (RuntimeException e) {
+			throw new SettingsError("Invalid line '" + reader.line() + "'");
+		}
+		if (id < 0 || id > maxID) {
+			throw new SettingsError("Invalid node ID " + id + " (maxID is " +
+					maxID + ") on line '" + reader.line() + "'");
+		}
+		return id;
+	}
+
+	/**
+	 * Parses a "time,x,y" data point to the array
+	 */
+	private static void parsePoint(TokenReader reader, double[] points,
+			int index) {
+		String dataPoint = reader.nextToken();
+		int d1 = dataPoint.indexOf(',');
+		int d2 = dataPoint.indexOf(',', d1+1);
+		try {
+			points[index] = Double.parseDouble(dataPoint.substring(0, d1));
+			points[index + 1] = Double.parseDouble(
+					dataPoint.substring(d1+1, d2));
+			points[index + 2] = Double.parseDouble(dataPoint.substring(d2+1));
+		} catch (RuntimeException e) {
+			throw new SettingsError("Invalid data point '" + dataPoint +
+					"' on line '" + reader.line() + "'");
+		}
+	}
+
+	private static DoubleList[] readActivity(File activityFile, int maxID)
+			throws IOException {
+		DoubleList[] active = new DoubleList[maxID + 1];
+		TokenReader reader = new TokenReader(activityFile);
+		try {
+			while (reader.nextLine()) {
+				if (reader.isBlankLine()) {
+					continue;
+				}
+				int id = nodeId(reader, maxID);
+				if (active[id] == null) {
+					active[id] = new DoubleList();
+				}
+				try {
+					active[id].add(reader.nextDouble());
+					active[id].add(reader.nextDouble());
+				} catch (RuntimeException e) {
+					throw new SettingsError("Invalid line '" + reader.line() +
+							"'");
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return active;
+	}
+
+	private static void writeIndex(File indexFile, File pathsFile, int maxID,
+			double[] offsets, LongList[] paths, DoubleList[] active)
+			throws IOException {
+		int nrofNodes = maxID + 1;
+		long[] activePos = new long[nrofNodes];
+		long[] pathTablePos = new long[nrofNodes];
+
+		RandomAccessFile in = new RandomAccessFile(pathsFile, "r");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(indexFile)));
+		long pos;
+		try {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(0); /* node table position; written last */
+			out.writeInt(maxID);
+			for (double d : offsets) {
+				out.writeDouble(d);
+			}
+			pos = HEADER_SIZE;
+
+			byte[] buffer = new byte[POINT_SIZE * 64];
+			for (int id = 0; id < nrofNodes; id++) {
+				activePos[id] = pos;
+				for (int i = 0; active[id] != null && i < active[id].size;
+						i++) {
+					out.writeDouble(active[id].values[i]);
+					pos += 8;
+				}
+
+				int n = paths[id] == null ? 0 : paths[id].size;
+				long[] pathPos = new long[n];
+				for (int i = 0; i < n; i++) {
+					pathPos[i] = pos;
+					in.seek(paths[id].values[i]);
+					int nrofPoints = in.readInt();
+					int length = nrofPoints * POINT_SIZE;
+					if (length > buffer.length) {
+						buffer = new byte[length];
+					}
+					in.readFully(buffer, 0, length);
+					out.writeInt(nrofPoints);
+					out.write(buffer, 0, length);
+					pos += 4 + length;
+				}
+
+				pathTablePos[id] = pos;
+				for (int i = 0; i < n; i++) {
+					out.writeLong(pathPos[i]);
+					pos += 8;
+				}
+			}
+
+			for (int id = 0; id < nrofNodes; id++) {
+				out.writeLong(activePos[id]);
+				out.writeInt(active[id] == null ? 0 : active[id].size / 2);
+				out.writeLong(pathTablePos[id]);
+				out.writeInt(paths[id] == null ? 0 : paths[id].size);
+			}
+		} finally {
+			out.close();
+			in.close();
+		}
+
+		RandomAccessFile f = new RandomAccessFile(indexFile, "rw");
+		try {
+			f.seek(TABLE_POS_OFFSET);
+			f.writeLong(pos);
+		} finally {
+			f.close();
+		}
+	}
+
+	/** Growable list of longs */
+	private static class LongList {
+		private long[] values = new long[4];
+		private int size = 0;
+
+		private void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/** Growable list of doubles */
+	private static class DoubleList {
+		private double[] values = new double[4];
+		private int size = 0;
+
+		private void add(double value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, 2 * size);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * Creates an index from path trace and activity files.
+	 * @param args The trace, activity and index file paths
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: java input.PathTraceIndex " +
+					"<trace file> <activity file> <index file>");
+			System.exit(1);
+		}
+		create(new File(args[0]), new File(args[1]), new File(args[2]));
+		System.out.println("Wrote path trace index " + args[2]);
+	}
+}
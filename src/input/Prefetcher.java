@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import core.SimError;
+
+/**
+ * Reads input ahead on a background thread. The items read from a
+ * {@link Source} are put to a bounded queue, so reading (I/O and parsing)
+ * of the next items overlaps with the processing of the previous ones on
+ * the simulation thread and at most the given number of items is kept in
+ * memory. The items are returned in the order they were read, so the
+ * results don't depend on whether prefetching is used.
+ * <P>
+ * Exceptions thrown by the source are thrown from {@link #next()} at the
+ * point where the failed item would have been returned. The source is
+ * closed when all of its items have been read, the prefetcher is closed,
+ * or the prefetcher is garbage collected without being closed (e.g., when
+ * a simulation ends before all the input was used).
+ * </P>
+ * @param <T> Type of the items
+ */
+public class Prefetcher<T> {
+	/** how often (milliseconds) a blocked reader thread checks if the
+	 * prefetcher is still in use */
+	private static final long POLL_INTERVAL = 1000;
+	/** marker of the end of the items in the queue */
+	private static final Object END = new Object();
+
+	/**
+	 * Source of the prefetched items. The methods are called on the reader
+	 * thread; the source must not be used from other threads after the
+	 * prefetcher has been created.
+	 * @param <T> Type of the items
+	 */
+	public interface Source<T> {
+		/**
+		 * Reads the next item
+		 * @return The item or null if there are no more items
+		 */
+		public T read();
+
+		/**
+		 * Closes the source. Called when no more items will be read.
+		 */
+		public void close();
+	}
+
+	private BlockingQueue<Object> queue;
+	private Thread thread;
+	private boolean finished;
+
+	/**
+	 * Creates a prefetcher and starts reading the source
+	 * @param name Name of the input (used in the name of the thread)
+	 * @param source The source of the items
+	 * @param depth Maximum number of items read ahead (at least 1)
+	 */
+	public Prefetcher(String name, Source<T> source, int depth) {
+		this.queue = new ArrayBlockingQueue<Object>(Math.max(depth, 1));
+		this.finished = false;
+		/* the reader must not refer to this object so that this can be
+		 * garbage collected while the reader is blocked */
+		Reader<T> reader = new Reader<T>(source, this.queue,
+				new WeakReference<Prefetcher<T>>(this));
+		this.thread = new Thread(reader, "Prefetch " + name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Returns the next item. Blocks until the item has been read.
+	 * @return The next item or null if there are no more items
+	 * @throws RuntimeException (or Error) thrown by the source when it read
+	 * the item
+	 */
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (this.finished) {
+			return null;
+		}
+
+		Object item;
+		try {
+			item = this.queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimError("Interrupted while waiting for input", e);
+		}
+
+		if (item == END) {
+			this.finished = true;
+			return null;
+		}
+		if (item instanceof Failure) {
+			this.finished = true;
+			Throwable t = ((Failure)item).cause;
+			if (t instanceof Error) {
+				throw (Error)t;
+			}
+			throw (RuntimeException)t;
+		}
+		return (T)item;
+	}
+
+	/**
+	 * Stops reading and closes the source. Items that were read ahead are
+	 * discarded.
+	 */
+	public void close() {
+		this.finished = true;
+		this.thread.interrupt();
+		this.queue.clear();
+	}
+
+	/**
+	 * Exception thrown by the source (in the queue)
+	 */
+	private static class Failure {
+		private Throwable cause;
+
+		private Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
+	/**
+	 * Reads the items from the source to the queue (the body of the reader
+	 * thread)
+	 */
+	private static class Reader<T> implements Runnable {
+		private Source<T> source;
+		private BlockingQueue<Object> queue;
+		private WeakReference<Prefetcher<T>> owner;
+
+		private Reader(Source<T> source, BlockingQueue<Object> queue,
+				WeakReference<Prefetcher<T>> owner) {
+			this.source = source;
+			this.queue = queue;
+			this.owner = owner;
+		}
+
+		public void run() {
+			try {
+				Object item;
+				do {
+					try {
+						item = source.read();
+						if (item == null) {
+							item = END;
+						}
+					} catch (RuntimeException e) {
+						item = new Failure(e);
+					} catch (Error e) {
+						item = new Failure(e);
+					}
+
+					while (!queue.offer(item, POLL_INTERVAL,
+							TimeUnit.MILLISECONDS)) {
+						if (owner.get() == null) {
+							return; /* nobody will read the items */
+						}
+					}
+				} while (item != END && !(item instanceof Failure));
+			} catch (InterruptedException e) {
+				/* closed */
+			} finally {
+				source.close();
+			}
+		}
+	}
+}
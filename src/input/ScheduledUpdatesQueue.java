@@ -4,25 +4,41 @@
  */
 package input;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import util.DoubleHashSet;
 
 /**
  * Event queue where simulation objects can request an update to happen
  * at the specified simulation time. Multiple updates at the same time
  * are merged to a single update.
+ * <P>
+ * The update times are kept in a binary min-heap of primitive doubles, so
+ * adding an update and taking the next one are O(log n) operations.
+ * The times that are in the heap are also kept in a hash set of primitive
+ * doubles so that duplicate requests are dropped already when they are
+ * added, without boxing the times.
+ * </P>
  */
-public class ScheduledUpdatesQueue implements EventQueue {
-	/** Time of the event (simulated seconds) */
-	private ExternalEvent nextEvent;
-	private List<ExternalEvent> updates;
+public class ScheduledUpdatesQueue implements EventQueue, Serializable {
+	private static final long serialVersionUID = 1L;
+	/** Initial capacity of the heap */
+	private static final int INITIAL_CAPACITY = 16;
+	/** Update times (simulated seconds) in heap order */
+	private double[] times;
+	/** Number of update times in the heap */
+	private int size;
+	/** The update times that are in the heap */
+	private DoubleHashSet pending;
 
 	/**
 	 * Constructor. Creates an empty update queue.
 	 */
 	public ScheduledUpdatesQueue(){
-		this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		this.updates = new ArrayList<ExternalEvent>();
+		this.times = new double[INITIAL_CAPACITY];
+		this.size = 0;
+		this.pending = new DoubleHashSet();
 	}
 
 	/**
@@ -31,16 +47,11 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event
 	 */
 	public ExternalEvent nextEvent() {
-		ExternalEvent event = this.nextEvent;
-
-		if (this.updates.size() == 0) {
-			this.nextEvent = new ExternalEvent(Double.MAX_VALUE);
-		}
-		else {
-			this.nextEvent = this.updates.remove(0);
+		if (this.size == 0) {
+			return new ExternalEvent(Double.MAX_VALUE);
 		}
 
-		return event;
+		return new ExternalEvent(removeFirst());
 	}
 
 	/**
@@ -49,7 +60,7 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @return the next scheduled event's time
 	 */
 	public double nextEventsTime() {
-		return this.nextEvent.getTime();
+		return this.size == 0 ? Double.MAX_VALUE : this.times[0];
 	}
 
 	/**
@@ -57,47 +68,112 @@ public class ScheduledUpdatesQueue implements EventQueue {
 	 * @param simTime The time when the update should happen
 	 */
 	public void addUpdate(double simTime) {
-		ExternalEvent ee = new ExternalEvent(simTime);
+		if (!this.pending.add(simTime)) {
+			return; // this update is already requested
+		}
 
-		if (ee.compareTo(nextEvent) == 0) { // this event is already next
+		ensureCapacity(this.size + 1);
+		this.times[this.size] = simTime;
+		siftUp(this.size);
+		this.size++;
+	}
+
+	/**
+	 * Adds update requests for all the given times. Large batches are
+	 * added in linear time by rebuilding the heap.
+	 * @param simTimes The times when the updates should happen
+	 */
+	public void addUpdates(double[] simTimes) {
+		if (simTimes.length < this.size) {
+			for (double time : simTimes) {
+				addUpdate(time);
+			}
 			return;
 		}
-		else if (this.nextEvent.getTime() > simTime) { // new nextEvent
-			putToQueue(this.nextEvent); // put the old nextEvent back to q
-			this.nextEvent = ee;
+
+		ensureCapacity(this.size + simTimes.length);
+		for (double time : simTimes) {
+			if (this.pending.add(time)) {
+				this.times[this.size++] = time;
+			}
+		}
+
+		for (int i = this.size / 2 - 1; i >= 0; i--) {
+			siftDown(i);
 		}
-		else { // given event happens later..
-			putToQueue(ee);
+	}
+
+	/**
+	 * Removes and returns the first (earliest) time in the heap
+	 * @return The removed time
+	 */
+	private double removeFirst() {
+		double first = this.times[0];
+		this.pending.remove(first);
+		this.size--;
+		if (this.size > 0) {
+			this.times[0] = this.times[this.size];
+			siftDown(0);
 		}
+		return first;
 	}
 
 	/**
-	 * Puts a event to the queue in the right place
-	 * @param ee The event to put to the queue
+	 * Moves the time at the given index up in the heap until its parent is
+	 * not later than it
 	 */
-	private void putToQueue(ExternalEvent ee) {
-		double eeTime = ee.getTime();
+	private void siftUp(int index) {
+		double time = this.times[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (this.times[parent] <= time) {
+				break;
+			}
+			this.times[index] = this.times[parent];
+			index = parent;
+		}
+		this.times[index] = time;
+	}
 
-		for (int i=0, n=this.updates.size(); i<n; i++) {
-			double time = updates.get(i).getTime();
-			if (time == eeTime) {
-				return; // update with the given time exists -> no need for new
+	/**
+	 * Moves the time at the given index down in the heap until neither of
+	 * its children is earlier than it
+	 */
+	private void siftDown(int index) {
+		double time = this.times[index];
+		int half = this.size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < this.size &&
+					this.times[child + 1] < this.times[child]) {
+				child++;
 			}
-			else if (eeTime < time) {
-				this.updates.add(i, ee);
-				return;
+			if (time <= this.times[child]) {
+				break;
 			}
+			this.times[index] = this.times[child];
+			index = child;
 		}
+		this.times[index] = time;
+	}
 
-		/* all existing updates are earlier -> add to the end of the list */
-		this.updates.add(ee);
+	/**
+	 * Grows the heap array if it can't hold the given number of times
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > this.times.length) {
+			this.times = Arrays.copyOf(this.times,
+					Math.max(capacity, 2 * this.times.length));
+		}
 	}
 
 	public String toString() {
-		String times = "updates @ " + this.nextEvent.getTime();
+		double[] sorted = Arrays.copyOf(this.times, this.size);
+		Arrays.sort(sorted);
 
-		for (ExternalEvent ee : this.updates) {
-			times += ", " + ee.getTime();
+		String times = "updates @ " + nextEventsTime();
+		for (int i = 1; i < sorted.length; i++) {
+			times += ", " + sorted[i];
 		}
 
 		return times;
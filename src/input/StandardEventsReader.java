@@ -4,17 +4,11 @@
  */
 package input;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.Integer;
-import java.lang.NumberFormatException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.regex.Pattern;
 
 import core.SimError;
 
@@ -43,6 +37,9 @@ import core.SimError;
  * message ID for referring to all messages the node has in message buffer
  * (i.e., to delete all messages).
  * </P>
+ * <P> The file is read with a {@link TokenReader}, so it can also be gzip or
+ * zip compressed.
+ * </P>
  */
 public class StandardEventsReader implements ExternalEventsReader {
 	/** Identifier of message creation event ({@value}) */
@@ -66,15 +63,19 @@ public class StandardEventsReader implements ExternalEventsReader {
 	/** Message identifier to use to refer to all messages ({@value}) */
 	public static final String ALL_MESSAGES_ID = "*";
 
-	//private Scanner scanner;
-	private BufferedReader reader;
+	/** Prefix of comment lines ({@value}) */
+	public static final String COMMENT_PREFIX = "#";
+
+	private TokenReader reader;
 
 	public StandardEventsReader(File eventsFile){
 		try {
-			//this.scanner = new Scanner(eventsFile);
-			this.reader = new BufferedReader(new FileReader(eventsFile));
+			this.reader = new TokenReader(eventsFile);
 		} catch (FileNotFoundException e) {
 			throw new SimError(e.getMessage(),e);
+		} catch (IOException e) {
+			throw new SimError("Can't open external event file " +
+					eventsFile, e);
 		}
 	}
 
@@ -82,145 +83,126 @@ public class StandardEventsReader implements ExternalEventsReader {
 	public List<ExternalEvent> readEvents(int nrof) {
 		ArrayList<ExternalEvent> events = new ArrayList<ExternalEvent>(nrof);
 		int eventsRead = 0;
-		// skip empty and comment lines
-		Pattern skipPattern = Pattern.compile("(#.*)|(^\\s*$)");
 
-		String line;
-		try {
-			line = this.reader.readLine();
-		} catch (IOException e1) {
-			throw new SimError("Reading from external event file failed.");
-		}
-		while (eventsRead < nrof && line != null) {
-			Scanner lineScan = new Scanner(line);
-			if (skipPattern.matcher(line).matches()) {
-				// skip empty and comment lines
-				try {
-					line = this.reader.readLine();
-				} catch (IOException e) {
-					lineScan.close();
-					throw new SimError("Reading from external event file " +
-							"failed.");
-				}
-				continue;
+		while (eventsRead < nrof && nextLine()) {
+			if (reader.lineStartsWith(COMMENT_PREFIX) || reader.isBlankLine()) {
+				continue; // skip empty and comment lines
 			}
-			
-			double time;
-			String action;
-			String msgId;
-			int hostAddr;
-			int host2Addr;
 
 			try {
-				time = lineScan.nextDouble();
-				action = lineScan.next();
+				events.add(parseEvent());
+				eventsRead++;
+			} catch (Exception e) {
+				throw new SimError("Can't parse external event " +
+						(eventsRead+1) + " from '" + reader.line() + "'", e);
+			}
+		}
 
-				if (action.equals(DROP)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, true));
-				}
-				else if (action.equals(REMOVE)) {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
-					events.add(new MessageDeleteEvent(hostAddr, msgId,
-							time, false));
-				}
-				else if (action.equals(CONNECTION)) {
-					String connEventType;
-					boolean isUp;
-					hostAddr = getHostAddress(lineScan.next());
-					host2Addr = getHostAddress(lineScan.next());
-					connEventType = lineScan.next();
+		return events;
+	}
 
-					String interfaceId = null;
-					if (lineScan.hasNext()) {
-						interfaceId = lineScan.next();
-					}
+	/**
+	 * Moves the reader to the next line
+	 * @return True if there was a next line, false at the end of the file
+	 */
+	private boolean nextLine() {
+		try {
+			return this.reader.nextLine();
+		} catch (IOException e) {
+			throw new SimError("Reading from external event file failed.", e);
+		}
+	}
 
-					if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
-						isUp = true;
-					}
-					else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
-						isUp = false;
-					}
-					else {
-						throw new SimError("Unknown up/down value '" +
-								connEventType + "'");
-					}
+	/**
+	 * Parses an event from the current line of the reader
+	 * @return The event
+	 * @throws Exception if the line is not a valid event
+	 */
+	private ExternalEvent parseEvent() throws Exception {
+		double time = reader.nextDouble();
+		String action = reader.nextToken();
+		String msgId;
+		int hostAddr;
+		int host2Addr;
 
-					ConnectionEvent ce = new ConnectionEvent(hostAddr,
-							host2Addr, interfaceId, isUp, time);
+		if (action.equals(DROP)) {
+			msgId = reader.nextToken();
+			hostAddr = getHostAddress(reader.nextToken());
+			return new MessageDeleteEvent(hostAddr, msgId, time, true);
+		}
+		else if (action.equals(REMOVE)) {
+			msgId = reader.nextToken();
+			hostAddr = getHostAddress(reader.nextToken());
+			return new MessageDeleteEvent(hostAddr, msgId, time, false);
+		}
+		else if (action.equals(CONNECTION)) {
+			boolean isUp;
+			hostAddr = getHostAddress(reader.nextToken());
+			host2Addr = getHostAddress(reader.nextToken());
+			String connEventType = reader.nextToken();
 
-					events.add(ce);
-				}
-				else {
-					msgId = lineScan.next();
-					hostAddr = getHostAddress(lineScan.next());
+			String interfaceId = null;
+			if (reader.hasNextToken()) {
+				interfaceId = reader.nextToken();
+			}
 
-					host2Addr = getHostAddress(lineScan.next());
+			if (connEventType.equalsIgnoreCase(CONNECTION_UP)) {
+				isUp = true;
+			}
+			else if (connEventType.equalsIgnoreCase(CONNECTION_DOWN)) {
+				isUp = false;
+			}
+			else {
+				throw new SimError("Unknown up/down value '" +
+						connEventType + "'");
+			}
 
-					if (action.equals(CREATE)){
-						int size = 0;
+			return new ConnectionEvent(hostAddr, host2Addr, interfaceId,
+					isUp, time);
+		}
 
-						if (lineScan.hasNextInt()){
-							size = lineScan.nextInt();
-						}
-						else if (lineScan.hasNext()){
-							size = convertToInteger(lineScan.next());
-						}else{
-							throw new Exception("Invalid number of columns for CREATE event");
-						}
+		msgId = reader.nextToken();
+		hostAddr = getHostAddress(reader.nextToken());
+		host2Addr = getHostAddress(reader.nextToken());
 
-						int respSize = 0;
-						if (lineScan.hasNextInt()) {
-							respSize = lineScan.nextInt();
-						}
-						else if(lineScan.hasNext()) {
-							respSize = convertToInteger(lineScan.next());
-						}
-						events.add(new MessageCreateEvent(hostAddr, host2Addr,
-								msgId, size, respSize, time));
-					}
-					else {
-						int stage = -1;
-						if (action.equals(SEND)) {
-							stage = MessageRelayEvent.SENDING;
-						}
-						else if (action.equals(DELIVERED)) {
-							stage = MessageRelayEvent.TRANSFERRED;
-						}
-						else if (action.equals(ABORT)) {
-							stage = MessageRelayEvent.ABORTED;
-						}
-						else {
-							throw new SimError("Unknown action '" + action +
-								"' in external events");
-						}
-						events.add(new MessageRelayEvent(hostAddr, host2Addr,
-								msgId, time, stage));
-					}
-				}
-				// discard the newline in the end
-				if (lineScan.hasNextLine()) {
-					lineScan.nextLine(); // TODO: test
-				}
-				eventsRead++;
-				if (eventsRead < nrof) {
-					line = this.reader.readLine();
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-				throw new SimError("Can't parse external event " +
-						(eventsRead+1) + " from '" + line + "'", e);
+		if (action.equals(CREATE)){
+			int size = 0;
+
+			if (reader.hasNextInt()){
+				size = reader.nextInt();
 			}
-			finally {
-				lineScan.close();
+			else if (reader.hasNextToken()){
+				size = convertToInteger(reader.nextToken());
+			}else{
+				throw new Exception("Invalid number of columns for CREATE event");
 			}
+
+			int respSize = 0;
+			if (reader.hasNextInt()) {
+				respSize = reader.nextInt();
+			}
+			else if (reader.hasNextToken()) {
+				respSize = convertToInteger(reader.nextToken());
+			}
+			return new MessageCreateEvent(hostAddr, host2Addr, msgId, size,
+					respSize, time);
 		}
 
-		return events;
+		int stage = -1;
+		if (action.equals(SEND)) {
+			stage = MessageRelayEvent.SENDING;
+		}
+		else if (action.equals(DELIVERED)) {
+			stage = MessageRelayEvent.TRANSFERRED;
+		}
+		else if (action.equals(ABORT)) {
+			stage = MessageRelayEvent.ABORTED;
+		}
+		else {
+			throw new SimError("Unknown action '" + action +
+				"' in external events");
+		}
+		return new MessageRelayEvent(hostAddr, host2Addr, msgId, time, stage);
 	}
 
 	/**
@@ -231,19 +213,27 @@ public class StandardEventsReader implements ExternalEventsReader {
 	 * @throws SimError if no address could be parsed from the id
 	 */
 	private int getHostAddress(String hostId) {
-		String addressPart = "";
-		if (hostId.matches("^\\d+$")) {
-			addressPart = hostId; // host id is only the address
-		}
-		else if (hostId.matches("^\\D+\\d+$")) {
-			String [] parts = hostId.split("\\D");
-			addressPart = parts[parts.length-1]; // last occurence is the addr
+		int digitsStart = hostId.length();
+		while (digitsStart > 0 && isDigit(hostId.charAt(digitsStart - 1))) {
+			digitsStart--; // the address is the numeric suffix
 		}
-		else {
+		if (digitsStart == hostId.length()) {
 			throw new SimError("Invalid host ID '" + hostId + "'");
 		}
+		for (int i = 0; i < digitsStart; i++) {
+			if (isDigit(hostId.charAt(i))) { // digits only in the end
+				throw new SimError("Invalid host ID '" + hostId + "'");
+			}
+		}
+
+		if (digitsStart == 0) {
+			return Integer.parseInt(hostId); // host id is only the address
+		}
+		return Integer.parseInt(hostId.substring(digitsStart));
+	}
 
-		return Integer.parseInt(addressPart);
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
 	}
 
 	public void close() {
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Line and token reader for text input files. Reads the input as bytes to
+ * a reusable buffer and parses the whitespace separated tokens of the
+ * current line directly from the buffer, so reading numbers doesn't create
+ * any objects. Input files that are gzip or zip compressed (detected from
+ * the first bytes of the file) are decompressed transparently; of a zip
+ * file, the first entry is read.
+ * <P>
+ * Lines are separated by "\n" (a "\r" before it is ignored). Tokens are
+ * separated by spaces and tabs. The numbers are parsed the same way as with
+ * {@link Double#parseDouble(String)} and {@link Integer#parseInt(String)}
+ * (with fast paths for simple decimal numbers).
+ * </P>
+ */
+public class TokenReader {
+	/** initial size of the buffer (bytes) */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** exactly representable powers of ten */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	/** largest mantissa of the fast double parsing path (2^53) */
+	private static final long MAX_EXACT = 1L << 53;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private InputStream in;
+	private byte[] buffer;
+	/** number of valid bytes in the buffer */
+	private int limit;
+	/** start and end (exclusive, without the line separator) of the
+	 * current line */
+	private int lineStart;
+	private int lineEnd;
+	/** start of the next line */
+	private int nextStart;
+	/** position of the next token in the current line */
+	private int pos;
+	private boolean eof;
+
+	/**
+	 * Creates a reader for a file. Compressed files are decompressed.
+	 * @param file The file
+	 * @throws IOException if the file can't be opened
+	 */
+	public TokenReader(File file) throws IOException {
+		this(open(file));
+	}
+
+	/**
+	 * Creates a reader for a stream
+	 * @param in The stream to read
+	 */
+	public TokenReader(InputStream in) {
+		this.in = in;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.limit = 0;
+		this.nextStart = 0;
+		this.lineStart = this.lineEnd = this.pos = 0;
+		this.eof = false;
+	}
+
+	/**
+	 * Opens a file for reading. If the file is gzip or zip compressed, the
+	 * returned stream decompresses it.
+	 * @param file The file
+	 * @return The stream
+	 * @throws IOException if the file can't be opened
+	 */
+	public static InputStream open(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file),
+				BUFFER_SIZE);
+		in.mark(4);
+		int b0 = in.read();
+		int b1 = in.read();
+		int b2 = in.read();
+		int b3 = in.read();
+		in.reset();
+
+		if (b0 == 0x1f && b1 == 0x8b) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		}
+		if (b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4) {
+			ZipInputStream zip = new ZipInputStream(in);
+			if (zip.getNextEntry() == null) {
+				zip.close();
+				throw new IOException("Empty zip file " + file);
+			}
+			return zip;
+		}
+		return in;
+	}
+
+	/**
+	 * Moves to the next line
+	 * @return True if there was a next line, false at the end of the input
+	 * @throws IOException if reading fails
+	 */
+	public boolean nextLine() throws IOException {
+		if (!hasNextLine()) {
+			return false;
+		}
+
+		int end = indexOfNewline(this.nextStart);
+		while (end < 0 && !this.eof) {
+			fill();
+			end = indexOfNewline(this.nextStart);
+		}
+
+		this.lineStart = this.nextStart;
+		if (end < 0) { /* last line without a line separator */
+			this.lineEnd = this.limit;
+			this.nextStart = this.limit;
+		}
+		else {
+			this.lineEnd = end;
+			this.nextStart = end + 1;
+		}
+		if (this.lineEnd > this.lineStart &&
+				this.buffer[this.lineEnd - 1] == '\r') {
+			this.lineEnd--;
+		}
+		this.pos = this.lineStart;
+		return true;
+	}
+
+	/**
+	 * Returns true if there is at least one more line in the input (i.e.,
+	 * there is input left after the current line)
+	 * @return True if there are more lines
+	 * @throws IOException if reading fails
+	 */
+	public boolean hasNextLine() throws IOException {
+		if (this.nextStart < this.limit) {
+			return true;
+		}
+		while (!this.eof && this.nextStart >= this.limit) {
+			fill();
+		}
+		return this.nextStart < this.limit;
+	}
+
+	/**
+	 * Moves back to the first token of the current line
+	 */
+	public void rewindLine() {
+		this.pos = this.lineStart;
+	}
+
+	/**
+	 * Returns the current line as a string
+	 * @return the current line
+	 */
+	public String line() {
+		return new String(this.buffer, this.lineStart,
+				this.lineEnd - this.lineStart, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns true if the current line is empty or contains only whitespace
+	 * @return True for a blank line
+	 */
+	public boolean isBlankLine() {
+		for (int i = this.lineStart; i < this.lineEnd; i++) {
+			if (!Character.isWhitespace(this.buffer[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current line starts with the prefix
+	 * @param prefix The prefix (ASCII)
+	 * @return True if the line starts with the prefix
+	 */
+	public boolean lineStartsWith(String prefix) {
+		if (this.lineEnd - this.lineStart < prefix.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (this.buffer[this.lineStart + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the current line has more tokens
+	 * @return True if there are more tokens
+	 */
+	public boolean hasNextToken() {
+		skipSeparators();
+		return this.pos < this.lineEnd;
+	}
+
+	/**
+	 * Returns the next token of the current line
+	 * @return The token
+	 * @throws IllegalStateException if there are no more tokens
+	 */
+	public String nextToken() {
+		int start = tokenStart();
+		return new String(this.buffer, start, this.pos - start,
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns true if the next token of the current line equals the given
+	 * string. Doesn't consume the token.
+	 * @param s The string (ASCII)
+	 * @return True if the next token is the string
+	 */
+	public boolean nextTokenEquals(String s) {
+		skipSeparators();
+		int end = tokenEnd(this.pos);
+		if (end - this.pos != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (this.buffer[this.pos + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the next token of the current line is an integer
+	 * (optional sign followed by digits) in the range of int values
+	 * @return True if the next token can be read with {@link #nextInt()}
+	 */
+	public boolean hasNextInt() {
+		skipSeparators();
+		int end = tokenEnd(this.pos);
+		int i = this.pos;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		if (i == end || end - i > 10) {
+			return false;
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			if (buffer[i] < '0' || buffer[i] > '9') {
+				return false;
+			}
+			value = value * 10 + (buffer[i] - '0');
+		}
+		return negative ? -value >= Integer.MIN_VALUE :
+			value <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Parses the next token of the current line as an integer
+	 * @return The value
+	 * @throws NumberFormatException if the token is not an integer
+	 */
+	public int nextInt() {
+		int start = tokenStart();
+		int end = this.pos;
+		int i = start;
+		boolean negative = false;
+		if (buffer[i] == '-' || buffer[i] == '+') {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		if (i == end || end - i > 9) {
+			return Integer.parseInt(token(start, end)); /* slow path */
+		}
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return Integer.parseInt(token(start, end));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the next token of the current line as a double. Simple decimal
+	 * numbers (at most 15 significant digits, no exponent) are parsed
+	 * directly from the buffer: the digits are read to an integer that is
+	 * divided by a power of ten, which both are exact, so the result is
+	 * correctly rounded like the one of {@link Double#parseDouble(String)}.
+	 * Other numbers are parsed with it.
+	 * @return The value
+	 * @throws NumberFormatException if the token is not a number
+	 */
+	public double nextDouble() {
+		int start = tokenStart();
+		int end = this.pos;
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		boolean hasDigits = false;
+		int digits = 0;
+		int decimals = -1; /* -1 until the decimal point */
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				hasDigits = true;
+				if (mantissa > 0) {
+					digits++; /* significant digits */
+				}
+				if (decimals >= 0) {
+					decimals++;
+				}
+			}
+			else if (b == '.' && decimals < 0) {
+				decimals = 0;
+			}
+			else {
+				break; /* exponent or invalid: slow path */
+			}
+		}
+
+		if (i < end || !hasDigits || digits > 15 ||
+				decimals >= POWERS_OF_TEN.length || mantissa >= MAX_EXACT) {
+			return Double.parseDouble(token(start, end));
+		}
+		double value = mantissa;
+		if (decimals > 0) {
+			value /= POWERS_OF_TEN[decimals];
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Closes the input
+	 * @throws IOException if closing fails
+	 */
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	private String token(int start, int end) {
+		return new String(this.buffer, start, end - start,
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Skips to the end of the next token and returns its start
+	 */
+	private int tokenStart() {
+		skipSeparators();
+		if (this.pos >= this.lineEnd) {
+			throw new IllegalStateException("No more tokens in line '" +
+					line() + "'");
+		}
+		int start = this.pos;
+		this.pos = tokenEnd(start);
+		return start;
+	}
+
+	private int tokenEnd(int from) {
+		int i = from;
+		while (i < this.lineEnd && buffer[i] != ' ' && buffer[i] != '\t') {
+			i++;
+		}
+		return i;
+	}
+
+	private void skipSeparators() {
+		while (this.pos < this.lineEnd &&
+				(buffer[this.pos] == ' ' || buffer[this.pos] == '\t')) {
+			this.pos++;
+		}
+	}
+
+	private int indexOfNewline(int from) {
+		for (int i = from; i < this.limit; i++) {
+			if (this.buffer[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads more input to the buffer. The current line and the rest of the
+	 * buffer are moved to the start of the buffer first and the buffer is
+	 * grown if it is full.
+	 */
+	private void fill() throws IOException {
+		int keep = Math.min(this.lineStart, this.nextStart);
+		if (keep > 0) {
+			System.arraycopy(this.buffer, keep, this.buffer, 0,
+					this.limit - keep);
+			this.limit -= keep;
+			this.lineStart -= keep;
+			this.lineEnd -= keep;
+			this.nextStart -= keep;
+			this.pos -= keep;
+		}
+		if (this.limit == this.buffer.length) {
+			this.buffer = Arrays.copyOf(this.buffer, 2 * this.buffer.length);
+		}
+
+		int n = this.in.read(this.buffer, this.limit,
+				this.buffer.length - this.limit);
+		if (n < 0) {
+			this.eof = true;
+		}
+		else {
+			this.limit += n;
+		}
+	}
+}
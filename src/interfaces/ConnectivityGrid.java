@@ -4,16 +4,20 @@
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
 
-import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
+import core.SimContext;
 import core.SettingsError;
 import core.World;
 
@@ -35,11 +39,18 @@ import core.World;
  * connectivity.
  * </P>
  * <P>
+ * Interfaces are identified by their indexes in the grid and the cells
+ * contain only the indexes. The index of an interface's current cell is
+ * stored in the interface, so updating the locations and visiting the near
+ * interfaces with {@link #visitNearInterfaces} doesn't create any objects.
+ * </P>
+ * <P>
  * <strong>Note:</strong> this class does NOT support negative
  * coordinates. Also, it makes sense to normalize the coordinates to start
  * from zero to conserve memory.
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Cell based optimization cell size multiplier -setting id ({@value}).
@@ -54,16 +65,35 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** initial size of the interface array of the grid */
+	private static final int EXPECTED_INTERFACE_COUNT = 16;
+	/** initial size of the interface index array of a cell */
+	private static final int EXPECTED_CELL_INTERFACE_COUNT = 5;
+	/** visitor used in pair scans */
+	private static final PairVisitor RANGE_CHECKER = new RangeChecker();
+
+	/** interfaces in each cell (by interface indexes; null for cells that
+	 * have never had any interfaces). Cells are indexed row by row. */
+	private int[][] cells;
+	/** number of interfaces in each cell */
+	private int[] cellSizes;
+	/** all interfaces of the grid by their indexes (null for removed) */
+	private NetworkInterface[] interfaces;
+	/** number of interface indexes given so far */
+	private int nrofInterfaces;
+	/** the largest radio range of the interfaces using this grid */
+	private double maxRange;
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-	private static int cellSizeMultiplier;
 
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
+	/** grid objects and settings of each simulation context */
+	private static final SimContext.Key<GridState> state =
+		new SimContext.Key<GridState>(ConnectivityGrid.class, "state") {
+			protected GridState create() {
+				return new GridState();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
@@ -71,45 +101,25 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	public static void reset() {
-		gridobjects = new HashMap<Integer, ConnectivityGrid>();
-
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
-
-		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
-		if (s.contains(CELL_SIZE_MULT_S)) {
-			cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
-		}
-		else {
-			cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
-		}
-		if (cellSizeMultiplier < 1) {
-			throw new SettingsError("Too small value (" + cellSizeMultiplier +
-					") for " + World.OPTIMIZATION_SETTINGS_NS +
-					"." + CELL_SIZE_MULT_S);
-		}
+		state.reset();
 	}
 
 	/**
 	 * Creates a new overlay connectivity grid
+	 * @param maxRange Maximum range of the radios using this grid
 	 * @param cellSize Cell's edge's length (must be larger than the largest
 	 * 	radio coverage's diameter)
 	 */
-	private ConnectivityGrid(int cellSize) {
-		this.rows = worldSizeY/cellSize + 1;
-		this.cols = worldSizeX/cellSize + 1;
+	private ConnectivityGrid(GridState gs, double maxRange, int cellSize) {
+		this.rows = gs.worldSizeY/cellSize + 1;
+		this.cols = gs.worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier
-		this.cells = new GridCell[rows+2][cols+2];
+		this.cells = new int[(rows+2) * (cols+2)][];
+		this.cellSizes = new int[(rows+2) * (cols+2)];
+		this.maxRange = maxRange;
 		this.cellSize = cellSize;
-
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
-		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
 	}
 
 	/**
@@ -121,25 +131,40 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key,
 			double maxRange) {
-		if (gridobjects.containsKey((Integer)key)) {
-			return (ConnectivityGrid)gridobjects.get((Integer)key);
+		GridState gs = state.get();
+		if (gs.gridobjects.containsKey((Integer)key)) {
+			return (ConnectivityGrid)gs.gridobjects.get((Integer)key);
 		} else {
 			ConnectivityGrid newgrid =
-				new ConnectivityGrid((int)Math.ceil(maxRange *
-						cellSizeMultiplier));
-			gridobjects.put((Integer)key,newgrid);
+				new ConnectivityGrid(gs, maxRange, (int)Math.ceil(maxRange *
+						gs.cellSizeMultiplier));
+			gs.gridobjects.put((Integer)key,newgrid);
 			return newgrid;
 		}
 	}
 
 	/**
-	 * Adds a network interface to the overlay grid
+	 * Adds a network interface to the overlay grid (unless it is already
+	 * present). The interface gets an index in this grid and the index of
+	 * its cell is stored in the interface.
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		int index = ni.getOptimizerIndex();
+		if (index >= 0 && index < nrofInterfaces && interfaces[index] == ni) {
+			return; /* already in this grid */
+		}
+
+		if (nrofInterfaces == interfaces.length) {
+			interfaces = Arrays.copyOf(interfaces, 2 * nrofInterfaces);
+		}
+		index = nrofInterfaces++;
+		interfaces[index] = ni;
+		ni.setOptimizerIndex(index);
+
+		int cell = cellOf(ni);
+		addToCell(cell, index);
+		ni.setOptimizerCell(cell);
 	}
 
 	/**
@@ -147,11 +172,15 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int index = ni.getOptimizerIndex();
+		if (index < 0 || index >= nrofInterfaces || interfaces[index] != ni) {
+			return; /* not in this grid */
 		}
-		ginterfaces.remove(ni);
+
+		removeFromCell(ni.getOptimizerCell(), index);
+		interfaces[index] = null;
+		ni.setOptimizerIndex(-1);
+		ni.setOptimizerCell(-1);
 	}
 
 	/**
@@ -169,63 +198,107 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int oldCell = ni.getOptimizerCell();
+		int newCell = cellOf(ni);
 
 		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+			int index = ni.getOptimizerIndex();
+			addToCell(newCell, index);
+			removeFromCell(oldCell, index);
+			ni.setOptimizerCell(newCell);
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells
+	 * Appends an interface index to a cell
+	 * @param cell Index of the cell
+	 * @param index Index of the interface
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	private void addToCell(int cell, int index) {
+		int[] members = cells[cell];
+		int size = cellSizes[cell];
+		if (members == null) {
+			members = cells[cell] = new int[EXPECTED_CELL_INTERFACE_COUNT];
+		}
+		else if (size == members.length) {
+			members = cells[cell] = Arrays.copyOf(members, 2 * size);
+		}
+		members[size] = index;
+		cellSizes[cell] = size + 1;
 	}
 
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Removes an interface index from a cell. The order of the other
+	 * interfaces in the cell is preserved.
+	 * @param cell Index of the cell
+	 * @param index Index of the interface
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void removeFromCell(int cell, int index) {
+		int[] members = cells[cell];
+		int size = cellSizes[cell];
+		for (int i = 0; i < size; i++) {
+			if (members[i] == index) {
+				System.arraycopy(members, i + 1, members, i, size - i - 1);
+				cellSizes[cell] = size - 1;
+				return;
+			}
+		}
+		assert false : "interface " + interfaces[index] +
+			" not found from cell " + cell;
 	}
 
 	/**
-	 * Get the cell having the specific coordinates
-	 * @param c Coordinates
-	 * @return The cell
+	 * Get the index of the cell where an interface is located
+	 * @param ni The interface
+	 * @return Index of the cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellOf(NetworkInterface ni) {
 		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
+		int row = (int)(ni.getY()/cellSize) + 1;
+		int col = (int)(ni.getX()/cellSize) + 1;
 
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " +
-		c + " is out of world's bounds";
+		ni.getLocation() + " is out of world's bounds";
+
+		return row * (cols + 2) + col;
+	}
 
-		return this.cells[row][col];
+	/**
+	 * Returns the connectivity grids of the current simulation context
+	 * @return The grids
+	 */
+	public static Collection<ConnectivityGrid> getAllGrids() {
+		return Collections.unmodifiableCollection(
+				state.get().gridobjects.values());
+	}
+
+	/**
+	 * Returns the edge length of the grid's cells
+	 * @return The cell size
+	 */
+	public int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Returns the maximum radio range the grid was created for
+	 * @return The maximum range
+	 */
+	public double getMaxRange() {
+		return this.maxRange;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		List<NetworkInterface> all = new ArrayList<NetworkInterface>();
+		for (int i = 0; i < nrofInterfaces; i++) {
+			if (interfaces[i] != null) {
+				all.add(interfaces[i]);
+			}
+		}
+		return all;
 	}
 
 	/**
@@ -236,88 +309,210 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
-		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
-
-		if (loc != null) {
-			GridCell[] neighbors =
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
 			}
-		}
-
+		});
 		return niList;
 	}
 
+	/**
+	 * Visits all interfaces that are in the same or neighboring cells as
+	 * the given interface (including the interface itself). The cells are
+	 * visited row by row. Doesn't create any objects.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		int index = ni.getOptimizerIndex();
+		if (index < 0 || index >= nrofInterfaces || interfaces[index] != ni) {
+			return; /* not in this grid */
+		}
+
+		int center = cellOf(ni);
+		int rowLength = cols + 2;
+		for (int row = center - rowLength; row <= center + rowLength;
+				row += rowLength) {
+			for (int cell = row - 1; cell <= row + 1; cell++) {
+				int[] members = cells[cell];
+				int size = cellSizes[cell];
+				for (int i = 0; i < size; i++) {
+					visitor.visit(interfaces[members[i]]);
+				}
+			}
+		}
+	}
 
 	/**
-	 * Returns a string representation of the ConnectivityCells object
-	 * @return a string representation of the ConnectivityCells object
+	 * Does a pair scan (see {@link NetworkInterface#startPairScan()}) for
+	 * the interfaces of all the connectivity grids of the current
+	 * simulation context
 	 */
-	public String toString() {
-		return getClass().getSimpleName() + " of size " +
-			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	public static void scanAllPairs() {
+		for (ConnectivityGrid grid : state.get().gridobjects.values()) {
+			grid.scanPairs();
+		}
 	}
 
 	/**
-	 * A single cell in the cell grid. Contains the interfaces that are
-	 * currently in that part of the grid.
+	 * Calls the visitor for every pair of interfaces in the same or
+	 * neighboring cells of all the connectivity grids of the current
+	 * simulation context
+	 * @param visitor The visitor
+	 * @see #visitPairs(PairVisitor)
 	 */
-	public class GridCell {
-		// how large array is initially chosen
-		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
-
-		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
+	public static void visitAllPairs(PairVisitor visitor) {
+		for (ConnectivityGrid grid : state.get().gridobjects.values()) {
+			grid.visitPairs(visitor);
 		}
+	}
 
-		/**
-		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
-		 */
-		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
+	/**
+	 * Finds all the pairs of interfaces in this grid that are within range
+	 * of each other and reports them to the interfaces (see
+	 * {@link NetworkInterface#startPairScan()}). Distances are compared
+	 * squared. The interfaces' locations in the grid must be up to date.
+	 * @see #visitPairs(PairVisitor)
+	 */
+	public void scanPairs() {
+		for (int i = 0; i < nrofInterfaces; i++) {
+			if (interfaces[i] != null) {
+				interfaces[i].startPairScan();
+			}
 		}
 
-		/**
-		 * Adds an interface to this cell
-		 * @param ni The interface to add
-		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
+		visitPairs(RANGE_CHECKER);
+
+		for (int i = 0; i < nrofInterfaces; i++) {
+			if (interfaces[i] != null) {
+				interfaces[i].finishPairScan();
+			}
 		}
+	}
 
-		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
-		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
+	/**
+	 * Calls the visitor for every pair of interfaces in the same or
+	 * neighboring cells of this grid. Every pair is visited exactly once
+	 * using a half-shell stencil: interfaces of the same cell are paired in
+	 * the order of their indexes and every cell is paired only with its
+	 * east, south-west, south and south-east neighbors. The interfaces'
+	 * locations in the grid must be up to date.
+	 * @param visitor The visitor
+	 */
+	public void visitPairs(PairVisitor visitor) {
+		int rowLength = cols + 2;
+		for (int i = 0; i < nrofInterfaces; i++) {
+			NetworkInterface ni = interfaces[i];
+			if (ni == null) {
+				continue;
+			}
+			int cell = ni.getOptimizerCell();
+
+			/* same cell: only the interfaces with a larger index */
+			int[] members = cells[cell];
+			for (int j = 0, size = cellSizes[cell]; j < size; j++) {
+				if (members[j] > i) {
+					visitor.visit(ni, interfaces[members[j]]);
+				}
+			}
+
+			/* half of the neighbor cells: all the interfaces */
+			visitCell(ni, cell + 1, visitor);
+			visitCell(ni, cell + rowLength - 1, visitor);
+			visitCell(ni, cell + rowLength, visitor);
+			visitCell(ni, cell + rowLength + 1, visitor);
 		}
+	}
 
-		/**
-		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
-		 * @param to The cell where the interface should be moved to
-		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni);
-			assert removeOk : "interface " + ni +
-				" not found from cell with " + interfaces.toString();
+	/**
+	 * Visits the pairs of an interface and all interfaces of a cell
+	 * @param ni The interface
+	 * @param cell Index of the cell
+	 * @param visitor The visitor
+	 */
+	private void visitCell(NetworkInterface ni, int cell,
+			PairVisitor visitor) {
+		int[] members = cells[cell];
+		for (int j = 0, size = cellSizes[cell]; j < size; j++) {
+			visitor.visit(ni, interfaces[members[j]]);
 		}
+	}
+
+	/**
+	 * Returns a string representation of the ConnectivityCells object
+	 * @return a string representation of the ConnectivityCells object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " of size " +
+			this.cols + "x" + this.rows + ", cell size=" + this.cellSize;
+	}
 
+	/**
+	 * Visitor of interface pairs
+	 * @see ConnectivityGrid#visitPairs(PairVisitor)
+	 */
+	public interface PairVisitor {
 		/**
-		 * Returns a string representation of the cell
-		 * @return a string representation of the cell
+		 * Called for each pair of interfaces
+		 * @param a The first interface of the pair
+		 * @param b The second interface of the pair
 		 */
-		public String toString() {
-			return getClass().getSimpleName() + " with " +
-				this.interfaces.size() + " interfaces :" + this.interfaces;
+		public void visit(NetworkInterface a, NetworkInterface b);
+	}
+
+	/**
+	 * Pair visitor that checks if the interfaces are within range of each
+	 * other (i.e., the distance is at most the smaller range) and if they
+	 * are, reports them to each other
+	 */
+	private static class RangeChecker implements PairVisitor {
+		public void visit(NetworkInterface a, NetworkInterface b) {
+			double range = Math.min(a.getTransmitRange(),
+					b.getTransmitRange());
+			if (a.distanceSquared(b) <= range * range) {
+				a.addInRangeInterface(b);
+				b.addInRangeInterface(a);
+			}
 		}
 	}
 
+	/**
+	 * Grid objects and the settings used for creating them in one
+	 * simulation context
+	 */
+	private static class GridState implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private HashMap<Integer,ConnectivityGrid> gridobjects;
+		private int worldSizeX;
+		private int worldSizeY;
+		private int cellSizeMultiplier;
+
+		private GridState() {
+			gridobjects = new HashMap<Integer, ConnectivityGrid>();
+
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			worldSizeX = worldSize[0];
+			worldSizeY = worldSize[1];
+
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			if (s.contains(CELL_SIZE_MULT_S)) {
+				cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
+			}
+			else {
+				cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
+			}
+			if (cellSizeMultiplier < 1) {
+				throw new SettingsError("Too small value (" +
+						cellSizeMultiplier + ") for " +
+						World.OPTIMIZATION_SETTINGS_NS +
+						"." + CELL_SIZE_MULT_S);
+			}
+		}
+	}
 }
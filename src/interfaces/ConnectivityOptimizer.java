@@ -4,6 +4,7 @@
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import core.NetworkInterface;
@@ -12,7 +13,8 @@ import core.NetworkInterface;
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
-abstract public class ConnectivityOptimizer {
+abstract public class ConnectivityOptimizer implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -40,9 +42,37 @@ abstract public class ConnectivityOptimizer {
 	abstract public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni);
 
+	/**
+	 * Calls the visitor for all network interfaces that might be located so
+	 * that they can be connected with the network interface. The default
+	 * implementation visits the interfaces returned by
+	 * {@link #getNearInterfaces(NetworkInterface)}; optimizers can override
+	 * this to visit the interfaces without collecting them first.
+	 *
+	 * @param ni network interface that needs to be connected
+	 * @param visitor The visitor to call for each interface within proximity
+	 */
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		for (NetworkInterface near : getNearInterfaces(ni)) {
+			visitor.visit(near);
+		}
+	}
+
 	/**
 	 * Finds all other interfaces that are registered to the
 	 * ConnectivityOptimizer
 	 */
 	abstract public Collection<NetworkInterface> getAllInterfaces();
+
+	/**
+	 * Visitor of network interfaces found by a connectivity optimizer
+	 */
+	public interface InterfaceVisitor {
+		/**
+		 * Called for each found interface
+		 * @param ni The interface
+		 */
+		public void visit(NetworkInterface ni);
+	}
 }
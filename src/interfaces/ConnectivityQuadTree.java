@@ -0,0 +1,488 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import movement.MovementModel;
+
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimContext;
+import core.World;
+
+/**
+ * <P>
+ * Adaptive connectivity optimizer that keeps the interfaces in a point
+ * quadtree over the world. A leaf of the tree is split into four quadrants
+ * when it gets more than {@link #LEAF_CAPACITY_S} interfaces and subtrees
+ * that get (nearly) empty are merged back into a single leaf, so the size
+ * of the leaves follows the local density of the interfaces: crowded areas
+ * get small leaves and empty areas no leaves at all.</P>
+ * <P>
+ * Unlike {@link ConnectivityGrid}, the tree does not depend on the radio
+ * range. The near interfaces of an interface are looked up from the leaves
+ * that intersect the square around the interface with the interface's own
+ * range as the half side, so interfaces with very different ranges (e.g.,
+ * long range throwboxes among short range pedestrians) can share a tree.
+ * This is enough because two interfaces are within range of each other
+ * only if their distance is at most the smaller of their ranges.</P>
+ * <P>
+ * The optimizer is selected for an interface type by setting the
+ * interface's {@link NetworkInterface#OPTIMIZER_S} setting to
+ * {@link NetworkInterface#QUADTREE_OPTIMIZER}.</P>
+ */
+public class ConnectivityQuadTree extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Quadtree leaf capacity -setting id ({@value}). Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. Maximum number of
+	 * interfaces in a leaf before it is split (unless the leaf is already
+	 * at the maximum depth). Default value is {@link #DEF_LEAF_CAPACITY}.
+	 */
+	public static final String LEAF_CAPACITY_S = "quadTreeLeafCapacity";
+	/** default value for the leaf capacity ({@value}) */
+	public static final int DEF_LEAF_CAPACITY = 8;
+	/** maximum depth of the tree (root is at depth 0) */
+	private static final int MAX_DEPTH = 20;
+	/** initial size of the interface array of the tree */
+	private static final int EXPECTED_INTERFACE_COUNT = 16;
+
+	private Node root;
+	/** all interfaces of the tree by their indexes (null for removed) */
+	private NetworkInterface[] interfaces;
+	/** the leaf of each interface by interface indexes */
+	private Node[] leaves;
+	/** number of interface indexes given so far */
+	private int nrofInterfaces;
+	private int leafCapacity;
+
+	/** tree objects and settings of each simulation context */
+	private static final SimContext.Key<TreeState> state =
+		new SimContext.Key<TreeState>(ConnectivityQuadTree.class, "state") {
+			protected TreeState create() {
+				return new TreeState();
+			}
+		};
+
+	static {
+		DTNSim.registerForReset(ConnectivityQuadTree.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		state.reset();
+	}
+
+	/**
+	 * Creates a new empty quadtree that covers the world
+	 */
+	private ConnectivityQuadTree(TreeState ts) {
+		this.root = new Node(null, 0, 0, ts.worldSizeX, ts.worldSizeY, 0);
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.leaves = new Node[EXPECTED_INTERFACE_COUNT];
+		this.nrofInterfaces = 0;
+		this.leafCapacity = ts.leafCapacity;
+	}
+
+	/**
+	 * Returns a quadtree object based on a hash value
+	 * @param key A hash value that separates different interfaces from
+	 * each other
+	 * @return The quadtree object for a specific interface
+	 */
+	public static ConnectivityQuadTree getInstance(int key) {
+		TreeState ts = state.get();
+		ConnectivityQuadTree tree = ts.trees.get(key);
+		if (tree == null) {
+			tree = new ConnectivityQuadTree(ts);
+			ts.trees.put(key, tree);
+		}
+		return tree;
+	}
+
+	/**
+	 * Adds a network interface to the tree (unless it is already present)
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (contains(ni)) {
+			return;
+		}
+
+		if (nrofInterfaces == interfaces.length) {
+			interfaces = Arrays.copyOf(interfaces, 2 * nrofInterfaces);
+			leaves = Arrays.copyOf(leaves, 2 * nrofInterfaces);
+		}
+		int index = nrofInterfaces++;
+		interfaces[index] = ni;
+		ni.setOptimizerIndex(index);
+		insert(index, ni.getX(), ni.getY());
+	}
+
+	/**
+	 * Adds interfaces to the tree
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Removes a network interface from the tree
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		int index = ni.getOptimizerIndex();
+		remove(index);
+		interfaces[index] = null;
+		ni.setOptimizerIndex(-1);
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's position in the tree
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		double x = ni.getX();
+		double y = ni.getY();
+		if (leaves[index].contains(x, y)) {
+			return; /* still in the same leaf */
+		}
+
+		remove(index);
+		insert(index, x, y);
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		List<NetworkInterface> all = new ArrayList<NetworkInterface>();
+		for (int i = 0; i < nrofInterfaces; i++) {
+			if (interfaces[i] != null) {
+				all.add(interfaces[i]);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Returns all interfaces that are in the leaves near the given
+	 * interface (see {@link #visitNearInterfaces})
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		final ArrayList<NetworkInterface> niList =
+			new ArrayList<NetworkInterface>();
+		visitNearInterfaces(ni, new InterfaceVisitor() {
+			public void visit(NetworkInterface near) {
+				niList.add(near);
+			}
+		});
+		return niList;
+	}
+
+	/**
+	 * Visits all interfaces that are in the leaves that intersect the
+	 * square whose center is the given interface's location and half side
+	 * the interface's transmit range (including the interface itself).
+	 * Doesn't create any objects.
+	 * @param ni The interface whose neighboring interfaces are visited
+	 * @param visitor The visitor
+	 */
+	@Override
+	public void visitNearInterfaces(NetworkInterface ni,
+			InterfaceVisitor visitor) {
+		if (!contains(ni)) {
+			return;
+		}
+
+		double x = ni.getX();
+		double y = ni.getY();
+		double range = ni.getTransmitRange();
+		visit(root, x - range, y - range, x + range, y + range, visitor);
+	}
+
+	/**
+	 * Returns true if the interface is in this tree
+	 */
+	private boolean contains(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		return index >= 0 && index < nrofInterfaces && interfaces[index] == ni;
+	}
+
+	/**
+	 * Visits the interfaces of the leaves of a subtree that intersect the
+	 * given area
+	 */
+	private void visit(Node node, double minX, double minY, double maxX,
+			double maxY, InterfaceVisitor visitor) {
+		if (node.count == 0 || !node.intersects(minX, minY, maxX, maxY)) {
+			return;
+		}
+
+		if (node.children != null) {
+			for (int i = 0; i < 4; i++) {
+				visit(node.children[i], minX, minY, maxX, maxY, visitor);
+			}
+			return;
+		}
+
+		for (int i = 0; i < node.size; i++) {
+			visitor.visit(interfaces[node.members[i]]);
+		}
+	}
+
+	/**
+	 * Inserts an interface to the leaf that covers the location and splits
+	 * the leaf if it gets too full
+	 * @param index Index of the interface
+	 * @param x X coordinate of the interface's location
+	 * @param y Y coordinate of the interface's location
+	 */
+	private void insert(int index, double x, double y) {
+		Node node = root;
+		while (node.children != null) {
+			node.count++;
+			node = node.childFor(x, y);
+		}
+		node.add(index);
+		node.count++;
+		leaves[index] = node;
+
+		if (node.size > leafCapacity && node.depth < MAX_DEPTH) {
+			split(node);
+		}
+	}
+
+	/**
+	 * Splits a leaf into four quadrants. Quadrants that get too full are
+	 * split again.
+	 * @param leaf The leaf to split
+	 */
+	private void split(Node leaf) {
+		double midX = (leaf.minX + leaf.maxX) / 2;
+		double midY = (leaf.minY + leaf.maxY) / 2;
+		int depth = leaf.depth + 1;
+		leaf.children = new Node[] {
+			new Node(leaf, leaf.minX, leaf.minY, midX, midY, depth),
+			new Node(leaf, midX, leaf.minY, leaf.maxX, midY, depth),
+			new Node(leaf, leaf.minX, midY, midX, leaf.maxY, depth),
+			new Node(leaf, midX, midY, leaf.maxX, leaf.maxY, depth)
+		};
+
+		for (int i = 0; i < leaf.size; i++) {
+			int index = leaf.members[i];
+			NetworkInterface ni = interfaces[index];
+			Node child = leaf.childFor(ni.getX(), ni.getY());
+			child.add(index);
+			child.count++;
+			leaves[index] = child;
+		}
+		leaf.members = null;
+		leaf.size = 0;
+
+		for (int i = 0; i < 4; i++) {
+			Node child = leaf.children[i];
+			if (child.size > leafCapacity && child.depth < MAX_DEPTH) {
+				split(child);
+			}
+		}
+	}
+
+	/**
+	 * Removes an interface from its leaf and merges the subtrees that get
+	 * sparse enough back into single leaves
+	 * @param index Index of the interface
+	 */
+	private void remove(int index) {
+		Node leaf = leaves[index];
+		leaf.remove(index);
+		leaves[index] = null;
+
+		Node merge = null;
+		for (Node node = leaf; node != null; node = node.parent) {
+			node.count--;
+			if (node.children != null && node.count <= leafCapacity / 2) {
+				merge = node; /* the topmost sparse enough subtree */
+			}
+		}
+
+		if (merge != null) {
+			merge.members = new int[Math.max(merge.count, 1)];
+			merge.size = 0;
+			collect(merge, merge);
+			merge.children = null;
+		}
+	}
+
+	/**
+	 * Moves the interfaces of the leaves of a subtree to a node
+	 * @param node Root of the subtree
+	 * @param to The node where the interfaces are moved to
+	 */
+	private void collect(Node node, Node to) {
+		if (node.children != null) {
+			for (int i = 0; i < 4; i++) {
+				collect(node.children[i], to);
+			}
+			return;
+		}
+
+		for (int i = 0; i < node.size; i++) {
+			to.add(node.members[i]);
+			leaves[node.members[i]] = to;
+		}
+	}
+
+	/**
+	 * Returns a string representation of the tree
+	 * @return a string representation of the tree
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + root.count +
+			" interfaces, leaf capacity=" + this.leafCapacity;
+	}
+
+	/**
+	 * A node of the tree. Covers the area [minX, maxX) x [minY, maxY) and,
+	 * at the edges of the world, also the area outside the world.
+	 * Leaves contain the indexes of the interfaces in the area, internal
+	 * nodes have four children (the quadrants).
+	 */
+	private static class Node implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private Node parent;
+		private double minX, minY, maxX, maxY;
+		private int depth;
+		/** is the node at the edge of the world at each side */
+		private boolean openMinX, openMinY, openMaxX, openMaxY;
+		/** children of an internal node (null for leaves) */
+		private Node[] children;
+		/** interface indexes of a leaf (null until needed) */
+		private int[] members;
+		/** number of interfaces in a leaf */
+		private int size;
+		/** number of interfaces in the subtree */
+		private int count;
+
+		private Node(Node parent, double minX, double minY, double maxX,
+				double maxY, int depth) {
+			this.parent = parent;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.depth = depth;
+			/* nodes at the edges of the world also cover the area outside */
+			this.openMinX = parent == null || (parent.openMinX &&
+					minX == parent.minX);
+			this.openMinY = parent == null || (parent.openMinY &&
+					minY == parent.minY);
+			this.openMaxX = parent == null || (parent.openMaxX &&
+					maxX == parent.maxX);
+			this.openMaxY = parent == null || (parent.openMaxY &&
+					maxY == parent.maxY);
+		}
+
+		/**
+		 * Returns the child (quadrant) that covers the location
+		 */
+		private Node childFor(double x, double y) {
+			double midX = (minX + maxX) / 2;
+			double midY = (minY + maxY) / 2;
+			return children[(x < midX ? 0 : 1) + (y < midY ? 0 : 2)];
+		}
+
+		/**
+		 * Returns true if the location is in the area of this node
+		 */
+		private boolean contains(double x, double y) {
+			return (x >= minX || openMinX) && (x < maxX || openMaxX) &&
+				(y >= minY || openMinY) && (y < maxY || openMaxY);
+		}
+
+		/**
+		 * Returns true if the area of this node intersects the given area
+		 */
+		private boolean intersects(double minX, double minY, double maxX,
+				double maxY) {
+			return (minX < this.maxX || openMaxX) &&
+				(maxX >= this.minX || openMinX) &&
+				(minY < this.maxY || openMaxY) &&
+				(maxY >= this.minY || openMinY);
+		}
+
+		/**
+		 * Appends an interface index to the leaf
+		 */
+		private void add(int index) {
+			if (members == null) {
+				members = new int[4];
+			}
+			else if (size == members.length) {
+				members = Arrays.copyOf(members, 2 * size);
+			}
+			members[size++] = index;
+		}
+
+		/**
+		 * Removes an interface index from the leaf (keeping the order of
+		 * the other interfaces)
+		 */
+		private void remove(int index) {
+			for (int i = 0; i < size; i++) {
+				if (members[i] == index) {
+					System.arraycopy(members, i + 1, members, i, size - i - 1);
+					size--;
+					return;
+				}
+			}
+			assert false : "interface " + index + " not found from the leaf";
+		}
+	}
+
+	/**
+	 * Tree objects and the settings used for creating them in one
+	 * simulation context
+	 */
+	private static class TreeState implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private HashMap<Integer, ConnectivityQuadTree> trees;
+		private int worldSizeX;
+		private int worldSizeY;
+		private int leafCapacity;
+
+		private TreeState() {
+			trees = new HashMap<Integer, ConnectivityQuadTree>();
+
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			worldSizeX = worldSize[0];
+			worldSizeY = worldSize[1];
+
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			leafCapacity = s.getInt(LEAF_CAPACITY_S, DEF_LEAF_CAPACITY);
+			s.ensurePositiveValue(leafCapacity, LEAF_CAPACITY_S);
+		}
+	}
+}
@@ -4,7 +4,6 @@
  */
 package interfaces;
 
-import java.util.Collection;
 
 import core.CBRConnection;
 import core.Connection;
@@ -16,6 +15,7 @@ import core.Settings;
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Reads the interface settings from the Settings file
@@ -71,27 +71,9 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 
 		// First break the old ones
 		optimizer.updateLocation(this);
-		for (int i=0; i<this.connections.size(); ) {
-			Connection con = this.connections.get(i);
-			NetworkInterface anotherInterface = con.getOtherInterface(this);
-
-			// all connections should be up at this stage
-			assert con.isUp() : "Connection " + con + " was down!";
-
-			if (!isWithinRange(anotherInterface)) {
-				disconnect(con,anotherInterface);
-				connections.remove(i);
-			}
-			else {
-				i++;
-			}
-		}
+		disconnectOutOfRange();
 		// Then find new possible connections
-		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) {
-			connect(i);
-		}
+		connectNearInterfaces();
 	}
 
 	/**
@@ -113,6 +95,16 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 		}
 	}
 
+	/**
+	 * Returns true: the interface only connects to the interfaces within
+	 * range and the connections have constant speeds
+	 * @return True
+	 */
+	@Override
+	public boolean supportsParallelUpdate() {
+		return true;
+	}
+
 	/**
 	 * Returns a string representation of the object.
 	 * @return a string representation of the object.
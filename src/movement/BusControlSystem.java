@@ -11,6 +11,7 @@ import java.util.List;
 import movement.map.SimMap;
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls busses and passengers that can use the bus.
@@ -22,7 +23,14 @@ import core.DTNSim;
 public class BusControlSystem {
 	public static final String BUS_CONTROL_SYSTEM_NR = "busControlSystemNr";
 
-	private static HashMap<Integer, BusControlSystem> systems;
+	/** bus control systems of each simulation context */
+	private static final SimContext.Key<HashMap<Integer, BusControlSystem>>
+		systems = new SimContext.Key<HashMap<Integer, BusControlSystem>>(
+				BusControlSystem.class, "systems") {
+			protected HashMap<Integer, BusControlSystem> create() {
+				return new HashMap<Integer, BusControlSystem>();
+			}
+		};
 
 	private HashMap<Integer, BusMovement> busses;
 	private HashMap<Integer, BusTravellerMovement> travellers;
@@ -46,7 +54,7 @@ public class BusControlSystem {
 	}
 
 	public static void reset() {
-		systems = new HashMap<Integer, BusControlSystem>();
+		systems.reset();
 	}
 
 	/**
@@ -85,11 +93,12 @@ public class BusControlSystem {
 	public static BusControlSystem getBusControlSystem(int systemID) {
 		Integer id = new Integer(systemID);
 
-		if (systems.containsKey(id)) {
-			return systems.get(id);
+		HashMap<Integer, BusControlSystem> ctxSystems = systems.get();
+		if (ctxSystems.containsKey(id)) {
+			return ctxSystems.get(id);
 		} else {
 			BusControlSystem bcs = new BusControlSystem(systemID);
-			systems.put(id, bcs);
+			ctxSystems.put(id, bcs);
 			return bcs;
 		}
 	}
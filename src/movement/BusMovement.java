@@ -10,6 +10,7 @@ import java.util.List;
 import movement.map.MapNode;
 import core.Coord;
 import core.Settings;
+import core.SimContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -18,10 +19,12 @@ import core.Settings;
  * @author Frans Ekman
  */
 public class BusMovement extends MapRouteMovement {
+	private static final long serialVersionUID = 1L;
 
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
+	private static final SimContext.Key<SimContext.Counter> nextID =
+		SimContext.newCounterKey(BusMovement.class, "nextID");
 	private boolean startMode;
 	private List<Coord> stops;
 
@@ -34,7 +37,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,7 +55,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
@@ -10,6 +10,7 @@ import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.SimContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -25,8 +26,15 @@ public class EveningActivityControlSystem {
 
 	private Random rng;
 
-	private static HashMap<Integer, EveningActivityControlSystem>
-		controlSystems;
+	/** control systems of each simulation context */
+	private static final SimContext.Key<
+		HashMap<Integer, EveningActivityControlSystem>> controlSystems =
+		new SimContext.Key<HashMap<Integer, EveningActivityControlSystem>>(
+				EveningActivityControlSystem.class, "controlSystems") {
+			protected HashMap<Integer, EveningActivityControlSystem> create() {
+				return new HashMap<Integer, EveningActivityControlSystem>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
@@ -44,7 +52,7 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		controlSystems.reset();
 	}
 
 	/**
@@ -127,12 +135,14 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
-		if (controlSystems.containsKey(new Integer(id))) {
-			return controlSystems.get(new Integer(id));
+		HashMap<Integer, EveningActivityControlSystem> systems =
+			controlSystems.get();
+		if (systems.containsKey(new Integer(id))) {
+			return systems.get(new Integer(id));
 		} else {
 			EveningActivityControlSystem scs =
 				new EveningActivityControlSystem(id);
-			controlSystems.put(new Integer(id), scs);
+			systems.put(new Integer(id), scs);
 			return scs;
 		}
 	}
@@ -15,6 +15,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other
@@ -26,6 +27,7 @@ import core.Settings;
  */
 public class EveningActivityMovement extends MapBasedMovement
 	implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private static final int WALKING_TO_MEETING_SPOT_MODE = 0;
 	private static final int EVENING_ACTIVITY_MODE = 1;
@@ -44,7 +46,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING =
 		"maxAfterShoppingStopTime";
 
-	private static int nrOfMeetingSpots = 10;
+	private int nrOfMeetingSpots;
 
 	private int mode;
 	private boolean ready;
@@ -60,7 +62,8 @@ public class EveningActivityMovement extends MapBasedMovement
 
 	private int id;
 
-	private static int nextID = 0;
+	private static final SimContext.Key<SimContext.Counter> nextID =
+		SimContext.newCounterKey(EveningActivityMovement.class, "nextID");
 
 	private int minGroupSize;
 	private int maxGroupSize;
@@ -120,7 +123,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 
@@ -144,7 +147,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = nextID.get().getAndIncrement();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -277,7 +280,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		nextID.reset();
 	}
 
 	public int getMinGroupSize() {
@@ -5,6 +5,7 @@
 package movement;
 
 import input.ExternalMovementReader;
+import input.Prefetcher;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -17,39 +18,46 @@ import util.Tuple;
 import core.Coord;
 import core.DTNSim;
 import core.Settings;
+import core.SimContext;
 import core.SimClock;
 
 /**
- * Movement model that uses external data of node locations.
+ * Movement model that uses external data of node locations. The time
+ * instances of the trace can be read ahead on a background thread (see
+ * {@link Prefetcher}) by enabling it with {@link #NROF_PREFETCH_S}.
  */
 public class ExternalMovement extends MovementModel {
+	private static final long serialVersionUID = 1L;
 	/** Namespace for settings */
 	public static final String EXTERNAL_MOVEMENT_NS = "ExternalMovement";
 	/** external locations file's path -setting id ({@value})*/
 	public static final String MOVEMENT_FILE_S = "file";
 	/** number of preloaded intervals per preload run -setting id ({@value})*/
 	public static final String NROF_PRELOAD_S = "nrofPreload";
+	/** number of time instances to read ahead on a background thread
+	 * -setting id ({@value}). 0 = read the trace on the simulation thread
+	 * when it is needed. Default = {@link #DEF_NROF_PREFETCH} */
+	public static final String NROF_PREFETCH_S = "nrofPrefetch";
+	/** default number of prefetched time instances */
+	public static final int DEF_NROF_PREFETCH = 0;
 
 	/** default initial location for excess nodes */
 	private static final Coord DEF_INIT_LOC = new Coord(0,0);
-	private static ExternalMovementReader reader;
-	private static String inputFileName;
-
-	/** mapping of external id to movement model */
-	private static Map<String, ExternalMovement> idMapping;
-	/** initial locations for nodes */
-	private static List<Tuple<String, Coord>> initLocations;
-	/** time of the very first location data */
-	private static double initTime;
-	/** sampling interval (seconds) of the location data */
-	private static double samplingInterval;
-	/** last read time stamp after preloading */
-	private static double lastPreloadTime;
-	/** how many time intervals to load on every preload run */
-	private static double nrofPreload = 10;
 	/** minimum number intervals that should be preloaded ahead of sim time */
 	private static final double MIN_AHEAD_INTERVALS = 2;
 
+	/** trace reading state of each simulation context */
+	private static final SimContext.Key<TraceState> traceState =
+		new SimContext.Key<TraceState>(ExternalMovement.class,
+				"traceState") {
+			protected TraceState create() {
+				return new TraceState();
+			}
+		};
+
+	/** trace reading state shared by all the nodes of the simulation */
+	private TraceState trace;
+
 	/** the very first location of the node */
 	private Coord intialLocation;
 	/** queue of path-start-time, path tuples */
@@ -76,26 +84,36 @@ public class ExternalMovement extends MovementModel {
 	 */
 	public ExternalMovement(Settings settings) {
 		super(settings);
+		this.trace = traceState.get();
 
-		if (idMapping == null) {
+		TraceState ts = this.trace;
+		if (ts.idMapping == null) {
 			// run these the first time object is created or after reset call
 			Settings s = new Settings(EXTERNAL_MOVEMENT_NS);
-			idMapping = new HashMap<String, ExternalMovement>();
-			inputFileName = s.getSetting(MOVEMENT_FILE_S);
-			reader = new ExternalMovementReader(inputFileName);
+			ts.idMapping = new HashMap<String, ExternalMovement>();
+			ts.inputFileName = s.getSetting(MOVEMENT_FILE_S);
+			ts.reader = new ExternalMovementReader(ts.inputFileName);
 
-			initLocations = reader.readNextMovements();
-			initTime = reader.getLastTimeStamp();
-			samplingInterval = -1;
-			lastPreloadTime = -1;
+			ts.initLocations = ts.reader.readNextMovements();
+			ts.initTime = ts.reader.getLastTimeStamp();
+			ts.samplingInterval = -1;
+			ts.lastPreloadTime = -1;
 
 			s.setNameSpace(EXTERNAL_MOVEMENT_NS);
 			if (s.contains(NROF_PRELOAD_S)) {
-				nrofPreload = s.getInt(NROF_PRELOAD_S);
-				if (nrofPreload <= 0) {
-					nrofPreload = 1;
+				ts.nrofPreload = s.getInt(NROF_PRELOAD_S);
+				if (ts.nrofPreload <= 0) {
+					ts.nrofPreload = 1;
 				}
 			}
+
+			int prefetch = s.getInt(NROF_PREFETCH_S, DEF_NROF_PREFETCH);
+			if (prefetch > 0) {
+				ts.lastTimeStamp = ts.initTime;
+				ts.prefetcher = new Prefetcher<TimeInstance>(
+						ts.inputFileName, new TimeInstanceSource(ts.reader),
+						prefetch);
+			}
 		}
 	}
 
@@ -104,20 +122,21 @@ public class ExternalMovement extends MovementModel {
 	 * location queue.
 	 * @param mm The movement model to copy from
 	 */
-	private ExternalMovement(MovementModel mm) {
+	private ExternalMovement(ExternalMovement mm) {
 		super(mm);
+		this.trace = mm.trace;
 
 		pathQueue = new LinkedList<Tuple<Double, Path>>();
 		latestPath = null;
 
-		if (initLocations.size() > 0) { // we have location data left
+		if (trace.initLocations.size() > 0) { // we have location data left
 			// gets a new location from the list
-			Tuple<String, Coord> initLoc = initLocations.remove(0);
+			Tuple<String, Coord> initLoc = trace.initLocations.remove(0);
 			this.intialLocation = this.latestLocation = initLoc.getValue();
-			this.latestPathStartTime = initTime;
+			this.latestPathStartTime = trace.initTime;
 
 			// puts the new model to model map for later updates
-			idMapping.put(initLoc.getKey(), this);
+			trace.idMapping.put(initLoc.getKey(), this);
 			isActive = true;
 		}
 		else {
@@ -131,16 +150,17 @@ public class ExternalMovement extends MovementModel {
 	 * Checks if more paths should be preloaded and preloads them if
 	 * needed.
 	 */
-	private static void checkPathNeed() {
-		if (samplingInterval == -1) { // first preload
-			lastPreloadTime = readMorePaths();
+	private static void checkPathNeed(TraceState ts) {
+		if (ts.samplingInterval == -1) { // first preload
+			ts.lastPreloadTime = readMorePaths(ts);
 		}
 
-		if (!Double.isNaN(lastPreloadTime) && SimClock.getTime() >=
-				lastPreloadTime - (samplingInterval * MIN_AHEAD_INTERVALS) ) {
-			for (int i=0; i < nrofPreload &&
-					!Double.isNaN(lastPreloadTime); i++) {
-				lastPreloadTime = readMorePaths();
+		if (!Double.isNaN(ts.lastPreloadTime) && SimClock.getTime() >=
+				ts.lastPreloadTime - (ts.samplingInterval *
+						MIN_AHEAD_INTERVALS) ) {
+			for (int i=0; i < ts.nrofPreload &&
+					!Double.isNaN(ts.lastPreloadTime); i++) {
+				ts.lastPreloadTime = readMorePaths(ts);
 			}
 		}
 	}
@@ -163,7 +183,7 @@ public class ExternalMovement extends MovementModel {
 	 * @param time When should the node be there
 	 */
 	private void addLocation(Coord loc, double time) {
-		assert samplingInterval > 0 : "Non-positive sampling interval!";
+		assert trace.samplingInterval > 0 : "Non-positive sampling interval!";
 
 		if (loc.equals(latestLocation)) { // node didn't move
 			if (latestPath != null) {
@@ -181,7 +201,8 @@ public class ExternalMovement extends MovementModel {
 			latestPath = new Path();
 		}
 
-		double speed = loc.distance(this.latestLocation) / samplingInterval;
+		double speed = loc.distance(this.latestLocation) /
+			trace.samplingInterval;
 		latestPath.addWaypoint(loc, speed);
 
 		this.latestLocation = loc;
@@ -205,7 +226,7 @@ public class ExternalMovement extends MovementModel {
 	public Path getPath() {
 		Path p;
 
-		checkPathNeed(); // check if we should preload more paths
+		checkPathNeed(trace); // check if we should preload more paths
 
 		if (SimClock.getTime() < this.nextPathAvailable()) {
 			return null;
@@ -224,12 +245,12 @@ public class ExternalMovement extends MovementModel {
 
 	@Override
 	public int getMaxX() {
-		return (int)(reader.getMaxX() - reader.getMinX()) + 1;
+		return (int)(trace.reader.getMaxX() - trace.reader.getMinX()) + 1;
 	}
 
 	@Override
 	public int getMaxY() {
-		return (int)(reader.getMaxY() - reader.getMinY()) + 1;
+		return (int)(trace.reader.getMaxY() - trace.reader.getMinY()) + 1;
 	}
 
 
@@ -243,16 +264,31 @@ public class ExternalMovement extends MovementModel {
 	 * @return The time stamp of the reading or Double.NaN if no movements
 	 * were read.
 	 */
-	private static double readMorePaths() {
-		List<Tuple<String, Coord>> list = reader.readNextMovements();
-		double time = reader.getLastTimeStamp();
+	private static double readMorePaths(TraceState ts) {
+		List<Tuple<String, Coord>> list;
+		double time;
+		if (ts.prefetcher != null) {
+			TimeInstance next = ts.prefetcher.next();
+			if (next == null) { /* end of trace */
+				list = new LinkedList<Tuple<String, Coord>>();
+				time = ts.lastTimeStamp;
+			}
+			else {
+				list = next.moves;
+				time = ts.lastTimeStamp = next.time;
+			}
+		}
+		else {
+			list = ts.reader.readNextMovements();
+			time = ts.reader.getLastTimeStamp();
+		}
 
-		if (samplingInterval == -1) {
-			samplingInterval = time - initTime;
+		if (ts.samplingInterval == -1) {
+			ts.samplingInterval = time - ts.initTime;
 		}
 
 		for (Tuple<String, Coord> t : list) {
-			ExternalMovement em = idMapping.get(t.getKey());
+			ExternalMovement em = ts.idMapping.get(t.getKey());
 			if (em != null) { // skip unknown IDs, i.e. IDs not mentioned in...
 				// ...init phase or if there are more IDs than nodes
 				em.addLocation(t.getValue(), time);
@@ -271,7 +307,80 @@ public class ExternalMovement extends MovementModel {
 	 * Reset state so that next instance will have a fresh state
 	 */
 	public static void reset() {
-		idMapping = null;
+		TraceState ts = traceState.getIfCreated();
+		if (ts != null) {
+			ts.close();
+		}
+		traceState.reset();
+	}
+
+	/**
+	 * Movements of one time instance of the trace
+	 */
+	private static class TimeInstance {
+		private double time;
+		private List<Tuple<String, Coord>> moves;
 	}
 
+	/**
+	 * Source of the prefetched time instances
+	 */
+	private static class TimeInstanceSource
+			implements Prefetcher.Source<TimeInstance> {
+		private ExternalMovementReader reader;
+
+		private TimeInstanceSource(ExternalMovementReader reader) {
+			this.reader = reader;
+		}
+
+		public TimeInstance read() {
+			TimeInstance ti = new TimeInstance();
+			ti.moves = reader.readNextMovements();
+			ti.time = reader.getLastTimeStamp();
+			return ti.moves.size() > 0 ? ti : null;
+		}
+
+		public void close() {
+			reader.close();
+		}
+	}
+
+	/**
+	 * State of the external movement trace reading in one simulation
+	 * context
+	 */
+	private static class TraceState {
+		/** the reader (used only by the prefetcher if there is one) */
+		private ExternalMovementReader reader;
+		/** reader of the next time instances (or null) */
+		private Prefetcher<TimeInstance> prefetcher;
+		/** time stamp of the last prefetched time instance */
+		private double lastTimeStamp;
+		private String inputFileName;
+
+		/** mapping of external id to movement model */
+		private Map<String, ExternalMovement> idMapping;
+		/** initial locations for nodes */
+		private List<Tuple<String, Coord>> initLocations;
+		/** time of the very first location data */
+		private double initTime;
+		/** sampling interval (seconds) of the location data */
+		private double samplingInterval;
+		/** last read time stamp after preloading */
+		private double lastPreloadTime;
+		/** how many time intervals to load on every preload run */
+		private double nrofPreload = 10;
+
+		/**
+		 * Closes the trace file and stops reading it ahead
+		 */
+		private void close() {
+			if (this.prefetcher != null) {
+				this.prefetcher.close(); /* closes the reader */
+			}
+			else if (this.reader != null) {
+				this.reader.close();
+			}
+		}
+	}
 }
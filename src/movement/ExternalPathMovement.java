@@ -21,9 +21,11 @@ import core.SimClock;
  *
  */
 public class ExternalPathMovement extends MovementModel {
+	private static final long serialVersionUID = 1L;
 	/** external locations file's path -setting id ({@value})*/
 	public static final String MOVEMENT_FILE_S = "traceFile";
-	/** activity file's path -setting id ({@value})*/
+	/** activity file's path -setting id ({@value}). Not needed if the trace
+	 * file is a {@link input.PathTraceIndex}. */
 	public static final String ACTIVITY_FILE_S = "activeFile";
 
 	// Settings
@@ -37,7 +39,10 @@ public class ExternalPathMovement extends MovementModel {
 
 	public ExternalPathMovement(Settings settings) {
 		this.traceFile = settings.getSetting(MOVEMENT_FILE_S);
-		this.activeFile = settings.getSetting(ACTIVITY_FILE_S);
+		this.activeFile = settings.contains(ACTIVITY_FILE_S) ?
+				settings.getSetting(ACTIVITY_FILE_S) : null;
+		// start loading while the rest of the group is initialized
+		ExternalPathMovementReader.prefetch(this.traceFile, this.activeFile);
 	}
 
 	/**
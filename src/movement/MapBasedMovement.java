@@ -29,6 +29,7 @@ import core.SimError;
  * roads of a SimMap.
  */
 public class MapBasedMovement extends MovementModel implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 	/** sim map for the model */
 	private SimMap map = null;
 	/** node where the last path ended or node next to initial placement */
@@ -60,7 +61,8 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 
 	/** how many map files are read */
 	private int nrofMapFilesRead = 0;
-	/** map cache -- in case last mm read the same map, use it without loading*/
+	/** map cache -- in case last mm read the same map, use it without loading
+	 * (shared by all simulation contexts; guarded by the class lock) */
 	private static SimMap cachedMap = null;
 	/** names of the previously cached map's files (for hit comparison) */
 	private static List<String> cachedMapFiles = null;
@@ -71,7 +73,9 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	 */
 	public MapBasedMovement(Settings settings) {
 		super(settings);
-		map = readMap();
+		synchronized (MapBasedMovement.class) {
+			map = readMap(); // the map cache is shared by all sim contexts
+		}
 		readOkMapNodeTypes(settings);
 		maxPathLength = 100;
 		minPathLength = 10;
@@ -249,6 +253,17 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return n;
 	}
 
+	/**
+	 * Returns true for plain map based movement, whose paths only depend on
+	 * the (read-only) map and this model's state. Subclasses may share
+	 * state between the instances (e.g., path finders) so they need to
+	 * declare the support themselves.
+	 */
+	@Override
+	public boolean supportsParallelMovement() {
+		return getClass() == MapBasedMovement.class;
+	}
+
 	/**
 	 * Returns the SimMap this movement model uses
 	 * @return The SimMap this movement model uses
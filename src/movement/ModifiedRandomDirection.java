@@ -20,6 +20,7 @@ import core.Settings;
  */
 public class ModifiedRandomDirection
 extends RandomDirection {
+	private static final long serialVersionUID = 1L;
 
     public ModifiedRandomDirection( Settings settings ) {
         super( settings );
@@ -33,7 +34,7 @@ extends RandomDirection {
     protected double getTravelFraction() {
         // Move a random fraction in the picked direction instead of all the
         // way to the edge.
-        return MovementModel.rng.nextDouble();
+        return rng.nextDouble();
     }
 
     @Override
@@ -4,6 +4,7 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.Random;
 
 import util.ActivenessHandler;
@@ -13,8 +14,10 @@ import core.DTNHost;
 import core.DTNSim;
 import core.ModuleCommunicationBus;
 import core.Settings;
+import core.SimContext;
 import core.SimClock;
 import core.SimError;
+import core.World;
 
 /**
  * <P>Superclass for all movement models. All subclasses must contain at least a
@@ -26,7 +29,8 @@ import core.SimError;
  * {@link #getInitialLocation()} and {@link #getPath()} are worthwhile to
  * override.</P>
  */
-public abstract class MovementModel {
+public abstract class MovementModel implements Serializable {
+	private static final long serialVersionUID = 1L;
 	/** node's speed CSV (min, max) -setting id ({@value})*/
 	public static final String SPEED = "speed";
 	/** node's wait time CSV (min, max) -setting id ({@value})*/
@@ -45,8 +49,20 @@ public abstract class MovementModel {
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
 
-	/** common rng for all movement models in the simulation */
-	protected static Random rng;
+	/** random number generator settings and the common rng of each
+	 * simulation context */
+	private static final SimContext.Key<RngState> rngState =
+		new SimContext.Key<RngState>(MovementModel.class, "rngState") {
+			protected RngState create() {
+				return new RngState();
+			}
+		};
+
+	/** rng of this movement model; either the common rng or, if parallel
+	 * movement is enabled, a stream of this model's host. This used to be
+	 * a static field; code that needs the common rng outside of a movement
+	 * model instance can use {@link #getCommonRng()}. */
+	protected Random rng;
 
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -93,6 +109,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = rngState.get().sharedRng;
 	}
 
 	/**
@@ -103,6 +120,7 @@ public abstract class MovementModel {
 		double[] speeds;
 		double[] times;
 
+		this.rng = rngState.get().sharedRng;
 		ah = new ActivenessHandler(settings);
 
 		if (settings.contains(SPEED)) {
@@ -148,6 +166,7 @@ public abstract class MovementModel {
 		this.maxX = mm.maxX;
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
+		this.rng = mm.rng;
 		this.comBus = null;
 	}
 
@@ -217,10 +236,30 @@ public abstract class MovementModel {
 	}
 
 	/**
+	 * Sets the host of this movement model. If every host should have its
+	 * own random number stream, the stream is created here (based on the rng
+	 * seed and the address of the host).
 	 * @param host the host to set
 	 */
 	public void setHost(DTNHost host) {
 		this.host = host;
+		RngState rs = rngState.get();
+		if (rs.perHostRng) {
+			this.rng = new Random(streamSeed(rs.rngSeed, host.getAddress()));
+		}
+	}
+
+	/**
+	 * Returns true if the {@link #getPath()} and {@link #nextPathAvailable()}
+	 * calls of this movement model modify only the state of this model
+	 * instance (and its random number stream) so that hosts using this model
+	 * can be moved concurrently with other hosts. Models that share mutable
+	 * state between instances (e.g., path finders or control systems) must
+	 * return false. Default implementation returns false.
+	 * @return true if this model can be moved concurrently with other models
+	 */
+	public boolean supportsParallelMovement() {
+		return false;
 	}
 
 	/**
@@ -271,18 +310,67 @@ public abstract class MovementModel {
 	 */
 	public abstract MovementModel replicate();
 
+	/**
+	 * Returns the common random number generator of the movement models of
+	 * the current simulation context. This is what the static
+	 * <CODE>rng</CODE> field of earlier versions was.
+	 * @return The common rng
+	 * @deprecated Movement models should use their own {@link #rng}, which
+	 * is a per-host stream when parallel movement is enabled; the common
+	 * rng is not safe to use from concurrently moved hosts
+	 */
+	@Deprecated
+	public static Random getCommonRng() {
+		return rngState.get().sharedRng;
+	}
+
 	/**
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		Settings s = new Settings(MOVEMENT_MODEL_NS);
-		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
-		}
-		else {
-			rng = new Random(0);
-		}
+		rngState.reset();
+	}
+
+	/**
+	 * Returns a seed for a host's random number stream. The seed and the
+	 * address are mixed (using the SplitMix64 finalizer) so that the streams
+	 * of hosts with consecutive addresses are not correlated.
+	 * @param seed The rng seed of the simulation
+	 * @param address Address of the host
+	 * @return Seed for the host's random number stream
+	 */
+	private static long streamSeed(long seed, int address) {
+		long z = seed + (address + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
+	/**
+	 * Random number generator settings and the common rng of one
+	 * simulation context
+	 */
+	private static class RngState implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/** common rng for all movement models in the simulation */
+		private Random sharedRng;
+		/** seed of the common rng */
+		private long rngSeed;
+		/** should every host have its own random number stream */
+		private boolean perHostRng;
+
+		private RngState() {
+			Settings s = new Settings(MOVEMENT_MODEL_NS);
+			if (s.contains(RNG_SEED)) {
+				rngSeed = s.getInt(RNG_SEED);
+			}
+			else {
+				rngSeed = 0;
+			}
+			sharedRng = new Random(rngSeed);
+
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			perHostRng = s.getBoolean(World.PARALLEL_MOVEMENT_S, false);
+		}
+	}
 }
@@ -5,8 +5,8 @@
 
 package report;
 
-import core.Coord;
 import core.DTNHost;
+import core.PositionTable;
 
 /**
  * Node location snapshot report. Reports the location of all 
@@ -18,9 +18,10 @@ public class LocationSnapshotReport extends SnapshotReport {
 
 	@Override
 	protected void writeSnapshot(DTNHost h) {
-		Coord location = h.getLocation();
-		write(h.toString() + " " +  format(location.getX()) + 
-				" " + format(location.getY()));
+		PositionTable positions = h.getPositionTable();
+		int address = h.getAddress();
+		write(h.toString() + " " +  format(positions.getX(address)) +
+				" " + format(positions.getY(address)));
 	}
 
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package report;
+
+import routing.util.MessageRegistry;
+
+/**
+ * Reports the size of the world-level {@link MessageRegistry} at the end of
+ * the simulation: the number of delivered and blacklisted message entries
+ * of all hosts and an estimate of the memory the registry takes.
+ */
+public class MessageRegistryReport extends Report {
+
+	@Override
+	public void done() {
+		MessageRegistry registry = MessageRegistry.getInstance();
+		write("Message registry for scenario " + getScenarioName() +
+				"\nsim_time: " + format(getSimTime()));
+		write("delivered: " + registry.getTotalDelivered() +
+				"\nblacklisted: " + registry.getTotalBlacklisted() +
+				"\nmemory_bytes: " + registry.getMemoryFootprint());
+		super.done();
+	}
+}
@@ -99,8 +99,11 @@ public class MessageStatsReport extends Report implements MessageListener {
 
 		this.nrofRelayed++;
 		if (finalTarget) {
-			this.latencies.add(getSimTime() -
-				this.creationTimes.get(m.getId()) );
+			Double created = this.creationTimes.get(m.getId());
+			if (created == null) { // created before a checkpoint was restored
+				created = m.getCreationTime();
+			}
+			this.latencies.add(getSimTime() - created);
 			this.nrofDelivered++;
 			this.hopCounts.add(m.getHops().size() - 1);
 
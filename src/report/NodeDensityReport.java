@@ -1,7 +1,7 @@
 package report;
 
-import core.Coord;
 import core.DTNHost;
+import core.PositionTable;
 import core.Settings;
 import core.SettingsError;
 import core.SimScenario;
@@ -126,10 +126,13 @@ extends SamplingReport {
 		final int[][] sample
 				= new int[this.horizontalCount][this.verticalCount];
 
+		final PositionTable positions = PositionTable.getInstance();
 		for (final DTNHost host : hosts) {
-			final Coord location = host.getLocation();
-			final int xBucket = (int) (location.getX() / this.divisionWidth);
-			final int yBucket = (int) (location.getY() / this.divisionHeight);
+			final int address = host.getAddress();
+			final int xBucket
+					= (int) (positions.getX(address) / this.divisionWidth);
+			final int yBucket
+					= (int) (positions.getY(address) / this.divisionHeight);
 			sample[xBucket][yBucket]++;
 		}
 
@@ -324,6 +324,15 @@ public abstract class Report {
 		return s;
 	}
 
+	/**
+	 * Returns the name of the report's output file (or the prefix of the
+	 * output files' names for intervalled reports)
+	 * @return The name of the output file
+	 */
+	public String getOutputFileName() {
+		return this.outFileName;
+	}
+
 	/**
 	 * Called when the simulation is done, user requested
 	 * premature termination or intervalled report generating decided
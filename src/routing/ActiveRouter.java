@@ -5,12 +5,15 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import routing.util.EnergyModel;
+import routing.util.MessageBuffer;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
 import util.Tuple;
@@ -29,6 +32,7 @@ import core.SimClock;
  * {@link #update()}).
  */
 public abstract class ActiveRouter extends MessageRouter {
+	private static final long serialVersionUID = 1L;
 	/** Delete delivered messages -setting id ({@value}). Boolean valued.
 	 * If set to true and final recipient of a message rejects it because it
 	 * already has it, the message is deleted from buffer. Default=false. */
@@ -106,15 +110,17 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 
 		DTNHost other = con.getOtherNode(getHost());
+		List<Message> forOther = getMessageBuffer().getMessagesTo(other);
+		if (forOther.isEmpty()) {
+			return false;
+		}
+
 		/* do a copy to avoid concurrent modification exceptions
 		 * (startTransfer may remove messages) */
-		ArrayList<Message> temp =
-			new ArrayList<Message>(this.getMessageCollection());
+		ArrayList<Message> temp = new ArrayList<Message>(forOther);
 		for (Message m : temp) {
-			if (other == m.getTo()) {
-				if (startTransfer(m, con) == RCV_OK) {
-					return true;
-				}
+			if (startTransfer(m, con) == RCV_OK) {
+				return true;
 			}
 		}
 		return false;
@@ -232,8 +238,8 @@ public abstract class ActiveRouter extends MessageRouter {
 			return TRY_LATER_BUSY; // only one connection at a time
 		}
 
-		if ( hasMessage(m.getId()) || isDeliveredMessage(m) ||
-				super.isBlacklistedMessage(m.getId())) {
+		if ( hasMessage(m.getIndex()) || isDeliveredMessage(m) ||
+				super.isBlacklistedMessage(m.getIndex())) {
 			return DENIED_OLD; // already seen this message -> reject it
 		}
 
@@ -323,19 +329,32 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
+		Iterator<Message> i = getMessageBuffer().byReceiveTime();
 		Message oldest = null;
-		for (Message m : messages) {
-
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+		boolean tie = false;
+		while (i.hasNext()) {
+			Message m = i.next();
+			if (excludeMsgBeingSent && isSending(m.getIndex())) {
 				continue; // skip the message(s) that router is sending
 			}
-
-			if (oldest == null ) {
+			if (oldest == null) {
 				oldest = m;
 			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+			else {
+				tie = m.getReceiveTime() == oldest.getReceiveTime();
+				break;
+			}
+		}
+
+		if (tie) {
+			/* of the messages with the same receive time, return the first
+			 * one in the order of the message collection */
+			double time = oldest.getReceiveTime();
+			for (Message m : getMessageCollection()) {
+				if (m.getReceiveTime() == time &&
+						!(excludeMsgBeingSent && isSending(m.getIndex()))) {
+					return m;
+				}
 			}
 		}
 
@@ -353,14 +372,36 @@ public abstract class ActiveRouter extends MessageRouter {
 			return new ArrayList<Tuple<Message, Connection>>(0);
 		}
 
-		List<Tuple<Message, Connection>> forTuples =
-			new ArrayList<Tuple<Message, Connection>>();
-		for (Message m : getMessageCollection()) {
-			for (Connection con : getConnections()) {
-				DTNHost to = con.getOtherNode(getHost());
-				if (m.getTo() == to) {
-					forTuples.add(new Tuple<Message, Connection>(m,con));
+		/* find the messages for the connected hosts from the destination
+		 * index instead of checking every message against every host */
+		MessageBuffer buffer = getMessageBuffer();
+		Map<DTNHost, List<Connection>> peers = null;
+		for (Connection con : getConnections()) {
+			DTNHost to = con.getOtherNode(getHost());
+			if (!buffer.getMessagesTo(to).isEmpty()) {
+				if (peers == null) {
+					peers = new HashMap<DTNHost, List<Connection>>();
+				}
+				List<Connection> toPeer = peers.get(to);
+				if (toPeer == null) {
+					toPeer = new ArrayList<Connection>(1);
+					peers.put(to, toPeer);
 				}
+				toPeer.add(con);
+			}
+		}
+		if (peers == null) {
+			return new ArrayList<Tuple<Message, Connection>>(0);
+		}
+
+		/* messages in the order they were received (the tuples may still
+		 * be ordered randomly by the send queue mode) */
+		List<Message> found = buffer.getMessagesTo(peers.keySet());
+		List<Tuple<Message, Connection>> forTuples =
+			new ArrayList<Tuple<Message, Connection>>(found.size());
+		for (Message m : found) {
+			for (Connection con : peers.get(m.getTo())) {
+				forTuples.add(new Tuple<Message, Connection>(m,con));
 			}
 		}
 
@@ -518,6 +559,11 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.sendingConnections.add(con);
 	}
 
+	@Override
+	public List<Connection> getSendingConnections() {
+		return Collections.unmodifiableList(this.sendingConnections);
+	}
+
 	/**
 	 * Returns true if this router is transferring something at the moment or
 	 * some transfer has not been finalized.
@@ -562,6 +608,33 @@ public abstract class ActiveRouter extends MessageRouter {
 		return false;
 	}
 
+	/**
+	 * Returns true if this router is currently sending a message with
+	 * the given index.
+	 * @param index The index of the message
+	 * @return True if the message is being sent false if not
+	 * @see Message#getIndex()
+	 */
+	public boolean isSending(int index) {
+		for (Connection con : this.sendingConnections) {
+			if (con.getMessage() == null) {
+				continue; // transmission is finalized
+			}
+			if (con.getMessage().getIndex() == index) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if this router uses an energy model
+	 * @return true if energy modeling is enabled
+	 */
+	public boolean hasEnergyModel() {
+		return this.energy != null;
+	}
+
 	/**
 	 * Returns true if the node has energy left (i.e., energy modeling is
 	 * enabled OR (is enabled and model has energy left))
@@ -631,6 +704,31 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the current time if energy modeling is enabled or some of the
+	 * sending connections needs attention, otherwise the time of the next
+	 * transfer state change or TTL check.
+	 */
+	@Override
+	public double getNextUpdateTime() {
+		double next = super.getNextUpdateTime();
+
+		if (this.energy != null) {
+			return SimClock.getTime(); /* energy is consumed on every update */
+		}
+
+		for (int i=0, n = this.sendingConnections.size(); i < n; i++) {
+			Connection con = this.sendingConnections.get(i);
+			if (!con.isUp() || con.getMessage() == null) {
+				return SimClock.getTime(); /* transfer needs finalizing */
+			}
+			next = Math.min(next, con.getNextEventTime());
+		}
+
+		/* TTL checks are done (and timed) also when the buffer is empty */
+		return Math.min(next, this.lastTtlCheck + TTL_CHECK_INTERVAL);
+	}
+
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()}
 	 * due connection going down. This happens on the sending host.
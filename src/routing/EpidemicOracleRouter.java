@@ -20,9 +20,16 @@ import static core.Constants.DEBUG;
  * <B>Note:</B> This router module also bypasses ActiveRouter.update()
  */
 public class EpidemicOracleRouter extends ActiveRouter {
-
-	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
+	private static final long serialVersionUID = 1L;
+
+	/** List of all routers in this node group (in each context) */
+	private static final SimContext.Key<List<EpidemicOracleRouter>>
+		allRouters = new SimContext.Key<List<EpidemicOracleRouter>>(
+				EpidemicOracleRouter.class, "allRouters") {
+			protected List<EpidemicOracleRouter> create() {
+				return new ArrayList<EpidemicOracleRouter>();
+			}
+		};
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -44,7 +51,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
-		allRouters.add(this);
+		allRouters.get().add(this);
 	}
 
 	@Override
@@ -114,7 +121,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 
 		if (m.getTo() == this.getHost()) {
-			for (EpidemicOracleRouter r : allRouters) {
+			for (EpidemicOracleRouter r : allRouters.get()) {
 				if (r != this && r != from.getRouter()) {
 					r.removeDeliveredMessage(id);
 				}
@@ -127,7 +134,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	}
 
 	protected int checkReceiving(Message m) {
-		if ( isIncomingMessage(m.getId()) || hasMessage(m.getId()) ||
+		if ( isIncomingMessage(m.getIndex()) || hasMessage(m.getIndex()) ||
 				isDeliveredMessage(m) ){
 			return DENIED_OLD; // already seen this message -> reject it
 		}
@@ -177,7 +184,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * Resets the static router list
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+		allRouters.reset();
 	}
 
 }
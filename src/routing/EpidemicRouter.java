@@ -11,6 +11,7 @@ import core.Settings;
  * connections at a time.
  */
 public class EpidemicRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -48,6 +49,11 @@ public class EpidemicRouter extends ActiveRouter {
 	}
 
 
+	@Override
+	public boolean supportsParallelUpdate() {
+		return true;
+	}
+
 	@Override
 	public EpidemicRouter replicate() {
 		return new EpidemicRouter(this);
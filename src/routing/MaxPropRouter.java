@@ -17,6 +17,7 @@ import java.util.Set;
 import routing.maxprop.MaxPropDijkstra;
 import routing.maxprop.MeetingProbabilitySet;
 import routing.util.RoutingInfo;
+import util.IntHashSet;
 import util.Tuple;
 import core.Connection;
 import core.DTNHost;
@@ -36,6 +37,7 @@ import core.Settings;
  * Protocols</I> Chants, 2008
  */
 public class MaxPropRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
     /** Router's setting namespace ({@value})*/
 	public static final String MAXPROP_NS = "MaxPropRouter";
 	/**
@@ -44,7 +46,7 @@ public class MaxPropRouter extends ActiveRouter {
 	public static final String PROB_SET_MAX_SIZE_S = "probSetMaxSize";
     /** Default value for the meeting probability set maximum size ({@value}).*/
     public static final int DEFAULT_PROB_SET_MAX_SIZE = 50;
-    private static int probSetMaxSize;
+    private int probSetMaxSize;
 
 	/** probabilities of meeting hosts */
 	private MeetingProbabilitySet probs;
@@ -53,8 +55,8 @@ public class MaxPropRouter extends ActiveRouter {
 	private Map<Integer, MeetingProbabilitySet> allProbs;
 	/** the cost-to-node calculator */
 	private MaxPropDijkstra dijkstra;
-	/** IDs of the messages that are known to have reached the final dst */
-	private Set<String> ackedMessageIds;
+	/** indexes of the messages that are known to have reached the final dst */
+	private IntHashSet ackedMessageIds;
 	/** mapping of the current costs for all messages. This should be set to
 	 * null always when the costs should be updated (a host is met or a new
 	 * message is received) */
@@ -62,8 +64,9 @@ public class MaxPropRouter extends ActiveRouter {
 	/** From host of the last cost calculation */
 	private DTNHost lastCostFrom;
 
-	/** Map of which messages have been sent to which hosts from this host */
-	private Map<DTNHost, Set<String>> sentMessages;
+	/** Map of which messages (indexes) have been sent to which hosts from
+	 * this host */
+	private Map<DTNHost, IntHashSet> sentMessages;
 
 	/** Over how many samples the "average number of bytes transferred per
 	 * transfer opportunity" is taken */
@@ -112,12 +115,13 @@ public class MaxPropRouter extends ActiveRouter {
 	protected MaxPropRouter(MaxPropRouter r) {
 		super(r);
 		this.alpha = r.alpha;
+		this.probSetMaxSize = r.probSetMaxSize;
 		this.probs = new MeetingProbabilitySet(probSetMaxSize, this.alpha);
 		this.allProbs = new HashMap<Integer, MeetingProbabilitySet>();
 		this.dijkstra = new MaxPropDijkstra(this.allProbs);
-		this.ackedMessageIds = new HashSet<String>();
+		this.ackedMessageIds = new IntHashSet();
 		this.avgSamples = new int[BYTES_TRANSFERRED_AVG_SAMPLES];
-		this.sentMessages = new HashMap<DTNHost, Set<String>>();
+		this.sentMessages = new HashMap<DTNHost, IntHashSet>();
 	}
 
 	@Override
@@ -181,13 +185,25 @@ public class MaxPropRouter extends ActiveRouter {
 
 	/**
 	 * Deletes the messages from the message buffer that are known to be ACKed
+	 * (in the order of the message collection)
 	 */
 	private void deleteAckedMessages() {
-		for (String id : this.ackedMessageIds) {
-			if (this.hasMessage(id) && !isSending(id)) {
-				this.deleteMessage(id, false);
+		List<Message> acked = null;
+		for (Message m : getMessageCollection()) {
+			if (this.ackedMessageIds.contains(m.getIndex()) &&
+					!isSending(m.getIndex())) {
+				if (acked == null) {
+					acked = new ArrayList<Message>();
+				}
+				acked.add(m);
 			}
 		}
+		if (acked == null) {
+			return;
+		}
+		for (Message m : acked) {
+			this.deleteMessage(m.getId(), false);
+		}
 	}
 
 	@Override
@@ -196,7 +212,7 @@ public class MaxPropRouter extends ActiveRouter {
 		Message m = super.messageTransferred(id, from);
 		/* was this node the final recipient of the message? */
 		if (isDeliveredMessage(m)) {
-			this.ackedMessageIds.add(id);
+			this.ackedMessageIds.add(m.getIndex());
 		}
 		return m;
 	}
@@ -210,22 +226,21 @@ public class MaxPropRouter extends ActiveRouter {
 	@Override
 	protected void transferDone(Connection con) {
 		Message m = con.getMessage();
-		String id = m.getId();
 		DTNHost recipient = con.getOtherNode(getHost());
-		Set<String> sentMsgIds = this.sentMessages.get(recipient);
+		IntHashSet sentMsgIds = this.sentMessages.get(recipient);
 
 		/* was the message delivered to the final recipient? */
 		if (m.getTo() == recipient) {
-			this.ackedMessageIds.add(m.getId()); // yes, add to ACKed messages
+			this.ackedMessageIds.add(m.getIndex()); // yes, add to ACKed messages
 			this.deleteMessage(m.getId(), false); // delete from buffer
 		}
 
 		/* update the map of where each message is already sent */
 		if (sentMsgIds == null) {
-			sentMsgIds = new HashSet<String>();
+			sentMsgIds = new IntHashSet();
 			this.sentMessages.put(recipient, sentMsgIds);
 		}
-		sentMsgIds.add(id);
+		sentMsgIds.add(m.getIndex());
 	}
 
 	/**
@@ -273,7 +288,7 @@ public class MaxPropRouter extends ActiveRouter {
 		List<Message> validMessages = new ArrayList<Message>();
 
 		for (Message m : messages) {
-			if (excludeMsgBeingSent && isSending(m.getId())) {
+			if (excludeMsgBeingSent && isSending(m.getIndex())) {
 				continue; // skip the message(s) that router is sending
 			}
 			validMessages.add(m);
@@ -353,7 +368,7 @@ public class MaxPropRouter extends ActiveRouter {
 		for (Connection con : getConnections()) {
 			DTNHost other = con.getOtherNode(getHost());
 			MaxPropRouter othRouter = (MaxPropRouter)other.getRouter();
-			Set<String> sentMsgIds = this.sentMessages.get(other);
+			IntHashSet sentMsgIds = this.sentMessages.get(other);
 
 			if (othRouter.isTransferring()) {
 				continue; // skip hosts that are transferring
@@ -362,13 +377,13 @@ public class MaxPropRouter extends ActiveRouter {
 			for (Message m : msgCollection) {
 				/* skip messages that the other host has or that have
 				 * passed the other host */
-				if (othRouter.hasMessage(m.getId()) ||
+				if (othRouter.hasMessage(m.getIndex()) ||
 						m.getHops().contains(other)) {
 					continue;
 				}
 				/* skip message if this host has already sent it to the other
 				   host (regardless of if the other host still has it) */
-				if (sentMsgIds != null && sentMsgIds.contains(m.getId())) {
+				if (sentMsgIds != null && sentMsgIds.contains(m.getIndex())) {
 					continue;
 				}
 				/* message was a good candidate for sending */
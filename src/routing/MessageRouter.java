@@ -4,6 +4,8 @@
  */
 package routing;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -20,13 +22,16 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import routing.util.MessageBuffer;
+import routing.util.MessageRegistry;
 import routing.util.RoutingInfo;
 import util.Tuple;
 
 /**
  * Superclass for message routers.
  */
-public abstract class MessageRouter {
+public abstract class MessageRouter implements Serializable {
+	private static final long serialVersionUID = 1L;
 	/** Message buffer size -setting id ({@value}). Long value in bytes.*/
 	public static final String B_SIZE_S = "bufferSize";
 	/**
@@ -85,14 +90,14 @@ public abstract class MessageRouter {
 	public static final int MAX_TTL_VALUE = 35791394;
 
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred and the hosts they are from (in the
+	 * order the transfers started) */
+	private List<Tuple<Message, DTNHost>> incomingMessages;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages;
-	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private MessageBuffer messages;
+	/** Registry of the messages that the hosts have received as the final
+	 * recipient and that Applications on the hosts have blacklisted */
+	private MessageRegistry registry;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -159,12 +164,12 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.incomingMessages = new ArrayList<Tuple<Message, DTNHost>>(2);
+		this.messages = new MessageBuffer();
 		this.mListeners = mListeners;
 		this.host = host;
+		this.registry = MessageRegistry.getInstance();
+		this.registry.clear(host);
 	}
 
 	/**
@@ -197,12 +202,56 @@ public abstract class MessageRouter {
 		}
 	}
 
+	/**
+	 * Returns the earliest simulation time when this router needs to be
+	 * updated even if the connections, buffers and transfers don't change.
+	 * Used when idle update intervals are skipped. Returns the current time
+	 * (i.e., update on every interval) if there are applications attached to
+	 * the router since they may act on any update, and Double.MAX_VALUE
+	 * otherwise. Routers that act on the passage of time should override
+	 * this.
+	 * @return The time of the next update this router needs
+	 */
+	public double getNextUpdateTime() {
+		if (this.applications.size() > 0) {
+			return SimClock.getTime();
+		}
+		return Double.MAX_VALUE;
+	}
+
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
 	 */
 	public abstract void changedConnection(Connection con);
 
+	/**
+	 * Returns true if an update of this router, and the calls it gets from
+	 * the routers of other hosts, only change the state of this host, the
+	 * hosts it is connected to or sending to (see
+	 * {@link #getSendingConnections()}) and the connections between them,
+	 * and don't use any other state that changes during an update round
+	 * (e.g., a shared random number generator). Hosts whose routers
+	 * support this can be updated concurrently when their neighbourhoods
+	 * don't overlap (see {@link core.World#PARALLEL_UPDATE_S}); hosts with
+	 * applications never are. Subclasses that fulfill this should override
+	 * this method. Default is false.
+	 * @return True if the router supports parallel updates
+	 */
+	public boolean supportsParallelUpdate() {
+		return false;
+	}
+
+	/**
+	 * Returns the connections whose transfers this router has started but
+	 * not yet finalized or aborted, including connections that have
+	 * already gone down. Default is an empty list.
+	 * @return A read-only list of the connections
+	 */
+	public List<Connection> getSendingConnections() {
+		return Collections.emptyList();
+	}
+
 	/**
 	 * Returns a message by ID.
 	 * @param id ID of the message
@@ -212,13 +261,33 @@ public abstract class MessageRouter {
 		return this.messages.get(id);
 	}
 
+	/**
+	 * Returns a message by the index.
+	 * @param index Index of the message
+	 * @return The message or null if there is no such message
+	 * @see Message#getIndex()
+	 */
+	protected Message getMessage(int index) {
+		return this.messages.get(index);
+	}
+
 	/**
 	 * Checks if this router has a message with certain id buffered.
 	 * @param id Identifier of the message
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
+	}
+
+	/**
+	 * Checks if this router has a message with certain index buffered.
+	 * @param index Index of the message
+	 * @return True if the router has message with this index, false if not
+	 * @see Message#getIndex()
+	 */
+	public boolean hasMessage(int index) {
+		return this.messages.contains(index);
 	}
 
 	/**
@@ -230,7 +299,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return this.registry.isDelivered(this.host, m.getIndex());
 	}
 
 	/**
@@ -239,11 +308,12 @@ public abstract class MessageRouter {
 	 * This ensures the peer doesn't try to constantly send the same message to
 	 * this node, just to get dropped by an application every time.
 	 *
-	 * @param id	id of the message
+	 * @param index	index of the message
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
+	 * @see Message#getIndex()
 	 */
-	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+	protected boolean isBlacklistedMessage(int index) {
+		return this.registry.isBlacklisted(this.host, index);
 	}
 
 	/**
@@ -253,9 +323,20 @@ public abstract class MessageRouter {
 	 * copy of the collection should be made to avoid concurrent modification
 	 * exceptions.
 	 * @return a reference to the messages of this router in collection
+	 * (read-only)
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
+	}
+
+	/**
+	 * Returns the message buffer of this router. The buffer must be modified
+	 * only with {@link #addToMessages(Message, boolean)} and
+	 * {@link #removeFromMessages(int)}.
+	 * @return The message buffer
+	 */
+	protected MessageBuffer getMessageBuffer() {
+		return this.messages;
 	}
 
 	/**
@@ -282,17 +363,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public long getFreeBufferSize() {
-		long occupancy = 0;
-
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-
-		return this.getBufferSize() - occupancy;
+		return this.getBufferSize() - this.messages.getOccupancy();
 	}
 
 	/**
@@ -391,11 +466,11 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			this.registry.setDelivered(this.host, aMessage);
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.registry.setBlacklisted(this.host, aMessage);
 		}
 
 		for (MessageListener ml : this.mListeners) {
@@ -413,7 +488,7 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		this.incomingMessages.add(new Tuple<Message, DTNHost>(m, from));
 	}
 
 	/**
@@ -424,17 +499,32 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		/* there are only a few incoming messages (at most one per
+		 * connection) so a linear search is the fastest way */
+		for (int i = 0, n = this.incomingMessages.size(); i < n; i++) {
+			Tuple<Message, DTNHost> t = this.incomingMessages.get(i);
+			if (t.getValue() == from && t.getKey().getId().equals(id)) {
+				this.incomingMessages.remove(i);
+				return t.getKey();
+			}
+		}
+		return null;
 	}
 
 	/**
-	 * Returns true if a message with the given ID is one of the
+	 * Returns true if a message with the given index is one of the
 	 * currently incoming messages, false if not
-	 * @param id ID of the message
+	 * @param index Index of the message
 	 * @return True if such message is incoming right now
+	 * @see Message#getIndex()
 	 */
-	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+	protected boolean isIncomingMessage(int index) {
+		for (Tuple<Message, DTNHost> t : this.incomingMessages) {
+			if (t.getKey().getIndex() == index) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -445,7 +535,7 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
 
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -460,7 +550,17 @@ public abstract class MessageRouter {
 	 * @return The removed message or null if message for the ID wasn't found
 	 */
 	protected Message removeFromMessages(String id) {
-		Message m = this.messages.remove(id);
+		return this.messages.remove(id);
+	}
+
+	/**
+	 * Removes and returns a message from the message buffer.
+	 * @param index Index of the message
+	 * @return The removed message or null if message for the index wasn't
+	 * found
+	 */
+	protected Message removeFromMessages(int index) {
+		Message m = this.messages.remove(index);
 		return m;
 	}
 
@@ -594,14 +694,17 @@ public abstract class MessageRouter {
 	}
 
 	/**
-	 * Returns routing information about this router.
+	 * Returns routing information about this router. The delivered
+	 * messages are listed by their IDs only because the paths of the
+	 * delivered messages are not kept (see {@link MessageRegistry}).
 	 * @return The routing information.
 	 */
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo ri = new RoutingInfo(this);
 		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() +
 				" incoming message(s)");
-		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
+		RoutingInfo delivered = new RoutingInfo(
+				this.registry.getNrofDelivered(this.host) +
 				" delivered message(s)");
 
 		RoutingInfo cons = new RoutingInfo(host.getConnections().size() +
@@ -611,12 +714,12 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 
-		for (Message m : this.incomingMessages.values()) {
-			incoming.addMoreInfo(new RoutingInfo(m));
+		for (Tuple<Message, DTNHost> t : this.incomingMessages) {
+			incoming.addMoreInfo(new RoutingInfo(t.getKey()));
 		}
 
-		for (Message m : this.deliveredMessages.values()) {
-			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
+		for (int index : this.registry.getDelivered(this.host)) {
+			delivered.addMoreInfo(new RoutingInfo(this.registry.getId(index)));
 		}
 
 		for (Connection c : host.getConnections()) {
@@ -13,6 +13,7 @@ import core.Settings;
  * For implementation specifics, see MessageRouter class.
  */
 public class PassiveRouter extends MessageRouter {
+	private static final long serialVersionUID = 1L;
 
 	public PassiveRouter(Settings s) {
 		super(s);
@@ -36,6 +37,11 @@ public class PassiveRouter extends MessageRouter {
 		// -"-
 	}
 
+	@Override
+	public boolean supportsParallelUpdate() {
+		return true;
+	}
+
 	@Override
 	public MessageRouter replicate() {
 		return new PassiveRouter(this);
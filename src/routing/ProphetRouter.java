@@ -28,6 +28,7 @@ import core.SimClock;
  * Anders Lindgren et al.
  */
 public class ProphetRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 	/** delivery predictability initialization constant*/
 	public static final double P_INIT = 0.75;
 	/** delivery predictability transitivity scaling constant default value */
@@ -315,6 +316,11 @@ public class ProphetRouter extends ActiveRouter {
 		return top;
 	}
 
+	@Override
+	public boolean supportsParallelUpdate() {
+		return true;
+	}
+
 	@Override
 	public MessageRouter replicate() {
 		ProphetRouter r = new ProphetRouter(this);
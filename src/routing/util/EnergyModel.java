@@ -4,6 +4,7 @@
  */
 package routing.util;
 
+import java.io.Serializable;
 import java.util.Random;
 
 import core.*;
@@ -14,7 +15,8 @@ import core.*;
  * often than 1/s, constant scanning is assumed (and power consumption does not
  * increase from {@link #scanEnergy} value).
  */
-public class EnergyModel implements ModuleCommunicationListener {
+public class EnergyModel implements ModuleCommunicationListener, Serializable {
+	private static final long serialVersionUID = 1L;
 	/** Initial units of energy -setting id ({@value}). Can be either a
 	 * single value, or a range of two values. In the latter case, the used
 	 * value is a uniformly distributed random value between the two values. */
@@ -57,7 +59,14 @@ public class EnergyModel implements ModuleCommunicationListener {
 	/** sim time of the last energy updated */
 	private double lastUpdate;
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
+	/** rng for the initial energy levels of each simulation context; the
+	 * rng itself is created when the first level is drawn */
+	private static final SimContext.Key<Random[]> rng =
+		new SimContext.Key<Random[]>(EnergyModel.class, "rng") {
+			protected Random[] create() {
+				return new Random[1];
+			}
+		};
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -118,11 +127,12 @@ public class EnergyModel implements ModuleCommunicationListener {
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
+			Random[] ctxRng = rng.get();
+			if (ctxRng[0] == null) {
+				ctxRng[0] = new Random((int)(range[0] + range[1]));
 			}
 			this.currentEnergy = range[0] +
-				rng.nextDouble() * (range[1] - range[0]);
+				ctxRng[0].nextDouble() * (range[1] - range[0]);
 		}
 	}
 
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import util.IntHashMap;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Message buffer of a router. Keeps the messages by their IDs and by their
+ * indexes (see {@link Message#getIndex()}) and maintains
+ * the total size of the buffered messages, an index of the messages ordered
+ * by their receive time and an index of the messages by their destination
+ * host, so that the buffer occupancy, the oldest messages and the messages
+ * for a certain host can be found without going through all the messages.
+ * <P>
+ * The receive time of a message must not be changed while it is in the
+ * buffer.
+ * </P>
+ */
+public class MessageBuffer implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** the messages by their IDs (also gives the order of the messages);
+	 * written and read by {@link #writeObject(ObjectOutputStream)} and
+	 * {@link #readObject(ObjectInputStream)} */
+	private transient HashMap<String, Message> messages;
+	/** largest number of messages the buffer has had */
+	private int maxSize;
+	/** the messages (with their sequence numbers) by their indexes */
+	private IntHashMap<Entry> byIndex;
+	/** read-only view of the messages (created when first needed) */
+	private transient Collection<Message> view;
+	/** messages ordered by their receive time */
+	private TreeSet<Message> byReceiveTime;
+	/** messages by their destination hosts (ordered by their sequence
+	 * numbers, i.e., in the order they were added) */
+	private HashMap<DTNHost, TreeSet<Entry>> byDestination;
+	/** sequence number of the next message added to the buffer */
+	private long nextSequence;
+	/** total size of the messages (bytes) */
+	private long occupancy;
+
+	/**
+	 * Creates a new empty buffer
+	 */
+	public MessageBuffer() {
+		this.messages = new HashMap<String, Message>();
+		this.byIndex = new IntHashMap<Entry>();
+		this.byReceiveTime = new TreeSet<Message>(new ReceiveTimeComparator());
+		this.byDestination = new HashMap<DTNHost, TreeSet<Entry>>();
+		this.occupancy = 0;
+		this.nextSequence = 0;
+		this.maxSize = 0;
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * @param m The message to add
+	 */
+	public void add(Message m) {
+		Message old = this.messages.put(m.getId(), m);
+		if (old != null) {
+			unindex(this.byIndex.remove(old.getIndex()));
+		}
+		Entry e = new Entry(m, this.nextSequence++);
+		this.byIndex.put(m.getIndex(), e);
+		this.maxSize = Math.max(this.maxSize, this.messages.size());
+
+		this.occupancy += m.getSize();
+		this.byReceiveTime.add(m);
+		TreeSet<Entry> forDest = this.byDestination.get(m.getTo());
+		if (forDest == null) {
+			forDest = new TreeSet<Entry>();
+			this.byDestination.put(m.getTo(), forDest);
+		}
+		forDest.add(e);
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param index Index of the message
+	 * @return The removed message or null if there was no message with the
+	 * index
+	 */
+	public Message remove(int index) {
+		Entry e = this.byIndex.remove(index);
+		if (e == null) {
+			return null;
+		}
+		this.messages.remove(e.message.getId());
+		unindex(e);
+		return e.message;
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id ID of the message
+	 * @return The removed message or null if there was no message with the
+	 * ID
+	 */
+	public Message remove(String id) {
+		Message m = this.messages.remove(id);
+		if (m != null) {
+			unindex(this.byIndex.remove(m.getIndex()));
+		}
+		return m;
+	}
+
+	/**
+	 * Removes a message from the other indexes than the ID and index maps
+	 * @param e The entry of the message
+	 */
+	private void unindex(Entry e) {
+		Message m = e.message;
+		this.occupancy -= m.getSize();
+		this.byReceiveTime.remove(m);
+		TreeSet<Entry> forDest = this.byDestination.get(m.getTo());
+		forDest.remove(e);
+		if (forDest.isEmpty()) {
+			this.byDestination.remove(m.getTo());
+		}
+	}
+
+	/**
+	 * Returns a message by its index
+	 * @param index Index of the message
+	 * @return The message or null if there is no message with the index
+	 */
+	public Message get(int index) {
+		Entry e = this.byIndex.get(index);
+		return e == null ? null : e.message;
+	}
+
+	/**
+	 * Returns a message by its ID
+	 * @param id ID of the message
+	 * @return The message or null if there is no message with the ID
+	 */
+	public Message get(String id) {
+		return this.messages.get(id);
+	}
+
+	/**
+	 * Returns true if the buffer contains a message with the given index
+	 * @param index Index of the message
+	 * @return True if there is a message with the index
+	 */
+	public boolean contains(int index) {
+		return this.byIndex.containsKey(index);
+	}
+
+	/**
+	 * Returns true if the buffer contains a message with the given ID
+	 * @param id ID of the message
+	 * @return True if there is a message with the ID
+	 */
+	public boolean contains(String id) {
+		return this.messages.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return this.messages.size();
+	}
+
+	/**
+	 * Returns the total size of the messages in the buffer
+	 * @return The size in bytes
+	 */
+	public long getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns a read-only view of the messages in the buffer. The view
+	 * reflects the changes to the buffer and it gives the messages in the
+	 * iteration order of a String-keyed hash map (as the router's message
+	 * collection did before the buffer was indexed).
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		if (this.view == null) {
+			this.view = Collections.unmodifiableCollection(
+					this.messages.values());
+		}
+		return this.view;
+	}
+
+	/**
+	 * Returns the messages in the order of their receive time (oldest
+	 * first). Messages with the same receive time are in the order of
+	 * their unique IDs.
+	 * @return Iterator of the messages. The buffer must not be modified
+	 * while iterating.
+	 */
+	public Iterator<Message> byReceiveTime() {
+		return Collections.unmodifiableSet(this.byReceiveTime).iterator();
+	}
+
+	/**
+	 * Returns the messages whose destination is the given host
+	 * @param to The destination host
+	 * @return The messages in the order they were added to the buffer (an
+	 * empty list if there are no messages for the host). The list must not
+	 * be modified and it may change when the buffer changes. It is meant
+	 * for iterating; getting a message by its position takes linear time.
+	 */
+	public List<Message> getMessagesTo(DTNHost to) {
+		final TreeSet<Entry> forDest = this.byDestination.get(to);
+		if (forDest == null) {
+			return Collections.emptyList();
+		}
+		return new AbstractList<Message>() {
+			public Message get(int index) {
+				if (index < 0 || index >= forDest.size()) {
+					throw new IndexOutOfBoundsException("Index: " + index +
+							", Size: " + forDest.size());
+				}
+				Iterator<Message> i = iterator();
+				for (int j = 0; j < index; j++) {
+					i.next();
+				}
+				return i.next();
+			}
+
+			public Iterator<Message> iterator() {
+				final Iterator<Entry> entries = forDest.iterator();
+				return new Iterator<Message>() {
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+
+					public Message next() {
+						return entries.next().message;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			public int size() {
+				return forDest.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns the messages whose destination is one of the given hosts
+	 * @param hosts The destination hosts
+	 * @return A new list of the messages in the order they were added to
+	 * the buffer
+	 */
+	public List<Message> getMessagesTo(Collection<DTNHost> hosts) {
+		List<Entry> found = new ArrayList<Entry>();
+		for (DTNHost to : hosts) {
+			TreeSet<Entry> forDest = this.byDestination.get(to);
+			if (forDest != null) {
+				found.addAll(forDest);
+			}
+		}
+		if (hosts.size() > 1) {
+			Collections.sort(found);
+		}
+
+		List<Message> messages = new ArrayList<Message>(found.size());
+		for (Entry e : found) {
+			messages.add(e.message);
+		}
+		return messages;
+	}
+
+	/**
+	 * Message of the destination index with the sequence number that tells
+	 * in which order the messages were added to the buffer
+	 */
+	private static class Entry implements Comparable<Entry>, Serializable {
+		private static final long serialVersionUID = 1L;
+		private Message message;
+		private long sequence;
+
+		public Entry(Message message, long sequence) {
+			this.message = message;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Entry other) {
+			return Long.compare(this.sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * Writes the buffer. The messages are written in their iteration order
+	 * so that {@link #readObject(ObjectInputStream)} can restore the order.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(this.messages.size());
+		for (Message m : this.messages.values()) {
+			out.writeObject(m);
+		}
+	}
+
+	/**
+	 * Reads a buffer written by {@link #writeObject(ObjectOutputStream)}.
+	 * A hash map sizes its table by the number of entries when it is read,
+	 * so the map is created here with the table size it had when the buffer
+	 * was written (the table grows with the number of entries and never
+	 * shrinks) and the messages are put to it in their old iteration order.
+	 * This way a restored simulation goes through the messages in the same
+	 * order as the original one.
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int capacity = 16; // initial table size of a hash map
+		while (this.maxSize > capacity * 3 / 4) {
+			capacity *= 2;
+		}
+		this.messages = new HashMap<String, Message>(capacity);
+		for (int i = 0, n = in.readInt(); i < n; i++) {
+			Message m = (Message)in.readObject();
+			this.messages.put(m.getId(), m);
+		}
+	}
+
+	/**
+	 * Orders messages by their receive time and unique ID
+	 */
+	private static class ReceiveTimeComparator
+			implements Comparator<Message>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		public int compare(Message m1, Message m2) {
+			int c = Double.compare(m1.getReceiveTime(), m2.getReceiveTime());
+			if (c != 0) {
+				return c;
+			}
+			return Integer.compare(m1.getUniqueId(), m2.getUniqueId());
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import util.IntHashMap;
+import util.SparseBitSet;
+import core.DTNHost;
+import core.DTNSim;
+import core.Message;
+import core.SimContext;
+
+/**
+ * World-level registry of the messages that hosts have received as the
+ * final recipient (delivered messages) and that applications on the hosts
+ * have blacklisted. The messages are kept by their indexes (see
+ * {@link core.Message#getIndex()}) in a compressed bitset per host, so a
+ * delivered message takes at most a few bytes instead of a map entry in
+ * the host's router. There is one registry per simulation context.
+ * <P>
+ * Only the IDs of the delivered messages are remembered, not the delivered
+ * messages themselves, so e.g. the paths the delivered messages took are
+ * not available after the delivery (message listeners get the messages
+ * when they are delivered).
+ * </P>
+ */
+public class MessageRegistry implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** estimated size of an object header and an array header (bytes) */
+	private static final int OBJECT_OVERHEAD = 16;
+	/** estimated size of an entry of a hash map with an Integer value
+	 * (entry object, boxed value and a table slot) */
+	private static final int MAP_ENTRY_SIZE = 32 + 16 + 8;
+
+	/** the registry of each simulation context */
+	private static final SimContext.Key<MessageRegistry> registry =
+		new SimContext.Key<MessageRegistry>(MessageRegistry.class,
+				"registry") {
+			protected MessageRegistry create() {
+				return new MessageRegistry();
+			}
+		};
+
+	/** delivered messages by host addresses (null if none) */
+	private SparseBitSet[] delivered;
+	/** blacklisted messages by host addresses (null if none) */
+	private SparseBitSet[] blacklisted;
+	/** IDs of the delivered messages by their indexes */
+	private IntHashMap<String> deliveredIds;
+
+	static {
+		DTNSim.registerForReset(MessageRegistry.class.getCanonicalName());
+	}
+
+	/**
+	 * Creates a new empty registry
+	 */
+	private MessageRegistry() {
+		this.delivered = new SparseBitSet[0];
+		this.blacklisted = new SparseBitSet[0];
+		this.deliveredIds = new IntHashMap<String>();
+	}
+
+	/**
+	 * Returns the registry of the current simulation context
+	 * @return The registry
+	 */
+	public static MessageRegistry getInstance() {
+		return registry.get();
+	}
+
+	/**
+	 * Resets the registry of the current simulation context (for the next
+	 * run of a batch)
+	 */
+	public static void reset() {
+		registry.reset();
+	}
+
+	/**
+	 * Removes all the messages of a host from the registry. Should be
+	 * called when a new router is taken into use for the host. Also makes
+	 * room for the host's sets so that the registry doesn't need to grow
+	 * when the hosts are updated concurrently.
+	 * @param host The host
+	 */
+	public void clear(DTNHost host) {
+		int address = host.getAddress();
+		grow(address);
+		this.delivered[address] = null;
+		this.blacklisted[address] = null;
+	}
+
+	/**
+	 * Grows the set arrays (if necessary) to have room for a host address
+	 */
+	private void grow(int address) {
+		if (address >= this.delivered.length) {
+			int length = Math.max(address + 1, this.delivered.length * 2);
+			this.delivered = Arrays.copyOf(this.delivered, length);
+			this.blacklisted = Arrays.copyOf(this.blacklisted, length);
+		}
+	}
+
+	/**
+	 * Returns the set of a host from the array or null if there is none
+	 */
+	private static SparseBitSet get(SparseBitSet[] sets, DTNHost host) {
+		int address = host.getAddress();
+		return address < sets.length ? sets[address] : null;
+	}
+
+	/**
+	 * Returns the set of a host, creating it (and growing the arrays) if
+	 * necessary
+	 */
+	private SparseBitSet create(boolean forDelivered, DTNHost host) {
+		int address = host.getAddress();
+		grow(address);
+
+		SparseBitSet[] sets = forDelivered ? this.delivered : this.blacklisted;
+		if (sets[address] == null) {
+			sets[address] = new SparseBitSet();
+		}
+		return sets[address];
+	}
+
+	/**
+	 * Marks a message delivered to a host
+	 * @param host The host that received the message as the final recipient
+	 * @param index Index of the message
+	 * @return True if the message was not marked delivered to the host before
+	 */
+	public boolean setDelivered(DTNHost host, int index) {
+		return create(true, host).add(index);
+	}
+
+	/**
+	 * Marks a message delivered to a host, keeps the index of the message
+	 * for its ID (see {@link Message#keepIndex()}) and remembers the ID
+	 * (see {@link #getId(int)}). The messages of different hosts can be
+	 * marked delivered concurrently.
+	 * @param host The host that received the message as the final recipient
+	 * @param m The message
+	 * @return True if the message was not marked delivered to the host before
+	 */
+	public boolean setDelivered(DTNHost host, Message m) {
+		if (!setDelivered(host, m.getIndex())) {
+			return false;
+		}
+		synchronized (this.deliveredIds) {
+			if (this.deliveredIds.put(m.getIndex(), m.getId()) == null) {
+				m.keepIndex();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the ID of a delivered message
+	 * @param index Index of the message
+	 * @return The ID or null if no message with the index has been marked
+	 * delivered with {@link #setDelivered(DTNHost, Message)}
+	 */
+	public String getId(int index) {
+		return this.deliveredIds.get(index);
+	}
+
+	/**
+	 * Returns true if a message has been delivered to a host
+	 * @param host The host
+	 * @param index Index of the message
+	 * @return True if the host has received the message as the final
+	 * recipient
+	 */
+	public boolean isDelivered(DTNHost host, int index) {
+		SparseBitSet set = get(this.delivered, host);
+		return set != null && set.contains(index);
+	}
+
+	/**
+	 * Returns the indexes of the messages delivered to a host
+	 * @param host The host
+	 * @return The indexes in ascending order
+	 */
+	public int[] getDelivered(DTNHost host) {
+		SparseBitSet set = get(this.delivered, host);
+		return set != null ? set.toArray() : new int[0];
+	}
+
+	/**
+	 * Returns the number of messages delivered to a host
+	 * @param host The host
+	 * @return The number of delivered messages
+	 */
+	public int getNrofDelivered(DTNHost host) {
+		SparseBitSet set = get(this.delivered, host);
+		return set != null ? set.size() : 0;
+	}
+
+	/**
+	 * Marks a message blacklisted by a host
+	 * @param host The host whose application(s) blacklisted the message
+	 * @param index Index of the message
+	 * @return True if the message was not blacklisted by the host before
+	 */
+	public boolean setBlacklisted(DTNHost host, int index) {
+		return create(false, host).add(index);
+	}
+
+	/**
+	 * Marks a message blacklisted by a host and keeps the index of the
+	 * message for its ID (see {@link Message#keepIndex()})
+	 * @param host The host whose application(s) blacklisted the message
+	 * @param m The message
+	 * @return True if the message was not blacklisted by the host before
+	 */
+	public boolean setBlacklisted(DTNHost host, Message m) {
+		if (!setBlacklisted(host, m.getIndex())) {
+			return false;
+		}
+		m.keepIndex();
+		return true;
+	}
+
+	/**
+	 * Returns true if a message has been blacklisted by a host
+	 * @param host The host
+	 * @param index Index of the message
+	 * @return True if the message is blacklisted
+	 */
+	public boolean isBlacklisted(DTNHost host, int index) {
+		SparseBitSet set = get(this.blacklisted, host);
+		return set != null && set.contains(index);
+	}
+
+	/**
+	 * Returns the number of messages blacklisted by a host
+	 * @param host The host
+	 * @return The number of blacklisted messages
+	 */
+	public int getNrofBlacklisted(DTNHost host) {
+		SparseBitSet set = get(this.blacklisted, host);
+		return set != null ? set.size() : 0;
+	}
+
+	/**
+	 * Returns the total number of delivered message entries in the registry
+	 * @return The number of entries (sum over all hosts)
+	 */
+	public long getTotalDelivered() {
+		return total(this.delivered);
+	}
+
+	/**
+	 * Returns the total number of blacklisted message entries in the
+	 * registry
+	 * @return The number of entries (sum over all hosts)
+	 */
+	public long getTotalBlacklisted() {
+		return total(this.blacklisted);
+	}
+
+	/**
+	 * Returns the total number of values in the sets
+	 */
+	private static long total(SparseBitSet[] sets) {
+		long total = 0;
+		for (SparseBitSet set : sets) {
+			if (set != null) {
+				total += set.size();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns an estimate of the memory the registry takes. Includes the
+	 * IDs of the delivered messages and the index of the message IDs that
+	 * are kept for the registry (see {@link Message#keepIndex()}).
+	 * @return The estimated size in bytes
+	 */
+	public long getMemoryFootprint() {
+		long bytes = 3 * OBJECT_OVERHEAD + 2L * 4 * this.delivered.length;
+		for (int i = 0; i < this.delivered.length; i++) {
+			if (this.delivered[i] != null) {
+				bytes += this.delivered[i].getMemoryFootprint();
+			}
+			if (this.blacklisted[i] != null) {
+				bytes += this.blacklisted[i].getMemoryFootprint();
+			}
+		}
+
+		bytes += this.deliveredIds.getMemoryFootprint();
+		for (String id : this.deliveredIds.values()) {
+			/* string object and its (one byte per char) array */
+			bytes += 2 * OBJECT_OVERHEAD + 8 + id.length();
+		}
+		/* the kept IDs are mostly the same strings as the delivered IDs */
+		bytes += (long)Message.getNrofKeptIndexes() * MAP_ENTRY_SIZE;
+		return bytes;
+	}
+}
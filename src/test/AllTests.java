@@ -47,9 +47,26 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(EventQueueMergerTest.class);
 		suite.addTestSuite(MessageTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
 		suite.addTestSuite(DTNHostTest.class);
+		suite.addTestSuite(SimContextTest.class);
+		suite.addTestSuite(ConnectionListTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(ConnectivityQuadTreeTest.class);
+		suite.addTestSuite(RangeBatchTest.class);
+		suite.addTestSuite(KineticConnectivityTest.class);
+		suite.addTestSuite(ContactPlanTest.class);
+		suite.addTestSuite(TokenReaderTest.class);
+		suite.addTestSuite(PrefetcherTest.class);
+		suite.addTestSuite(PathTraceIndexTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
+		suite.addTestSuite(IntHashMapTest.class);
+		suite.addTestSuite(SparseBitSetTest.class);
+		suite.addTestSuite(MessageRegistryTest.class);
+		suite.addTestSuite(DTNSimBatchRunnerTest.class);
+		suite.addTestSuite(SimCheckpointTest.class);
 		//$JUnit-END$
 		return suite;
 	}
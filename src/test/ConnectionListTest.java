@@ -0,0 +1,209 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.CBRConnection;
+import core.Connection;
+import core.ConnectionList;
+import core.DTNHost;
+import core.NetworkInterface;
+import interfaces.ConnectivityGrid;
+
+/**
+ * Tests for the ConnectionList
+ */
+public class ConnectionListTest extends TestCase {
+	private static final int NROF_PEERS = 100;
+
+	private NetworkInterface owner;
+	private List<NetworkInterface> peers;
+	private ConnectionList list;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ConnectivityGrid.reset();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		this.owner = utils.createHost().getInterface(1);
+		this.peers = new ArrayList<NetworkInterface>();
+		for (int i = 0; i < NROF_PEERS; i++) {
+			peers.add(utils.createHost().getInterface(1));
+		}
+		this.list = new ConnectionList(owner);
+	}
+
+	private Connection connection(NetworkInterface peer, boolean fromOwner) {
+		DTNHost ownerHost = owner.getHost();
+		if (fromOwner) {
+			return new CBRConnection(ownerHost, owner, peer.getHost(), peer, 1);
+		}
+		return new CBRConnection(peer.getHost(), peer, ownerHost, owner, 1);
+	}
+
+	public void testAddAndRemove() {
+		Random rng = new Random(7);
+		List<Connection> expected = new ArrayList<Connection>();
+
+		for (int round = 0; round < 2000; round++) {
+			NetworkInterface peer = peers.get(rng.nextInt(NROF_PEERS));
+			Connection con = list.getConnectionTo(peer);
+			if (con == null) {
+				con = connection(peer, rng.nextBoolean());
+				list.add(con);
+				expected.add(con);
+			} else {
+				assertTrue(list.remove(con));
+				expected.remove(con);
+			}
+			assertEquals(expected, list);
+		}
+
+		for (NetworkInterface peer : peers) {
+			Connection con = list.getConnectionTo(peer);
+			if (con == null) {
+				for (Connection c : expected) {
+					assertNotSame(peer, c.getOtherInterface(owner));
+				}
+			} else {
+				assertSame(peer, con.getOtherInterface(owner));
+				assertTrue(list.contains(con));
+			}
+		}
+	}
+
+	public void testOrderAndIteratorRemove() {
+		for (int i = 0; i < 10; i++) {
+			list.add(connection(peers.get(i), true));
+		}
+		Connection third = list.get(2);
+		list.remove(1);
+		assertSame(third, list.get(1));
+		assertEquals(9, list.size());
+
+		for (Iterator<Connection> i = list.iterator(); i.hasNext();) {
+			if (i.next().getOtherInterface(owner) == peers.get(5)) {
+				i.remove();
+			}
+		}
+		assertNull(list.getConnectionTo(peers.get(5)));
+		assertNull(list.getConnectionTo(peers.get(1)));
+		assertNotNull(list.getConnectionTo(peers.get(9)));
+		assertEquals(8, list.size());
+
+		list.clear();
+		assertEquals(0, list.size());
+		assertNull(list.getConnectionTo(peers.get(9)));
+	}
+
+	public void testDuplicates() {
+		NetworkInterface peer = peers.get(0);
+		Connection first = connection(peer, true);
+		Connection second = connection(peer, false);
+		Connection other = connection(peers.get(1), true);
+		list.add(first);
+		list.add(other);
+		list.add(second);
+
+		assertSame(first, list.getConnectionTo(peer));
+		assertTrue(list.contains(second));
+		assertEquals(2, list.indexOf(second));
+
+		list.remove(first);
+		assertSame(second, list.getConnectionTo(peer));
+		list.remove(second);
+		assertNull(list.getConnectionTo(peer));
+		assertSame(other, list.getConnectionTo(peers.get(1)));
+		assertFalse(list.remove(first));
+	}
+
+	public void testModCountSurvivesSerialization() throws Exception {
+		list.add(connection(peers.get(0), true));
+		list.add(connection(peers.get(1), true));
+		int modCount = list.getModCount();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		ConnectionList restored = (ConnectionList)in.readObject();
+
+		assertEquals(modCount, restored.getModCount());
+		restored.remove(0);
+		assertTrue(modCount != restored.getModCount());
+	}
+
+	public void testRandomOperations() {
+		Random rng = new Random(3);
+		List<Connection> expected = new ArrayList<Connection>();
+
+		for (int round = 0; round < 5000; round++) {
+			NetworkInterface peer = peers.get(rng.nextInt(10));
+			int op = rng.nextInt(6);
+			if (op == 0 || expected.isEmpty()) {
+				Connection con = connection(peer, rng.nextBoolean());
+				list.add(con);
+				expected.add(con);
+			} else if (op == 1) {
+				int index = rng.nextInt(expected.size() + 1);
+				Connection con = connection(peer, rng.nextBoolean());
+				list.add(index, con);
+				expected.add(index, con);
+			} else if (op == 2) {
+				Connection con = expected.get(rng.nextInt(expected.size()));
+				assertEquals(expected.indexOf(con), list.indexOf(con));
+				assertTrue(list.remove(con));
+				expected.remove(con);
+				assertFalse(list.contains(con));
+			} else if (op == 3) {
+				int index = rng.nextInt(expected.size());
+				assertSame(expected.remove(index), list.remove(index));
+			} else if (op == 4) {
+				Iterator<Connection> i = list.iterator();
+				Iterator<Connection> e = expected.iterator();
+				while (i.hasNext()) {
+					assertSame(e.next(), i.next());
+					if (rng.nextInt(4) == 0) {
+						i.remove();
+						e.remove();
+					}
+				}
+				assertFalse(e.hasNext());
+			} else {
+				Connection con = list.getConnectionTo(peer);
+				Connection first = null;
+				for (Connection c : expected) {
+					if (c.getOtherInterface(owner) == peer) {
+						first = c;
+						break;
+					}
+				}
+				assertSame(first, con);
+			}
+			assertEquals(expected.size(), list.size());
+		}
+		assertEquals(expected, list);
+	}
+
+	public void testIndexOutOfBounds() {
+		list.add(connection(peers.get(0), true));
+		try {
+			list.get(1);
+			fail("No exception for an index past the end");
+		} catch (IndexOutOfBoundsException e) {
+			assertEquals("Index: 1, Size: 1", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Tests for the ConnectivityGrid
+ */
+public class ConnectivityGridTest extends TestCase {
+	/* transmit range 1.0 and default cell size multiplier -> cell size 5 */
+	private static final double RANGE = 1.0;
+
+	private TestUtils utils;
+	private ConnectivityGrid grid;
+	private NetworkInterface n0, n1, n2, n3;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ConnectivityGrid.reset();
+		this.utils = new TestUtils(null, null, new TestSettings());
+
+		n0 = iface(utils.createHost(new Coord(1, 1)));
+		n1 = iface(utils.createHost(new Coord(4, 4)));  // same cell as n0
+		n2 = iface(utils.createHost(new Coord(7, 1)));  // neighbor cell
+		n3 = iface(utils.createHost(new Coord(20, 20)));// far away
+		this.grid = ConnectivityGrid.ConnectivityGridFactory(
+				TestUtils.IFACE_NS.hashCode(), RANGE);
+		for (NetworkInterface ni : new NetworkInterface[] {n0, n1, n2, n3}) {
+			grid.updateLocation(ni); // hosts are added before they're placed
+		}
+	}
+
+	private NetworkInterface iface(DTNHost host) {
+		return host.getInterface(1);
+	}
+
+	public void testNearInterfaces() {
+		assertNear(grid.getNearInterfaces(n0), n0, n1, n2);
+		assertNear(grid.getNearInterfaces(n2), n0, n1, n2);
+		assertNear(grid.getNearInterfaces(n3), n3);
+		assertEquals(4, grid.getAllInterfaces().size());
+	}
+
+	public void testVisitNearInterfaces() {
+		final List<NetworkInterface> visited = new ArrayList<NetworkInterface>();
+		grid.visitNearInterfaces(n1, new InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				visited.add(ni);
+			}
+		});
+		assertEquals(new ArrayList<NetworkInterface>(
+				grid.getNearInterfaces(n1)), visited);
+	}
+
+	public void testUpdateLocation() {
+		n3.getHost().setLocation(new Coord(3, 2));
+		grid.updateLocation(n3);
+		assertNear(grid.getNearInterfaces(n0), n0, n1, n3, n2);
+
+		n0.getHost().setLocation(new Coord(30, 30));
+		grid.updateLocation(n0);
+		assertNear(grid.getNearInterfaces(n1), n1, n3, n2);
+		assertNear(grid.getNearInterfaces(n0), n0);
+	}
+
+	public void testRemoveInterface() {
+		grid.removeInterface(n1);
+		assertNear(grid.getNearInterfaces(n0), n0, n2);
+		assertEquals(0, grid.getNearInterfaces(n1).size());
+		assertEquals(3, grid.getAllInterfaces().size());
+
+		grid.addInterface(n1);
+		grid.addInterface(n1); // adding twice has no effect
+		assertNear(grid.getNearInterfaces(n0), n0, n1, n2);
+		assertEquals(4, grid.getAllInterfaces().size());
+	}
+
+	public void testScanPairs() {
+		TestInterface t0 = (TestInterface)n0;
+		TestInterface t1 = (TestInterface)n1;
+		TestInterface t2 = (TestInterface)n2;
+		TestInterface t3 = (TestInterface)n3;
+
+		/* a pair just within range in neighbor cells... */
+		n2.getHost().setLocation(new Coord(4.5, 4.5));
+		n3.getHost().setLocation(new Coord(5.2, 5.0));
+		grid.updateLocation(n2);
+		grid.updateLocation(n3);
+		/* ...and a connected pair that goes out of range */
+		n0.connect(n1);
+		n1.getHost().setLocation(new Coord(14, 4));
+		grid.updateLocation(n1);
+
+		grid.scanPairs();
+		assertNear(t2.getConnectCandidates(), n3);
+		assertNear(t3.getConnectCandidates(), n2);
+		assertNear(t0.getConnectCandidates());
+		assertNear(t1.getConnectCandidates());
+
+		t0.disconnectLost();
+		assertEquals(0, n0.getConnections().size());
+		assertEquals(0, n1.getConnections().size());
+		t1.disconnectLost(); // already torn down by the other end
+
+		/* connected pairs within range are neither lost nor new */
+		n2.connect(n3);
+		grid.scanPairs();
+		assertNear(t2.getConnectCandidates());
+		t2.disconnectLost();
+		t3.disconnectLost();
+		assertEquals(1, n2.getConnections().size());
+		assertEquals(1, n3.getConnections().size());
+	}
+
+	private void assertNear(Collection<NetworkInterface> near,
+			NetworkInterface... expected) {
+		List<NetworkInterface> list = new ArrayList<NetworkInterface>(near);
+		assertEquals("Wrong interfaces: " + list, expected.length,
+				list.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], list.get(i));
+		}
+	}
+}
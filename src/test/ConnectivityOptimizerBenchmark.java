@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.ConnectivityOptimizer.InterfaceVisitor;
+import interfaces.ConnectivityQuadTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import movement.MovementModel;
+import core.Coord;
+import core.NetworkInterface;
+import core.SimClock;
+
+/**
+ * Benchmark of the connectivity optimizers. Compares the
+ * {@link ConnectivityGrid} and the {@link ConnectivityQuadTree} in a
+ * scenario where the hosts are clustered in a few hot spots and a few of
+ * them have a much longer radio range than the others (so the grid's cells
+ * must be large). Every round moves all the hosts a bit, updates their
+ * locations in the optimizer and visits the near interfaces of every
+ * interface. Not a unit test; run with<BR>
+ * <CODE>java test.ConnectivityOptimizerBenchmark [hosts [rounds]]</CODE>
+ */
+public class ConnectivityOptimizerBenchmark {
+	private static final int DEF_NROF_HOSTS = 2000;
+	private static final int DEF_NROF_ROUNDS = 50;
+	private static final int WORLD_SIZE = 4000;
+	private static final int NROF_HOT_SPOTS = 8;
+	private static final double HOT_SPOT_SIZE = 200;
+	private static final double SHORT_RANGE = 10;
+	private static final double LONG_RANGE = 250;
+	/** every this many hosts has the long range */
+	private static final int LONG_RANGE_INTERVAL = 50;
+	private static final double MAX_STEP = 2;
+	private static final long SEED = 1;
+
+	private int nrofHosts;
+	private int nrofRounds;
+	private long candidates;
+
+	private ConnectivityOptimizerBenchmark(int nrofHosts, int nrofRounds) {
+		this.nrofHosts = nrofHosts;
+		this.nrofRounds = nrofRounds;
+	}
+
+	public static void main(String[] args) {
+		int hosts = args.length > 0 ? Integer.parseInt(args[0]) :
+			DEF_NROF_HOSTS;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) :
+			DEF_NROF_ROUNDS;
+		ConnectivityOptimizerBenchmark b =
+			new ConnectivityOptimizerBenchmark(hosts, rounds);
+
+		System.out.println(hosts + " hosts, " + rounds + " rounds");
+		for (int i = 0; i < 2; i++) { /* first pass warms up the JIT */
+			b.run(NetworkInterface.GRID_OPTIMIZER, i > 0);
+			b.run(NetworkInterface.QUADTREE_OPTIMIZER, i > 0);
+		}
+	}
+
+	/**
+	 * Runs the benchmark with one optimizer
+	 * @param optimizerType Value of the {@link NetworkInterface#OPTIMIZER_S}
+	 * setting
+	 * @param print Should the results be printed
+	 */
+	private void run(String optimizerType, boolean print) {
+		SimClock.reset();
+		ConnectivityGrid.reset();
+		ConnectivityQuadTree.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.OPTIMIZER_S, optimizerType);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		TestUtils utils = new TestUtils(null, null, ts);
+		Random rng = new Random(SEED);
+
+		/* hot spots away from the edges (the grid can't take negative
+		 * coordinates) */
+		Coord[] hotSpots = new Coord[NROF_HOT_SPOTS];
+		double spotArea = WORLD_SIZE - 3 * HOT_SPOT_SIZE;
+		for (int i = 0; i < hotSpots.length; i++) {
+			hotSpots[i] = new Coord(HOT_SPOT_SIZE + rng.nextDouble() * spotArea,
+					HOT_SPOT_SIZE + rng.nextDouble() * spotArea);
+		}
+
+		/* long range hosts first so that the grid's cells fit their range */
+		List<NetworkInterface> ifaces = new ArrayList<NetworkInterface>();
+		for (int i = 0; i < nrofHosts; i++) {
+			ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, String.valueOf(
+					i % LONG_RANGE_INTERVAL == 0 ? LONG_RANGE : SHORT_RANGE));
+			Coord spot = hotSpots[rng.nextInt(hotSpots.length)];
+			ifaces.add(utils.createHost(new Coord(
+					spot.getX() + rng.nextDouble() * HOT_SPOT_SIZE,
+					spot.getY() + rng.nextDouble() * HOT_SPOT_SIZE)).
+					getInterface(1));
+		}
+
+		int key = TestUtils.IFACE_NS.hashCode();
+		ConnectivityOptimizer optimizer = optimizerType.equals(
+				NetworkInterface.QUADTREE_OPTIMIZER) ?
+				ConnectivityQuadTree.getInstance(key) :
+				ConnectivityGrid.ConnectivityGridFactory(key, LONG_RANGE);
+		InterfaceVisitor counter = new InterfaceVisitor() {
+			public void visit(NetworkInterface ni) {
+				candidates++;
+			}
+		};
+
+		this.candidates = 0;
+		long start = System.nanoTime();
+		for (int round = 0; round < nrofRounds; round++) {
+			for (int i = 0; i < nrofHosts; i++) {
+				NetworkInterface ni = ifaces.get(i);
+				Coord c = ni.getHost().getLocation();
+				ni.getHost().setLocation(new Coord(
+						c.getX() + rng.nextDouble() * 2 * MAX_STEP - MAX_STEP,
+						c.getY() + rng.nextDouble() * 2 * MAX_STEP - MAX_STEP));
+				optimizer.updateLocation(ni);
+			}
+			for (int i = 0; i < nrofHosts; i++) {
+				optimizer.visitNearInterfaces(ifaces.get(i), counter);
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if (print) {
+			System.out.printf("%-10s %8d ms %14d candidates%n", optimizerType,
+					elapsed / 1000000, candidates);
+		}
+	}
+}
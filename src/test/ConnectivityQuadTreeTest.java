@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityQuadTree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.NetworkInterface;
+import core.SettingsError;
+import core.SimClock;
+import core.World;
+
+/**
+ * Tests for the ConnectivityQuadTree
+ */
+public class ConnectivityQuadTreeTest extends TestCase {
+	private static final int NROF_HOSTS = 200;
+	private static final double SHORT_RANGE = 10;
+	private static final double LONG_RANGE = 100;
+
+	private TestSettings ts;
+	private TestUtils utils;
+	private ConnectivityQuadTree tree;
+	private List<NetworkInterface> ifaces;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ConnectivityQuadTree.reset();
+		this.ts = new TestSettings();
+		ts.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+		ts.putSetting(ConnectivityQuadTree.LEAF_CAPACITY_S, "4");
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.OPTIMIZER_S,
+				NetworkInterface.QUADTREE_OPTIMIZER);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		this.utils = new TestUtils(null, null, ts);
+		this.rng = new Random(42);
+		this.ifaces = new ArrayList<NetworkInterface>();
+
+		/* every tenth host has a long range, most hosts are in a cluster */
+		for (int i = 0; i < NROF_HOSTS; i++) {
+			ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S,
+					String.valueOf(i % 10 == 0 ? LONG_RANGE : SHORT_RANGE));
+			ifaces.add(utils.createHost(randomLocation()).getInterface(1));
+		}
+		this.tree = ConnectivityQuadTree.getInstance(
+				TestUtils.IFACE_NS.hashCode());
+		for (NetworkInterface ni : ifaces) {
+			tree.updateLocation(ni); // hosts are added before they're placed
+		}
+	}
+
+	private Coord randomLocation() {
+		if (rng.nextInt(4) == 0) {
+			return new Coord(rng.nextDouble() * 1000, rng.nextDouble() * 1000);
+		}
+		return new Coord(100 + rng.nextDouble() * 50,
+				100 + rng.nextDouble() * 50);
+	}
+
+	public void testInterfacesAddedByHosts() {
+		assertEquals(NROF_HOSTS, tree.getAllInterfaces().size());
+	}
+
+	public void testNearInterfaces() {
+		assertNearInRange();
+	}
+
+	public void testSparseAreas() {
+		NetworkInterface ni = ifaces.get(1);
+		ni.getHost().setLocation(new Coord(900, 900));
+		tree.updateLocation(ni);
+		for (NetworkInterface other : ifaces) {
+			if (other != ni) { /* nothing else at the far corner */
+				other.getHost().setLocation(new Coord(100, 100));
+				tree.updateLocation(other);
+			}
+		}
+
+		Collection<NetworkInterface> near = tree.getNearInterfaces(ni);
+		assertEquals(1, near.size());
+		assertTrue(near.contains(ni));
+		assertEquals(NROF_HOSTS - 1,
+				tree.getNearInterfaces(ifaces.get(0)).size());
+	}
+
+	public void testUpdateLocation() {
+		for (int round = 0; round < 10; round++) {
+			for (NetworkInterface ni : ifaces) {
+				Coord c = ni.getLocation();
+				ni.getHost().setLocation(new Coord(
+						c.getX() + rng.nextDouble() * 40 - 20,
+						c.getY() + rng.nextDouble() * 40 - 20));
+				tree.updateLocation(ni);
+			}
+			assertNearInRange();
+		}
+
+		/* locations outside the world */
+		NetworkInterface ni = ifaces.get(0);
+		ni.getHost().setLocation(new Coord(-50, 1050));
+		tree.updateLocation(ni);
+		assertTrue(tree.getNearInterfaces(ni).contains(ni));
+	}
+
+	public void testRemoveInterface() {
+		List<NetworkInterface> removed = new ArrayList<NetworkInterface>();
+		for (int i = 0; i < NROF_HOSTS; i += 2) {
+			tree.removeInterface(ifaces.get(i));
+			removed.add(ifaces.get(i));
+		}
+		ifaces.removeAll(removed);
+
+		assertEquals(NROF_HOSTS / 2, tree.getAllInterfaces().size());
+		assertEquals(0, tree.getNearInterfaces(removed.get(0)).size());
+		assertNearInRange();
+
+		tree.addInterface(removed.get(0));
+		tree.addInterface(removed.get(0)); // adding twice has no effect
+		ifaces.add(removed.get(0));
+		assertEquals(NROF_HOSTS / 2 + 1, tree.getAllInterfaces().size());
+		assertNearInRange();
+	}
+
+	public void testUnknownOptimizer() {
+		ts.putSetting(NetworkInterface.OPTIMIZER_S, "octree");
+		try {
+			new TestInterface(ts);
+			fail("Unknown optimizer accepted");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Asserts that the near interfaces of every interface contain all the
+	 * interfaces within range of it
+	 */
+	private void assertNearInRange() {
+		for (NetworkInterface a : ifaces) {
+			Collection<NetworkInterface> near = tree.getNearInterfaces(a);
+			for (NetworkInterface b : ifaces) {
+				double range = Math.min(a.getTransmitRange(),
+						b.getTransmitRange());
+				if (a.getLocation().distance(b.getLocation()) <= range) {
+					assertTrue(b + " within range of " + a + " but not near",
+							near.contains(b));
+				}
+			}
+		}
+	}
+}
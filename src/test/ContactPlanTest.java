@@ -0,0 +1,240 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+import routing.EpidemicRouter;
+import routing.util.EnergyModel;
+import core.Connection;
+import core.ContactPlan;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.SimCheckpoint;
+import core.SimClock;
+import core.SettingsError;
+
+/**
+ * Tests for the contact plan keys and the settings that can't be used with
+ * contact plans
+ */
+public class ContactPlanTest extends TestCase {
+	private SortedMap<String, String> settings;
+	private String key;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		settings = new TreeMap<String, String>();
+		settings.put("Scenario.name", "test");
+		settings.put("Scenario.endTime", "1000");
+		settings.put("Group.movementModel", "RandomWaypoint");
+		settings.put("Group.router", "EpidemicRouter");
+		settings.put("Group.bufferSize", "5M");
+		settings.put("Group.interface1", "btInterface");
+		settings.put("Group2.msgTtl", "300");
+		settings.put("Group2.application1", "pingApp");
+		settings.put("pingApp.interval", "100");
+		settings.put("btInterface.transmitRange", "10");
+		settings.put("ProphetRouter.secondsInTimeUnit", "30");
+		settings.put("Report.report1", "MessageStatsReport");
+		settings.put("MessageStatsReport.output", "out.txt");
+		key = ContactPlan.computeKey(settings);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		/* the test hosts' interfaces stay in the grid with the plan */
+		ConnectivityGrid.reset();
+		TestSettings.init(null);
+	}
+
+	public void testRoutingSettingsIgnored() {
+		settings.put("Scenario.name", "other");
+		settings.put("Group.router", "ProphetRouter");
+		settings.put("Group.bufferSize", "10M");
+		settings.put("Group2.msgTtl", "600");
+		settings.put("Group2.sendQueue", "2");
+		settings.put("pingApp.interval", "200");
+		settings.remove("ProphetRouter.secondsInTimeUnit");
+		settings.put("SprayAndWaitRouter.nrofCopies", "6");
+		settings.put("Report.nrofReports", "2");
+		settings.put("Report.report2", "EventLogReport");
+		settings.put("MessageStatsReport.output", "other.txt");
+		settings.put("ContactPlan.cache", "plans");
+		assertEquals(key, ContactPlan.computeKey(settings));
+	}
+
+	public void testConnectivitySettingsUsed() {
+		settings.put("btInterface.transmitRange", "20");
+		String rangeKey = ContactPlan.computeKey(settings);
+		assertFalse(key.equals(rangeKey));
+
+		settings.put("Group3.movementModel", "MapBasedMovement");
+		assertFalse(rangeKey.equals(ContactPlan.computeKey(settings)));
+
+		settings.remove("Group3.movementModel");
+		assertEquals(rangeKey, ContactPlan.computeKey(settings));
+		settings.put("Scenario.endTime", "2000");
+		assertFalse(rangeKey.equals(ContactPlan.computeKey(settings)));
+	}
+
+	/**
+	 * Creates a contact plan for two test hosts with a temporary cache
+	 * directory
+	 */
+	private ContactPlan createPlan(TestUtils utils, TestSettings ts,
+			File dir) {
+		return createPlan(utils, ts, dir, new ArrayList<DTNHost>());
+	}
+
+	/**
+	 * Creates a contact plan for two test hosts that are added to the
+	 * given list
+	 */
+	private ContactPlan createPlan(TestUtils utils, TestSettings ts,
+			File dir, List<DTNHost> hosts) {
+		/* creating hosts leaves the settings in a host namespace */
+		ts.setNameSpace(null);
+		ts.putSetting(ContactPlan.CONTACT_PLAN_NS + "." + ContactPlan.CACHE_S,
+				dir.getPath());
+		hosts.add(utils.createHost());
+		hosts.add(utils.createHost());
+		return new ContactPlan(hosts);
+	}
+
+	private File createDir() throws Exception {
+		File dir = File.createTempFile("planTest", "");
+		assertTrue(dir.delete());
+		return dir;
+	}
+
+	private void delete(File dir) {
+		if (dir.listFiles() != null) {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	public void testEnergyModelRejected() throws Exception {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(EnergyModel.INIT_ENERGY_S, "100");
+		ts.putSetting(EnergyModel.SCAN_ENERGY_S, "0.1");
+		ts.putSetting(EnergyModel.SCAN_RSP_ENERGY_S, "0.1");
+		ts.putSetting(EnergyModel.TRANSMIT_ENERGY_S, "0.2");
+		TestUtils utils = new TestUtils(null, null, ts);
+		utils.setMessageRouterProto(new EpidemicRouter(ts));
+		File dir = createDir();
+		try {
+			createPlan(utils, ts, dir);
+			fail("Energy model was accepted");
+		} catch (SettingsError e) {
+			// expected
+		} finally {
+			delete(dir);
+		}
+	}
+
+	public void testRangeChangeRejected() throws Exception {
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		utils.setTransmitRange(10);
+		File dir = createDir();
+		ContactPlan plan = createPlan(utils, ts, dir);
+		try {
+			/* interfaces turning inactive and active again */
+			utils.setTransmitRange(0);
+			utils.setTransmitRange(10);
+			try {
+				utils.setTransmitRange(5);
+				fail("Range change was accepted");
+			} catch (SettingsError e) {
+				// expected
+			}
+		} finally {
+			plan.close(false);
+			delete(dir);
+		}
+	}
+
+	public void testCheckpointsRejected() throws Exception {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(SimCheckpoint.CHECKPOINT_NS + "." +
+				SimCheckpoint.TIMES_S, "100");
+		TestUtils utils = new TestUtils(null, null, ts);
+		File dir = createDir();
+		try {
+			createPlan(utils, ts, dir);
+			fail("Checkpoints were accepted");
+		} catch (SettingsError e) {
+			// expected
+		} finally {
+			delete(dir);
+		}
+	}
+
+	public void testRecordAndReplay() throws Exception {
+		TestSettings ts = new TestSettings();
+		TestUtils utils = new TestUtils(null, null, ts);
+		File dir = createDir();
+		SimClock clock = SimClock.getInstance();
+		try {
+			DTNHost.reset();
+			List<DTNHost> hosts = new ArrayList<DTNHost>();
+			ContactPlan plan = createPlan(utils, ts, dir, hosts);
+			assertFalse(plan.isReplaying());
+			NetworkInterface i1 = hosts.get(0).getInterface(1);
+			NetworkInterface i2 = hosts.get(1).getInterface(1);
+			clock.setTime(5);
+			plan.beforeUpdate(hosts.get(0));
+			i1.createConnection(i2);
+			clock.setTime(10);
+			plan.beforeUpdate(hosts.get(1));
+			i2.destroyConnection(i1);
+			plan.afterUpdates();
+			plan.close(true);
+
+			DTNHost.reset();
+			hosts.clear();
+			plan = createPlan(utils, ts, dir, hosts);
+			assertTrue(plan.isReplaying());
+			i1 = hosts.get(0).getInterface(1);
+			i2 = hosts.get(1).getInterface(1);
+			assertEquals(5.0, plan.getNextEventTime());
+			clock.setTime(5);
+			plan.beforeUpdate(hosts.get(0));
+			assertTrue(isConnected(i1, i2));
+			assertEquals(10.0, plan.getNextEventTime());
+			clock.setTime(10);
+			plan.beforeUpdate(hosts.get(0));
+			assertTrue(isConnected(i1, i2)); // happened in the update of h2
+			plan.beforeUpdate(hosts.get(1));
+			assertFalse(isConnected(i1, i2));
+			assertEquals(Double.MAX_VALUE, plan.getNextEventTime());
+			plan.close(false);
+		} finally {
+			SimClock.reset();
+			delete(dir);
+		}
+	}
+
+	private static boolean isConnected(NetworkInterface i1,
+			NetworkInterface i2) {
+		for (Connection con : i1.getConnections()) {
+			if (con.getOtherInterface(i1) == i2) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,6 +1,7 @@
 package test;
 
 
+import core.Connection;
 import core.Coord;
 import core.DTNHost;
 import core.MessageListener;
@@ -18,6 +19,7 @@ import routing.MessageRouter;
 import routing.PassiveRouter;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -67,6 +69,69 @@ public class DTNHostTest extends TestCase {
     assertFalse("Radio reported as active.", host.isRadioActive());
   }
 
+  /**
+   * Tests that the connection list is reused until the connections change.
+   */
+  @Test
+  public void testConnectionView() {
+    final TestUtils utils = new TestUtils(null, null, new TestSettings());
+    final DTNHost h1 = utils.createHost();
+    final DTNHost h2 = utils.createHost();
+    final DTNHost h3 = utils.createHost();
+
+    final List<Connection> empty = h1.getConnections();
+    assertEquals(0, empty.size());
+    assertSame(empty, h1.getConnections());
+
+    final int modCount = h1.getConnectionsModCount();
+    h1.forceConnection(h2, null, true);
+    h3.forceConnection(h1, null, true);
+    assertTrue(modCount != h1.getConnectionsModCount());
+    final List<Connection> both = h1.getConnections();
+    assertEquals(2, both.size());
+    assertEquals(0, empty.size());
+    assertSame(both, h1.getConnections());
+
+    h1.forceConnection(h2, null, false);
+    final List<Connection> one = h1.getConnections();
+    assertEquals(1, one.size());
+    assertEquals(h3, one.get(0).getOtherNode(h1));
+    assertEquals(2, both.size());
+
+    try {
+      one.clear();
+      fail("Connection list was modifiable.");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests that the location of a host can't be changed through the objects
+   * it was created with or returns, so its position table entry stays in
+   * sync.
+   */
+  @Test
+  public void testLocationIsCopied() {
+    final TestUtils utils = new TestUtils(null, null, new TestSettings());
+    final Coord initial = new Coord(10, 20);
+    final DTNHost h1 = utils.createHost(initial);
+    final DTNHost h2 = utils.createHost(new Coord(10, 25));
+
+    initial.translate(100, 0);
+    final Coord location = h1.getLocation();
+    assertEquals(new Coord(10, 20), location);
+    location.translate(100, 0);
+    assertEquals(new Coord(10, 20), h1.getLocation());
+    assertEquals(25.0, h1.getInterfaces().get(0).distanceSquared(
+        h2.getInterfaces().get(0)));
+
+    h1.setLocation(location);
+    assertEquals(new Coord(110, 20), h1.getLocation());
+    assertEquals(100.0 * 100.0 + 25.0, h1.getPositionTable().distanceSquared(
+        h1.getAddress(), h2.getAddress()));
+  }
+
   private static MovementModel makeMovementModel() {
     return new MovementModel() {
       @Override
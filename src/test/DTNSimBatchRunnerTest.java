@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import report.Report;
+import ui.DTNSimBatchRunner;
+import core.SimError;
+
+/**
+ * Tests the progress file and the summary of the concurrent batch runner
+ */
+public class DTNSimBatchRunnerTest extends TestCase {
+	private static final int NROF_RUNS = 3;
+
+	private File dir;
+	private File progress;
+	private File summary;
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.dir = File.createTempFile("batchTest", "");
+		assertTrue(this.dir.delete());
+		assertTrue(this.dir.mkdir());
+		this.progress = new File(this.dir, "progress.txt");
+		this.summary = new File(this.dir, "summary.txt");
+
+		this.ts = new TestSettings();
+		ts.putSetting("Scenario.name", "[b1; b2; b3]");
+		ts.putSetting("Scenario.endTime", "200");
+		ts.putSetting("Scenario.updateInterval", "1");
+		ts.putSetting("Group.groupID", "n");
+		ts.putSetting("Group.nrofHosts", "5");
+		ts.putSetting("Group.movementModel", "RandomWaypoint");
+		ts.putSetting("Group.router", "EpidemicRouter");
+		ts.putSetting("Group.bufferSize", "5M");
+		ts.putSetting("Group.waitTime", "0, 120");
+		ts.putSetting("Group.speed", "0.5, 1.5");
+		ts.putSetting("Group.nrofInterfaces", "1");
+		ts.putSetting("Group.interface1", "btInterface");
+		ts.putSetting("btInterface.type", "SimpleBroadcastInterface");
+		ts.putSetting("btInterface.transmitSpeed", "250k");
+		ts.putSetting("btInterface.transmitRange", "100");
+		ts.putSetting("MovementModel.worldSize", "300, 300");
+		ts.putSetting("Events.nrof", "1");
+		ts.putSetting("Events1.class", "MessageEventGenerator");
+		ts.putSetting("Events1.interval", "10, 20");
+		ts.putSetting("Events1.size", "50k, 100k");
+		ts.putSetting("Events1.hosts", "0, 5");
+		ts.putSetting("Events1.prefix", "M");
+		ts.putSetting("Report.nrofReports", "1");
+		ts.putSetting("Report.report1", "MessageStatsReport");
+		ts.putSetting(Report.REPORTDIR_SETTING, this.dir.getPath());
+		ts.putSetting(DTNSimBatchRunner.BATCH_NS + "." +
+				DTNSimBatchRunner.NROF_WORKERS_S, "2");
+		ts.putSetting(DTNSimBatchRunner.BATCH_NS + "." +
+				DTNSimBatchRunner.PROGRESS_FILE_S, this.progress.getPath());
+		ts.putSetting(DTNSimBatchRunner.BATCH_NS + "." +
+				DTNSimBatchRunner.SUMMARY_FILE_S, this.summary.getPath());
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		TestSettings.init(null);
+		for (File f : this.dir.listFiles()) {
+			f.delete();
+		}
+		this.dir.delete();
+	}
+
+	public void testProgressAndSummary() throws IOException {
+		new DTNSimBatchRunner(0, NROF_RUNS).run();
+
+		List<String> lines = read(this.progress);
+		assertEquals(NROF_RUNS, lines.size());
+		for (int i = 0; i < NROF_RUNS; i++) {
+			assertTrue(lines.contains(i + " " + statsFile(i)));
+		}
+
+		List<String> rows = read(this.summary);
+		assertEquals(NROF_RUNS + 1, rows.size());
+		assertTrue(rows.get(0).startsWith("# run "));
+		List<String> names = columns(rows.get(0));
+		int created = names.indexOf("created");
+		assertTrue(created > 0);
+		for (int i = 0; i < NROF_RUNS; i++) {
+			List<String> row = columns(rows.get(i + 1));
+			assertEquals("" + (i + 1), row.get(0));
+			assertEquals(stat(statsFile(i), "created"), row.get(created));
+		}
+	}
+
+	public void testResumeFromProgressFile() throws IOException {
+		File stats = new File(this.dir, "previous.txt");
+		PrintWriter out = new PrintWriter(new FileWriter(stats));
+		out.println("Message stats for scenario b2");
+		out.println("created: 42");
+		out.close();
+		out = new PrintWriter(new FileWriter(this.progress));
+		out.println("1 " + stats.getPath());
+		out.close();
+
+		new DTNSimBatchRunner(0, NROF_RUNS).run();
+
+		assertFalse("Finished run was run again",
+				new File(statsFile(1)).exists());
+		List<String> lines = read(this.progress);
+		assertEquals(NROF_RUNS, lines.size());
+		assertEquals("1 " + stats.getPath(), lines.get(0));
+
+		List<String> rows = read(this.summary);
+		assertEquals(NROF_RUNS + 1, rows.size());
+		int created = columns(rows.get(0)).indexOf("created");
+		assertEquals("42", columns(rows.get(2)).get(created));
+		assertEquals(stat(statsFile(2), "created"),
+				columns(rows.get(3)).get(created));
+	}
+
+	public void testFailedRunIsReported() throws IOException {
+		ts.putSetting("Group.router",
+				"[EpidemicRouter; NoSuchRouter; EpidemicRouter]");
+
+		try {
+			new DTNSimBatchRunner(0, NROF_RUNS).run();
+			fail("Failed run was not reported");
+		} catch (SimError e) {
+			// expected
+		}
+
+		List<String> lines = read(this.progress);
+		assertEquals(NROF_RUNS - 1, lines.size());
+		assertTrue(lines.contains("0 " + statsFile(0)));
+		assertTrue(lines.contains("2 " + statsFile(2)));
+
+		List<String> rows = read(this.summary);
+		assertEquals(NROF_RUNS, rows.size());
+		assertEquals("1", columns(rows.get(1)).get(0));
+		assertEquals("3", columns(rows.get(2)).get(0));
+	}
+
+	/**
+	 * Returns the name of the message stats report file of a run
+	 */
+	private String statsFile(int runIndex) {
+		return this.dir.getPath() + "/b" + (runIndex + 1) +
+			"_MessageStatsReport.txt";
+	}
+
+	/**
+	 * Returns the value of a statistic from a message stats report file
+	 */
+	private String stat(String fileName, String name) throws IOException {
+		for (String line : read(new File(fileName))) {
+			if (line.startsWith(name + ": ")) {
+				return line.substring(name.length() + 2);
+			}
+		}
+		fail("No " + name + " in " + fileName);
+		return null;
+	}
+
+	private List<String> columns(String row) {
+		List<String> columns = new ArrayList<String>();
+		for (String c : row.substring(row.startsWith("# ") ? 2 : 0).
+				split(" ")) {
+			columns.add(c);
+		}
+		return columns;
+	}
+
+	private List<String> read(File f) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+}
@@ -195,6 +195,40 @@ public class EpidemicRouterTest extends AbstractRouterTest {
 
 	}
 
+	/**
+	 * Tests that all the messages for the connected hosts are delivered
+	 * before relaying other messages when there are several connections
+	 */
+	public void testDeliverableMessagesForSeveralHosts() {
+		h1.createNewMessage(new Message(h1,h4, "Dummy1", 1));
+		h1.createNewMessage(new Message(h1,h2, msgId1, 1));
+		h1.createNewMessage(new Message(h1,h3, msgId2, 1));
+		h1.createNewMessage(new Message(h1,h2, msgId3, 1));
+		checkCreates(4);
+
+		h1.connect(h2);
+		h1.connect(h3);
+		for (int i = 0; i < 3; i++) {
+			updateAllNodes();
+			assertTrue(mc.next());
+			assertEquals(mc.TYPE_START, mc.getLastType());
+			assertEquals(h1, mc.getLastFrom());
+			assertEquals(mc.getLastMsg().getTo(), mc.getLastTo());
+
+			clock.advance(1);
+			updateAllNodes();
+			assertTrue(mc.next());
+			assertEquals(mc.TYPE_RELAY, mc.getLastType());
+			assertTrue(mc.getLastFirstDelivery());
+		}
+
+		// only the non-deliverable message should be left for relaying
+		updateAllNodes();
+		assertTrue(mc.next());
+		assertEquals(mc.TYPE_START, mc.getLastType());
+		assertEquals("Dummy1", mc.getLastMsg().getId());
+	}
+
 	/**
 	 * Tests aborting transfer when connections is disconnected during the
 	 * transfer
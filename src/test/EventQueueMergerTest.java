@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.EventQueueMerger;
+import input.ExternalEvent;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the EventQueueMerger
+ */
+public class EventQueueMergerTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private List<EventQueue> queues;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.queues = new ArrayList<EventQueue>();
+	}
+
+	public void testEmpty() {
+		EventQueueMerger eqm = new EventQueueMerger(queues);
+		assertEquals(MAX, eqm.nextEventsTime());
+		assertEquals(MAX, eqm.nextEvent().getTime());
+		assertNull(eqm.getNextQueue());
+	}
+
+	public void testMergeOrder() {
+		queues.add(new TimesQueue(1, 4, 9));
+		queues.add(new TimesQueue(2, 3));
+		queues.add(new TimesQueue());
+		queues.add(new TimesQueue(0.5, 10));
+		queues.add(new TimesQueue(5));
+
+		EventQueueMerger eqm = new EventQueueMerger(queues);
+		double[] expected = {0.5, 1, 2, 3, 4, 5, 9, 10};
+
+		for (double time : expected) {
+			assertEquals(time, eqm.nextEventsTime());
+			assertEquals(time, eqm.nextEvent().getTime());
+		}
+
+		assertEquals(MAX, eqm.nextEventsTime());
+		assertEquals(MAX, eqm.nextEvent().getTime());
+	}
+
+	public void testTiesGoToSmallestIndex() {
+		TimesQueue q0 = new TimesQueue(3);
+		TimesQueue q1 = new TimesQueue(1, 3);
+		TimesQueue q2 = new TimesQueue(1);
+		queues.add(q0);
+		queues.add(q1);
+		queues.add(q2);
+
+		EventQueueMerger eqm = new EventQueueMerger(queues);
+		assertEquals(q1, eqm.getNextQueue());
+		eqm.nextEvent();
+		assertEquals(q2, eqm.getNextQueue());
+		eqm.nextEvent();
+		assertEquals(q0, eqm.getNextQueue());
+		eqm.nextEvent();
+		assertEquals(q1, eqm.getNextQueue());
+	}
+
+	public void testRefresh() {
+		ScheduledUpdatesQueue suq = new ScheduledUpdatesQueue();
+		queues.add(suq);
+		queues.add(new TimesQueue(2, 4));
+
+		EventQueueMerger eqm = new EventQueueMerger(queues);
+		assertEquals(2.0, eqm.nextEventsTime());
+
+		suq.addUpdate(1);
+		assertEquals(2.0, eqm.nextEventsTime()); // not refreshed yet
+		eqm.refresh(0);
+		assertEquals(1.0, eqm.nextEventsTime());
+		assertEquals(suq, eqm.getNextQueue());
+		assertEquals(1.0, eqm.nextEvent().getTime());
+
+		suq.addUpdate(4);
+		eqm.refreshAll();
+		assertEquals(2.0, eqm.nextEvent().getTime());
+		assertEquals(suq, eqm.getNextQueue()); // scheduled update wins the tie
+		assertEquals(4.0, eqm.nextEvent().getTime());
+		assertEquals(4.0, eqm.nextEvent().getTime());
+		assertEquals(MAX, eqm.nextEventsTime());
+	}
+
+	/**
+	 * Event queue that returns events at the given times
+	 */
+	private static class TimesQueue implements EventQueue {
+		private double[] times;
+		private int next;
+
+		public TimesQueue(double... times) {
+			this.times = times;
+			this.next = 0;
+		}
+
+		public ExternalEvent nextEvent() {
+			double time = nextEventsTime();
+			if (next < times.length) {
+				next++;
+			}
+			return new ExternalEvent(time);
+		}
+
+		public double nextEventsTime() {
+			return next < times.length ? times[next] : MAX;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalEvent;
+import input.ExternalMovementReader;
+import input.StandardEventsReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import util.Tuple;
+import core.Coord;
+
+/**
+ * Parsing throughput benchmark of the text input readers. Reads the
+ * external events files of a directory (by default the sample files in
+ * <CODE>ee/</CODE>) with {@link StandardEventsReader} and a generated
+ * external movement trace with {@link ExternalMovementReader}, both for
+ * the given number of rounds. Not a unit test; run with<BR>
+ * <CODE>java test.EventsParserBenchmark [rounds [events dir]]</CODE>
+ */
+public class EventsParserBenchmark {
+	private static final int DEF_NROF_ROUNDS = 500;
+	private static final String DEF_EVENTS_DIR = "ee";
+	/** number of events read at a time (like ExternalEventsQueue does) */
+	private static final int CHUNK_SIZE = 500;
+	private static final int MOVEMENT_NODES = 100;
+	private static final int MOVEMENT_STEPS = 1000;
+	private static final long SEED = 1;
+
+	public static void main(String[] args) throws IOException {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) :
+			DEF_NROF_ROUNDS;
+		File dir = new File(args.length > 1 ? args[1] : DEF_EVENTS_DIR);
+		File[] files = dir.listFiles();
+		if (files == null) {
+			System.err.println("Can't read directory " + dir);
+			System.exit(1);
+		}
+
+		long bytes = 0;
+		for (File f : files) {
+			bytes += f.length();
+		}
+		File trace = createMovementTrace();
+
+		System.out.println(files.length + " event files, " + rounds +
+				" rounds");
+		for (int i = 0; i < 3; i++) { /* first passes warm up the JIT */
+			long start = System.nanoTime();
+			long events = 0;
+			for (int round = 0; round < rounds; round++) {
+				for (File f : files) {
+					events += readEvents(f);
+				}
+			}
+			long eventsTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			long moves = 0;
+			for (int round = 0; round < rounds / 10 + 1; round++) {
+				moves += readMovements(trace);
+			}
+			long movesTime = System.nanoTime() - start;
+
+			if (i == 2) {
+				print("events", events, bytes * rounds, eventsTime);
+				print("moves", moves, trace.length() * (rounds / 10 + 1),
+						movesTime);
+			}
+		}
+		trace.delete();
+	}
+
+	private static void print(String what, long count, long bytes,
+			long nanos) {
+		double secs = nanos / 1e9;
+		System.out.printf(Locale.US, "%-6s %10d in %7.3f s: %10.0f/s " +
+				"%7.1f MB/s%n", what, count, secs, count / secs,
+				bytes / secs / 1e6);
+	}
+
+	private static long readEvents(File f) {
+		StandardEventsReader r = new StandardEventsReader(f);
+		long count = 0;
+		List<ExternalEvent> events = r.readEvents(CHUNK_SIZE);
+		while (events.size() > 0) {
+			count += events.size();
+			events = r.readEvents(CHUNK_SIZE);
+		}
+		r.close();
+		return count;
+	}
+
+	private static long readMovements(File trace) {
+		ExternalMovementReader r = new ExternalMovementReader(
+				trace.getAbsolutePath());
+		long count = 0;
+		List<Tuple<String, Coord>> moves = r.readNextMovements();
+		while (moves.size() > 0) {
+			count += moves.size();
+			moves = r.readNextMovements();
+		}
+		return count;
+	}
+
+	/**
+	 * Creates an external movement trace of random positions
+	 */
+	private static File createMovementTrace() throws IOException {
+		Random rng = new Random(SEED);
+		File f = File.createTempFile("movementBenchmark", ".txt");
+		PrintWriter out = new PrintWriter(f);
+		out.println("0 " + MOVEMENT_STEPS + " 0 1000 0 1000");
+		for (int t = 0; t < MOVEMENT_STEPS; t++) {
+			for (int n = 0; n < MOVEMENT_NODES; n++) {
+				out.printf(Locale.US, "%d n%d %.2f %.2f%n", t, n,
+						rng.nextDouble() * 1000, rng.nextDouble() * 1000);
+			}
+		}
+		out.close();
+		return f;
+	}
+}
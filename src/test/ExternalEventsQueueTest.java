@@ -5,6 +5,8 @@
 package test;
 
 import input.BinaryEventsReader;
+import input.ColumnarEventsReader;
+import input.ColumnarEventsWriter;
 import input.ExternalEvent;
 import input.ExternalEventsQueue;
 import input.ExternalEventsReader;
@@ -63,6 +65,30 @@ public class ExternalEventsQueueTest extends TestCase {
 		preload = 1;
 		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(),preload);
 		checkEeq(eeq, preload);
+
+		/* with prefetching */
+		preload = 3;
+		eeq = new ExternalEventsQueue(tempFile.getAbsolutePath(), preload, 2);
+		checkEeq(eeq, preload);
+	}
+
+	public void testClose() throws Exception {
+		File tmpColFile = File.createTempFile("TempColTest",
+				ColumnarEventsReader.COLUMNAR_EXT);
+		String colFileName = tmpColFile.getAbsolutePath();
+		ColumnarEventsWriter.store(new StandardEventsReader(tempFile),
+				colFileName);
+
+		for (int prefetch = 0; prefetch <= 2; prefetch += 2) {
+			eeq = new ExternalEventsQueue(colFileName, 1, prefetch);
+			assertEquals(msgTimes[0], eeq.nextEvent().getTime());
+			eeq.close();
+			assertEquals(Double.MAX_VALUE, eeq.nextEventsTime());
+			assertEquals(Double.MAX_VALUE, eeq.nextEvent().getTime());
+			assertEquals(0, eeq.eventsLeftInBuffer());
+		}
+
+		assertTrue(tmpColFile.delete());
 	}
 
 
@@ -81,6 +107,48 @@ public class ExternalEventsQueueTest extends TestCase {
 		assertTrue(tmpBinFile.delete()); // make sure all locks are gone
 	}
 
+	public void testColumnarEEQ() throws Exception{
+		int preload = 3;
+		File tmpColFile = File.createTempFile("TempColTest",
+				ColumnarEventsReader.COLUMNAR_EXT);
+		String colFileName = tmpColFile.getAbsolutePath();
+		ColumnarEventsWriter.store(new StandardEventsReader(tempFile),
+				colFileName);
+
+		eeq = new ExternalEventsQueue(colFileName, preload);
+		checkEeq(eeq, preload);
+
+		/* all fields of all event types survive the conversion */
+		PrintWriter out = new PrintWriter(tempFile);
+		for (String s : stdinput) {
+			out.println(s);
+		}
+		out.println("106203	C	M1	h1	h2	2k	100");
+		out.println("106204	CONN	h2	3	up	btInterface");
+		out.println("106205	CONN	4	5	down");
+		out.println("106206	DR	*	h5");
+		out.close();
+		ColumnarEventsWriter.store(new StandardEventsReader(tempFile),
+				colFileName);
+		List<ExternalEvent> expected =
+			new StandardEventsReader(tempFile).readEvents(100);
+		ExternalEventsReader r = new ColumnarEventsReader(tmpColFile);
+		List<ExternalEvent> events = r.readEvents(100);
+		r.close();
+		assertEquals(expected.size(), events.size());
+		for (int i = 0; i < events.size(); i++) {
+			assertEquals(expected.get(i).toString(),
+					events.get(i).toString());
+			assertEquals(expected.get(i).getClass(),
+					events.get(i).getClass());
+		}
+		MessageCreateEvent create = (MessageCreateEvent)events.get(10);
+		assertEquals(2000, create.getSize());
+		assertEquals(100, create.getResponseSize());
+
+		assertTrue(tmpColFile.delete());
+	}
+
 
 	private void checkEeq(ExternalEventsQueue eeq, int preloadVal) {
 		ExternalEvent ee;
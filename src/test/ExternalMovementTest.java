@@ -77,6 +77,10 @@ public class ExternalMovementTest extends TestCase {
 	private SimClock clock;
 
 	protected void setUpUsing(String[] input) throws Exception {
+		setUpUsing(input, 0);
+	}
+
+	protected void setUpUsing(String[] input, int prefetch) throws Exception {
 		super.setUp();
 		ExternalMovement.reset();
 		TestSettings ts = new TestSettings();
@@ -94,6 +98,8 @@ public class ExternalMovementTest extends TestCase {
 
 		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
 				ExternalMovement.MOVEMENT_FILE_S, outFile.getAbsolutePath());
+		ts.putSetting(ExternalMovement.EXTERNAL_MOVEMENT_NS + "." +
+				ExternalMovement.NROF_PREFETCH_S, "" + prefetch);
 
 		MovementModel emProto = (MovementModel)
 			ts.createIntializedObject("movement.ExternalMovement");
@@ -108,7 +114,16 @@ public class ExternalMovementTest extends TestCase {
 
 	public void testMovement() throws Exception {
 		setUpUsing(INPUT);
+		checkMovement();
+	}
+
+	public void testPrefetchedMovement() throws Exception {
+		setUpUsing(INPUT, 3);
+		checkMovement();
+		ExternalMovement.reset(); /* stops the prefetcher */
+	}
 
+	private void checkMovement() {
 		// h3 should not get any fancy coordinates
 		assertEquals(c0, h3.getLocation());
 		assertFalse(h3.isMovementActive());
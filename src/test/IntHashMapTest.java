@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.IntHashMap;
+import util.IntHashSet;
+
+/**
+ * Tests for the {@link IntHashMap} and {@link IntHashSet}
+ */
+public class IntHashMapTest extends TestCase {
+
+	public void testBasicOperations() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-5, "b"));
+		assertEquals("a", map.put(1, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(1));
+		assertEquals("b", map.get(-5));
+		assertNull(map.get(2));
+		assertTrue(map.containsKey(-5));
+
+		assertEquals("b", map.remove(-5));
+		assertNull(map.remove(-5));
+		assertFalse(map.containsKey(-5));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+		assertFalse(map.values().iterator().hasNext());
+	}
+
+	public void testRandomOperations() {
+		Random rng = new Random(1);
+		IntHashMap<Integer> map = new IntHashMap<Integer>();
+		HashMap<Integer, Integer> reference = new HashMap<Integer, Integer>();
+
+		for (int i = 0; i < 20000; i++) {
+			/* small key range to get many collisions and removes */
+			int key = rng.nextInt(500) * (rng.nextBoolean() ? 1 : 1024);
+			int op = rng.nextInt(3);
+			if (op == 0) {
+				assertEquals(reference.remove(key), map.remove(key));
+			}
+			else if (op == 1) {
+				assertEquals(reference.put(key, i), map.put(key, i));
+			}
+			else {
+				assertEquals(reference.get(key), map.get(key));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int key : map.keys()) {
+			keys.add(key);
+		}
+		assertEquals(reference.keySet(), new HashSet<Integer>(keys));
+		assertEquals(reference.size(), keys.size());
+		List<Integer> values = new ArrayList<Integer>(map.values());
+		List<Integer> refValues = new ArrayList<Integer>(reference.values());
+		Collections.sort(values);
+		Collections.sort(refValues);
+		assertEquals(refValues, values);
+	}
+
+	public void testConcurrentModification() {
+		IntHashMap<String> map = new IntHashMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		Iterator<String> i = map.values().iterator();
+		i.next();
+		map.remove(1);
+		try {
+			i.next();
+			fail("Modification while iterating was not detected");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	public void testSet() {
+		IntHashSet s1 = new IntHashSet();
+		IntHashSet s2 = new IntHashSet();
+		assertTrue(s1.add(3));
+		assertFalse(s1.add(3));
+		s1.add(4);
+		s2.add(4);
+		s2.add(100);
+		s1.addAll(s2);
+		assertEquals(3, s1.size());
+		int[] values = s1.toArray();
+		Arrays.sort(values);
+		assertTrue(Arrays.equals(new int[] {3, 4, 100}, values));
+		assertTrue(s1.remove(3));
+		assertFalse(s1.contains(3));
+		assertTrue(s1.contains(100));
+	}
+
+	public void testRandomSetOperations() {
+		Random rng = new Random(1);
+		IntHashSet set = new IntHashSet();
+		HashSet<Integer> reference = new HashSet<Integer>();
+		for (int i = 0; i < 20000; i++) {
+			int value = rng.nextInt(300);
+			if (rng.nextInt(3) > 0) {
+				assertEquals(reference.add(value), set.add(value));
+			} else {
+				assertEquals(reference.remove(value), set.remove(value));
+			}
+		}
+		assertEquals(reference.size(), set.size());
+		for (int value = 0; value < 300; value++) {
+			assertEquals(reference.contains(value), set.contains(value));
+		}
+		assertFalse(set.contains(-1));
+		try {
+			set.add(-1);
+			fail("Negative value was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testSerializedValues() throws Exception {
+		IntHashMap<String> map = new IntHashMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(map.values());
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		Collection<String> values = (Collection<String>)in.readObject();
+
+		assertEquals(2, values.size());
+		assertTrue(values.contains("a"));
+		assertTrue(values.contains("b"));
+	}
+}
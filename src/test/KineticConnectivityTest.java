@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalEvent;
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.KineticConnectivity;
+import core.MoveTrack;
+import core.SimClock;
+import core.SimError;
+import core.World;
+
+/**
+ * Tests for the KineticConnectivity
+ */
+public class KineticConnectivityTest extends TestCase {
+	private static final double DELTA = 0.00001;
+	/* range of the test interfaces */
+	private static final double RANGE = 1.0;
+	/* cell size multiplier of the grid; moves of the hosts of an interval
+	 * may be (MULT - 1) * RANGE in total */
+	private static final int MULT = 25;
+
+	private DTNHost h0, h1;
+	private KineticConnectivity kc;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		ConnectivityGrid.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityGrid.CELL_SIZE_MULT_S, "" + MULT);
+		TestUtils utils = new TestUtils(null, null, ts);
+
+		h0 = utils.createHost(new Coord(10, 10));
+		h1 = utils.createHost(new Coord(20, 10));
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(h0);
+		hosts.add(h1);
+		kc = new KineticConnectivity(hosts);
+	}
+
+	/**
+	 * Sets the track of a host (and the host's location to the end of the
+	 * track)
+	 */
+	private void setTrack(DTNHost h, double[] times, Coord... points) {
+		MoveTrack track = h.getMoveTrack();
+		track.clear();
+		for (int i = 0; i < points.length; i++) {
+			track.add(times[i], points[i]);
+		}
+		h.setLocation(points[points.length - 1].clone());
+	}
+
+	public void testPassBy() {
+		/* h1 passes h0 at distance 0.5 with speed 1 */
+		setTrack(h0, new double[] {0}, new Coord(10, 10));
+		setTrack(h1, new double[] {0, 10}, new Coord(5, 10.5),
+				new Coord(15, 10.5));
+		kc.predict(0, 10);
+
+		double cross = Math.sqrt(RANGE * RANGE - 0.5 * 0.5);
+		assertLinkEvent(5 - cross, true);
+		assertLinkEvent(5 + cross, false);
+		assertEquals(Double.MAX_VALUE, kc.nextEventsTime());
+	}
+
+	public void testWaypoints() {
+		/* h1 comes within range, turns back at a waypoint and leaves; h0
+		 * moves away slowly */
+		setTrack(h0, new double[] {0, 10}, new Coord(10, 10),
+				new Coord(10, 9));
+		setTrack(h1, new double[] {0, 4, 8}, new Coord(13, 10),
+				new Coord(10.5, 10), new Coord(13, 10));
+		kc.predict(0, 10);
+
+		ExternalEvent up = kc.nextEvent();
+		ExternalEvent down = kc.nextEvent();
+		assertTrue(up.getTime() > 0 && up.getTime() < 4);
+		assertTrue(down.getTime() > 4 && down.getTime() < 8);
+		assertEquals(Double.MAX_VALUE, kc.nextEventsTime());
+	}
+
+	public void testLinkStaysUpAndGoesDown() {
+		/* within range from the start */
+		setTrack(h0, new double[] {0}, new Coord(10, 10));
+		setTrack(h1, new double[] {0}, new Coord(10.5, 10));
+		kc.predict(0, 1);
+		assertLinkEvent(0, true);
+		assertEquals(1, h0.getConnections().size());
+
+		/* stays up: no events */
+		kc.predict(1, 2);
+		assertEquals(Double.MAX_VALUE, kc.nextEventsTime());
+
+		/* h1 moves away with speed 2 */
+		setTrack(h1, new double[] {2, 3}, new Coord(10.5, 10),
+				new Coord(12.5, 10));
+		kc.predict(2, 3);
+		assertLinkEvent(2.25, false);
+		assertEquals(0, h0.getConnections().size());
+	}
+
+	public void testTooLongMoves() {
+		setTrack(h0, new double[] {0, 1}, new Coord(10, 10),
+				new Coord(10, 20));
+		setTrack(h1, new double[] {0, 1}, new Coord(20, 10),
+				new Coord(20, 24));
+		kc.predict(0, 1); // 10 + 14 = (MULT - 1) * RANGE: still fine
+
+		setTrack(h1, new double[] {1, 2}, new Coord(20, 24),
+				new Coord(20, 39));
+		setTrack(h0, new double[] {1, 2}, new Coord(10, 20),
+				new Coord(10, 30));
+		try {
+			kc.predict(1, 2);
+			fail("Too long moves were accepted");
+		} catch (SimError e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Checks the time and type of the next link event and processes it
+	 */
+	private void assertLinkEvent(double time, boolean up) {
+		ExternalEvent ee = kc.nextEvent();
+		assertEquals(time, ee.getTime(), DELTA);
+		int before = h0.getConnections().size();
+		ee.processEvent(null);
+		assertEquals(before + (up ? 1 : -1), h0.getConnections().size());
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import routing.util.MessageBuffer;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the {@link MessageBuffer}
+ */
+public class MessageBufferTest extends TestCase {
+	private MessageBuffer buffer;
+	private DTNHost h1;
+	private DTNHost h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		buffer = new MessageBuffer();
+	}
+
+	private Message msg(String id, DTNHost to, int size, double received) {
+		Message m = new Message(h1, to, id, size);
+		m.setReceiveTime(received);
+		return m;
+	}
+
+	public void testOccupancyAndIndexes() {
+		Message m1 = msg("M1", h1, 100, 30);
+		Message m2 = msg("M2", h2, 200, 10);
+		Message m3 = msg("M3", h2, 300, 20);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		assertEquals(3, buffer.size());
+		assertEquals(600, buffer.getOccupancy());
+		assertSame(m2, buffer.byReceiveTime().next());
+		assertEquals(2, buffer.getMessagesTo(h2).size());
+		assertSame(m2, buffer.getMessagesTo(h2).get(0));
+		assertSame(m3, buffer.getMessagesTo(h2).get(1));
+
+		assertSame(m2, buffer.remove(m2.getIndex()));
+		assertNull(buffer.remove(m2.getIndex()));
+		assertEquals(400, buffer.getOccupancy());
+		assertSame(m3, buffer.byReceiveTime().next());
+		assertEquals(1, buffer.getMessagesTo(h2).size());
+
+		/* replacing a message with the same id */
+		Message m1b = msg("M1", h2, 50, 5);
+		buffer.add(m1b);
+		assertEquals(2, buffer.size());
+		assertEquals(350, buffer.getOccupancy());
+		assertSame(m1b, buffer.byReceiveTime().next());
+		assertEquals(0, buffer.getMessagesTo(h1).size());
+		assertEquals(2, buffer.getMessagesTo(h2).size());
+		assertNull(buffer.get(m1.getIndex()));
+		assertSame(m1b, buffer.get("M1"));
+
+		buffer.remove(m1b.getIndex());
+		buffer.remove("M3");
+		assertEquals(0, buffer.getOccupancy());
+		assertFalse(buffer.byReceiveTime().hasNext());
+		assertTrue(buffer.getMessages().isEmpty());
+	}
+
+	public void testMessagesToHostsInReceiveOrder() {
+		Message m1 = msg("M1", h2, 100, 0);
+		Message m2 = msg("M2", h1, 100, 0);
+		Message m3 = msg("M3", h2, 100, 0);
+		Message m4 = msg("M4", h1, 100, 0);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		buffer.add(m4);
+		buffer.remove(m1.getIndex());
+		buffer.add(m1);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		hosts.add(h2);
+		hosts.add(h1);
+		List<Message> found = buffer.getMessagesTo(hosts);
+		assertEquals(4, found.size());
+		assertSame(m2, found.get(0));
+		assertSame(m3, found.get(1));
+		assertSame(m4, found.get(2));
+		assertSame(m1, found.get(3));
+
+		hosts.remove(h1);
+		assertEquals(2, buffer.getMessagesTo(hosts).size());
+		assertSame(m3, buffer.getMessagesTo(hosts).get(0));
+	}
+
+	public void testRandomOperations() {
+		Random rng = new Random(1);
+		HashMap<String, Message> reference = new HashMap<String, Message>();
+		for (int i = 0; i < 5000; i++) {
+			String id = "M" + rng.nextInt(200);
+			if (rng.nextBoolean()) {
+				Message m = msg(id, rng.nextBoolean() ? h1 : h2,
+						rng.nextInt(1000), rng.nextInt(50));
+				reference.put(id, m);
+				buffer.add(m);
+			}
+			else {
+				assertSame(reference.remove(id), buffer.remove(id));
+			}
+		}
+
+		long occupancy = 0;
+		int toH2 = 0;
+		for (Message m : reference.values()) {
+			occupancy += m.getSize();
+			if (m.getTo() == h2) {
+				toH2++;
+			}
+		}
+		assertEquals(occupancy, buffer.getOccupancy());
+		assertEquals(toH2, buffer.getMessagesTo(h2).size());
+		assertEquals(new HashSet<Message>(reference.values()),
+				new HashSet<Message>(buffer.getMessages()));
+		for (Message m : reference.values()) {
+			assertSame(m, buffer.get(m.getIndex()));
+		}
+
+		List<Message> ordered = new ArrayList<Message>();
+		for (Iterator<Message> i = buffer.byReceiveTime(); i.hasNext(); ) {
+			ordered.add(i.next());
+		}
+		assertEquals(reference.size(), ordered.size());
+		for (int i = 1; i < ordered.size(); i++) {
+			assertTrue(ordered.get(i - 1).getReceiveTime() <=
+				ordered.get(i).getReceiveTime());
+		}
+	}
+
+	public void testCheckpointRoundTrip() throws Exception {
+		Message m1 = msg("M1", h1, 100, 30);
+		Message m2 = msg("M2", h2, 200, 10);
+		Message m3 = msg("M3", h2, 300, 20);
+		buffer.add(m1);
+		buffer.add(m2);
+		buffer.add(m3);
+		assertEquals(3, buffer.getMessages().size()); // creates the view
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(new Object[] {buffer, h2});
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		Object[] read = (Object[])in.readObject();
+		MessageBuffer restored = (MessageBuffer)read[0];
+		DTNHost restoredH2 = (DTNHost)read[1];
+
+		assertEquals(3, restored.size());
+		assertEquals(600, restored.getOccupancy());
+		assertEquals("M2", restored.byReceiveTime().next().getId());
+		assertEquals(2, restored.getMessagesTo(restoredH2).size());
+		assertEquals("M3", restored.getMessagesTo(restoredH2).get(1).getId());
+		HashSet<String> ids = new HashSet<String>();
+		for (Message m : restored.getMessages()) {
+			ids.add(m.getId());
+		}
+		assertEquals(3, ids.size());
+		assertTrue(ids.contains("M1"));
+
+		restored.remove(m2.getIndex());
+		assertEquals(2, restored.getMessages().size());
+		assertEquals(400, restored.getOccupancy());
+		assertEquals(3, buffer.size());
+	}
+
+	public void testCheckpointKeepsOrder() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			buffer.add(msg("M" + i, h2, 10, i));
+		}
+		for (int i = 0; i < 100; i += 3) {
+			buffer.remove("M" + i);
+		}
+		for (int i = 0; i < 90; i++) {
+			buffer.remove("M" + (i * 7 % 100));
+		}
+		assertTrue(buffer.size() > 0);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(buffer);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray()));
+		MessageBuffer restored = (MessageBuffer)in.readObject();
+
+		List<String> ids = new ArrayList<String>();
+		for (Message m : buffer.getMessages()) {
+			ids.add(m.getId());
+		}
+		List<String> restoredIds = new ArrayList<String>();
+		for (Message m : restored.getMessages()) {
+			restoredIds.add(m.getId());
+		}
+		assertEquals(ids, restoredIds);
+
+		restored.add(msg("M1000", h1, 10, 0));
+		buffer.add(msg("M1000", h1, 10, 0));
+		ids.clear();
+		for (Message m : buffer.getMessages()) {
+			ids.add(m.getId());
+		}
+		restoredIds.clear();
+		for (Message m : restored.getMessages()) {
+			restoredIds.add(m.getId());
+		}
+		assertEquals(ids, restoredIds);
+	}
+}
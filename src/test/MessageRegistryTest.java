@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import routing.util.MessageRegistry;
+import core.DTNHost;
+import core.Message;
+
+/**
+ * Tests for the {@link MessageRegistry}
+ */
+public class MessageRegistryTest extends TestCase {
+	private MessageRegistry registry;
+	private DTNHost h1;
+	private DTNHost h2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		/* creating the hosts clears their old entries from the registry */
+		h1 = utils.createHost();
+		h2 = utils.createHost();
+		registry = MessageRegistry.getInstance();
+	}
+
+	public void testDeliveredAndBlacklisted() {
+		long total = registry.getTotalDelivered();
+		long emptySize = registry.getMemoryFootprint();
+
+		assertFalse(registry.isDelivered(h1, 5));
+		assertTrue(registry.setDelivered(h1, 5));
+		assertFalse(registry.setDelivered(h1, 5));
+		registry.setDelivered(h1, 100);
+		registry.setDelivered(h2, 7);
+		assertTrue(registry.isDelivered(h1, 5));
+		assertFalse(registry.isDelivered(h2, 5));
+		assertEquals(2, registry.getNrofDelivered(h1));
+		assertEquals(1, registry.getNrofDelivered(h2));
+		assertEquals(100, registry.getDelivered(h1)[1]);
+		assertEquals(total + 3, registry.getTotalDelivered());
+
+		assertFalse(registry.isBlacklisted(h1, 5));
+		assertTrue(registry.setBlacklisted(h2, 5));
+		assertTrue(registry.isBlacklisted(h2, 5));
+		assertFalse(registry.isBlacklisted(h1, 5));
+		assertEquals(1, registry.getNrofBlacklisted(h2));
+		assertTrue(registry.getMemoryFootprint() > emptySize);
+
+		registry.clear(h1);
+		assertFalse(registry.isDelivered(h1, 5));
+		assertEquals(0, registry.getNrofDelivered(h1));
+		assertTrue(registry.isDelivered(h2, 7));
+		registry.clear(h2);
+		assertEquals(0, registry.getNrofBlacklisted(h2));
+	}
+
+	public void testReset() {
+		Message m = new Message(h1, h2, "M", 10);
+		assertTrue(registry.setDelivered(h2, m));
+		assertEquals("M", registry.getId(m.getIndex()));
+		assertEquals(m.getIndex(), new Message(h1, h2, "M", 10).getIndex());
+
+		MessageRegistry.reset();
+		Message.reset();
+		MessageRegistry fresh = MessageRegistry.getInstance();
+		assertNotSame(registry, fresh);
+		assertEquals(0, fresh.getTotalDelivered());
+		assertNull(fresh.getId(m.getIndex()));
+		assertTrue(fresh.setDelivered(h2, new Message(h1, h2, "M2", 10)));
+		assertEquals("M2", fresh.getId(0));
+	}
+
+	public void testFootprintIncludesIds() {
+		Message m = new Message(h1, h2, "A_LONG_MESSAGE_ID", 10);
+		registry.setDelivered(h1, m.getIndex());
+		long withoutId = registry.getMemoryFootprint();
+		registry.clear(h1);
+
+		assertTrue(registry.setDelivered(h1, m));
+		assertTrue(registry.getMemoryFootprint() >
+				withoutId + m.getId().length());
+	}
+}
@@ -60,5 +60,23 @@ public class MessageTest extends TestCase {
 		assertEquals(value2, msg.getProperty("bar"));
 	}
 
+	@Test
+	public void testIndex() {
+		Message other = new Message(from, to, "M_other", 100);
+		assertEquals(msg.getIndex() + 1, other.getIndex());
+
+		Message replicate = msg.replicate();
+		assertEquals(msg.getIndex(), replicate.getIndex());
+		assertTrue(msg.getUniqueId() != replicate.getUniqueId());
+		assertTrue(msg.getIndex() !=
+				new Message(from, to, "M", 10).getIndex());
+
+		msg.keepIndex();
+		assertEquals(msg.getIndex(),
+				new Message(from, to, "M", 10).getIndex());
+		assertTrue(other.getIndex() !=
+				new Message(from, to, "M_other", 10).getIndex());
+	}
+
 
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.ExternalPathMovementReader;
+import input.PathTraceIndex;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link PathTraceIndex} and reading it with the
+ * {@link ExternalPathMovementReader}
+ */
+public class PathTraceIndexTest extends TestCase {
+	private static final String[] TRACE = {
+		"3 100 1000 10 500 20 600",
+		"1 100,10,20 110,20,20 120,20,40",
+		"0 105,50,50",
+		"",
+		"1 200,30,40 210,40,40",
+		"3 300,10,20 301,11,21 302,12,22 303,13,23"
+	};
+	private static final String[] ACTIVITY = {
+		"0 100 1000",
+		"1 100 150",
+		"1 190 250",
+		"3 290 400"
+	};
+
+	private File traceFile;
+	private File activityFile;
+	private File indexFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		traceFile = write("pathTrace", TRACE);
+		activityFile = write("pathActivity", ACTIVITY);
+		indexFile = File.createTempFile("pathTraceIndex", ".pti");
+		indexFile.deleteOnExit();
+	}
+
+	private File write(String name, String[] lines) throws Exception {
+		File f = File.createTempFile(name, ".txt");
+		f.deleteOnExit();
+		PrintWriter out = new PrintWriter(f);
+		for (String s : lines) {
+			out.println(s);
+		}
+		out.close();
+		return f;
+	}
+
+	public void testIndex() throws Exception {
+		PathTraceIndex.create(traceFile, activityFile, indexFile);
+		assertTrue(PathTraceIndex.isIndexFile(indexFile));
+		assertFalse(PathTraceIndex.isIndexFile(traceFile));
+
+		PathTraceIndex index = new PathTraceIndex(indexFile);
+		assertEquals(3, index.getMaxID());
+		assertEquals(100.0, index.getOffsets()[0]);
+		assertEquals(600.0, index.getOffsets()[5]);
+		assertEquals(1, index.getNrofPaths(0));
+		assertEquals(2, index.getNrofPaths(1));
+		assertEquals(0, index.getNrofPaths(2));
+		assertEquals(1, index.getNrofPaths(3));
+
+		double[] path = index.readPath(1, 1);
+		assertEquals(6, path.length);
+		assertEquals(200.0, path[0]);
+		assertEquals(40.0, path[5]);
+		assertEquals(4, index.readActive(1).length);
+		assertEquals(0, index.readActive(2).length);
+		index.close();
+	}
+
+	public void testReaderMatchesTextTrace() throws Exception {
+		PathTraceIndex.create(traceFile, activityFile, indexFile);
+		ExternalPathMovementReader text =
+			ExternalPathMovementReader.getInstance(
+					traceFile.getAbsolutePath(),
+					activityFile.getAbsolutePath());
+		ExternalPathMovementReader indexed =
+			ExternalPathMovementReader.getInstance(
+					indexFile.getAbsolutePath(), null);
+
+		assertEquals(text.getMinTime(), indexed.getMinTime());
+		assertEquals(text.getMaxY(), indexed.getMaxY());
+		for (int id = 0; id <= 3; id++) {
+			List<List<ExternalPathMovementReader.Entry>> tp =
+				text.getPaths(id);
+			List<List<ExternalPathMovementReader.Entry>> ip =
+				indexed.getPaths(id);
+			assertEquals(tp.size(), ip.size());
+			for (int i = tp.size() - 1; i >= 0; i--) {
+				assertEquals(tp.get(i).size(), ip.get(i).size());
+				for (int j = 0; j < tp.get(i).size(); j++) {
+					ExternalPathMovementReader.Entry te = tp.get(i).get(j);
+					ExternalPathMovementReader.Entry ie = ip.get(i).get(j);
+					assertEquals(te.time, ie.time);
+					assertEquals(te.x, ie.x);
+					assertEquals(te.y, ie.y);
+				}
+			}
+
+			List<ExternalPathMovementReader.ActiveTime> ta =
+				text.getActive(id);
+			List<ExternalPathMovementReader.ActiveTime> ia =
+				indexed.getActive(id);
+			assertEquals(ta.size(), ia.size());
+			for (int i = 0; i < ta.size(); i++) {
+				assertEquals(ta.get(i).start, ia.get(i).start);
+				assertEquals(ta.get(i).end, ia.get(i).end);
+			}
+		}
+	}
+}
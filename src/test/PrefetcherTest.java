@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.Prefetcher;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link Prefetcher}
+ */
+public class PrefetcherTest extends TestCase {
+	private static final int NROF_ITEMS = 1000;
+
+	/**
+	 * Source of the numbers 0...n-1. Fails at the given number (if not
+	 * negative).
+	 */
+	private static class Counter implements Prefetcher.Source<Integer> {
+		private int next = 0;
+		private int failAt;
+		private volatile boolean closed = false;
+
+		private Counter(int failAt) {
+			this.failAt = failAt;
+		}
+
+		public Integer read() {
+			if (next == failAt) {
+				throw new IllegalStateException("failed at " + next);
+			}
+			return next < NROF_ITEMS ? next++ : null;
+		}
+
+		public void close() {
+			closed = true;
+		}
+	}
+
+	public void testOrder() throws InterruptedException {
+		for (int depth = 1; depth <= 4; depth++) {
+			Counter c = new Counter(-1);
+			Prefetcher<Integer> p = new Prefetcher<Integer>("test", c, depth);
+			for (int i = 0; i < NROF_ITEMS; i++) {
+				assertEquals(Integer.valueOf(i), p.next());
+			}
+			assertNull(p.next());
+			assertNull(p.next());
+			waitUntilClosed(c);
+		}
+	}
+
+	public void testFailure() throws InterruptedException {
+		Counter c = new Counter(10);
+		Prefetcher<Integer> p = new Prefetcher<Integer>("test", c, 3);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(Integer.valueOf(i), p.next());
+		}
+		try {
+			p.next();
+			fail("Source's exception was not thrown");
+		} catch (IllegalStateException e) {
+			assertEquals("failed at 10", e.getMessage());
+		}
+		assertNull(p.next());
+		waitUntilClosed(c);
+	}
+
+	public void testClose() throws InterruptedException {
+		Counter c = new Counter(-1);
+		Prefetcher<Integer> p = new Prefetcher<Integer>("test", c, 2);
+		assertEquals(Integer.valueOf(0), p.next());
+		p.close();
+		assertNull(p.next());
+		waitUntilClosed(c);
+		assertTrue(c.next < NROF_ITEMS);
+	}
+
+	private void waitUntilClosed(Counter c) throws InterruptedException {
+		for (int i = 0; i < 100 && !c.closed; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue("Source was not closed", c.closed);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.RangeBatch;
+
+/**
+ * Tests for the range check kernel of RangeBatch
+ */
+public class RangeBatchTest extends TestCase {
+
+	public void testKernel() {
+		Random rng = new Random(3);
+		int count = 150; // more than two mask words
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		double[] ranges = new double[count];
+		long[] mask = new long[3];
+		for (int i = 0; i < count; i++) {
+			xs[i] = rng.nextDouble() * 100;
+			ys[i] = rng.nextDouble() * 100;
+			ranges[i] = rng.nextInt(3) * 20;
+		}
+
+		int inRange = RangeBatch.inRange(50, 50, 30, xs, ys, ranges, count,
+				new double[count], mask);
+
+		int expected = 0;
+		for (int i = 0; i < count; i++) {
+			double r = Math.min(30, ranges[i]);
+			double dx = xs[i] - 50;
+			double dy = ys[i] - 50;
+			boolean within = dx*dx + dy*dy <= r*r;
+			assertEquals("candidate " + i, within,
+					(mask[i / 64] & (1L << (i % 64))) != 0);
+			if (within) {
+				expected++;
+			}
+		}
+		assertEquals(expected, inRange);
+		assertTrue(inRange > 0);
+	}
+
+	public void testBoundaries() {
+		double[] xs = {3, 3, 0, 3.0001};
+		double[] ys = {4, 4, 0, 4};
+		double[] ranges = {5, 4.9999, 0, 5};
+		double[] margins = new double[4];
+		long[] mask = new long[1];
+
+		assertEquals(2, RangeBatch.inRange(0, 0, 5, xs, ys, ranges, 4,
+				margins, mask));
+		assertEquals(0x5L, mask[0]); // exactly at range and same location
+		assertEquals(0.0, margins[0]);
+		assertTrue(margins[1] < 0);
+		assertEquals(0, RangeBatch.inRange(0, 0, 5, xs, ys, ranges, 0,
+				margins, mask));
+	}
+
+	public void testBatch() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h0 = utils.createHost(new Coord(0, 0));
+		DTNHost h1 = utils.createHost(new Coord(0, 1));
+		DTNHost h2 = utils.createHost(new Coord(0, 2));
+		RangeBatch batch = new RangeBatch();
+		for (int i = 0; i < 100; i++) {
+			batch.visit((i % 2 == 0 ? h1 : h2).getInterface(1));
+		}
+
+		assertEquals(50, batch.check(h0.getInterface(1)));
+		assertTrue(batch.isInRange(98));
+		assertFalse(batch.isInRange(99));
+		NetworkInterface ni = batch.get(98);
+		assertEquals(h1, ni.getHost());
+
+		batch.clear();
+		assertEquals(0, batch.size());
+		assertEquals(0, batch.check(h0.getInterface(1)));
+	}
+}
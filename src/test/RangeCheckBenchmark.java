@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Random;
+
+import core.RangeBatch;
+
+/**
+ * Benchmark of the batched range check kernel
+ * ({@link RangeBatch#inRange(double, double, double, double[], double[],
+ * double[], int, double[], long[])}) against checking the candidates one
+ * by one with a branch per candidate. Not a unit test; run with<BR>
+ * <CODE>java test.RangeCheckBenchmark [candidates [rounds]]</CODE>
+ */
+public class RangeCheckBenchmark {
+	private static final int DEF_NROF_CANDIDATES = 64;
+	private static final int DEF_NROF_ROUNDS = 2000000;
+	private static final double AREA_SIZE = 100;
+	private static final double RANGE = 20;
+	private static final long SEED = 1;
+
+	private double[] xs;
+	private double[] ys;
+	private double[] ranges;
+	private double[] margins;
+	private long[] mask;
+	private int count;
+	private int rounds;
+	/** result sum that keeps the JIT from removing the checks */
+	private long sink;
+
+	private RangeCheckBenchmark(int count, int rounds) {
+		Random rng = new Random(SEED);
+		this.count = count;
+		this.rounds = rounds;
+		this.xs = new double[count];
+		this.ys = new double[count];
+		this.ranges = new double[count];
+		this.margins = new double[count];
+		this.mask = new long[(count + 63) / 64];
+		for (int i = 0; i < count; i++) {
+			xs[i] = rng.nextDouble() * AREA_SIZE;
+			ys[i] = rng.nextDouble() * AREA_SIZE;
+			ranges[i] = RANGE * (0.5 + rng.nextDouble());
+		}
+	}
+
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) :
+			DEF_NROF_CANDIDATES;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) :
+			DEF_NROF_ROUNDS;
+		RangeCheckBenchmark b = new RangeCheckBenchmark(count, rounds);
+
+		System.out.println(count + " candidates, " + rounds + " rounds");
+		for (int i = 0; i < 3; i++) { /* first passes warm up the JIT */
+			long scalar = b.runScalar();
+			long batch = b.runBatch();
+			if (i == 2) {
+				System.out.printf("one by one %8d ms%n", scalar / 1000000);
+				System.out.printf("batch      %8d ms%n", batch / 1000000);
+			}
+		}
+		System.out.println("(" + b.sink + ")");
+	}
+
+	/**
+	 * Checks the candidates one by one
+	 * @return Elapsed time in nanoseconds
+	 */
+	private long runScalar() {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			double x = xs[round % count];
+			double y = ys[round % count];
+			for (int i = 0; i < count; i++) {
+				double r = Math.min(RANGE, ranges[i]);
+				double dx = xs[i] - x;
+				double dy = ys[i] - y;
+				if (dx*dx + dy*dy <= r*r) {
+					sink++;
+				}
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Checks the candidates with the batch kernel
+	 * @return Elapsed time in nanoseconds
+	 */
+	private long runBatch() {
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			sink += RangeBatch.inRange(xs[round % count], ys[round % count],
+					RANGE, xs, ys, ranges, count, margins, mask);
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+import input.ExternalEventsQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import core.Connection;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.MovementListener;
+import core.SimCheckpoint;
+import core.SimClock;
+import core.SimContext;
+import core.SimScenario;
+import core.UpdateListener;
+import core.World;
+import routing.util.MessageRegistry;
+
+/**
+ * Runs small complete scenarios, each in a simulation context of its own,
+ * and records what happens in them so that the results of runs made with
+ * different (optimization) settings can be compared. The default scenario
+ * has 30 hosts moving with random waypoint movement in a small world and
+ * creating a message every 20-40 seconds; the settings can be overridden
+ * with {@link #put(String, String)}.
+ */
+public class ScenarioRunner implements ConnectionListener, MessageListener,
+		MovementListener, UpdateListener {
+	private Map<String, String> settings;
+	/** connection, message and movement events in the order they happened */
+	private List<String> events;
+	/** time and the links that were up at every update listener call */
+	private List<String> samples;
+	private World world;
+	/** number of world updates in the latest run */
+	private int nrofUpdates;
+	/** name of the checkpoint file to write in the run (or null) */
+	private String checkpointFile;
+	/** time after which the checkpoint is written */
+	private double checkpointTime;
+	/** number of events recorded before the checkpoint was written */
+	private int nrofEventsBeforeCheckpoint;
+	/** delivered message entries in the message registry at the end of
+	 * the latest run */
+	private long nrofDelivered;
+
+	/**
+	 * Creates a runner for the default scenario
+	 */
+	public ScenarioRunner() {
+		this.settings = new TreeMap<String, String>();
+		put("Scenario.name", "test");
+		put("Scenario.simulateConnections", "true");
+		put("Scenario.updateInterval", "1");
+		put("Scenario.endTime", "2000");
+		put("Scenario.nrofHostGroups", "1");
+		put("Group.groupID", "n");
+		put("Group.nrofHosts", "30");
+		put("Group.movementModel", "RandomWaypoint");
+		put("Group.router", "EpidemicRouter");
+		put("Group.bufferSize", "5M");
+		put("Group.waitTime", "0, 120");
+		put("Group.speed", "0.5, 1.5");
+		put("Group.nrofInterfaces", "1");
+		put("Group.interface1", "btInterface");
+		put("btInterface.type", "SimpleBroadcastInterface");
+		put("btInterface.transmitSpeed", "250k");
+		put("btInterface.transmitRange", "20");
+		put("MovementModel.rngSeed", "1");
+		put("MovementModel.worldSize", "300, 300");
+		put("Events.nrof", "1");
+		put("Events1.class", "MessageEventGenerator");
+		put("Events1.interval", "20, 40");
+		put("Events1.size", "50k, 100k");
+		put("Events1.hosts", "0, 30");
+		put("Events1.prefix", "M");
+	}
+
+	/**
+	 * Sets (or overrides) a setting of the scenario
+	 * @param key Full name of the setting (including the name space)
+	 * @param value Value of the setting
+	 */
+	public void put(String key, String value) {
+		this.settings.put(key, value);
+	}
+
+	/**
+	 * Runs the scenario to its end time in a new simulation context
+	 */
+	public void run() {
+		run(-1);
+	}
+
+	/**
+	 * Creates the scenario in a new simulation context and either runs it
+	 * to its end time or, if a warmup time is given, only warms up the
+	 * movement models for that time
+	 * @param warmup The warmup time or a negative value to run the scenario
+	 */
+	public void run(double warmup) {
+		run(warmup, false);
+	}
+
+	/**
+	 * Creates the scenario in a new simulation context and, instead of
+	 * running or warming it up (see {@link #run(double)}), only moves the
+	 * hosts one by one in the order of their addresses using
+	 * {@link DTNHost#move(double)} with the same time steps as the world
+	 * would use
+	 * @param warmup The warmup time or a negative value to move the hosts
+	 * until the end time of the scenario
+	 */
+	public void moveSequentially(double warmup) {
+		run(warmup, true);
+	}
+
+	/**
+	 * Creates the scenario and runs it, warms it up or moves the hosts
+	 * @param warmup The warmup time or a negative value to run the scenario
+	 * @param sequential Should the hosts only be moved one by one
+	 */
+	private void run(double warmup, boolean sequential) {
+		TestSettings ts = new TestSettings();
+		for (Map.Entry<String, String> e : this.settings.entrySet()) {
+			ts.putSetting(e.getKey(), e.getValue());
+		}
+		this.events = new ArrayList<String>();
+		this.samples = new ArrayList<String>();
+
+		SimContext previous = new SimContext(0).bind();
+		try {
+			if (warmup > 0) {
+				SimClock.getInstance().setTime(-warmup);
+			}
+			SimScenario scen = listen();
+
+			if (sequential) {
+				moveHosts(warmup > 0 ? 0 : scen.getEndTime());
+				return;
+			}
+			if (warmup > 0) {
+				this.world.warmupMovementModel(warmup);
+				return;
+			}
+			runToEnd(scen);
+		} finally {
+			SimContext.restore(previous);
+			TestSettings.init(null);
+		}
+	}
+
+	/**
+	 * Runs the scenario to its end time (see {@link #run()}) and writes a
+	 * checkpoint of it with {@link SimCheckpoint#write(String)} after the
+	 * first update that reaches the given time
+	 * @param time Time of the checkpoint
+	 * @param fileName Name of the checkpoint file
+	 * @return Number of events recorded before the checkpoint was written
+	 */
+	public int runWithCheckpoint(double time, String fileName) {
+		this.checkpointTime = time;
+		this.checkpointFile = fileName;
+		try {
+			run();
+		} finally {
+			this.checkpointFile = null;
+		}
+		return this.nrofEventsBeforeCheckpoint;
+	}
+
+	/**
+	 * Creates the scenario in a new simulation context and a
+	 * {@link SimCheckpoint} for it, without running the scenario
+	 * @throws core.SettingsError if the checkpoint settings can't be used
+	 * with the scenario
+	 */
+	public void createCheckpoint() {
+		TestSettings ts = new TestSettings();
+		for (Map.Entry<String, String> e : this.settings.entrySet()) {
+			ts.putSetting(e.getKey(), e.getValue());
+		}
+
+		SimContext previous = new SimContext(0).bind();
+		try {
+			SimScenario.getInstance();
+			new SimCheckpoint();
+		} finally {
+			for (EventQueue eq : SimScenario.getInstance().getExternalEvents()) {
+				if (eq instanceof ExternalEventsQueue) {
+					((ExternalEventsQueue)eq).close();
+				}
+			}
+			SimContext.restore(previous);
+			TestSettings.init(null);
+		}
+	}
+
+	/**
+	 * Restores a scenario from a checkpoint file to a new simulation
+	 * context and runs it to its end time
+	 * @param fileName Name of the checkpoint file
+	 */
+	public void runFromCheckpoint(String fileName) {
+		this.events = new ArrayList<String>();
+		this.samples = new ArrayList<String>();
+
+		SimContext previous = SimCheckpoint.read(fileName, 0).bind();
+		try {
+			SimScenario scen = listen();
+			this.events.clear(); // initial locations given to a new listener
+			runToEnd(scen);
+		} finally {
+			SimContext.restore(previous);
+		}
+	}
+
+	/**
+	 * Adds this runner as a listener of the current scenario
+	 * @return The scenario
+	 */
+	private SimScenario listen() {
+		SimScenario scen = SimScenario.getInstance();
+		scen.addConnectionListener(this);
+		scen.addMessageListener(this);
+		scen.addMovementListener(this);
+		scen.addUpdateListener(this);
+		this.world = scen.getWorld();
+		return scen;
+	}
+
+	/**
+	 * Updates the world until the end time of the scenario and writes the
+	 * checkpoint when its time is reached (if one was requested)
+	 */
+	private void runToEnd(SimScenario scen) {
+		boolean checkpointDue = this.checkpointFile != null;
+		this.nrofUpdates = 0;
+		while (SimClock.getTime() < scen.getEndTime()) {
+			this.world.update();
+			this.nrofUpdates++;
+			if (checkpointDue && SimClock.getTime() >= this.checkpointTime) {
+				SimCheckpoint.write(this.checkpointFile);
+				this.nrofEventsBeforeCheckpoint = this.events.size();
+				checkpointDue = false;
+			}
+		}
+		this.world.done(true);
+		this.nrofDelivered = MessageRegistry.getInstance().getTotalDelivered();
+	}
+
+	/**
+	 * Runs the scenario (see {@link #run(double)}) in a worker thread of a
+	 * new fork-join pool so that the concurrent phases of the run use that
+	 * pool
+	 * @param nrofThreads Parallelism of the pool
+	 * @param warmup The warmup time or a negative value to run the scenario
+	 */
+	public void runInPool(int nrofThreads, final double warmup) {
+		ForkJoinPool pool = new ForkJoinPool(nrofThreads);
+		try {
+			pool.submit(new Callable<Void>() {
+				public Void call() {
+					run(warmup);
+					return null;
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		} catch (ExecutionException e) {
+			throw new AssertionError(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Moves the hosts one by one until the given time with the same time
+	 * steps as {@link World#warmupMovementModel(double)} (for negative
+	 * times) and {@link World#update()} use
+	 */
+	private void moveHosts(double endTime) {
+		SimClock clock = SimClock.getInstance();
+		double interval = SimScenario.getInstance().getUpdateInterval();
+		List<DTNHost> hosts = this.world.getHosts();
+		if (endTime == 0) {
+			while (SimClock.getTime() < -interval) {
+				for (DTNHost h : hosts) {
+					h.move(interval);
+				}
+				clock.advance(interval);
+			}
+			interval = -SimClock.getTime();
+		}
+
+		while (SimClock.getTime() < endTime) {
+			double runUntil = SimClock.getTime() + interval;
+			for (DTNHost h : hosts) {
+				h.move(interval);
+			}
+			clock.setTime(runUntil);
+		}
+	}
+
+	/**
+	 * Returns the world of the latest run
+	 * @return The world
+	 */
+	public World getWorld() {
+		return this.world;
+	}
+
+	/**
+	 * Returns how many times {@link World#update()} was called in the
+	 * latest run
+	 * @return The number of world updates
+	 */
+	public int getNrofUpdates() {
+		return this.nrofUpdates;
+	}
+
+	/**
+	 * Returns the number of delivered message entries in the message
+	 * registry at the end of the latest run
+	 * @return The number of entries (sum over all hosts)
+	 */
+	public long getNrofDelivered() {
+		return this.nrofDelivered;
+	}
+
+	/**
+	 * Returns the connection, message and movement events of the latest run
+	 * @return The events in the order they happened
+	 */
+	public List<String> getEvents() {
+		return this.events;
+	}
+
+	/**
+	 * Returns the samples of the latest run. A sample is taken at every
+	 * update listener call and it contains the simulation time and the
+	 * links that were up at that time.
+	 * @return The samples
+	 */
+	public List<String> getSamples() {
+		return this.samples;
+	}
+
+	/**
+	 * Returns the locations of the hosts at the end of the latest run
+	 * @return The locations in the order of host addresses
+	 */
+	public List<Coord> getLocations() {
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost h : this.world.getHosts()) {
+			locations.add(h.getLocation().clone());
+		}
+		return locations;
+	}
+
+	private void event(String text) {
+		this.events.add(SimClock.getTime() + " " + text);
+	}
+
+	public void hostsConnected(DTNHost host1, DTNHost host2) {
+		event("up " + host1 + " " + host2);
+	}
+
+	public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+		event("down " + host1 + " " + host2);
+	}
+
+	public void newMessage(Message m) {
+		event("new " + m.getId() + " at " + m.getFrom());
+	}
+
+	public void messageTransferStarted(Message m, DTNHost from, DTNHost to) {
+		event("start " + m.getId() + " " + from + " " + to);
+	}
+
+	public void messageDeleted(Message m, DTNHost where, boolean dropped) {
+		event((dropped ? "drop " : "remove ") + m.getId() + " at " + where);
+	}
+
+	public void messageTransferAborted(Message m, DTNHost from, DTNHost to) {
+		event("abort " + m.getId() + " " + from + " " + to);
+	}
+
+	public void messageTransferred(Message m, DTNHost from, DTNHost to,
+			boolean firstDelivery) {
+		event("relay " + m.getId() + " " + from + " " + to + " " +
+				m.getUniqueId());
+	}
+
+	public void newDestination(DTNHost host, Coord destination,
+			double speed) {
+		event("dest " + host + " " + destination + " " + speed);
+	}
+
+	public void initialLocation(DTNHost host, Coord location) {
+		event("init " + host + " " + location);
+	}
+
+	public void updated(List<DTNHost> hosts) {
+		List<String> links = new ArrayList<String>();
+		for (DTNHost h : hosts) {
+			for (Connection c : h.getConnections()) {
+				DTNHost other = c.getOtherNode(h);
+				if (h.getAddress() < other.getAddress()) {
+					links.add(h + "-" + other);
+				}
+			}
+		}
+		Collections.sort(links);
+		this.samples.add(SimClock.getTime() + " " + links);
+	}
+}
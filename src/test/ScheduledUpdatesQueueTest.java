@@ -5,6 +5,10 @@
 package test;
 
 import input.ScheduledUpdatesQueue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
 import junit.framework.TestCase;
 import core.SimClock;
 
@@ -107,4 +111,59 @@ public class ScheduledUpdatesQueueTest extends TestCase {
 		assertEquals(5.0, suq.nextEvent().getTime());
 		assertEquals(8.0, suq.nextEvent().getTime());
 	}
+
+	public void testDuplicatesDroppedOnInsert() {
+		suq.addUpdate(4.0);
+		suq.addUpdate(5.0);
+		suq.addUpdate(5.0);
+		suq.addUpdates(new double[] {4.0, 5.0, 1.0});
+		assertEquals("updates @ 1.0, 4.0, 5.0", suq.toString());
+
+		/* a time can be requested again after its update has happened */
+		assertEquals(1.0, suq.nextEvent().getTime());
+		suq.addUpdate(1.0);
+		assertEquals(1.0, suq.nextEvent().getTime());
+		assertEquals(4.0, suq.nextEvent().getTime());
+	}
+
+	public void testBulkUpdates() {
+		suq.addUpdate(6.0);
+		suq.addUpdates(new double[] {9.0, 2.0, 6.0, 7.5, 2.0, 0.5});
+		suq.addUpdates(new double[] {7.5, 3.0});
+
+		double[] expected = {0.5, 2.0, 3.0, 6.0, 7.5, 9.0};
+		for (double time : expected) {
+			assertEquals(time, suq.nextEvent().getTime());
+		}
+		assertEquals(MAX, suq.nextEvent().getTime());
+	}
+
+	public void testManyUpdates() {
+		for (int i = 1000; i > 0; i--) {
+			suq.addUpdate(i % 250);
+		}
+
+		for (int i = 0; i < 250; i++) {
+			assertEquals((double)i, suq.nextEvent().getTime());
+		}
+		assertEquals(MAX, suq.nextEventsTime());
+	}
+
+	public void testRandomRequests() {
+		Random rng = new Random(5);
+		TreeSet<Double> expected = new TreeSet<Double>();
+		for (int i = 0; i < 20000; i++) {
+			if (rng.nextInt(3) > 0 || expected.isEmpty()) {
+				double time = rng.nextInt(500) / 4.0;
+				suq.addUpdate(time);
+				expected.add(time);
+			} else {
+				assertEquals(expected.pollFirst(), suq.nextEvent().getTime());
+			}
+		}
+		while (!expected.isEmpty()) {
+			assertEquals(expected.pollFirst(), suq.nextEvent().getTime());
+		}
+		assertEquals(MAX, suq.nextEventsTime());
+	}
 }
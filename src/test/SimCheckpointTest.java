@@ -0,0 +1,82 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.SettingsError;
+import core.SimCheckpoint;
+
+/**
+ * Tests writing a checkpoint of a running simulation and continuing the
+ * simulation from the checkpoint
+ */
+public class SimCheckpointTest extends TestCase {
+	private static final double CHECKPOINT_TIME = 1000;
+
+	private File file;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.file = File.createTempFile("ckptTest", ".ckpt");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		this.file.delete();
+	}
+
+	public void testRestoredRunMatchesOriginal() throws IOException {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.run();
+		List<String> events = runner.getEvents();
+		List<String> samples = runner.getSamples();
+		long nrofDelivered = runner.getNrofDelivered();
+		assertTrue(nrofDelivered > 0);
+
+		int nrofBefore = runner.runWithCheckpoint(CHECKPOINT_TIME,
+				this.file.getPath());
+		assertEquals("Checkpointing changed the run",
+				events, runner.getEvents());
+		assertEquals(samples, runner.getSamples());
+		assertTrue(this.file.length() > 0);
+
+		runner.runFromCheckpoint(this.file.getPath());
+		assertTrue(runner.getEvents().size() > 0);
+		assertEquals(events.subList(nrofBefore, events.size()),
+				runner.getEvents());
+		assertEquals(samples.subList(samples.size() -
+				runner.getSamples().size(), samples.size()),
+				runner.getSamples());
+		assertEquals("Delivered messages were not restored",
+				nrofDelivered, runner.getNrofDelivered());
+	}
+
+	public void testExternalEventsRejected() throws IOException {
+		PrintWriter out = new PrintWriter(this.file);
+		out.println("10	CONN	n1	n2	up");
+		out.close();
+
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put(SimCheckpoint.CHECKPOINT_NS + "." + SimCheckpoint.TIMES_S,
+				"" + CHECKPOINT_TIME);
+		runner.put(SimCheckpoint.CHECKPOINT_NS + "." + SimCheckpoint.OUTPUT_S,
+				this.file.getPath());
+		runner.createCheckpoint(); // message generator can be checkpointed
+
+		runner.put("Events.nrof", "2");
+		runner.put("Events2.filePath", this.file.getPath());
+		try {
+			runner.createCheckpoint();
+			fail("External events were accepted");
+		} catch (SettingsError e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.DTNHost;
+import core.Message;
+import core.SimClock;
+import core.SimContext;
+
+/**
+ * Tests for the SimContext
+ */
+public class SimContextTest extends TestCase {
+	/** key whose state creation needs another thread to access the
+	 * same context */
+	private static final SimContext.Key<String> slowKey =
+		new SimContext.Key<String>(SimContextTest.class, "slow") {
+			protected String create() {
+				final SimContext context = SimContext.current();
+				final String[] other = new String[1];
+				Thread t = new Thread() {
+					public void run() {
+						context.bind();
+						other[0] = fastKey.get();
+					}
+				};
+				t.start();
+				try {
+					t.join(5000);
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+				return "slow " + other[0];
+			}
+		};
+	private static final SimContext.Key<String> fastKey =
+		new SimContext.Key<String>(SimContextTest.class, "fast") {
+			protected String create() {
+				return "fast";
+			}
+		};
+	private TestUtils utils;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		DTNHost.reset();
+		Message.reset();
+		this.utils = new TestUtils(null, null, new TestSettings());
+	}
+
+	public void testClockIsPerContext() {
+		SimClock.getInstance().setTime(10);
+
+		SimContext previous = new SimContext(0).bind();
+		try {
+			assertEquals(0.0, SimClock.getTime());
+			SimClock.getInstance().setTime(5);
+			assertEquals(5.0, SimClock.getTime());
+		} finally {
+			SimContext.restore(previous);
+		}
+
+		assertEquals(10.0, SimClock.getTime());
+	}
+
+	public void testAddressesArePerContext() {
+		DTNHost h0 = utils.createHost();
+		DTNHost h1 = utils.createHost();
+		assertEquals(0, h0.getAddress());
+		assertEquals(1, h1.getAddress());
+
+		SimContext previous = new SimContext(0).bind();
+		try {
+			assertEquals(0, utils.createHost().getAddress());
+		} finally {
+			SimContext.restore(previous);
+		}
+
+		assertEquals(2, utils.createHost().getAddress());
+	}
+
+	public void testConcurrentContexts() throws InterruptedException {
+		final int nrofThreads = 4;
+		final double[] times = new double[nrofThreads];
+		final int[] ids = new int[nrofThreads];
+		final int[] addresses = new int[nrofThreads];
+		Thread[] threads = new Thread[nrofThreads];
+		utils.createHost(); // host of the default context
+
+		for (int i = 0; i < nrofThreads; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					new SimContext(index).bind();
+					DTNHost host;
+					synchronized (utils) { // test utils are not thread safe
+						host = utils.createHost();
+					}
+					Message m = null;
+					for (int j = 0; j <= index; j++) {
+						SimClock.getInstance().advance(1);
+						m = new Message(host, host, "M" + j, 1);
+					}
+					times[index] = SimClock.getTime();
+					ids[index] = m.getUniqueId();
+					addresses[index] = host.getAddress();
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int i = 0; i < nrofThreads; i++) {
+			threads[i].join();
+			assertEquals(i + 1.0, times[i]);
+			assertEquals(i, ids[i]);
+			assertEquals(0, addresses[i]);
+		}
+	}
+
+	public void testStateCreatedWithoutLock() {
+		SimContext previous = new SimContext(0).bind();
+		try {
+			/* the other thread would block if the creation held a lock */
+			assertEquals("slow fast", slowKey.get());
+			assertEquals("fast", fastKey.get());
+		} finally {
+			SimContext.restore(previous);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+import util.SparseBitSet;
+
+/**
+ * Tests for the {@link SparseBitSet}
+ */
+public class SparseBitSetTest extends TestCase {
+
+	public void testAddAndContains() {
+		SparseBitSet set = new SparseBitSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(0));
+		assertTrue(set.add(63));
+		assertTrue(set.add(64));
+		assertTrue(set.add(Integer.MAX_VALUE));
+		assertFalse(set.add(63));
+		assertEquals(4, set.size());
+		assertTrue(set.contains(63));
+		assertTrue(set.contains(Integer.MAX_VALUE));
+		assertFalse(set.contains(1));
+		assertFalse(set.contains(-1));
+		assertTrue(Arrays.equals(new int[] {0, 63, 64, Integer.MAX_VALUE},
+				set.toArray()));
+
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(0));
+	}
+
+	public void testRandomValues() {
+		Random rng = new Random(1);
+		SparseBitSet set = new SparseBitSet();
+		TreeSet<Integer> reference = new TreeSet<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			/* mostly dense values with some far apart */
+			int value = (rng.nextInt(10) == 0 ?
+					rng.nextInt(Integer.MAX_VALUE) : rng.nextInt(5000));
+			assertEquals(reference.add(value), set.add(value));
+		}
+		assertEquals(reference.size(), set.size());
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(reference.contains(i), set.contains(i));
+		}
+
+		int[] values = set.toArray();
+		int n = 0;
+		for (int value : reference) {
+			assertEquals(value, values[n++]);
+		}
+	}
+
+	public void testDenseSetIsCompact() {
+		SparseBitSet set = new SparseBitSet();
+		for (int i = 0; i < 64000; i++) {
+			set.add(i);
+		}
+		/* 1000 words; much less than a byte per value */
+		assertTrue(set.getMemoryFootprint() < 64000 / 2);
+	}
+
+	public void testSparseSetIsCompact() {
+		SparseBitSet set = new SparseBitSet();
+		for (int i = 0; i < 1000; i++) {
+			set.add(i * 1000);
+		}
+		/* isolated values take an int slot each, not a 12 byte word slot */
+		assertTrue(set.getMemoryFootprint() < 1000 * 12);
+
+		/* filling the gaps switches to the words */
+		for (int i = 0; i < 64000; i++) {
+			set.add(i);
+		}
+		assertEquals(64000 + 936, set.size());
+		assertTrue(set.contains(999000));
+		assertTrue(set.contains(63999));
+		assertFalse(set.contains(64001));
+		assertTrue(set.getMemoryFootprint() < 64000);
+	}
+}
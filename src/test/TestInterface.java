@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Collection;
+
 import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
@@ -11,6 +13,7 @@ import core.NetworkInterface;
 import core.Settings;
 
 public class TestInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
 
 	public TestInterface(Settings s) {
 		super(s);
@@ -27,6 +30,22 @@ public class TestInterface extends NetworkInterface {
 		return new TestInterface(this);
 	}
 
+	/**
+	 * Returns the interfaces that an update would try to connect to
+	 * @see NetworkInterface#getNearInterfaces()
+	 */
+	public Collection<NetworkInterface> getConnectCandidates() {
+		return getNearInterfaces();
+	}
+
+	/**
+	 * Tears down the connections that are out of range
+	 * @see NetworkInterface#disconnectOutOfRange()
+	 */
+	public void disconnectLost() {
+		disconnectOutOfRange();
+	}
+
 	/**
 	 * Gives the currentTransmit Speed
 	 */
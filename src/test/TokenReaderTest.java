@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.TokenReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the {@link TokenReader}
+ */
+public class TokenReaderTest extends TestCase {
+	private static final String TEXT = "1.5\tC M1  p2\r\n" +
+		"\n" +
+		"# comment\n" +
+		"-7 +12 2147483647 2147483648 1e3";
+
+	private TokenReader reader(String text) {
+		return new TokenReader(new ByteArrayInputStream(
+				text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public void testLinesAndTokens() throws IOException {
+		TokenReader r = reader(TEXT);
+		checkLines(r);
+	}
+
+	private void checkLines(TokenReader r) throws IOException {
+		assertTrue(r.hasNextLine());
+		assertTrue(r.nextLine());
+		assertEquals("1.5\tC M1  p2", r.line());
+		assertEquals(1.5, r.nextDouble());
+		assertTrue(r.nextTokenEquals("C"));
+		assertEquals("C", r.nextToken());
+		assertFalse(r.nextTokenEquals("M"));
+		assertEquals("M1", r.nextToken());
+		assertFalse(r.hasNextInt());
+		assertEquals("p2", r.nextToken());
+		assertFalse(r.hasNextToken());
+
+		r.rewindLine();
+		assertEquals(1.5, r.nextDouble());
+
+		assertTrue(r.nextLine());
+		assertTrue(r.isBlankLine());
+		assertTrue(r.nextLine());
+		assertTrue(r.lineStartsWith("#"));
+		assertFalse(r.isBlankLine());
+
+		assertTrue(r.nextLine());
+		assertFalse(r.hasNextLine());
+		assertEquals(-7, r.nextInt());
+		assertEquals(12, r.nextInt());
+		assertTrue(r.hasNextInt());
+		assertEquals(Integer.MAX_VALUE, r.nextInt());
+		assertFalse(r.hasNextInt());
+		assertEquals(2147483648.0, r.nextDouble());
+		assertEquals(1000.0, r.nextDouble());
+		assertFalse(r.nextLine());
+	}
+
+	public void testInvalidTokens() throws IOException {
+		TokenReader r = reader("- . x");
+		r.nextLine();
+		for (int i = 0; i < 3; i++) {
+			try {
+				r.nextDouble();
+				fail("Parsed an invalid number");
+			} catch (NumberFormatException e) {
+				/* expected */
+			}
+		}
+		try {
+			r.nextToken();
+			fail("Read past the end of the line");
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	public void testDoublesMatchParseDouble() throws IOException {
+		Random rng = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		String[] values = new String[2000];
+		for (int i = 0; i < values.length; i++) {
+			double d = (rng.nextDouble() - 0.5) * Math.pow(10, rng.nextInt(12));
+			values[i] = (i % 2 == 0) ? Double.toString(d) :
+				String.format(java.util.Locale.US, "%." + rng.nextInt(8) + "f",
+						d);
+			sb.append(values[i]).append(i % 10 == 9 ? "\n" : " ");
+		}
+
+		TokenReader r = reader(sb.toString());
+		int i = 0;
+		while (r.nextLine()) {
+			while (r.hasNextToken()) {
+				assertEquals(values[i], Double.parseDouble(values[i]),
+						r.nextDouble());
+				i++;
+			}
+		}
+		assertEquals(values.length, i);
+	}
+
+	public void testLongLines() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append(i).append(' ');
+		}
+		String line = sb.toString();
+		TokenReader r = reader(line + "\n" + line + "\n");
+		for (int n = 0; n < 2; n++) {
+			assertTrue(r.nextLine());
+			for (int i = 0; i < 100000; i++) {
+				assertEquals(i, r.nextInt());
+			}
+			assertFalse(r.hasNextToken());
+		}
+		assertFalse(r.hasNextLine());
+	}
+
+	public void testCompressedFiles() throws IOException {
+		File gz = File.createTempFile("tokenReaderTest", ".gz");
+		gz.deleteOnExit();
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(gz));
+		out.write(TEXT.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		TokenReader r = new TokenReader(gz);
+		checkLines(r);
+		r.close();
+
+		File zip = File.createTempFile("tokenReaderTest", ".zip");
+		zip.deleteOnExit();
+		ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(zip));
+		zout.putNextEntry(new ZipEntry("events.txt"));
+		zout.write(TEXT.getBytes(StandardCharsets.UTF_8));
+		zout.closeEntry();
+		zout.close();
+		r = new TokenReader(zip);
+		checkLines(r);
+		r.close();
+	}
+}
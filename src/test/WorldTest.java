@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
+import core.Coord;
 import core.DTNHost;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
@@ -102,6 +103,155 @@ public class WorldTest extends TestCase {
 	}
 
 
+	/**
+	 * Runs a scenario with parallel updates in a pool of four threads and
+	 * checks that the events (including the unique IDs of the transferred
+	 * messages), the links and the deliveries are the same as when the
+	 * hosts are updated one at a time
+	 */
+	private void assertParallelMatchesSequential(ScenarioRunner runner) {
+		runner.run();
+		List<String> events = runner.getEvents();
+		List<String> links = runner.getSamples();
+		long delivered = runner.getNrofDelivered();
+		assertTrue(delivered > 0);
+
+		runner.put("Optimization.parallelUpdate", "true");
+		runner.runInPool(4, -1);
+		assertEquals(events, runner.getEvents());
+		assertEquals(links, runner.getSamples());
+		assertEquals(delivered, runner.getNrofDelivered());
+	}
+
+	public void testParallelUpdateMatchesSequential() {
+		ScenarioRunner runner = new ScenarioRunner();
+		assertParallelMatchesSequential(runner);
+	}
+
+	public void testParallelUpdateInDenseNetwork() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Group.nrofHosts", "60");
+		runner.put("Events1.hosts", "0, 60");
+		runner.put("Events1.interval", "5, 10");
+		runner.put("btInterface.transmitRange", "40");
+		runner.put("Group.bufferSize", "1M");
+		assertParallelMatchesSequential(runner);
+	}
+
+	public void testParallelUpdateWithOtherRouters() {
+		String[] routers = {"ProphetRouter", "SprayAndWaitRouter",
+				"FirstContactRouter", "DirectDeliveryRouter"};
+		for (String router : routers) {
+			ScenarioRunner runner = new ScenarioRunner();
+			runner.put("Group.router", router);
+			/* the random queue mode depends on the messages' identity
+			 * hash codes, so it isn't reproducible */
+			runner.put("Group.sendQueue", "2");
+			runner.put("ProphetRouter.secondsInTimeUnit", "30");
+			runner.put("SprayAndWaitRouter.nrofCopies", "6");
+			runner.put("SprayAndWaitRouter.binaryMode", "true");
+			runner.put("btInterface.transmitRange", "40");
+			assertParallelMatchesSequential(runner);
+		}
+	}
+
+	public void testParallelUpdateWithApplications() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Scenario.nrofHostGroups", "2");
+		runner.put("Group.nrofHosts", "20");
+		runner.put("Group2.groupID", "p");
+		runner.put("Group2.nrofHosts", "10");
+		runner.put("Group2.nrofApplications", "1");
+		runner.put("Group2.application1", "pingApp");
+		runner.put("pingApp.type", "PingApplication");
+		runner.put("pingApp.interval", "100");
+		runner.put("pingApp.destinationRange", "0, 29");
+		runner.put("pingApp.pingSize", "1k");
+		runner.put("pingApp.pongSize", "1k");
+		runner.put("btInterface.transmitRange", "40");
+		assertParallelMatchesSequential(runner);
+	}
+
+	public void testHostsHaveOwnRandomStreams() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Optimization.parallelMovement", "true");
+		runner.moveSequentially(500);
+		List<String> all = runner.getEvents();
+
+		/* a host's path doesn't depend on how many other hosts there are */
+		runner.put("Group.nrofHosts", "10");
+		runner.moveSequentially(500);
+		List<String> some = runner.getEvents();
+		List<String> expected = new ArrayList<String>();
+		for (String e : all) {
+			int host = Integer.parseInt(e.split(" ")[2].substring(1));
+			if (host < 10) {
+				expected.add(e);
+			}
+		}
+		assertEquals(expected, some);
+
+		/* ...but it does depend on the seed */
+		runner.put("MovementModel.rngSeed", "2");
+		runner.moveSequentially(500);
+		assertFalse(some.equals(runner.getEvents()));
+	}
+
+	public void testParallelMovementMatchesSequential() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Optimization.parallelMovement", "true");
+		runner.moveSequentially(500);
+		List<String> events = runner.getEvents();
+		List<Coord> locations = runner.getLocations();
+
+		runner.runInPool(4, 500);
+		assertEquals(events, runner.getEvents());
+		assertEquals(locations, runner.getLocations());
+	}
+
+	public void testParallelMovementWithSequentialModels() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Optimization.parallelMovement", "true");
+		runner.put("Scenario.simulateConnections", "false");
+		runner.put("Scenario.endTime", "500");
+		runner.put("Events.nrof", "0");
+		runner.put("Scenario.nrofHostGroups", "2");
+		runner.put("Group.waitTime", "0, 0");
+		runner.put("Group1.nrofHosts", "5");
+		runner.put("Group1.movementModel", "LinearMovement");
+		runner.put("Group1.LinearMovement.startLocation", "10, 10");
+		runner.put("Group1.LinearMovement.endLocation", "290, 290");
+		runner.put("Group1.LinearMovement.initLocType", "1");
+		runner.put("Group1.LinearMovement.targetType", "1");
+		runner.moveSequentially(-1);
+		List<String> events = runner.getEvents();
+		List<Coord> locations = runner.getLocations();
+
+		runner.runInPool(4, -1);
+		assertEquals(events, runner.getEvents());
+		assertEquals(locations, runner.getLocations());
+	}
+	public void testSkipIdleIntervals() {
+		ScenarioRunner runner = new ScenarioRunner();
+		runner.put("Group.nrofHosts", "10");
+		runner.put("Group.waitTime", "200, 600");
+		runner.put("Group.speed", "5, 10");
+		runner.put("Group.msgTtl", "5");
+		runner.put("Events1.interval", "100, 200");
+		runner.put("Events1.hosts", "0, 10");
+		runner.run();
+		List<String> events = runner.getEvents();
+		List<String> samples = runner.getSamples();
+		int nrofUpdates = runner.getNrofUpdates();
+
+		runner.put("Optimization.skipIdleIntervals", "true");
+		runner.run();
+		assertEquals(events, runner.getEvents());
+		/* update listeners are informed also for the skipped intervals */
+		assertEquals(samples, runner.getSamples());
+		assertTrue(runner.getNrofUpdates() < nrofUpdates / 2);
+	}
+
 	/** Dummy scenario for providing test values for the World */
 	@SuppressWarnings("serial")
 	private class TestScenario extends core.SimScenario {
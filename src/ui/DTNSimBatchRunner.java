@@ -0,0 +1,314 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package ui;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import report.MessageStatsReport;
+import report.Report;
+import core.Settings;
+import core.SimContext;
+import core.SimError;
+
+/**
+ * Batch runner that executes the runs of a batch (i.e., the different run
+ * index values of run array settings) concurrently in a pool of worker
+ * threads. Every run gets a {@link SimContext} of its own so the runs
+ * don't share any simulation state. The runner is configured using the
+ * settings in {@link #BATCH_NS} name space.
+ * <P>
+ * The runner can keep track of the finished runs in a progress file. If the
+ * file exists when the batch is started, the runs listed in it are not run
+ * again, so an interrupted batch can be resumed by starting it again. If a
+ * summary file is defined, the results of all the runs'
+ * {@link MessageStatsReport}s are collected to a single table (one row
+ * per run) after the batch is done.
+ * </P>
+ */
+public class DTNSimBatchRunner {
+	/** Batch runner settings name space ({@value}) */
+	public static final String BATCH_NS = "Batch";
+	/** Number of concurrent runs -setting id ({@value}). Default is the
+	 * number of available processors. */
+	public static final String NROF_WORKERS_S = "nrofWorkers";
+	/** Progress file's path -setting id ({@value}). If defined, the indexes
+	 * of finished runs are appended to the file and the runs already found
+	 * from the file are skipped. */
+	public static final String PROGRESS_FILE_S = "progressFile";
+	/** Summary file's path -setting id ({@value}). If defined, the message
+	 * statistics of all runs are written to the file as a table. */
+	public static final String SUMMARY_FILE_S = "summaryFile";
+
+	/** Delimiter of values in the progress and summary files */
+	private static final String DELIMITER = " ";
+	/** Delimiter of names and values in the message stats report */
+	private static final String STATS_DELIMITER = ": ";
+
+	private int firstRun;
+	private int lastRun;
+	private int nrofWorkers;
+	private String progressFile;
+	private String summaryFile;
+	/** stats report file names of finished runs by run index (null value
+	 * means that the run had no message stats report) */
+	private Map<Integer, String> finishedRuns;
+
+	/**
+	 * Constructor. Reads the settings of the runner.
+	 * @param firstRun Index of the first run of the batch
+	 * @param lastRun Index after the last run of the batch
+	 */
+	public DTNSimBatchRunner(int firstRun, int lastRun) {
+		Settings s = new Settings(BATCH_NS);
+		this.firstRun = firstRun;
+		this.lastRun = lastRun;
+		this.nrofWorkers = s.getInt(NROF_WORKERS_S,
+				Runtime.getRuntime().availableProcessors());
+		s.ensurePositiveValue(this.nrofWorkers, NROF_WORKERS_S);
+		this.progressFile = s.contains(PROGRESS_FILE_S) ?
+				s.getSetting(PROGRESS_FILE_S) : null;
+		this.summaryFile = s.contains(SUMMARY_FILE_S) ?
+				s.getSetting(SUMMARY_FILE_S) : null;
+		this.finishedRuns = new TreeMap<Integer, String>();
+	}
+
+	/**
+	 * Returns true if any of the batch runner settings are defined
+	 * @return true if the batch runner should be used for batch runs
+	 */
+	public static boolean isConfigured() {
+		Settings s = new Settings(BATCH_NS);
+		return s.contains(NROF_WORKERS_S) || s.contains(PROGRESS_FILE_S) ||
+			s.contains(SUMMARY_FILE_S);
+	}
+
+	/**
+	 * Runs all the runs of the batch that haven't been finished before and
+	 * writes the summary (if requested) when all the runs are done. A run
+	 * that fails doesn't stop the other runs; the failed runs are reported
+	 * and left out of the progress file and the summary.
+	 * @throws SimError if any of the runs failed
+	 */
+	public void run() {
+		if (this.progressFile != null) {
+			readProgress();
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.nrofWorkers);
+		Map<Integer, Future<?>> runs = new TreeMap<Integer, Future<?>>();
+		final int total = this.lastRun;
+		for (int i = this.firstRun; i < this.lastRun; i++) {
+			if (this.finishedRuns.containsKey(i)) {
+				print("Run " + (i+1) + "/" + total + " already done");
+				continue;
+			}
+
+			final int runIndex = i;
+			runs.put(runIndex, pool.submit(new Runnable() {
+				public void run() {
+					print("Run " + (runIndex+1) + "/" + total);
+					runFinished(runIndex, runInContext(runIndex));
+				}
+			}));
+		}
+		pool.shutdown();
+
+		int nrofFailed = 0;
+		for (Map.Entry<Integer, Future<?>> e : runs.entrySet()) {
+			try {
+				e.getValue().get();
+			} catch (InterruptedException ie) {
+				pool.shutdownNow();
+				throw new SimError("Interrupted while waiting for runs: " + ie);
+			} catch (ExecutionException ee) {
+				nrofFailed++;
+				print("Run " + (e.getKey()+1) + "/" + total + " failed: " +
+						ee.getCause());
+			}
+		}
+
+		if (this.summaryFile != null) {
+			writeSummary();
+		}
+		if (nrofFailed > 0) {
+			throw new SimError(nrofFailed + " of " + runs.size() +
+					" runs failed");
+		}
+	}
+
+	/**
+	 * Executes a single run in a new simulation context
+	 * @param runIndex Index of the run
+	 * @return Name of the run's message stats report file or null if
+	 * the run had no message stats report
+	 */
+	private String runInContext(int runIndex) {
+		SimContext previous = new SimContext(runIndex).bind();
+		try {
+			DTNSimTextUI ui = new DTNSimTextUI();
+			ui.start();
+
+			for (Report r : ui.getReports()) {
+				if (r instanceof MessageStatsReport) {
+					return r.getOutputFileName();
+				}
+			}
+			return null;
+		} finally {
+			SimContext.restore(previous);
+		}
+	}
+
+	/**
+	 * Records a finished run and appends it to the progress file (if any)
+	 * @param runIndex Index of the run
+	 * @param statsFile Name of the run's message stats report file or null
+	 */
+	private synchronized void runFinished(int runIndex, String statsFile) {
+		this.finishedRuns.put(runIndex, statsFile);
+		if (this.progressFile == null) {
+			return;
+		}
+
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(this.progressFile,
+					true));
+			out.println(runIndex + (statsFile != null ?
+					DELIMITER + statsFile : ""));
+			out.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write progress file '" +
+					this.progressFile + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the finished runs from the progress file (if it exists)
+	 */
+	private void readProgress() {
+		File f = new File(this.progressFile);
+		if (!f.exists()) {
+			return;
+		}
+
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(f));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0) {
+					continue;
+				}
+				int delim = line.indexOf(DELIMITER);
+				if (delim < 0) {
+					this.finishedRuns.put(Integer.parseInt(line), null);
+				}
+				else {
+					this.finishedRuns.put(Integer.parseInt(
+							line.substring(0, delim)),
+							line.substring(delim + 1));
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't read progress file '" +
+					this.progressFile + "': " + e.getMessage(), e);
+		} catch (NumberFormatException e) {
+			throw new SimError("Invalid run index in progress file '" +
+					this.progressFile + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the message stats of all finished runs to the summary file
+	 */
+	private void writeSummary() {
+		List<String> names = new ArrayList<String>();
+		Map<Integer, Map<String, String>> rows =
+			new TreeMap<Integer, Map<String, String>>();
+
+		for (Map.Entry<Integer, String> e : this.finishedRuns.entrySet()) {
+			if (e.getKey() < this.firstRun || e.getKey() >= this.lastRun) {
+				continue; // not part of this batch
+			}
+			if (e.getValue() == null) {
+				print("No message stats for run " + (e.getKey()+1));
+				continue;
+			}
+			Map<String, String> stats = readStats(e.getValue());
+			for (String name : stats.keySet()) {
+				if (!names.contains(name)) {
+					names.add(name);
+				}
+			}
+			rows.put(e.getKey(), stats);
+		}
+
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(this.summaryFile));
+			String header = "# run";
+			for (String name : names) {
+				header += DELIMITER + name;
+			}
+			out.println(header);
+
+			for (Map.Entry<Integer, Map<String, String>> e : rows.entrySet()) {
+				String row = "" + (e.getKey() + 1);
+				for (String name : names) {
+					String value = e.getValue().get(name);
+					row += DELIMITER + (value != null ? value : Report.NAN);
+				}
+				out.println(row);
+			}
+			out.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't write summary file '" +
+					this.summaryFile + "': " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the "name: value" lines of a message stats report
+	 * @param fileName Name of the report file
+	 * @return The values by their names (in the order of the report)
+	 */
+	private Map<String, String> readStats(String fileName) {
+		Map<String, String> stats = new LinkedHashMap<String, String>();
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(fileName));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int delim = line.indexOf(STATS_DELIMITER);
+				if (delim > 0) {
+					stats.put(line.substring(0, delim),
+							line.substring(delim + STATS_DELIMITER.length()));
+				}
+			}
+			reader.close();
+		} catch (IOException e) {
+			throw new SimError("Couldn't read message stats '" + fileName +
+					"': " + e.getMessage(), e);
+		}
+		return stats;
+	}
+
+	private static synchronized void print(String txt) {
+		System.out.println(txt);
+	}
+}
@@ -32,6 +32,7 @@ public class DTNSimTextUI extends DTNSimUI {
 				done();
 				return;
 			}
+			checkpoint.checkpointIfDue();
 			simTime = SimClock.getTime();
 			this.update(false);
 		}
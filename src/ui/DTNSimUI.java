@@ -13,6 +13,7 @@ import core.MessageListener;
 import core.MovementListener;
 import core.Settings;
 import core.SettingsError;
+import core.SimCheckpoint;
 import core.SimClock;
 import core.SimError;
 import core.SimScenario;
@@ -58,6 +59,10 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** writer of the simulation checkpoints */
+	protected SimCheckpoint checkpoint;
+	/** has the simulator model been initialized */
+	private boolean initialized;
 
 	/**
 	 * Constructor.
@@ -71,6 +76,9 @@ public abstract class DTNSimUI {
 
 	/**
 	 * Starts the simulation.
+	 * @throws SettingsError if the simulation can't be started because of an
+	 * error in the settings
+	 * @throws SimError if the simulation can't be started or it fails
 	 */
 	public void start() {
 		initModel();
@@ -84,16 +92,22 @@ public abstract class DTNSimUI {
 
 	/**
 	 * Initializes the simulator model.
+	 * @throws SettingsError if there's an error in the settings
+	 * @throws SimError if the model can't be initialized
 	 */
 	private void initModel() {
 		Settings settings = null;
 
 		try {
 			settings = new Settings();
-			
+			boolean restored = SimCheckpoint.isRestoreRequested();
+			if (restored) {
+				SimCheckpoint.restore(); // restored sim needs no warmup
+			}
+
 			// set time before instantiate scenario
 			double warmupTime = 0;
-			if (settings.contains(MM_WARMUP_S)) {
+			if (!restored && settings.contains(MM_WARMUP_S)) {
 				warmupTime = settings.getDouble(MM_WARMUP_S);
 				if (warmupTime > 0) {
 					SimClock c = SimClock.getInstance();
@@ -112,19 +126,34 @@ public abstract class DTNSimUI {
 
 			this.world = this.scen.getWorld();
 			world.warmupMovementModel(warmupTime);
+			this.checkpoint = new SimCheckpoint();
+			this.initialized = true;
 		}
 		catch (SettingsError se) {
-			System.err.println("Can't start: error in configuration file(s)");
-			System.err.println(se.getMessage());
-			System.exit(-1);
+			SettingsError e = new SettingsError("Can't start: error in " +
+					"configuration file(s)\n" + se.getMessage(),
+					se.getException());
+			e.initCause(se);
+			throw e;
 		}
 		catch (SimError er) {
-			System.err.println("Can't start: " + er.getMessage());
-			System.err.println("Caught at " + er.getStackTrace()[0]);
-			System.exit(-1);
+			SimError e = new SimError("Can't start: " + er.getMessage(),
+					er.getException());
+			e.initCause(er);
+			throw e;
 		}
 	}
 
+	/**
+	 * Returns true if the simulator model has been initialized, i.e., if
+	 * an error from {@link #start()} happened while running the simulation
+	 * instead of while starting it
+	 * @return True if the model has been initialized
+	 */
+	public boolean isInitialized() {
+		return this.initialized;
+	}
+
 	/**
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
@@ -132,6 +161,17 @@ public abstract class DTNSimUI {
 		for (Report r : this.reports) {
 			r.done();
 		}
+		if (this.world != null) {
+			this.world.done(this.simDone && !this.simCancelled);
+		}
+	}
+
+	/**
+	 * Returns the reports that are loaded for this simulation
+	 * @return The reports
+	 */
+	public Vector<Report> getReports() {
+		return this.reports;
 	}
 
 	/**
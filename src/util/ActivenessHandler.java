@@ -4,6 +4,7 @@
  */
 package util;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -15,7 +16,8 @@ import core.SimClock;
  * Object of this class tell the models when a node belonging
  * to a certain group is active and when not.
  */
-public class ActivenessHandler {
+public class ActivenessHandler implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * <P>Active times -setting id ({@value})</P>
@@ -101,6 +103,15 @@ public class ActivenessHandler {
 		return timesList;
 	}
 
+	/**
+	 * Returns true if no active times or periods are defined, i.e., the node
+	 * is active all the time
+	 * @return true if the node is always active
+	 */
+	public boolean isAlwaysActive() {
+		return this.activeTimes == null && this.activePeriods == null;
+	}
+
 	/**
 	 * Returns true if node should be active at the moment
 	 * @return true if node should be active at the moment
@@ -132,12 +143,22 @@ public class ActivenessHandler {
 			}
 		}
 
+		return isInActiveTimes(SimClock.getTime() + offset);
+	}
+
+	/**
+	 * Returns true if the given time is within the current active time range.
+	 * Moves on to the next time range when the current one is over. The
+	 * handler is shared by all the nodes of a group, and the nodes may be
+	 * moved concurrently, so the range bookkeeping is synchronized.
+	 * @param time The time to check
+	 * @return true if node should be active, false if not
+	 */
+	private synchronized boolean isInActiveTimes(double time) {
 		if (curRange == null) {
 			return false; // out of active times
 		}
 
-		double time = SimClock.getTime() + offset;
-
 		if (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
 			if (curRange == null) {
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Hash set of double values. The values are kept as their bit patterns
+ * ({@link Double#doubleToLongBits(double)}) in a single long array with
+ * open addressing and linear probing, so no entry objects are created and
+ * the values are not boxed. Like with {@link Double#equals(Object)}, 0.0 and
+ * -0.0 are different values and all NaN values are the same value.
+ * @see IntHashSet
+ */
+public class DoubleHashSet implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 8;
+	/** value of an empty slot (a NaN that doubleToLongBits never returns) */
+	private static final long FREE = 0x7ff8000000000001L;
+
+	/** bit patterns of the values of the slots; {@link #FREE} for empty */
+	private long[] slots;
+	private int size;
+	/** number of bits used for a slot index */
+	private int bits;
+
+	/**
+	 * Creates a new empty set
+	 */
+	public DoubleHashSet() {
+		this.bits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+		this.slots = newTable(INITIAL_CAPACITY);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns a new table of empty slots
+	 */
+	private static long[] newTable(int capacity) {
+		long[] table = new long[capacity];
+		Arrays.fill(table, FREE);
+		return table;
+	}
+
+	/**
+	 * Returns the home slot of a value's bit pattern
+	 */
+	private int slot(long key) {
+		return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - this.bits));
+	}
+
+	/**
+	 * Returns the slot of a bit pattern or the empty slot where it should be
+	 */
+	private int find(long key) {
+		int mask = this.slots.length - 1;
+		int i = slot(key);
+		while (this.slots[i] != FREE && this.slots[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value
+	 * @return True if the value was not in the set already
+	 */
+	public boolean add(double value) {
+		long key = Double.doubleToLongBits(value);
+		int i = find(key);
+		if (this.slots[i] == key) {
+			return false;
+		}
+		this.slots[i] = key;
+		this.size++;
+		if (this.size * 3 > this.slots.length * 2) {
+			resize(this.slots.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a value from the set
+	 * @param value The value
+	 * @return True if the value was in the set
+	 */
+	public boolean remove(double value) {
+		int i = find(Double.doubleToLongBits(value));
+		if (this.slots[i] == FREE) {
+			return false;
+		}
+
+		/* move the following values of the probe sequence back so that
+		 * there are no gaps in it */
+		int mask = this.slots.length - 1;
+		int gap = i;
+		for (int j = (i + 1) & mask; this.slots[j] != FREE;
+				j = (j + 1) & mask) {
+			int home = slot(this.slots[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				this.slots[gap] = this.slots[j];
+				gap = j;
+			}
+		}
+		this.slots[gap] = FREE;
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains the value
+	 * @param value The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(double value) {
+		long key = Double.doubleToLongBits(value);
+		return this.slots[find(key)] == key;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The size of the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Rehashes the values to a table of a new capacity
+	 */
+	private void resize(int capacity) {
+		long[] old = this.slots;
+		this.bits = Integer.numberOfTrailingZeros(capacity);
+		this.slots = newTable(capacity);
+		for (long key : old) {
+			if (key != FREE) {
+				this.slots[find(key)] = key;
+			}
+		}
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with primitive int keys. Uses open addressing with linear
+ * probing so that no entry objects are created and the keys are not boxed.
+ * Null values are not allowed. The iteration order is not defined (but it
+ * is the same for the same sequence of operations).
+ * @param <V> Type of the values
+ */
+public class IntHashMap<V> implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the tables (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 8;
+	/** estimated size of an object header and an array header (bytes) */
+	private static final int OBJECT_OVERHEAD = 16;
+
+	private int[] keys;
+	/** values of the slots; null for an empty slot */
+	private Object[] values;
+	private int size;
+	/** number of bits used for a slot index */
+	private int bits;
+	/** modification count for detecting concurrent modification */
+	private transient int modCount;
+
+	/**
+	 * Creates a new empty map
+	 */
+	public IntHashMap() {
+		this.bits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the home slot of a key
+	 */
+	private int slot(int key) {
+		return (key * 0x9E3779B9) >>> (32 - this.bits);
+	}
+
+	/**
+	 * Returns the slot of a key or -1 if the key is not in the map
+	 */
+	private int find(int key) {
+		int mask = this.keys.length - 1;
+		for (int i = slot(key); this.values[i] != null; i = (i + 1) & mask) {
+			if (this.keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value of a key
+	 * @param key The key
+	 * @return The value or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int i = find(key);
+		return i < 0 ? null : (V)this.values[i];
+	}
+
+	/**
+	 * Returns true if the map contains the key
+	 * @param key The key
+	 * @return True if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Puts a value to the map
+	 * @param key The key of the value
+	 * @param value The value (not null)
+	 * @return The previous value of the key or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException("Null values are not allowed");
+		}
+
+		int mask = this.keys.length - 1;
+		int i = slot(key);
+		for (; this.values[i] != null; i = (i + 1) & mask) {
+			if (this.keys[i] == key) {
+				V old = (V)this.values[i];
+				this.values[i] = value;
+				return old;
+			}
+		}
+
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.size++;
+		this.modCount++;
+		if (this.size * 3 > this.keys.length * 2) {
+			resize(this.keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key from the map
+	 * @param key The key
+	 * @return The value of the removed key or null if the key was not in
+	 * the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int i = find(key);
+		if (i < 0) {
+			return null;
+		}
+
+		V old = (V)this.values[i];
+		/* move the following entries of the probe sequence back so that
+		 * there are no gaps in it */
+		int mask = this.keys.length - 1;
+		int gap = i;
+		for (int j = (i + 1) & mask; this.values[j] != null;
+				j = (j + 1) & mask) {
+			int home = slot(this.keys[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				this.keys[gap] = this.keys[j];
+				this.values[gap] = this.values[j];
+				gap = j;
+			}
+		}
+		this.values[gap] = null;
+		this.size--;
+		this.modCount++;
+		return old;
+	}
+
+	/**
+	 * Returns the number of keys in the map
+	 * @return The size of the map
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns true if the map is empty
+	 * @return True if the map is empty
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Returns an estimate of the memory the tables of the map take. The
+	 * values themselves are not included.
+	 * @return The estimated size in bytes
+	 */
+	public long getMemoryFootprint() {
+		return 3 * OBJECT_OVERHEAD + 3 * 4 +
+			(long)this.keys.length * (4 + 4);
+	}
+
+	/**
+	 * Removes all the keys from the map
+	 */
+	public void clear() {
+		Arrays.fill(this.values, null);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	/**
+	 * Returns the keys of the map
+	 * @return A new array of the keys (in the iteration order of the map)
+	 */
+	public int[] keys() {
+		int[] result = new int[this.size];
+		int n = 0;
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.values[i] != null) {
+				result[n++] = this.keys[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a read-only view of the values of the map. The view reflects
+	 * the changes to the map but its iterator fails if the map is modified
+	 * while iterating. The view is serializable (with the map).
+	 * @return The values
+	 */
+	public Collection<V> values() {
+		return new Values<V>(this);
+	}
+
+	/**
+	 * Rehashes the entries to tables of a new capacity
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.bits = Integer.numberOfTrailingZeros(capacity);
+		this.keys = new int[capacity];
+		this.values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = slot(oldKeys[j]);
+				while (this.values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * Read-only view of the values of a map
+	 */
+	private static class Values<V> extends AbstractCollection<V>
+			implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private IntHashMap<V> map;
+
+		public Values(IntHashMap<V> map) {
+			this.map = map;
+		}
+
+		public Iterator<V> iterator() {
+			return this.map.new ValueIterator();
+		}
+
+		public int size() {
+			return this.map.size;
+		}
+	}
+
+	/**
+	 * Iterator of the values in the slot order
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private int next = 0;
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			while (next < values.length && values[next] == null) {
+				next++;
+			}
+			return next < values.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (V)values[next++];
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Hash set of non-negative int values. The values are kept in a single int
+ * array with open addressing and linear probing, so no entry objects are
+ * created and the values are not boxed.
+ * @see IntHashMap
+ */
+public class IntHashSet implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the table (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 8;
+	/** value of an empty slot */
+	private static final int FREE = -1;
+
+	/** values of the slots; {@link #FREE} for an empty slot */
+	private int[] slots;
+	private int size;
+	/** number of bits used for a slot index */
+	private int bits;
+
+	/**
+	 * Creates a new empty set
+	 */
+	public IntHashSet() {
+		this.bits = Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+		this.slots = newTable(INITIAL_CAPACITY);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns a new table of empty slots
+	 */
+	private static int[] newTable(int capacity) {
+		int[] table = new int[capacity];
+		Arrays.fill(table, FREE);
+		return table;
+	}
+
+	/**
+	 * Returns the home slot of a value
+	 */
+	private int slot(int value) {
+		return (value * 0x9E3779B9) >>> (32 - this.bits);
+	}
+
+	/**
+	 * Returns the slot of a value or the empty slot where it should be
+	 */
+	private int find(int value) {
+		int mask = this.slots.length - 1;
+		int i = slot(value);
+		while (this.slots[i] != FREE && this.slots[i] != value) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Adds a value to the set
+	 * @param value The value (non-negative)
+	 * @return True if the value was not in the set already
+	 */
+	public boolean add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value " + value);
+		}
+
+		int i = find(value);
+		if (this.slots[i] == value) {
+			return false;
+		}
+		this.slots[i] = value;
+		this.size++;
+		if (this.size * 3 > this.slots.length * 2) {
+			resize(this.slots.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the values of another set to this set
+	 * @param other The other set
+	 */
+	public void addAll(IntHashSet other) {
+		if (other == this) {
+			return;
+		}
+		for (int value : other.slots) {
+			if (value != FREE) {
+				add(value);
+			}
+		}
+	}
+
+	/**
+	 * Removes a value from the set
+	 * @param value The value
+	 * @return True if the value was in the set
+	 */
+	public boolean remove(int value) {
+		if (value < 0) {
+			return false;
+		}
+		int i = find(value);
+		if (this.slots[i] == FREE) {
+			return false;
+		}
+
+		/* move the following values of the probe sequence back so that
+		 * there are no gaps in it */
+		int mask = this.slots.length - 1;
+		int gap = i;
+		for (int j = (i + 1) & mask; this.slots[j] != FREE;
+				j = (j + 1) & mask) {
+			int home = slot(this.slots[j]);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				this.slots[gap] = this.slots[j];
+				gap = j;
+			}
+		}
+		this.slots[gap] = FREE;
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * Returns true if the set contains the value
+	 * @param value The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(int value) {
+		return value >= 0 && this.slots[find(value)] == value;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The size of the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the values of the set
+	 * @return A new array of the values
+	 */
+	public int[] toArray() {
+		int[] values = new int[this.size];
+		int n = 0;
+		for (int value : this.slots) {
+			if (value != FREE) {
+				values[n++] = value;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Rehashes the values to a table of a new capacity
+	 */
+	private void resize(int capacity) {
+		int[] old = this.slots;
+		this.bits = Integer.numberOfTrailingZeros(capacity);
+		this.slots = newTable(capacity);
+		for (int value : old) {
+			if (value != FREE) {
+				this.slots[find(value)] = value;
+			}
+		}
+	}
+}
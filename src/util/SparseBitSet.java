@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Set of non-negative ints stored as a bitset that keeps only the 64-bit
+ * words that have some bits set. The words are kept in an open addressing
+ * hash table by their word index, so a dense set takes about one bit per
+ * value. A word slot takes 12 bytes, so while the values are sparse (less
+ * than {@link #MIN_VALUES_PER_WORD} values per word on average), they are
+ * kept as plain ints in an open addressing hash set instead (4 bytes per
+ * slot). The set switches to the words when it grows and the words would
+ * take less memory. Bits can only be set (and the whole set cleared).
+ */
+public class SparseBitSet implements Serializable {
+	private static final long serialVersionUID = 1L;
+	/** initial capacity of the tables (must be a power of two) */
+	private static final int INITIAL_CAPACITY = 4;
+	/** estimated size of an object header and an array header (bytes) */
+	private static final int OBJECT_OVERHEAD = 16;
+	/** average number of values per word above which the words take less
+	 * memory than the values (a word slot is three times an int slot) */
+	public static final int MIN_VALUES_PER_WORD = 3;
+	/** value of an empty slot of the value table */
+	private static final int FREE = -1;
+
+	/** values of the slots ({@link #FREE} for an empty slot) while the set
+	 * is sparse; null after switching to the words */
+	private int[] values;
+	/** word indexes of the slots (null while the set is sparse) */
+	private int[] wordIndexes;
+	/** words of the slots; zero for an empty slot */
+	private long[] words;
+	/** number of used slots */
+	private int nrofWords;
+	/** number of set bits */
+	private int cardinality;
+
+	/**
+	 * Creates a new empty set
+	 */
+	public SparseBitSet() {
+		clear();
+	}
+
+	/**
+	 * Returns the home slot of a value (or word index) in a table
+	 */
+	private static int home(int value, int length) {
+		return (value * 0x9E3779B9) >>> (32 -
+				Integer.numberOfTrailingZeros(length));
+	}
+
+	/**
+	 * Returns the slot of a value or the empty slot where it should be
+	 */
+	private int valueSlot(int value) {
+		int mask = this.values.length - 1;
+		int i = home(value, this.values.length);
+		while (this.values[i] != FREE && this.values[i] != value) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the slot of a word index or the empty slot where it should be
+	 */
+	private int slot(int wordIndex) {
+		int mask = this.words.length - 1;
+		int i = home(wordIndex, this.words.length);
+		while (this.words[i] != 0 && this.wordIndexes[i] != wordIndex) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Sets the bit of a value
+	 * @param value The value (non-negative)
+	 * @return True if the bit was not set before
+	 */
+	public boolean add(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative value " + value);
+		}
+		if (this.values != null) {
+			return addValue(value);
+		}
+
+		int i = slot(value >>> 6);
+		long bit = 1L << (value & 63);
+		if ((this.words[i] & bit) != 0) {
+			return false;
+		}
+
+		if (this.words[i] == 0) {
+			this.wordIndexes[i] = value >>> 6;
+			this.nrofWords++;
+		}
+		this.words[i] |= bit;
+		this.cardinality++;
+
+		if (this.nrofWords * 3 > this.words.length * 2) {
+			resize(this.words.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a value to the value table
+	 */
+	private boolean addValue(int value) {
+		int i = valueSlot(value);
+		if (this.values[i] == value) {
+			return false;
+		}
+		this.values[i] = value;
+		this.cardinality++;
+
+		if (this.cardinality * 3 > this.values.length * 2) {
+			int nrofWordsNeeded = countWords();
+			if (this.cardinality > MIN_VALUES_PER_WORD * nrofWordsNeeded) {
+				switchToWords(nrofWordsNeeded);
+			} else {
+				resizeValues(this.values.length * 2);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of words the values of the value table need
+	 */
+	private int countWords() {
+		int[] sorted = toArray();
+		int count = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (i == 0 || (sorted[i] >>> 6) != (sorted[i - 1] >>> 6)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Moves the values from the value table to the words
+	 * @param nrofWordsNeeded Number of words the values need
+	 */
+	private void switchToWords(int nrofWordsNeeded) {
+		int capacity = INITIAL_CAPACITY;
+		while (nrofWordsNeeded * 3 > capacity * 2) {
+			capacity *= 2;
+		}
+		int[] old = this.values;
+		this.values = null;
+		this.wordIndexes = new int[capacity];
+		this.words = new long[capacity];
+		this.nrofWords = 0;
+		this.cardinality = 0;
+		for (int value : old) {
+			if (value != FREE) {
+				add(value);
+			}
+		}
+	}
+
+	/**
+	 * Rehashes the values to a value table of a new capacity
+	 */
+	private void resizeValues(int capacity) {
+		int[] old = this.values;
+		this.values = new int[capacity];
+		Arrays.fill(this.values, FREE);
+		for (int value : old) {
+			if (value != FREE) {
+				this.values[valueSlot(value)] = value;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the bit of a value is set
+	 * @param value The value
+	 * @return True if the value is in the set
+	 */
+	public boolean contains(int value) {
+		if (value < 0) {
+			return false;
+		}
+		if (this.values != null) {
+			return this.values[valueSlot(value)] == value;
+		}
+		return (this.words[slot(value >>> 6)] & (1L << (value & 63))) != 0;
+	}
+
+	/**
+	 * Returns the number of values in the set
+	 * @return The number of set bits
+	 */
+	public int size() {
+		return this.cardinality;
+	}
+
+	/**
+	 * Removes all values from the set
+	 */
+	public void clear() {
+		this.values = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.values, FREE);
+		this.wordIndexes = null;
+		this.words = null;
+		this.nrofWords = 0;
+		this.cardinality = 0;
+	}
+
+	/**
+	 * Returns the values of the set
+	 * @return A new array of the values in ascending order
+	 */
+	public int[] toArray() {
+		int[] values = new int[this.cardinality];
+		int n = 0;
+		if (this.values != null) {
+			for (int value : this.values) {
+				if (value != FREE) {
+					values[n++] = value;
+				}
+			}
+			Arrays.sort(values);
+			return values;
+		}
+		for (int i = 0; i < this.words.length; i++) {
+			long w = this.words[i];
+			while (w != 0) {
+				values[n++] = (this.wordIndexes[i] << 6) +
+					Long.numberOfTrailingZeros(w);
+				w &= w - 1;
+			}
+		}
+		Arrays.sort(values);
+		return values;
+	}
+
+	/**
+	 * Returns an estimate of the memory this set takes
+	 * @return The estimated size in bytes
+	 */
+	public long getMemoryFootprint() {
+		if (this.values != null) {
+			return 2 * OBJECT_OVERHEAD + 2 * 4 + (long)this.values.length * 4;
+		}
+		return 3 * OBJECT_OVERHEAD + 2 * 4 +
+			(long)this.words.length * (4 + 8);
+	}
+
+	/**
+	 * Rehashes the words to tables of a new capacity
+	 */
+	private void resize(int capacity) {
+		int[] oldIndexes = this.wordIndexes;
+		long[] oldWords = this.words;
+		this.wordIndexes = new int[capacity];
+		this.words = new long[capacity];
+		for (int j = 0; j < oldWords.length; j++) {
+			if (oldWords[j] != 0) {
+				int i = slot(oldIndexes[j]);
+				this.wordIndexes[i] = oldIndexes[j];
+				this.words[i] = oldWords[j];
+			}
+		}
+	}
+}